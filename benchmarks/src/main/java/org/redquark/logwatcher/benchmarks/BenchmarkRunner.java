@@ -0,0 +1,55 @@
+package org.redquark.logwatcher.benchmarks;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Entry point of the benchmarks jar. Takes the usual JMH command line
+ *         options, but writes the results as JSON to {@value #DEFAULT_RESULT}
+ *         unless -rf/-rff say otherwise, so that runs can be compared to find
+ *         regressions.
+ *
+ *         <pre>
+ * java -jar benchmarks/target/benchmarks.jar -p sizeMb=100
+ * java -jar benchmarks/target/benchmarks.jar Matching -rff matching.json
+ *         </pre>
+ *
+ */
+public final class BenchmarkRunner {
+
+	// File the results are written to by default
+	public static final String DEFAULT_RESULT = "logwatcher-jmh.json";
+
+	private BenchmarkRunner() {
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+
+		// Help and listing are left to JMH itself
+		if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListWithParams()
+				|| commandLine.shouldListProfilers() || commandLine.shouldListResultFormats()) {
+			Main.main(args);
+			return;
+		}
+
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+
+		if (!commandLine.getResultFormat().hasValue()) {
+			options.resultFormat(ResultFormatType.JSON);
+		}
+
+		if (!commandLine.getResult().hasValue()) {
+			options.result(DEFAULT_RESULT);
+		}
+
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,260 @@
+package org.redquark.logwatcher.benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Writes synthetic AEM error.log files. Every record starts with the
+ *         logback prefix of AEM, most of them are single INFO/WARN lines and
+ *         a share given by the error density are ERROR records with a stack
+ *         trace of one of the {@link #TYPES}. A few WARN records carry traces
+ *         of exceptions which are not configured, so that not every trace is a
+ *         hit.
+ *
+ *         Files are generated once per size, density and seed and reused by
+ *         later runs. They are kept in the directory given by the system
+ *         property {@value #CORPUS_DIR_PROPERTY}, by default below
+ *         java.io.tmpdir.
+ *
+ */
+public final class CorpusGenerator {
+
+	// System property overriding the corpus directory
+	public static final String CORPUS_DIR_PROPERTY = "logwatcher.corpus.dir";
+
+	// Error/exception types configured in the benchmarks, as in
+	// LogWatcherConfiguration.type()
+	public static final String[] TYPES = { "NullPointerException", "RepositoryException", "PathNotFoundException",
+			"LoginException", "OutOfMemoryError", "IllegalStateException", "SlingException", "PersistenceException" };
+
+	// Words of the generated type names, see types(int)
+	private static final String[] TYPE_WORDS = { "Asset", "Replication", "Workflow", "Index", "Query", "Package",
+			"Render", "Cache", "Session", "Content", "Template", "Dispatcher", "Servlet", "Resource", "Launcher",
+			"Translation" };
+
+	// Suffixes of the generated type names
+	private static final String[] TYPE_SUFFIXES = { "Exception", "Error", "Failure" };
+
+	// Seed of the generated corpora - the same arguments always give the same file
+	private static final long SEED = 20261018L;
+
+	// Exceptions in WARN traces which are not configured
+	private static final String[] OTHER_EXCEPTIONS = { "java.net.SocketTimeoutException",
+			"org.eclipse.jetty.io.EofException", "java.util.concurrent.TimeoutException" };
+
+	// Packages of the exceptions in ERROR traces
+	private static final String[] TYPE_PACKAGES = { "java.lang", "javax.jcr", "javax.jcr", "javax.jcr.security",
+			"java.lang", "java.lang", "org.apache.sling.api", "org.apache.sling.api.resource" };
+
+	// Loggers of the records
+	private static final String[] LOGGERS = { "org.apache.sling.engine.impl.SlingRequestProcessorImpl",
+			"com.day.cq.wcm.core.impl.PageManagerImpl", "org.apache.jackrabbit.oak.plugins.index.IndexUpdate",
+			"org.apache.sling.servlets.resolver.internal.SlingServletResolver",
+			"com.adobe.granite.workflow.core.job.JobHandler", "org.apache.sling.event.impl.jobs.queues.JobQueueImpl" };
+
+	// Frames of the stack traces
+	private static final String[] FRAMES = {
+			"org.apache.sling.engine.impl.SlingRequestProcessorImpl.processComponent(SlingRequestProcessorImpl.java:282)",
+			"org.apache.sling.engine.impl.filter.RequestSlingFilterChain.doFilter(RequestSlingFilterChain.java:49)",
+			"org.apache.sling.engine.impl.debug.RequestProgressTrackerLogFilter.doFilter(RequestProgressTrackerLogFilter.java:108)",
+			"com.day.cq.wcm.core.impl.WCMDebugFilter.doFilter(WCMDebugFilter.java:132)",
+			"org.apache.jackrabbit.oak.jcr.session.SessionImpl.getNode(SessionImpl.java:202)",
+			"org.apache.jackrabbit.oak.jcr.delegate.SessionDelegate.perform(SessionDelegate.java:208)",
+			"org.apache.felix.http.base.internal.handler.ServletHandler.handle(ServletHandler.java:123)",
+			"org.eclipse.jetty.server.handler.HandlerWrapper.handle(HandlerWrapper.java:97)",
+			"org.eclipse.jetty.util.thread.QueuedThreadPool.runJob(QueuedThreadPool.java:671)",
+			"java.lang.Thread.run(Thread.java:748)" };
+
+	// Messages of the single line records
+	private static final String[] MESSAGES = { "Service [Cluster=node-1, Version=1.8.0] started",
+			"Page /content/site/en/home.html rendered in 42ms", "Indexing report: 1024 nodes traversed",
+			"Job topic com/adobe/granite/workflow/job processed", "Resource /content/dam/assets/image.png not modified",
+			"Session login: user=admin, workspace=crx.default" };
+
+	// Prefix format of AEM's logback configuration
+	private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss.SSS",
+			Locale.ROOT);
+
+	private CorpusGenerator() {
+	}
+
+	/**
+	 * Returns the corpus for the given arguments, generating it if it does not
+	 * exist yet
+	 *
+	 * @param sizeMb       size of the file in megabytes
+	 * @param errorDensity share of records which are errors of a configured type
+	 * @return path of the corpus
+	 * @throws IOException
+	 */
+	public static Path corpus(long sizeMb, double errorDensity) throws IOException {
+
+		// Directory of the corpora
+		Path directory = Paths.get(System.getProperty(CORPUS_DIR_PROPERTY,
+				Paths.get(System.getProperty("java.io.tmpdir"), "logwatcher-corpus").toString()));
+		Files.createDirectories(directory);
+
+		Path file = directory.resolve(String.format(Locale.ROOT, "error-%dMB-%s-%d.log", sizeMb,
+				Double.toString(errorDensity), SEED));
+
+		if (!Files.isRegularFile(file)) {
+
+			// Generating into a temporary file first - an interrupted run must not leave a
+			// truncated corpus behind
+			Path tmp = Files.createTempFile(directory, "corpus", ".tmp");
+			try {
+				generate(tmp, sizeMb * 1024 * 1024, errorDensity, SEED);
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+		}
+
+		return file;
+	}
+
+	/**
+	 * Returns the given number of configured types: the {@link #TYPES} found in
+	 * the corpus followed by generated class names which are not, e.g.
+	 * CacheRenderException, as an instance configured with many custom
+	 * exceptions would have
+	 *
+	 * @param count number of types, at least the number of {@link #TYPES}
+	 * @return the types
+	 */
+	public static String[] types(int count) {
+
+		String[] types = Arrays.copyOf(TYPES, Math.max(count, TYPES.length));
+
+		for (int i = TYPES.length; i < types.length; i++) {
+			int n = i - TYPES.length;
+			types[i] = TYPE_WORDS[n % TYPE_WORDS.length] + TYPE_WORDS[(n / TYPE_WORDS.length + 1) % TYPE_WORDS.length]
+					+ TYPE_SUFFIXES[n % TYPE_SUFFIXES.length];
+		}
+		return types;
+	}
+
+	/**
+	 * Writes records to the file until it has at least the given size
+	 *
+	 * @param file
+	 * @param bytes
+	 * @param errorDensity
+	 * @param seed
+	 * @throws IOException
+	 */
+	public static void generate(Path file, long bytes, double errorDensity, long seed) throws IOException {
+
+		SplittableRandom random = new SplittableRandom(seed);
+
+		// Clock of the log - advances a few milliseconds per record
+		LocalDateTime time = LocalDateTime.of(2026, 10, 18, 0, 0);
+
+		StringBuilder record = new StringBuilder(4096);
+		long written = 0;
+
+		try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+
+			while (written < bytes) {
+
+				time = time.plusNanos(random.nextInt(1, 50) * 1_000_000L);
+				record.setLength(0);
+
+				double dice = random.nextDouble();
+
+				if (dice < errorDensity) {
+					errorRecord(record, time, random);
+				} else if (dice < errorDensity + 0.01) {
+					warnTraceRecord(record, time, random);
+				} else {
+					lineRecord(record, time, random);
+				}
+
+				writer.append(record);
+
+				// The corpus is ASCII, so characters are bytes
+				written += record.length();
+			}
+		}
+	}
+
+	/**
+	 * ERROR record with the stack trace of a configured type
+	 */
+	private static void errorRecord(StringBuilder record, LocalDateTime time, SplittableRandom random) {
+
+		int type = random.nextInt(TYPES.length);
+
+		prefix(record, time, "ERROR", random).append("Uncaught exception while processing request ")
+				.append(TYPE_PACKAGES[type]).append('.').append(TYPES[type]).append(": /content/site/en/page-")
+				.append(random.nextInt(100000)).append('\n');
+
+		trace(record, TYPE_PACKAGES[type] + "." + TYPES[type], random);
+	}
+
+	/**
+	 * WARN record with the stack trace of a type which is not configured
+	 */
+	private static void warnTraceRecord(StringBuilder record, LocalDateTime time, SplittableRandom random) {
+
+		String exception = OTHER_EXCEPTIONS[random.nextInt(OTHER_EXCEPTIONS.length)];
+
+		prefix(record, time, "WARN", random).append("Connection reset by client ").append(exception).append('\n');
+
+		trace(record, exception, random);
+	}
+
+	/**
+	 * INFO/WARN record of a single line
+	 */
+	private static void lineRecord(StringBuilder record, LocalDateTime time, SplittableRandom random) {
+
+		prefix(record, time, random.nextInt(10) == 0 ? "WARN" : "INFO", random)
+				.append(MESSAGES[random.nextInt(MESSAGES.length)]).append('\n');
+	}
+
+	/**
+	 * Appends the record prefix, thread and logger
+	 */
+	private static StringBuilder prefix(StringBuilder record, LocalDateTime time, String level,
+			SplittableRandom random) {
+
+		TIMESTAMP.formatTo(time, record);
+
+		return record.append(" *").append(level).append("* [qtp").append(random.nextInt(1000, 9999)).append('-')
+				.append(random.nextInt(1, 300)).append("] ").append(LOGGERS[random.nextInt(LOGGERS.length)])
+				.append(' ');
+	}
+
+	/**
+	 * Appends a stack trace of 8 to 40 frames, sometimes with a cause
+	 */
+	private static void trace(StringBuilder record, String exception, SplittableRandom random) {
+
+		record.append(exception).append(": ").append(random.nextInt(2) == 0 ? "null" : "Operation failed")
+				.append('\n');
+
+		int frames = random.nextInt(8, 40);
+		for (int i = 0; i < frames; i++) {
+			record.append("\tat ").append(FRAMES[random.nextInt(FRAMES.length)]).append('\n');
+		}
+
+		if (random.nextInt(3) == 0) {
+			record.append("Caused by: java.io.IOException: Broken pipe\n");
+			record.append("\tat ").append(FRAMES[random.nextInt(FRAMES.length)]).append('\n');
+			record.append("\t... ").append(frames).append(" more\n");
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package org.redquark.logwatcher.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         A synthetic error.log (see {@link CorpusGenerator}) per size and error
+ *         density, plus an empty directory for the tail state which is cleared
+ *         before every iteration, so that every iteration reads the whole file.
+ *
+ *         The default sizes cover 100 MB to 5 GB; a quicker run can narrow them
+ *         down with e.g. -p sizeMb=100.
+ *
+ */
+@State(Scope.Benchmark)
+public class CorpusState {
+
+	// Size of the corpus in megabytes
+	@Param({ "100", "1024", "5120" })
+	public long sizeMb;
+
+	// Share of records which are errors of a configured type
+	@Param({ "0.001", "0.01", "0.1" })
+	public double errorDensity;
+
+	// The corpus
+	public Path file;
+
+	// Directory of the tail state
+	public Path stateDirectory;
+
+	@Setup(Level.Trial)
+	public void createCorpus() throws IOException {
+		file = CorpusGenerator.corpus(sizeMb, errorDensity);
+		stateDirectory = Files.createTempDirectory("logwatcher-bench-state");
+	}
+
+	@Setup(Level.Iteration)
+	public void clearState() throws IOException {
+		deleteStateFiles();
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteState() throws IOException {
+		deleteStateFiles();
+		Files.deleteIfExists(stateDirectory);
+	}
+
+	/**
+	 * Removes the saved offsets so that the file is read from the beginning again
+	 */
+	private void deleteStateFiles() throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(stateDirectory)) {
+			for (Path state : files) {
+				Files.deleteIfExists(state);
+			}
+		}
+	}
+}
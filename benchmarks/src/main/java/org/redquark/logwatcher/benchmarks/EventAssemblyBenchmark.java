@@ -0,0 +1,66 @@
+package org.redquark.logwatcher.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.redquark.logwatcher.core.event.LogEventAssembler;
+import org.redquark.logwatcher.core.matcher.LogMatcher;
+import org.redquark.logwatcher.core.matcher.LogMatchers;
+import org.redquark.logwatcher.core.tail.LogTailer;
+import org.redquark.logwatcher.core.tail.ScanMode;
+import org.redquark.logwatcher.core.tail.TailStateStore;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Time of the whole detection path for a corpus - reading, matching and
+ *         capturing the traces of the matching records - as one scan of the
+ *         scheduler does it
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EventAssemblyBenchmark {
+
+	// Maximum number of lines captured per record
+	@Param({ "10" })
+	public int traceLines;
+
+	// Compiled types
+	private LogMatcher matcher;
+
+	@Setup(Level.Trial)
+	public void compile() {
+		matcher = LogMatchers.compile(CorpusGenerator.TYPES);
+	}
+
+	@Benchmark
+	public void assemble(CorpusState corpus, Blackhole blackhole) throws IOException {
+
+		LogTailer tailer = new LogTailer(new TailStateStore(corpus.stateDirectory.toFile()), true,
+				ScanMode.BUFFERED);
+
+		LogEventAssembler assembler = new LogEventAssembler(corpus.file.toString(), matcher, traceLines,
+				blackhole::consume);
+
+		tailer.tail(corpus.file, assembler);
+		assembler.finish();
+	}
+}
@@ -0,0 +1,123 @@
+package org.redquark.logwatcher.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         The detection path as it was before the tailer and the matchers: a
+ *         BufferedReader over the whole file, String.contains() once per type
+ *         and line, and a StringBuilder collecting the lines after a hit. Kept
+ *         as the baseline the other benchmarks are compared with.
+ *
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LegacyBaselineBenchmark {
+
+	// Lines captured per hit, the default of traceLines
+	private static final int TRACE_LINES = 10;
+
+	@Benchmark
+	public long readLines(CorpusState corpus) throws IOException {
+
+		long lines = 0;
+		try (BufferedReader reader = Files.newBufferedReader(corpus.file, StandardCharsets.UTF_8)) {
+			while (reader.readLine() != null) {
+				lines++;
+			}
+		}
+		return lines;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@Warmup(iterations = 3, time = 2)
+	@Measurement(iterations = 5, time = 2)
+	public int contains(LineSample sample, TypeSet types) {
+
+		int matches = 0;
+		for (String line : sample.lines) {
+			for (String type : types.types) {
+				if (line.contains(type)) {
+					matches++;
+					break;
+				}
+			}
+		}
+		return matches;
+	}
+
+	@Benchmark
+	public void captureTraces(CorpusState corpus, Blackhole blackhole) throws IOException {
+
+		StringBuilder traces = new StringBuilder();
+		int captured = 0;
+		boolean capturing = false;
+
+		try (BufferedReader reader = Files.newBufferedReader(corpus.file, StandardCharsets.UTF_8)) {
+
+			String line;
+			while ((line = reader.readLine()) != null) {
+
+				for (String type : CorpusGenerator.TYPES) {
+					if (line.contains(type)) {
+						capturing = true;
+						break;
+					}
+				}
+
+				if (capturing) {
+					traces.append(line).append('\n');
+					if (++captured == TRACE_LINES) {
+						capturing = false;
+						captured = 0;
+					}
+				}
+			}
+		}
+
+		blackhole.consume(traces.length());
+	}
+
+	/**
+	 * The configured types for {@link LegacyBaselineBenchmark#contains}, as many
+	 * as in MatchingBenchmark
+	 */
+	@State(Scope.Benchmark)
+	public static class TypeSet {
+
+		// Number of configured types, the built-in ones and generated class names
+		@Param({ "8", "40", "100" })
+		public int typeCount;
+
+		// The types
+		public String[] types;
+
+		@Setup(Level.Trial)
+		public void create() {
+			types = CorpusGenerator.types(typeCount);
+		}
+	}
+}
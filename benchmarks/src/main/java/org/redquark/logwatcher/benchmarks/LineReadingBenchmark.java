@@ -0,0 +1,51 @@
+package org.redquark.logwatcher.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.redquark.logwatcher.core.tail.LogTailer;
+import org.redquark.logwatcher.core.tail.ScanMode;
+import org.redquark.logwatcher.core.tail.TailStateStore;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Time to read a whole corpus line by line with the {@link LogTailer},
+ *         in each {@link ScanMode}, without doing anything with the lines
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LineReadingBenchmark {
+
+	// How the tailer reads the file
+	@Param({ "BUFFERED", "MAPPED" })
+	public String scanMode;
+
+	@Benchmark
+	public long tail(CorpusState corpus) throws IOException {
+
+		LogTailer tailer = new LogTailer(new TailStateStore(corpus.stateDirectory.toFile()), true,
+				ScanMode.from(scanMode));
+
+		// Counting the lines, so that the loop cannot be optimized away
+		long[] lines = new long[1];
+		tailer.tail(corpus.file, (buffer, start, end, offset) -> lines[0]++);
+
+		return lines[0];
+	}
+}
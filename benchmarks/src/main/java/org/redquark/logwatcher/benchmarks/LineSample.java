@@ -0,0 +1,91 @@
+package org.redquark.logwatcher.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         The first megabytes of a corpus held in memory and split into lines
+ *         up front, so that matching can be measured without any I/O. The lines
+ *         are available both as regions of one buffer, as the tailer hands
+ *         them out, and as decoded strings, as the former BufferedReader loop
+ *         read them.
+ *
+ */
+@State(Scope.Benchmark)
+public class LineSample {
+
+	// Size of the corpus the sample is taken from
+	private static final long CORPUS_MB = 100;
+
+	// Share of records which are errors of a configured type
+	@Param({ "0.001", "0.01", "0.1" })
+	public double errorDensity;
+
+	// Size of the sample in megabytes
+	@Param({ "64" })
+	public int sampleMb;
+
+	// Bytes of the sample
+	public ByteBuffer buffer;
+
+	// Start of every line in the buffer
+	public int[] starts;
+
+	// End of every line in the buffer, without line terminator
+	public int[] ends;
+
+	// Decoded lines
+	public String[] lines;
+
+	@Setup(Level.Trial)
+	public void load() throws IOException {
+
+		// Reading the head of the corpus
+		buffer = ByteBuffer.allocate((int) Math.min(sampleMb, CORPUS_MB) * 1024 * 1024);
+		try (FileChannel channel = FileChannel.open(CorpusGenerator.corpus(CORPUS_MB, errorDensity),
+				StandardOpenOption.READ)) {
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+				// Reading until the buffer is full
+			}
+		}
+
+		// Splitting it into complete lines
+		int count = 0;
+		starts = new int[1 << 16];
+		ends = new int[1 << 16];
+
+		int lineStart = 0;
+		for (int i = 0; i < buffer.position(); i++) {
+			if (buffer.get(i) == '\n') {
+				if (count == starts.length) {
+					starts = Arrays.copyOf(starts, count * 2);
+					ends = Arrays.copyOf(ends, count * 2);
+				}
+				starts[count] = lineStart;
+				ends[count] = i;
+				count++;
+				lineStart = i + 1;
+			}
+		}
+
+		starts = Arrays.copyOf(starts, count);
+		ends = Arrays.copyOf(ends, count);
+
+		lines = new String[count];
+		for (int i = 0; i < count; i++) {
+			lines[i] = new String(buffer.array(), starts[i], ends[i] - starts[i], StandardCharsets.UTF_8);
+		}
+	}
+}
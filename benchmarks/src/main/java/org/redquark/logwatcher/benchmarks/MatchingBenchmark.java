@@ -0,0 +1,92 @@
+package org.redquark.logwatcher.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.redquark.logwatcher.core.matcher.LogMatcher;
+import org.redquark.logwatcher.core.matcher.LogMatchers;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Time to match every line of a {@link LineSample} against the
+ *         configured types, written in each of the syntaxes supported by
+ *         LogWatcherConfiguration.type(), for as many types as configured by
+ *         default and for instances with many custom exceptions
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatchingBenchmark {
+
+	// Syntax of the configured types - plain substrings, class: or regex:
+	@Param({ "plain", "class", "regex" })
+	public String syntax;
+
+	// Number of configured types, the built-in ones and generated class names
+	@Param({ "8", "40", "100" })
+	public int typeCount;
+
+	// Compiled types
+	private LogMatcher matcher;
+
+	@Setup(Level.Trial)
+	public void compile() {
+
+		String[] types = CorpusGenerator.types(typeCount);
+
+		for (int i = 0; i < types.length; i++) {
+			switch (syntax) {
+			case "class":
+				types[i] = LogMatchers.CLASS_PREFIX + types[i];
+				break;
+			case "regex":
+				types[i] = LogMatchers.REGEX_PREFIX + "\\b" + types[i] + "\\b";
+				break;
+			default:
+				break;
+			}
+		}
+
+		matcher = LogMatchers.compile(types);
+	}
+
+	@Benchmark
+	public int bytes(LineSample sample) {
+
+		int matches = 0;
+		for (int i = 0; i < sample.starts.length; i++) {
+			if (matcher.match(sample.buffer, sample.starts[i], sample.ends[i]) != null) {
+				matches++;
+			}
+		}
+		return matches;
+	}
+
+	@Benchmark
+	public int strings(LineSample sample) {
+
+		int matches = 0;
+		for (String line : sample.lines) {
+			if (matcher.match(line) != null) {
+				matches++;
+			}
+		}
+		return matches;
+	}
+}
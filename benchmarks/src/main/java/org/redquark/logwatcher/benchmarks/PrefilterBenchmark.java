@@ -0,0 +1,89 @@
+package org.redquark.logwatcher.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.redquark.logwatcher.core.event.LogEventAssembler;
+import org.redquark.logwatcher.core.event.RecordPrefilter;
+import org.redquark.logwatcher.core.matcher.LogMatcher;
+import org.redquark.logwatcher.core.matcher.LogMatchers;
+import org.redquark.logwatcher.core.tail.LogTailer;
+import org.redquark.logwatcher.core.tail.ScanMode;
+import org.redquark.logwatcher.core.tail.TailStateStore;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         The detection path of {@link EventAssemblyBenchmark} with the
+ *         record prefilter - "none" matches every record as before, "WARN" and
+ *         "ERROR" skip the records below that level before matching, and
+ *         "ERROR+logger" additionally keeps only the records of the Sling
+ *         engine loggers.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PrefilterBenchmark {
+
+	// Prefilter of the records
+	@Param({ "none", "WARN", "ERROR", "ERROR+logger" })
+	public String prefilter;
+
+	// Maximum number of lines captured per record
+	@Param({ "10" })
+	public int traceLines;
+
+	// Compiled types
+	private LogMatcher matcher;
+
+	// Compiled prefilter, null for none
+	private RecordPrefilter recordPrefilter;
+
+	@Setup(Level.Trial)
+	public void compile() {
+
+		matcher = LogMatchers.compile(CorpusGenerator.TYPES);
+
+		switch (prefilter) {
+		case "WARN":
+		case "ERROR":
+			recordPrefilter = RecordPrefilter.compile(prefilter, null);
+			break;
+		case "ERROR+logger":
+			recordPrefilter = RecordPrefilter.compile("ERROR", new String[] { "org.apache.sling.engine." });
+			break;
+		default:
+			recordPrefilter = null;
+		}
+	}
+
+	@Benchmark
+	public void assemble(CorpusState corpus, Blackhole blackhole) throws IOException {
+
+		LogTailer tailer = new LogTailer(new TailStateStore(corpus.stateDirectory.toFile()), true,
+				ScanMode.BUFFERED);
+
+		LogEventAssembler assembler = new LogEventAssembler(corpus.file.toString(), matcher, traceLines,
+				blackhole::consume, null, recordPrefilter);
+
+		tailer.tail(corpus.file, assembler);
+		assembler.finish();
+	}
+}
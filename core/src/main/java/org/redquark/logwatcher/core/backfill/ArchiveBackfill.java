@@ -0,0 +1,241 @@
+package org.redquark.logwatcher.core.backfill;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.redquark.logwatcher.core.event.LogEvent;
+import org.redquark.logwatcher.core.event.LogEventAssembler;
+import org.redquark.logwatcher.core.event.RecordPrefilter;
+import org.redquark.logwatcher.core.matcher.LogMatcher;
+import org.redquark.logwatcher.core.tail.ArchiveReader;
+import org.redquark.logwatcher.core.tail.TailState;
+import org.redquark.logwatcher.core.tail.TailStateStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Scans rotated and compressed log files once, in the background. The
+ *         archives are split among the threads of a fork-join pool; every
+ *         archive is read by one thread (see {@link ArchiveReader}) and its
+ *         events are handed to the consumer in batches, the same way the live
+ *         scans hand them over.
+ *
+ *         A completely scanned archive is remembered in the
+ *         {@link TailStateStore}, so it is not scanned again after a restart
+ *         unless it changed.
+ *
+ */
+public final class ArchiveBackfill implements Closeable {
+
+	// Maximum number of events handed over at once
+	private static final int BATCH_SIZE = 1000;
+
+	// Time to wait for the running scans on close
+	private static final long SHUTDOWN_TIMEOUT_MILLIS = 10000;
+
+	// Logger
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	// Remembers the scanned archives
+	private final TailStateStore store;
+
+	// Threads scanning the archives
+	private final ForkJoinPool pool;
+
+	// Flag to determine if the backfill has been closed
+	private volatile boolean closed;
+
+	/**
+	 * @param threads number of threads, all cores if less than 1
+	 * @param store
+	 */
+	public ArchiveBackfill(int threads, TailStateStore store) {
+		this.store = store;
+		this.pool = new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors(),
+				ArchiveBackfill::newThread, null, false);
+	}
+
+	/**
+	 * Starts scanning the archives which have not been scanned yet. Returns
+	 * immediately.
+	 *
+	 * @param archives
+	 * @param matcher
+	 * @param prefilter  rejects records by level and logger, may be null
+	 * @param traceLines
+	 * @param consumer   receives the events of the archives, from several threads
+	 */
+	public void start(List<Path> archives, LogMatcher matcher, RecordPrefilter prefilter, int traceLines,
+			Consumer<List<LogEvent>> consumer) {
+
+		List<Path> pending = new ArrayList<>();
+		for (Path archive : archives) {
+			if (!isScanned(archive)) {
+				pending.add(archive);
+			}
+		}
+
+		if (pending.isEmpty()) {
+			return;
+		}
+
+		log.info("Backfilling {} rotated log file(s)", pending.size());
+		pool.execute(new BackfillTask(pending, matcher, prefilter, traceLines, consumer));
+	}
+
+	/**
+	 * Stops the scans. Archives not completely scanned are scanned again the
+	 * next time.
+	 */
+	@Override
+	public void close() {
+
+		closed = true;
+		pool.shutdownNow();
+
+		try {
+			if (!pool.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+				log.warn("Backfill did not stop within {} ms", SHUTDOWN_TIMEOUT_MILLIS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Scans one archive
+	 */
+	private void scan(Path archive, LogMatcher matcher, RecordPrefilter prefilter, int traceLines,
+			Consumer<List<LogEvent>> consumer) {
+
+		if (closed) {
+			return;
+		}
+
+		try {
+
+			BasicFileAttributes attributes = Files.readAttributes(archive, BasicFileAttributes.class);
+
+			// Handing the events over in batches, memory does not depend on the size of
+			// the archive
+			List<LogEvent> events = new ArrayList<>();
+			LogEventAssembler assembler = new LogEventAssembler(archive.toString(), matcher, traceLines, event -> {
+				events.add(event);
+				if (events.size() >= BATCH_SIZE) {
+					consumer.accept(new ArrayList<>(events));
+					events.clear();
+				}
+			}, null, prefilter);
+
+			long bytes = ArchiveReader.read(archive, assembler);
+			assembler.finish();
+
+			if (!events.isEmpty()) {
+				consumer.accept(events);
+			}
+
+			// Remembering the archive as scanned
+			store.save(archive, new TailState(attributes.size(), TailState.fileKey(attributes)));
+
+			log.info("Backfilled {} - {} bytes, {} lines", archive, bytes, assembler.getLines());
+
+		} catch (InterruptedIOException e) {
+			log.info("Backfill of {} was stopped", archive);
+		} catch (IOException e) {
+			log.error("Could not backfill {}", archive, e);
+		} catch (RuntimeException e) {
+			log.error(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @return true if the archive was scanned before and has not changed since
+	 */
+	private boolean isScanned(Path archive) {
+
+		TailState state = store.load(archive);
+
+		if (state == null) {
+			return false;
+		}
+
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(archive, BasicFileAttributes.class);
+			return state.getOffset() == attributes.size()
+					&& Objects.equals(state.getFileKey(), TailState.fileKey(attributes));
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return a named daemon worker thread
+	 */
+	private static ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+
+		ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+		thread.setName("logwatcher-backfill-" + thread.getPoolIndex());
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	/**
+	 * Splits the archives in halves until one is left, which is then scanned
+	 */
+	private final class BackfillTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		// Archives of this task
+		private final transient List<Path> archives;
+
+		// Compiled errors/exceptions
+		private final transient LogMatcher matcher;
+
+		// Rejects records by level and logger, may be null
+		private final transient RecordPrefilter prefilter;
+
+		// Maximum number of lines kept per record
+		private final int traceLines;
+
+		// Receiver of the events
+		private final transient Consumer<List<LogEvent>> consumer;
+
+		BackfillTask(List<Path> archives, LogMatcher matcher, RecordPrefilter prefilter, int traceLines,
+				Consumer<List<LogEvent>> consumer) {
+			this.archives = archives;
+			this.matcher = matcher;
+			this.prefilter = prefilter;
+			this.traceLines = traceLines;
+			this.consumer = consumer;
+		}
+
+		@Override
+		protected void compute() {
+
+			if (archives.size() == 1) {
+				scan(archives.get(0), matcher, prefilter, traceLines, consumer);
+				return;
+			}
+
+			int middle = archives.size() / 2;
+			invokeAll(new BackfillTask(archives.subList(0, middle), matcher, prefilter, traceLines, consumer),
+					new BackfillTask(archives.subList(middle, archives.size()), matcher, prefilter, traceLines,
+							consumer));
+		}
+	}
+}
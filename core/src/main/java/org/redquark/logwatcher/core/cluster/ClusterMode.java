@@ -0,0 +1,22 @@
+package org.redquark.logwatcher.core.cluster;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Registered while the instance takes part in a cluster aggregation.
+ *         The email of a single instance is replaced by the digest of the
+ *         aggregator then, see {@link ClusterRole}.
+ *
+ */
+public interface ClusterMode {
+
+	/**
+	 * @return role of this instance
+	 */
+	public ClusterRole getRole();
+
+	/**
+	 * @return identity of this instance in the cluster
+	 */
+	public String getInstanceId();
+}
@@ -0,0 +1,34 @@
+package org.redquark.logwatcher.core.cluster;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Role of an instance in the cluster aggregation
+ *
+ */
+public enum ClusterRole {
+
+	/**
+	 * Publishes the summary of its own notifications, sends no emails
+	 */
+	MEMBER,
+
+	/**
+	 * Publishes like a member and sends the digest of the whole cluster
+	 */
+	AGGREGATOR;
+
+	/**
+	 * @param value
+	 * @return the role with the given name, {@link #MEMBER} if it is unknown
+	 */
+	public static ClusterRole from(String value) {
+
+		for (ClusterRole role : values()) {
+			if (role.name().equalsIgnoreCase(value)) {
+				return role;
+			}
+		}
+		return MEMBER;
+	}
+}
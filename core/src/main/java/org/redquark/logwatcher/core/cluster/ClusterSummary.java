@@ -0,0 +1,348 @@
+package org.redquark.logwatcher.core.cluster;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonException;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
+
+import org.redquark.logwatcher.core.notification.LogNotification;
+import org.redquark.logwatcher.core.notification.LogNotification.Kind;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Occurrence counts by fingerprint as a grow-only counter per origin -
+ *         an origin being one run of one instance. Every origin only ever
+ *         increments its own count, so summaries of different instances, or
+ *         older and newer summaries of the same one, merge by taking the
+ *         maximum per origin: merging is commutative, idempotent and never
+ *         counts an occurrence twice, however often a summary is read.
+ *
+ *         Alerts are counted the same way, keyed by their rule.
+ *
+ */
+public final class ClusterSummary {
+
+	// Key prefix of the alerts
+	private static final String ALERT_PREFIX = "alert:";
+
+	// Entries by fingerprint, or by rule for alerts
+	private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+	/**
+	 * Counts a notification of this instance
+	 *
+	 * @param origin       identity of the instance run
+	 * @param notification
+	 */
+	public synchronized void record(String origin, LogNotification notification) {
+
+		boolean alert = notification.getKind() == Kind.ALERT;
+		String key = alert ? ALERT_PREFIX + notification.getType() : notification.getFingerprint();
+		if (key == null) {
+			return;
+		}
+
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			entry = new Entry(alert, notification.getType(), notification.getTrace(), notification.getFirstSeen(),
+					notification.getLastSeen());
+			entries.put(key, entry);
+		}
+
+		entry.see(notification.getTrace(), notification.getFirstSeen(), notification.getLastSeen());
+
+		// An alert counts as one firing
+		long count = alert ? 1 : notification.getCount();
+		Long current = entry.counts.get(origin);
+		entry.counts.put(origin, (current == null ? 0 : current) + count);
+	}
+
+	/**
+	 * Merges the other summary into this one - the maximum count per origin
+	 *
+	 * @param other
+	 */
+	public synchronized void merge(ClusterSummary other) {
+
+		Map<String, Entry> otherEntries;
+		synchronized (other) {
+			otherEntries = new HashMap<>();
+			for (Map.Entry<String, Entry> e : other.entries.entrySet()) {
+				otherEntries.put(e.getKey(), e.getValue().copy());
+			}
+		}
+
+		for (Map.Entry<String, Entry> e : otherEntries.entrySet()) {
+
+			Entry theirs = e.getValue();
+			Entry ours = entries.get(e.getKey());
+
+			if (ours == null) {
+				entries.put(e.getKey(), theirs);
+				continue;
+			}
+
+			ours.see(theirs.trace, theirs.firstSeen, theirs.lastSeen);
+			for (Map.Entry<String, Long> count : theirs.counts.entrySet()) {
+				Long current = ours.counts.get(count.getKey());
+				if (current == null || current < count.getValue()) {
+					ours.counts.put(count.getKey(), count.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Turns what this summary counted beyond the reported summary into
+	 * notifications and adds it to the reported one. Fingerprints and origins
+	 * which are not part of this summary anymore are forgotten by the reported
+	 * one - an instance which dropped a fingerprint counts it from zero again.
+	 *
+	 * @param reported counts already sent, without traces
+	 * @return notifications for the increase - new fingerprints with their
+	 *         trace, known ones as repetitions and the alerts
+	 */
+	public List<LogNotification> drainDelta(ClusterSummary reported) {
+		return drainDelta(reported, true);
+	}
+
+	/**
+	 * Like {@link #drainDelta(ClusterSummary)}, optionally without forgetting
+	 * anything - when this summary may lack instances, e.g. because their files
+	 * could not be read, their reported counts must be kept, or they would be
+	 * sent once more when they are back
+	 *
+	 * @param reported counts already sent, without traces
+	 * @param prune    false to keep the fingerprints and origins missing from
+	 *                 this summary
+	 * @return notifications for the increase
+	 */
+	public synchronized List<LogNotification> drainDelta(ClusterSummary reported, boolean prune) {
+
+		List<LogNotification> notifications = new ArrayList<>();
+		Set<String> origins = new HashSet<>();
+
+		synchronized (reported) {
+
+			for (Map.Entry<String, Entry> e : entries.entrySet()) {
+
+				Entry entry = e.getValue();
+				Entry sent = reported.entries.get(e.getKey());
+
+				long delta = 0;
+				for (Map.Entry<String, Long> count : entry.counts.entrySet()) {
+					origins.add(count.getKey());
+					Long before = sent == null ? null : sent.counts.get(count.getKey());
+					delta += Math.max(0, count.getValue() - (before == null ? 0 : before));
+				}
+
+				if (delta == 0) {
+					continue;
+				}
+
+				if (entry.alert) {
+					notifications.add(new LogNotification(Kind.ALERT, entry.type, null,
+							entry.trace + " - fired " + delta + " time(s) on " + entry.counts.size() + " instance(s)",
+							delta, entry.firstSeen, entry.lastSeen));
+				} else if (sent == null) {
+					notifications.add(new LogNotification(Kind.NEW, entry.type, e.getKey(), entry.trace, delta,
+							entry.firstSeen, entry.lastSeen));
+				} else {
+					notifications.add(new LogNotification(Kind.REPEAT, entry.type, e.getKey(), null, delta,
+							entry.firstSeen, entry.lastSeen));
+				}
+
+				// Remembering what has been sent, the trace is not needed for that
+				if (sent == null) {
+					sent = new Entry(entry.alert, entry.type, null, entry.firstSeen, entry.lastSeen);
+					reported.entries.put(e.getKey(), sent);
+				}
+				sent.see(null, entry.firstSeen, entry.lastSeen);
+				for (Map.Entry<String, Long> count : entry.counts.entrySet()) {
+					Long before = sent.counts.get(count.getKey());
+					if (before == null || before < count.getValue()) {
+						sent.counts.put(count.getKey(), count.getValue());
+					}
+				}
+			}
+
+			// Runs which are gone cannot grow anymore
+			if (!prune) {
+				return notifications;
+			}
+			reported.entries.keySet().retainAll(entries.keySet());
+			for (Iterator<Entry> it = reported.entries.values().iterator(); it.hasNext();) {
+				Entry sent = it.next();
+				sent.counts.keySet().retainAll(origins);
+				if (sent.counts.isEmpty()) {
+					it.remove();
+				}
+			}
+		}
+
+		return notifications;
+	}
+
+	/**
+	 * Keeps the most recently seen entries only
+	 *
+	 * @param maxEntries
+	 */
+	public synchronized void trim(int maxEntries) {
+
+		if (entries.size() <= maxEntries) {
+			return;
+		}
+
+		List<Map.Entry<String, Entry>> ordered = new ArrayList<>(entries.entrySet());
+		ordered.sort(Comparator.comparingLong(e -> e.getValue().lastSeen));
+
+		for (int i = 0; i < ordered.size() - maxEntries; i++) {
+			entries.remove(ordered.get(i).getKey());
+		}
+	}
+
+	/**
+	 * @return number of fingerprints and alerts
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the summary as JSON
+	 */
+	public synchronized String toJson() {
+
+		StringWriter out = new StringWriter();
+
+		try (JsonGenerator writer = Json.createGenerator(out)) {
+
+			writer.writeStartObject();
+			writer.writeStartArray("entries");
+
+			for (Map.Entry<String, Entry> e : entries.entrySet()) {
+
+				Entry entry = e.getValue();
+
+				writer.writeStartObject();
+				writer.write("key", e.getKey());
+				writer.write("alert", entry.alert);
+				writer.write("type", entry.type);
+				if (entry.trace != null) {
+					writer.write("trace", entry.trace);
+				}
+				writer.write("firstSeen", entry.firstSeen);
+				writer.write("lastSeen", entry.lastSeen);
+				writer.writeStartObject("counts");
+				for (Map.Entry<String, Long> count : entry.counts.entrySet()) {
+					writer.write(count.getKey(), count.getValue());
+				}
+				writer.writeEnd();
+				writer.writeEnd();
+			}
+
+			writer.writeEnd();
+			writer.writeEnd();
+		}
+
+		return out.toString();
+	}
+
+	/**
+	 * @param json
+	 * @return the summary written by {@link #toJson()}
+	 * @throws JsonException if it is not such a summary, e.g. cut off
+	 */
+	public static ClusterSummary fromJson(String json) {
+
+		ClusterSummary summary = new ClusterSummary();
+
+		try (JsonReader reader = Json.createReader(new StringReader(json))) {
+
+			JsonArray array = reader.readObject().getJsonArray("entries");
+
+			for (JsonObject object : array.getValuesAs(JsonObject.class)) {
+
+				Entry entry = new Entry(object.getBoolean("alert"), object.getString("type"),
+						object.getString("trace", null), object.getJsonNumber("firstSeen").longValue(),
+						object.getJsonNumber("lastSeen").longValue());
+
+				for (Map.Entry<String, JsonValue> count : object.getJsonObject("counts").entrySet()) {
+					entry.counts.put(count.getKey(), ((JsonNumber) count.getValue()).longValue());
+				}
+
+				summary.entries.put(object.getString("key"), entry);
+			}
+
+		} catch (ClassCastException | NullPointerException e) {
+			// A member missing or of another type
+			throw new JsonException("Not a cluster summary: " + e, e);
+		}
+
+		return summary;
+	}
+
+	/**
+	 * Counts of one fingerprint or alert
+	 */
+	private static final class Entry {
+
+		// Flag to determine if this is an alert
+		private final boolean alert;
+
+		// Error/exception type or rule
+		private final String type;
+
+		// A trace of the fingerprint or the reason of the alert
+		private String trace;
+
+		// Time of the first occurrence anywhere
+		private long firstSeen;
+
+		// Time of the last occurrence anywhere
+		private long lastSeen;
+
+		// Count by origin
+		private final Map<String, Long> counts = new HashMap<>();
+
+		Entry(boolean alert, String type, String trace, long firstSeen, long lastSeen) {
+			this.alert = alert;
+			this.type = type;
+			this.trace = trace;
+			this.firstSeen = firstSeen;
+			this.lastSeen = lastSeen;
+		}
+
+		void see(String otherTrace, long otherFirstSeen, long otherLastSeen) {
+			if (trace == null) {
+				trace = otherTrace;
+			}
+			firstSeen = Math.min(firstSeen, otherFirstSeen);
+			lastSeen = Math.max(lastSeen, otherLastSeen);
+		}
+
+		Entry copy() {
+			Entry copy = new Entry(alert, type, trace, firstSeen, lastSeen);
+			copy.counts.putAll(counts);
+			return copy;
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package org.redquark.logwatcher.core.cluster;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import javax.json.JsonException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Exchanges the {@link ClusterSummary summaries} of the instances
+ *         through a directory all of them can access, e.g. an NFS share. Every
+ *         instance only ever writes its own file, replacing it atomically, so
+ *         no locking is needed; the aggregator reads all of them and keeps what
+ *         it already reported in a file of its own.
+ *
+ */
+public final class SharedDirectory {
+
+	// Suffix of the summary files
+	private static final String SUMMARY_SUFFIX = ".summary.json";
+
+	// Name of the file with the reported counts
+	private static final String REPORTED_FILE = "aggregator.reported.json";
+
+	// Logger
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	// The shared directory
+	private final Path directory;
+
+	public SharedDirectory(Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Replaces the summary of the instance
+	 *
+	 * @param instanceId
+	 * @param summary
+	 * @throws IOException
+	 */
+	public void publish(String instanceId, ClusterSummary summary) throws IOException {
+		write(directory.resolve(fileName(instanceId) + SUMMARY_SUFFIX), summary);
+	}
+
+	/**
+	 * @return the merged summaries of all instances. Unreadable files are
+	 *         skipped - they are read again next time.
+	 * @throws IOException if the directory cannot be listed
+	 */
+	public ClusterSummary collect() throws IOException {
+		return collect(new ArrayList<>());
+	}
+
+	/**
+	 * @param unreadable receives the summary files which could not be read - the
+	 *                   counts of their instances are missing from the result
+	 * @return the merged summaries of all instances which could be read
+	 * @throws IOException if the directory cannot be listed
+	 */
+	public ClusterSummary collect(Collection<Path> unreadable) throws IOException {
+
+		ClusterSummary merged = new ClusterSummary();
+
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUMMARY_SUFFIX)) {
+			for (Path file : files) {
+				try {
+					merged.merge(read(file));
+				} catch (IOException | JsonException e) {
+					log.warn("Could not read the summary {}: {}", file, e.getMessage());
+					unreadable.add(file);
+				}
+			}
+		}
+
+		return merged;
+	}
+
+	/**
+	 * @return the counts already reported, empty if none were reported yet
+	 * @throws IOException
+	 */
+	public ClusterSummary loadReported() throws IOException {
+
+		Path file = directory.resolve(REPORTED_FILE);
+		if (!Files.isRegularFile(file)) {
+			return new ClusterSummary();
+		}
+
+		try {
+			return read(file);
+		} catch (JsonException e) {
+			log.warn("Could not read {}, starting over: {}", file, e.getMessage());
+			return new ClusterSummary();
+		}
+	}
+
+	/**
+	 * @param reported the counts reported so far
+	 * @throws IOException
+	 */
+	public void saveReported(ClusterSummary reported) throws IOException {
+		write(directory.resolve(REPORTED_FILE), reported);
+	}
+
+	/**
+	 * Writes into a temporary file first, readers never see a partial summary
+	 */
+	private void write(Path file, ClusterSummary summary) throws IOException {
+
+		Files.createDirectories(directory);
+
+		Path tmp = Files.createTempFile(directory, ".summary", ".tmp");
+		try {
+			Files.write(tmp, summary.toJson().getBytes(StandardCharsets.UTF_8));
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private static ClusterSummary read(Path file) throws IOException {
+		return ClusterSummary.fromJson(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @return the instance id with only safe file name characters
+	 */
+	private static String fileName(String instanceId) {
+		return instanceId.replaceAll("[^A-Za-z0-9._-]", "_");
+	}
+}
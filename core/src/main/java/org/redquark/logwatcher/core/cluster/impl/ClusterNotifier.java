@@ -0,0 +1,206 @@
+package org.redquark.logwatcher.core.cluster.impl;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.settings.SlingSettingsService;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.metatype.annotations.Designate;
+import org.redquark.logwatcher.core.cluster.ClusterMode;
+import org.redquark.logwatcher.core.cluster.ClusterRole;
+import org.redquark.logwatcher.core.cluster.ClusterSummary;
+import org.redquark.logwatcher.core.cluster.SharedDirectory;
+import org.redquark.logwatcher.core.configs.LogWatcherClusterConfiguration;
+import org.redquark.logwatcher.core.email.EmailService;
+import org.redquark.logwatcher.core.notification.LogNotification;
+import org.redquark.logwatcher.core.notifier.Notifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Counts the notifications of this instance into a
+ *         {@link ClusterSummary} and publishes it to the shared directory. The
+ *         aggregator additionally merges the summaries of all instances and
+ *         emails what grew since its last digest - one digest for the cluster
+ *         instead of one per instance.
+ *
+ *         Counts are kept per run of an instance, so a restart starts a new
+ *         counter instead of resetting one which has already been reported.
+ *
+ */
+@Component(service = { Notifier.class, ClusterMode.class }, immediate = true, configurationPolicy = ConfigurationPolicy.REQUIRE)
+@Designate(ocd = LogWatcherClusterConfiguration.class)
+public class ClusterNotifier implements Notifier, ClusterMode {
+
+	// Logger
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	// Reference of the EmailService
+	@Reference
+	private EmailService emailService;
+
+	// Reference of the SlingSettingsService - for the default instance id
+	@Reference(cardinality = ReferenceCardinality.OPTIONAL)
+	private SlingSettingsService slingSettings;
+
+	// Role of this instance
+	private ClusterRole role;
+
+	// Identity of this instance
+	private String instanceId;
+
+	// Identity of this run of the instance
+	private String origin;
+
+	// Maximum number of fingerprints kept
+	private int maxFingerprints;
+
+	// The shared directory
+	private SharedDirectory sharedDirectory;
+
+	// Counts of this instance
+	private ClusterSummary summary;
+
+	// Counts already sent by the aggregator
+	private ClusterSummary reported;
+
+	// Publishes the counts and sends the digests
+	private ScheduledExecutorService executor;
+
+	@Activate
+	protected void activate(LogWatcherClusterConfiguration configuration) {
+
+		// Without the directory nothing would be aggregated, yet the emails of this
+		// instance would be held back - failing keeps the component unregistered
+		if (configuration.sharedDirectory().trim().isEmpty()) {
+			throw new IllegalArgumentException(
+					"No shared directory is configured, the cluster aggregation cannot be activated");
+		}
+
+		role = ClusterRole.from(configuration.role());
+		instanceId = configuration.instanceId().trim();
+		if (instanceId.isEmpty()) {
+			instanceId = slingSettings != null ? slingSettings.getSlingId() : "instance";
+		}
+		origin = instanceId + "@" + System.currentTimeMillis();
+		maxFingerprints = Math.max(1, configuration.maxFingerprints());
+		summary = new ClusterSummary();
+
+		sharedDirectory = new SharedDirectory(Paths.get(configuration.sharedDirectory().trim()));
+
+		executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "logwatcher-cluster");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		long publishInterval = Math.max(1, configuration.publishIntervalSeconds());
+		executor.scheduleWithFixedDelay(this::publish, publishInterval, publishInterval, TimeUnit.SECONDS);
+
+		if (role == ClusterRole.AGGREGATOR) {
+			long digestInterval = Math.max(1, configuration.digestIntervalSeconds());
+			executor.scheduleWithFixedDelay(this::aggregate, digestInterval, digestInterval, TimeUnit.SECONDS);
+		}
+
+		log.info("Taking part in the cluster aggregation as {} {}", role, instanceId);
+	}
+
+	@Deactivate
+	protected void deactivate() {
+
+		if (executor != null) {
+			executor.shutdownNow();
+			try {
+				executor.awaitTermination(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			executor = null;
+		}
+
+		// The last counts are not lost
+		if (sharedDirectory != null) {
+			publish();
+			sharedDirectory = null;
+		}
+	}
+
+	@Override
+	public String getName() {
+		return "cluster";
+	}
+
+	@Override
+	public ClusterRole getRole() {
+		return role;
+	}
+
+	@Override
+	public String getInstanceId() {
+		return instanceId;
+	}
+
+	@Override
+	public void notify(List<LogNotification> notifications) {
+		for (LogNotification notification : notifications) {
+			summary.record(origin, notification);
+		}
+	}
+
+	/**
+	 * Publishes the counts of this instance
+	 */
+	void publish() {
+		try {
+			summary.trim(maxFingerprints);
+			sharedDirectory.publish(instanceId, summary);
+		} catch (IOException e) {
+			log.error(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Merges the counts of all instances and sends what grew since the last
+	 * digest
+	 */
+	void aggregate() {
+
+		try {
+
+			// Own counts first, so that they are part of this digest
+			publish();
+
+			if (reported == null) {
+				reported = sharedDirectory.loadReported();
+			}
+
+			// The reported counts of instances whose summary could not be read are kept
+			List<Path> unreadable = new ArrayList<>();
+			ClusterSummary cluster = sharedDirectory.collect(unreadable);
+			List<LogNotification> notifications = cluster.drainDelta(reported, unreadable.isEmpty());
+
+			if (!notifications.isEmpty()) {
+				log.info("Sending the cluster digest of {} notification(s)", notifications.size());
+				emailService.sendNotifications(notifications);
+			}
+
+			sharedDirectory.saveReported(reported);
+
+		} catch (IOException e) {
+			log.error(e.getMessage(), e);
+		}
+	}
+}
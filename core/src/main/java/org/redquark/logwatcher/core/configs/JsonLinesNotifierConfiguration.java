@@ -0,0 +1,50 @@
+package org.redquark.logwatcher.core.configs;
+
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.osgi.service.metatype.annotations.Option;
+
+/**
+ * @author Anirudh Sharma
+ * 
+ *         This configuration enables a sink appending every notification as
+ *         one line of JSON to a local file
+ */
+@ObjectClassDefinition(name = "Red Quark Log Watcher JSON Lines Notifier", description = "Appends every notification as one line of JSON to a local file")
+public @interface JsonLinesNotifierConfiguration {
+
+	/**
+	 * This method will take the path of the file to append to
+	 * 
+	 * @return {@link String}
+	 */
+	@AttributeDefinition(name = "File", description = "Path of the file the notifications are appended to. Default is logs/logwatcher-notifications.jsonl", type = AttributeType.STRING)
+	public String file() default "logs/logwatcher-notifications.jsonl";
+
+	/**
+	 * This method will take the maximum number of notifications waiting to be
+	 * written
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Queue Capacity", description = "Maximum number of notifications waiting to be written. Default is 10000", type = AttributeType.INTEGER)
+	public int queueCapacity() default 10000;
+
+	/**
+	 * This method will take what happens when the queue is full
+	 * 
+	 * @return {@link String}
+	 */
+	@AttributeDefinition(name = "Backpressure", description = "What happens when the queue is full. Drop Oldest makes room by dropping the oldest notification, Sample keeps a random sample of the overflow. Default is Drop Oldest", options = {
+			@Option(label = "Drop Oldest", value = "DROP_OLDEST"), @Option(label = "Sample", value = "SAMPLE") })
+	public String backpressure() default "DROP_OLDEST";
+
+	/**
+	 * This parameter returns the name of the sink
+	 * 
+	 * @return {@link String}
+	 */
+	@AttributeDefinition(name = "Name", description = "Name of the sink in the thread names, metrics and log messages, to tell several sinks of this kind apart. Default is the name of the file", type = AttributeType.STRING)
+	public String name() default "";
+}
@@ -0,0 +1,66 @@
+package org.redquark.logwatcher.core.configs;
+
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.osgi.service.metatype.annotations.Option;
+
+/**
+ * @author Anirudh Sharma
+ * 
+ *         This configuration lets the instances of an author/publish farm
+ *         share their occurrence counts so that one aggregator sends a single
+ *         digest for the whole cluster
+ */
+@ObjectClassDefinition(name = "Red Quark Log Watcher Cluster Configuration", description = "Aggregates the notifications of all instances of a cluster into one digest")
+public @interface LogWatcherClusterConfiguration {
+
+	/**
+	 * This method will take the role of this instance
+	 * 
+	 * @return {@link String}
+	 */
+	@AttributeDefinition(name = "Role", description = "Members only publish their counts, the aggregator also sends the digest of the whole cluster. Exactly one instance should be the aggregator. Default is Member", options = {
+			@Option(label = "Member", value = "MEMBER"), @Option(label = "Aggregator", value = "AGGREGATOR") })
+	public String role() default "MEMBER";
+
+	/**
+	 * This method will take the directory shared by all instances
+	 * 
+	 * @return {@link String}
+	 */
+	@AttributeDefinition(name = "Shared Directory", description = "Directory all instances can read and write, e.g. an NFS mount. Required - the aggregation is not activated without it. Default is empty", type = AttributeType.STRING)
+	public String sharedDirectory() default "";
+
+	/**
+	 * This method will take the identity of this instance
+	 * 
+	 * @return {@link String}
+	 */
+	@AttributeDefinition(name = "Instance Id", description = "Identity of this instance in the cluster. Empty uses the Sling id of the instance. Default is empty", type = AttributeType.STRING)
+	public String instanceId() default "";
+
+	/**
+	 * This method will take the interval in which the counts are published
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Publish Interval", description = "Seconds between two publications of the counts of this instance. Default is 30", type = AttributeType.INTEGER)
+	public int publishIntervalSeconds() default 30;
+
+	/**
+	 * This method will take the interval in which the aggregator sends the digest
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Digest Interval", description = "Seconds between two cluster digests of the aggregator. Default is 300", type = AttributeType.INTEGER)
+	public int digestIntervalSeconds() default 300;
+
+	/**
+	 * This method will take the maximum number of fingerprints per summary
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Max Fingerprints", description = "Maximum number of fingerprints kept in the summary of an instance - the least recently seen are dropped first. Default is 10000", type = AttributeType.INTEGER)
+	public int maxFingerprints() default 10000;
+}
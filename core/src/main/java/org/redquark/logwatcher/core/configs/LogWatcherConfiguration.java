@@ -3,6 +3,7 @@ package org.redquark.logwatcher.core.configs;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.AttributeType;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.osgi.service.metatype.annotations.Option;
 
 /**
  * @author Anirudh Sharma
@@ -14,30 +15,33 @@ import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 public @interface LogWatcherConfiguration {
 
 	/**
-	 * This parameter returns and array of errors/exceptions a user wish to monitor
+	 * This parameter returns and array of errors/exceptions a user wish to monitor.
+	 * Plain values are matched literally, values prefixed with "class:" only as
+	 * whole class names and values prefixed with "regex:" as regular expressions
 	 * 
 	 * @return {@link String}
 	 */
-	@AttributeDefinition(name = "Error/Exception Types", description = "Select the name of the Java exception/error you wish to monitor", type = AttributeType.STRING)
+	@AttributeDefinition(name = "Error/Exception Types", description = "Select the name of the Java exception/error you wish to monitor. Prefix with class: to match whole class names only or with regex: for a regular expression", type = AttributeType.STRING)
 	public String[] type() default { "NullPointerException", "InvalidItemStateException" };
 
 	/**
-	 * This parameter returns the path of the log file which you wish to monitor
+	 * This parameter returns the paths of the directories containing the log files
+	 * which you wish to monitor
 	 * 
 	 * @return {@link String}
 	 */
-	@AttributeDefinition(name = "File Path", description = "Select the path of file which needs to be watched.", type = AttributeType.STRING)
-	public String filePath() default "logs";
+	@AttributeDefinition(name = "File Path", description = "Select the paths of the directories containing the files which need to be watched.", type = AttributeType.STRING)
+	public String[] filePath() default { "logs" };
 
 	/**
-	 * This parameter returns the name of the file to watch
+	 * This parameter returns the names or glob patterns of the files to watch
 	 * 
 	 * @return {@link String}
 	 */
-	@AttributeDefinition(name = "Log File", description = "Name of the file to watch. Default is error.log", type = AttributeType.STRING)
-	public String logFile() default "error.log";
+	@AttributeDefinition(name = "Log File", description = "Names or glob patterns (e.g. *.log) of the files to watch in every directory. Default is error.log", type = AttributeType.STRING)
+	public String[] logFile() default { "error.log" };
 
-	@AttributeDefinition(name = "Trace Lines", description = "Number of stack trace lines to capture. Default is 10", type = AttributeType.INTEGER)
+	@AttributeDefinition(name = "Trace Lines", description = "Maximum number of lines kept of a matching log record, i.e. the log line and its stack trace. Default is 10", type = AttributeType.INTEGER)
 	public int traceLines() default 10;
 
 	/**
@@ -48,4 +52,180 @@ public @interface LogWatcherConfiguration {
 	@AttributeDefinition(name = "Cron Expression", description = "Cron expression to schedule the job. Defualt is 0 0 12 ? * MON-FRI")
 	public String cronExpression() default "0 0 12 ? * MON-FRI";
 
+	/**
+	 * This parameter decides whether a log file without a remembered offset is
+	 * read from its beginning or only from its current end
+	 * 
+	 * @return {@link Boolean}
+	 */
+	@AttributeDefinition(name = "Start From Beginning", description = "Read a log file seen for the first time from its beginning instead of its current end. Default is false", type = AttributeType.BOOLEAN)
+	public boolean startFromBeginning() default false;
+
+	/**
+	 * This parameter returns how the new bytes of the log file are read
+	 * 
+	 * @return {@link String}
+	 */
+	@AttributeDefinition(name = "Scan Mode", description = "How new bytes of the log file are read. Buffered reads into a reusable direct buffer, Mapped maps the new region of the file (avoid on Windows, mapped files cannot be rotated). Default is Buffered", options = {
+			@Option(label = "Buffered", value = "BUFFERED"), @Option(label = "Mapped", value = "MAPPED") })
+	public String scanMode() default "BUFFERED";
+
+	/**
+	 * This parameter returns the maximum number of stack trace fingerprints to
+	 * remember
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Fingerprint Table Size", description = "Maximum number of distinct stack traces to remember. A trace is only sent in full the first time it is seen. Default is 10000", type = AttributeType.INTEGER)
+	public int fingerprintTableSize() default 10000;
+
+	/**
+	 * This parameter returns the minimum number of minutes between two summaries
+	 * of the repetitions of the same stack trace
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Repeat Summary Interval", description = "Minimum number of minutes between two summaries of the repetitions of an already sent stack trace. Default is 15", type = AttributeType.INTEGER)
+	public int repeatSummaryMinutes() default 15;
+
+	/**
+	 * This parameter returns the number of threads scanning the log files
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Scan Threads", description = "Number of threads scanning the watched files, independent of the number of files. Default is 2", type = AttributeType.INTEGER)
+	public int scanThreads() default 2;
+
+	/**
+	 * This parameter returns the rules on the rate of the matching records which
+	 * raise an alert
+	 * 
+	 * @return {@link String}
+	 */
+	@AttributeDefinition(name = "Alert Rules", description = "Rules on the rate of matching records, each firing one alert when it becomes true, e.g. 'InvalidItemStateException > 50 in 1m', 'logger:com.foo.Importer > 10 in 30s', '* > 500 in 15m' or 'InvalidItemStateException > 5x baseline' (last minute against the average minute of the last hour). Default is none", type = AttributeType.STRING)
+	public String[] alertRules() default {};
+
+	/**
+	 * This parameter decides whether the rotated copies of the log files are
+	 * scanned once in the background
+	 * 
+	 * @return {@link Boolean}
+	 */
+	@AttributeDefinition(name = "Backfill Rotated Files", description = "Scan the rotated and gzip compressed copies of the log files (e.g. error.log.2026-10-17, error.log.1.gz) once in the background. Every copy is scanned only once. Default is false", type = AttributeType.BOOLEAN)
+	public boolean backfillOnStart() default false;
+
+	/**
+	 * This parameter returns the number of threads scanning the rotated log files
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Backfill Threads", description = "Number of threads scanning rotated files in parallel, 0 for one per processor. Default is 0", type = AttributeType.INTEGER)
+	public int backfillThreads() default 0;
+
+	/**
+	 * This parameter returns the number of unread megabytes from which on a log
+	 * file is read in parallel chunks
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Catch-up Threshold", description = "Number of unread megabytes of a log file, e.g. on the first scan of a large file or after falling behind, from which on it is read in parallel chunks. 0 to always read sequentially. Default is 64", type = AttributeType.INTEGER)
+	public int catchUpThresholdMb() default 64;
+
+	/**
+	 * This parameter returns the number of threads reading the chunks of a large
+	 * unread region
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Catch-up Threads", description = "Number of threads reading the chunks of a large unread region in parallel, 0 for one per processor. Default is 0", type = AttributeType.INTEGER)
+	public int catchUpThreads() default 0;
+
+	/**
+	 * This parameter returns how changes of the log files are detected
+	 * 
+	 * @return {@link String}
+	 */
+	@AttributeDefinition(name = "Watch Strategy", description = "How changes of the log files are detected. Native uses the file system events of the operating system (inotify), Poll checks size and modification time of the watched files - for NFS or overlay volumes on which events arrive late or not at all. Default is Native", options = {
+			@Option(label = "Native", value = "NATIVE"), @Option(label = "Poll", value = "POLL") })
+	public String watchStrategy() default "NATIVE";
+
+	/**
+	 * This parameter returns the shortest polling interval
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Poll Interval Min", description = "Milliseconds between two checks while the files are changing, when polling. Default is 250", type = AttributeType.INTEGER)
+	public int pollMinMillis() default 250;
+
+	/**
+	 * This parameter returns the longest polling interval
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Poll Interval Max", description = "Milliseconds between two checks while the files are idle, when polling. The interval doubles with every quiet check up to this value. Default is 5000", type = AttributeType.INTEGER)
+	public int pollMaxMillis() default 5000;
+
+	/**
+	 * This parameter returns the quiet time after a change of a file before it is
+	 * scanned
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Debounce", description = "Milliseconds without further changes of a file before it is scanned. The changes of a burst of flushes are merged into one scan. 0 to scan on every change. Default is 100", type = AttributeType.INTEGER)
+	public int debounceMillis() default 100;
+
+	/**
+	 * This parameter returns the longest time a scan is put off by the debounce
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Debounce Max Delay", description = "Milliseconds after the first change of a file by which it is scanned at the latest, however long the changes keep coming. Default is 1000", type = AttributeType.INTEGER)
+	public int maxDelayMillis() default 1000;
+
+	/**
+	 * This parameter returns the least severe level of the records to match
+	 * 
+	 * @return {@link String}
+	 */
+	@AttributeDefinition(name = "Prefilter Level", description = "Records below this level are skipped before any matching, judged by the level field of their first line only. Records without the log prefix are always matched. Default is All", options = {
+			@Option(label = "All", value = ""), @Option(label = "INFO", value = "INFO"),
+			@Option(label = "WARN", value = "WARN"), @Option(label = "ERROR", value = "ERROR") })
+	public String prefilterLevel() default "";
+
+	/**
+	 * This parameter returns the prefixes of the loggers whose records are
+	 * matched
+	 * 
+	 * @return {@link String}
+	 */
+	@AttributeDefinition(name = "Prefilter Loggers", description = "Prefixes of the loggers whose records are matched, e.g. com.foo. or org.apache.sling.; records of other loggers are skipped before any matching. Default is every logger", type = AttributeType.STRING)
+	public String[] prefilterLoggers() default {};
+
+	/**
+	 * This parameter returns the memory budget of the matching records of one
+	 * scan
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Capture Budget", description = "Megabytes of heap the matching records of one scan may take before they overflow as set in Capture Overflow. Shared by the chunks of a file read in parallel. Default is 16", type = AttributeType.INTEGER)
+	public int captureBudgetMb() default 16;
+
+	/**
+	 * This parameter returns what happens to the matching records of a scan
+	 * beyond the budget
+	 * 
+	 * @return {@link String}
+	 */
+	@AttributeDefinition(name = "Capture Overflow", description = "What happens to the matching records of a scan beyond the capture budget. Spill writes them to a file in the bundle data area and processes them in batches, Sample keeps one trace and a count per fingerprint. Default is Spill", options = {
+			@Option(label = "Spill", value = "SPILL"), @Option(label = "Sample", value = "SAMPLE") })
+	public String captureOverflow() default "SPILL";
+
+	/**
+	 * This parameter returns whether exceptions and errors which are not
+	 * configured are looked for as well
+	 * 
+	 * @return {@link Boolean}
+	 */
+	@AttributeDefinition(name = "Discovery Mode", description = "Also looks for any other exception or error, i.e. any class name ending in Exception or Error. They are not sent one by one: a baseline of the known ones is learned and only new ones and sudden jumps in their frequency are alerted, see the discovery configuration. Default is false", type = AttributeType.BOOLEAN)
+	public boolean discoveryMode() default false;
 }
@@ -0,0 +1,91 @@
+package org.redquark.logwatcher.core.configs;
+
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * @author Anirudh Sharma
+ * 
+ *         This configuration helps to configure the baseline of the exceptions
+ *         and errors found in discovery mode
+ */
+@ObjectClassDefinition(name = "Red Quark Log Watcher Discovery Configuration", description = "Configuration for the baseline of the exceptions and errors found in discovery mode")
+public @interface LogWatcherDiscoveryConfiguration {
+
+	/**
+	 * This parameter returns the number of distinct classes and signatures the
+	 * baseline is sized for
+	 * 
+	 * @return {@link Long}
+	 */
+	@AttributeDefinition(name = "Expected Signatures", description = "Number of distinct exception classes and signatures (class plus first frame) the baseline is sized for. Beyond it new ones are more and more often taken for known ones. About 1.8 bytes each at the default false positive rate. Default is 100000", type = AttributeType.LONG)
+	public long expectedSignatures() default 100000;
+
+	/**
+	 * This parameter returns the probability of taking a new signature for a
+	 * known one
+	 * 
+	 * @return {@link Double}
+	 */
+	@AttributeDefinition(name = "False Positive Rate", description = "Probability of taking a new signature for a known one, at the expected number of signatures. Default is 0.001", type = AttributeType.DOUBLE)
+	public double falsePositiveRate() default 0.001;
+
+	/**
+	 * This parameter returns the number of counters per row of the frequency
+	 * sketches
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Sketch Width", description = "Counters per row of the frequency sketches. Wider sketches overestimate rare classes less. Default is 4096", type = AttributeType.INTEGER)
+	public int sketchWidth() default 4096;
+
+	/**
+	 * This parameter returns the number of rows of the frequency sketches
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Sketch Depth", description = "Rows of the frequency sketches. Default is 4", type = AttributeType.INTEGER)
+	public int sketchDepth() default 4;
+
+	/**
+	 * This parameter returns the length of a counting window
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Window", description = "Minutes per counting window. Default is 10", type = AttributeType.INTEGER)
+	public int windowMinutes() default 10;
+
+	/**
+	 * This parameter returns the number of windows the average spans
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Average Windows", description = "Number of windows the moving average of the frequencies roughly spans. Default is 12", type = AttributeType.INTEGER)
+	public int averageWindows() default 12;
+
+	/**
+	 * This parameter returns the factor above the average from which on a class
+	 * jumped
+	 * 
+	 * @return {@link Double}
+	 */
+	@AttributeDefinition(name = "Jump Factor", description = "A class occurring this many times more often in a window than on average is alerted. Default is 10", type = AttributeType.DOUBLE)
+	public double jumpFactor() default 10;
+
+	/**
+	 * This parameter returns the occurrences below which a class never jumped
+	 * 
+	 * @return {@link Long}
+	 */
+	@AttributeDefinition(name = "Minimum Jump Count", description = "Occurrences in a window below which a class is never alerted as a jump. Default is 50", type = AttributeType.LONG)
+	public long minJumpCount() default 50;
+
+	/**
+	 * This parameter returns the number of windows which are only learned
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Learning Windows", description = "Number of windows after the first start in which the baseline only learns and nothing is alerted. Default is 6", type = AttributeType.INTEGER)
+	public int learningWindows() default 6;
+}
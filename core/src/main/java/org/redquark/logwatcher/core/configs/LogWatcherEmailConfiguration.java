@@ -3,6 +3,7 @@ package org.redquark.logwatcher.core.configs;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.AttributeType;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.osgi.service.metatype.annotations.Option;
 
 /**
  * @author Anirudh Sharma
@@ -42,4 +43,72 @@ public @interface LogWatcherEmailConfiguration {
 	 */
 	@AttributeDefinition(name = "Subject", description = "Subject of the email", type = AttributeType.STRING)
 	public String subject() default "Following logs were captured";
+
+	/**
+	 * This method will take the maximum number of notifications waiting to be
+	 * sent
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Queue Capacity", description = "Maximum number of notifications waiting to be sent. Default is 1000", type = AttributeType.INTEGER)
+	public int queueCapacity() default 1000;
+
+	/**
+	 * This method will take what happens when the queue is full
+	 * 
+	 * @return {@link String}
+	 */
+	@AttributeDefinition(name = "Backpressure", description = "What happens when the queue is full. Drop Oldest makes room by dropping the oldest notification, Sample keeps a random sample of the overflow. The detection is never made to wait, any other value is treated as Drop Oldest. Default is Drop Oldest", options = {
+			@Option(label = "Drop Oldest", value = "DROP_OLDEST"), @Option(label = "Sample", value = "SAMPLE") })
+	public String backpressure() default "DROP_OLDEST";
+
+	/**
+	 * This method will take the maximum number of notifications per email
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Digest Size", description = "Maximum number of notifications combined into one email. Default is 100", type = AttributeType.INTEGER)
+	public int digestSize() default 100;
+
+	/**
+	 * This method will take the time to collect further notifications after the
+	 * first one before sending the email
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Digest Window", description = "Seconds to collect further notifications after the first one before the email is sent. Default is 60", type = AttributeType.INTEGER)
+	public int digestWindowSeconds() default 60;
+
+	/**
+	 * This method will take the number of retries when the mail gateway fails
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Max Retries", description = "Number of retries when sending fails. Default is 5", type = AttributeType.INTEGER)
+	public int maxRetries() default 5;
+
+	/**
+	 * This method will take the delay before the first retry, doubled for every
+	 * further retry
+	 * 
+	 * @return {@link Long}
+	 */
+	@AttributeDefinition(name = "Retry Backoff", description = "Milliseconds to wait before the first retry, doubled for every further retry up to five minutes. Default is 1000", type = AttributeType.LONG)
+	public long retryBackoffMillis() default 1000;
+
+	/**
+	 * This method will take the maximum size of the body of an email
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Max Body Size", description = "Maximum size of the body of an email in kilobytes, measured in UTF-8 bytes and taken as configured. Traces which do not fit anymore are only counted. Default is 512", type = AttributeType.INTEGER)
+	public int maxBodyKb() default 512;
+
+	/**
+	 * This method will take the maximum number of emails per recipient and hour
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Emails Per Hour", description = "Maximum number of emails per recipient and hour. Further notifications wait for the next email, 0 for no limit. Default is 12", type = AttributeType.INTEGER)
+	public int emailsPerHour() default 12;
 }
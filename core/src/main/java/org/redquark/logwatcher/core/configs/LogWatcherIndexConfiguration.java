@@ -0,0 +1,39 @@
+package org.redquark.logwatcher.core.configs;
+
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * @author Anirudh Sharma
+ * 
+ *         This configuration helps to configure the on-disk index of the
+ *         detected errors
+ */
+@ObjectClassDefinition(name = "Red Quark Log Watcher Index Configuration", description = "Configuration for the index of the detected errors")
+public @interface LogWatcherIndexConfiguration {
+
+	/**
+	 * This parameter decides whether the detected errors are indexed
+	 * 
+	 * @return {@link Boolean}
+	 */
+	@AttributeDefinition(name = "Enabled", description = "Write every detected error to the index. Default is true", type = AttributeType.BOOLEAN)
+	public boolean enabled() default true;
+
+	/**
+	 * This parameter returns the number of errors per segment file
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Segment Size", description = "Number of errors per segment file, 36 bytes each. Default is 1000000", type = AttributeType.INTEGER)
+	public int segmentRecords() default 1000000;
+
+	/**
+	 * This parameter returns the maximum number of segment files to keep
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Maximum Segments", description = "Number of segment files to keep, the oldest is deleted when a new one is started. Default is 20", type = AttributeType.INTEGER)
+	public int maxSegments() default 20;
+}
@@ -0,0 +1,39 @@
+package org.redquark.logwatcher.core.configs;
+
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * @author Anirudh Sharma
+ * 
+ *         This configuration helps to configure the in-memory buffer of the
+ *         most recent log records
+ */
+@ObjectClassDefinition(name = "Red Quark Log Watcher Record Buffer Configuration", description = "Configuration for the in-memory buffer of the most recent log records")
+public @interface LogWatcherRecordBufferConfiguration {
+
+	/**
+	 * This parameter returns the number of records kept
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Capacity", description = "Number of most recent records kept in memory, 0 disables the buffer. Default is 100000", type = AttributeType.INTEGER)
+	public int capacity() default 100000;
+
+	/**
+	 * This parameter returns the bytes of thread and message kept per record
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Record Width", description = "Bytes of thread name and message kept per record, the rest is cut. Default is 160", type = AttributeType.INTEGER)
+	public int recordWidth() default 160;
+
+	/**
+	 * This parameter returns the maximum number of distinct loggers
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Maximum Loggers", description = "Number of distinct logger names remembered, records of further loggers are kept without logger. Default is 16384", type = AttributeType.INTEGER)
+	public int maxLoggers() default 16384;
+}
@@ -0,0 +1,23 @@
+package org.redquark.logwatcher.core.configs;
+
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * @author Anirudh Sharma
+ * 
+ *         This configuration helps to configure who may read the errors and
+ *         records through the servlets
+ */
+@ObjectClassDefinition(name = "Red Quark Log Watcher Servlet Configuration", description = "Configuration for the access to the errors and records servlets")
+public @interface LogWatcherServletConfiguration {
+
+	/**
+	 * This parameter returns the group whose members may use the servlet
+	 * 
+	 * @return {@link String}
+	 */
+	@AttributeDefinition(name = "Allowed Group", description = "Group whose members, direct or inherited, may use the servlet besides the admin user; everyone else is refused. Default is administrators", type = AttributeType.STRING)
+	public String allowedGroup() default "administrators";
+}
@@ -0,0 +1,75 @@
+package org.redquark.logwatcher.core.configs;
+
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.osgi.service.metatype.annotations.Option;
+
+/**
+ * @author Anirudh Sharma
+ * 
+ *         This configuration enables a sink posting the notifications as JSON
+ *         to a webhook
+ */
+@ObjectClassDefinition(name = "Red Quark Log Watcher Webhook Notifier", description = "Posts the notifications as JSON to a webhook")
+public @interface WebhookNotifierConfiguration {
+
+	/**
+	 * This method will take the URL of the webhook
+	 * 
+	 * @return {@link String}
+	 */
+	@AttributeDefinition(name = "URL", description = "URL the notifications are posted to", type = AttributeType.STRING)
+	public String url();
+
+	/**
+	 * This method will take the connect and read timeout
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Timeout", description = "Connect and read timeout in milliseconds. Default is 5000", type = AttributeType.INTEGER)
+	public int timeoutMillis() default 5000;
+
+	/**
+	 * This method will take the maximum number of notifications per request
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Batch Size", description = "Maximum number of notifications posted in one request. Default is 100", type = AttributeType.INTEGER)
+	public int batchSize() default 100;
+
+	/**
+	 * This method will take the time to collect further notifications after the
+	 * first one
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Batch Window", description = "Milliseconds to collect further notifications after the first one before posting. Default is 1000", type = AttributeType.INTEGER)
+	public int batchWindowMillis() default 1000;
+
+	/**
+	 * This method will take the maximum number of notifications waiting to be
+	 * posted
+	 * 
+	 * @return {@link Integer}
+	 */
+	@AttributeDefinition(name = "Queue Capacity", description = "Maximum number of notifications waiting to be posted. Default is 1000", type = AttributeType.INTEGER)
+	public int queueCapacity() default 1000;
+
+	/**
+	 * This method will take what happens when the queue is full
+	 * 
+	 * @return {@link String}
+	 */
+	@AttributeDefinition(name = "Backpressure", description = "What happens when the queue is full. Drop Oldest makes room by dropping the oldest notification, Sample keeps a random sample of the overflow. Default is Drop Oldest", options = {
+			@Option(label = "Drop Oldest", value = "DROP_OLDEST"), @Option(label = "Sample", value = "SAMPLE") })
+	public String backpressure() default "DROP_OLDEST";
+
+	/**
+	 * This parameter returns the name of the sink
+	 * 
+	 * @return {@link String}
+	 */
+	@AttributeDefinition(name = "Name", description = "Name of the sink in the thread names, metrics and log messages, to tell several sinks of this kind apart. Default is the host and port of the URL", type = AttributeType.STRING)
+	public String name() default "";
+}
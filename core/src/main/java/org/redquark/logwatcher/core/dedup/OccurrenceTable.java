@@ -0,0 +1,183 @@
+package org.redquark.logwatcher.core.dedup;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.redquark.logwatcher.core.notification.LogNotification;
+import org.redquark.logwatcher.core.notification.LogNotification.Kind;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Bounded table of the stack trace fingerprints seen so far with their
+ *         occurrence counts. When the table is full the least recently seen
+ *         fingerprint is evicted, so memory stays constant however many
+ *         distinct errors are logged.
+ *
+ *         Only the first occurrence of a fingerprint results in a notification
+ *         with the full trace. Later occurrences are counted and summarized at
+ *         most once per summary interval.
+ *
+ */
+public final class OccurrenceTable {
+
+	// Occurrences by fingerprint in the order of their last occurrence
+	private final LinkedHashMap<String, Occurrence> occurrences = new LinkedHashMap<>(16, 0.75f, true);
+
+	// Maximum number of fingerprints to keep
+	private int capacity;
+
+	public OccurrenceTable(int capacity) {
+		this.capacity = Math.max(1, capacity);
+	}
+
+	/**
+	 * Records an occurrence of a stack trace
+	 *
+	 * @param type
+	 * @param trace
+	 * @param now
+	 * @return notification for the trace if its fingerprint has not been seen
+	 *         before, null otherwise
+	 */
+	public LogNotification record(String type, String trace, long now) {
+		return record(type, TraceFingerprinter.fingerprint(trace), trace, now);
+	}
+
+	/**
+	 * Records an occurrence of a stack trace whose fingerprint is already known
+	 *
+	 * @param type
+	 * @param fingerprint see {@link TraceFingerprinter#fingerprint(String)}
+	 * @param trace
+	 * @param now
+	 * @return notification for the trace if its fingerprint has not been seen
+	 *         before, null otherwise
+	 */
+	public LogNotification record(String type, String fingerprint, String trace, long now) {
+		return record(type, fingerprint, trace, 1, now);
+	}
+
+	/**
+	 * Records several occurrences of a stack trace at once
+	 *
+	 * @param type
+	 * @param fingerprint see {@link TraceFingerprinter#fingerprint(String)}
+	 * @param trace
+	 * @param count       number of occurrences, at least one
+	 * @param now
+	 * @return notification for the trace if its fingerprint has not been seen
+	 *         before, null otherwise. Occurrences beyond the first are reported
+	 *         with the next summary.
+	 */
+	public synchronized LogNotification record(String type, String fingerprint, String trace, long count,
+			long now) {
+
+		Occurrence occurrence = occurrences.get(fingerprint);
+
+		if (occurrence != null) {
+			occurrence.count += count;
+			occurrence.lastSeen = now;
+			return null;
+		}
+
+		occurrence = new Occurrence(type, now);
+		occurrence.count += count - 1;
+		occurrences.put(fingerprint, occurrence);
+		evict();
+
+		return new LogNotification(Kind.NEW, type, fingerprint, trace, 1, now, now);
+	}
+
+	/**
+	 * Summarizes the fingerprints which occurred again since they were last
+	 * reported, provided the last report is at least the given interval old
+	 *
+	 * @param now
+	 * @param intervalMillis
+	 * @return summaries of the repetitions
+	 */
+	public synchronized List<LogNotification> drainRepeats(long now, long intervalMillis) {
+
+		List<LogNotification> repeats = new ArrayList<>();
+
+		for (Map.Entry<String, Occurrence> entry : occurrences.entrySet()) {
+
+			Occurrence occurrence = entry.getValue();
+
+			long repeated = occurrence.count - occurrence.reportedCount;
+
+			if (repeated > 0 && now - occurrence.lastReported >= intervalMillis) {
+				repeats.add(new LogNotification(Kind.REPEAT, occurrence.type, entry.getKey(), null, repeated,
+						occurrence.firstSeen, occurrence.lastSeen));
+				occurrence.reportedCount = occurrence.count;
+				occurrence.lastReported = now;
+			}
+		}
+		return repeats;
+	}
+
+	/**
+	 * Changes the maximum number of fingerprints to keep
+	 *
+	 * @param capacity
+	 */
+	public synchronized void setCapacity(int capacity) {
+		this.capacity = Math.max(1, capacity);
+		evict();
+	}
+
+	/**
+	 * @return number of fingerprints in the table
+	 */
+	public synchronized int size() {
+		return occurrences.size();
+	}
+
+	/**
+	 * Evicts the least recently seen fingerprints exceeding the capacity
+	 */
+	private void evict() {
+
+		Iterator<Occurrence> iterator = occurrences.values().iterator();
+
+		while (occurrences.size() > capacity && iterator.hasNext()) {
+			iterator.next();
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Occurrence statistics of one fingerprint
+	 */
+	private static final class Occurrence {
+
+		// Error/exception type of the first occurrence
+		private final String type;
+
+		// Time of the first occurrence
+		private final long firstSeen;
+
+		// Time of the last occurrence
+		private long lastSeen;
+
+		// Number of occurrences
+		private long count = 1;
+
+		// Number of occurrences already reported
+		private long reportedCount = 1;
+
+		// Time of the last report
+		private long lastReported;
+
+		Occurrence(String type, long now) {
+			this.type = type;
+			this.firstSeen = now;
+			this.lastSeen = now;
+			this.lastReported = now;
+		}
+	}
+}
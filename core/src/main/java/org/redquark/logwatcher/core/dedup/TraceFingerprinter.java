@@ -0,0 +1,130 @@
+package org.redquark.logwatcher.core.dedup;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         This class computes the fingerprint of a stack trace. The trace is
+ *         normalized first - timestamps, thread names, identity hash codes,
+ *         hexadecimal addresses and UUIDs are stripped - so that the same error
+ *         thrown again and again gets the same fingerprint.
+ *
+ */
+public final class TraceFingerprinter {
+
+	// Timestamp at the start of an AEM log line, e.g. 18.10.2026 10:15:30.123
+	private static final Pattern TIMESTAMP = Pattern
+			.compile("(?m)^\\d{2}\\.\\d{2}\\.\\d{4} \\d{2}:\\d{2}:\\d{2}\\.\\d{3}");
+
+	// ISO timestamps anywhere in the trace, e.g. 2026-10-18T10:15:30.123+02:00
+	private static final Pattern ISO_TIMESTAMP = Pattern
+			.compile("\\d{4}-\\d{2}-\\d{2}[T ]\\d{2}:\\d{2}:\\d{2}(?:[.,]\\d+)?(?:Z|[+-]\\d{2}:?\\d{2})?");
+
+	// Log level preceding the thread name, e.g. *ERROR* [qtp123-45 GET /content]
+	private static final Pattern LEVEL = Pattern.compile("(?m)^\\s*\\*[A-Z]+\\* \\[");
+
+	// Identity hash codes, e.g. com.foo.Bar@1a2b3c
+	private static final Pattern IDENTITY_HASH = Pattern.compile("@[0-9a-fA-F]{4,}\\b");
+
+	// Hexadecimal addresses, e.g. 0x7f3a2c
+	private static final Pattern HEX = Pattern.compile("\\b0x[0-9a-fA-F]+\\b");
+
+	// UUIDs, e.g. session or request ids
+	private static final Pattern UUID = Pattern
+			.compile("\\b[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}\\b");
+
+	// FNV-1a 64 bit parameters
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private TraceFingerprinter() {
+	}
+
+	/**
+	 * @param trace
+	 * @return the trace without the parts which differ between occurrences of
+	 *         the same error
+	 */
+	public static String normalize(String trace) {
+
+		String normalized = TIMESTAMP.matcher(trace).replaceAll("");
+		normalized = ISO_TIMESTAMP.matcher(normalized).replaceAll("<ts>");
+		normalized = stripThreadNames(normalized);
+		normalized = IDENTITY_HASH.matcher(normalized).replaceAll("@<id>");
+		normalized = HEX.matcher(normalized).replaceAll("0x<id>");
+		normalized = UUID.matcher(normalized).replaceAll("<uuid>");
+
+		return normalized;
+	}
+
+	/**
+	 * Removes the thread names following the log levels. Request thread names
+	 * contain nested brackets, e.g. [127.0.0.1 [1539590520456] GET /content
+	 * HTTP/1.1], so the brackets are balanced instead of matched by a pattern.
+	 *
+	 * @param trace
+	 * @return trace with empty thread names
+	 */
+	private static String stripThreadNames(String trace) {
+
+		Matcher matcher = LEVEL.matcher(trace);
+
+		if (!matcher.find()) {
+			return trace;
+		}
+
+		StringBuilder sb = new StringBuilder(trace.length());
+
+		// Index up to which the trace has been copied
+		int copied = 0;
+
+		do {
+
+			// Index of the opening bracket of the thread name
+			int open = matcher.end() - 1;
+
+			// Finding the matching closing bracket
+			int depth = 0;
+			int close = -1;
+			for (int i = open; i < trace.length() && trace.charAt(i) != '\n'; i++) {
+				char c = trace.charAt(i);
+				if (c == '[') {
+					depth++;
+				} else if (c == ']' && --depth == 0) {
+					close = i;
+					break;
+				}
+			}
+
+			if (close != -1) {
+				sb.append(trace, copied, open + 1);
+				copied = close;
+			}
+
+		} while (matcher.find());
+
+		return sb.append(trace, copied, trace.length()).toString();
+	}
+
+	/**
+	 * @param trace
+	 * @return hex encoded 64 bit FNV-1a hash of the normalized trace
+	 */
+	public static String fingerprint(String trace) {
+
+		String normalized = normalize(trace);
+
+		long hash = FNV_OFFSET_BASIS;
+		for (int i = 0; i < normalized.length(); i++) {
+			char c = normalized.charAt(i);
+			hash ^= c & 0xFF;
+			hash *= FNV_PRIME;
+			hash ^= c >>> 8;
+			hash *= FNV_PRIME;
+		}
+
+		return String.format("%016x", hash);
+	}
+}
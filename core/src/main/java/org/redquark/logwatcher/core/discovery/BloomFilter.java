@@ -0,0 +1,136 @@
+package org.redquark.logwatcher.core.discovery;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         A fixed size set of 64 bit hashes which may answer "contained" for a
+ *         hash never added - with the configured probability as long as no
+ *         more than the expected number of hashes were added - but never
+ *         "not contained" for one that was. The positions of a hash are
+ *         derived from its two halves (double hashing).
+ *
+ */
+public final class BloomFilter {
+
+	// The bits
+	private final long[] words;
+
+	// Number of bits
+	private final long bits;
+
+	// Number of positions per hash
+	private final int hashes;
+
+	// Number of hashes added
+	private long size;
+
+	/**
+	 * @param expected          number of hashes expected to be added
+	 * @param falsePositiveRate probability of a false "contained" at the expected
+	 *                          size, e.g. 0.001
+	 */
+	public BloomFilter(long expected, double falsePositiveRate) {
+
+		long n = Math.max(1, expected);
+		double p = Math.min(0.5, Math.max(1e-9, falsePositiveRate));
+
+		// m = -n ln p / (ln 2)^2, k = m / n ln 2
+		long m = (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+		this.words = new long[(int) Math.min(Integer.MAX_VALUE - 8, (Math.max(64, m) + 63) / 64)];
+		this.bits = words.length * 64L;
+		this.hashes = Math.max(1, (int) Math.round((double) bits / n * Math.log(2)));
+	}
+
+	/**
+	 * @param hash
+	 * @return false if the hash was certainly never added
+	 */
+	public boolean mightContain(long hash) {
+
+		for (int i = 0; i < hashes; i++) {
+			long position = position(hash, i);
+			if ((words[(int) (position >>> 6)] & (1L << position)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param hash
+	 * @return true if the hash was not contained before - false means it was
+	 *         added before or is a false positive
+	 */
+	public boolean put(long hash) {
+
+		boolean changed = false;
+		for (int i = 0; i < hashes; i++) {
+			long position = position(hash, i);
+			int word = (int) (position >>> 6);
+			long mask = 1L << position;
+			if ((words[word] & mask) == 0) {
+				words[word] |= mask;
+				changed = true;
+			}
+		}
+		if (changed) {
+			size++;
+		}
+		return changed;
+	}
+
+	/**
+	 * @return number of distinct hashes added, as far as the filter can tell
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Writes the filter - only to be read back into a filter of the same
+	 * dimensions
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeLong(bits);
+		out.writeInt(hashes);
+		out.writeLong(size);
+		for (long word : words) {
+			out.writeLong(word);
+		}
+	}
+
+	/**
+	 * Reads a filter written by {@link #writeTo}
+	 *
+	 * @param in
+	 * @return false if the filter was written with other dimensions; nothing is
+	 *         read beyond the dimensions then
+	 * @throws IOException
+	 */
+	public boolean readFrom(DataInput in) throws IOException {
+
+		if (in.readLong() != bits || in.readInt() != hashes) {
+			return false;
+		}
+		size = in.readLong();
+		for (int i = 0; i < words.length; i++) {
+			words[i] = in.readLong();
+		}
+		return true;
+	}
+
+	/**
+	 * @return the i-th bit position of the hash
+	 */
+	private long position(long hash, int i) {
+		long combined = (hash & 0xffffffffL) + i * (hash >>> 32);
+		return (combined & Long.MAX_VALUE) % bits;
+	}
+}
@@ -0,0 +1,127 @@
+package org.redquark.logwatcher.core.discovery;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Frequencies of any number of 64 bit hashes in a fixed table of depth
+ *         rows and width counters. A hash adds to one counter per row; its
+ *         frequency is estimated by the smallest of them, which is never below
+ *         the true frequency and above it only by the collisions with other
+ *         hashes.
+ *
+ *         The counters are doubles so that a sketch can also hold a moving
+ *         average of other sketches of the same dimensions (see
+ *         {@link #blend}).
+ *
+ */
+public final class CountMinSketch {
+
+	// Number of rows
+	private final int depth;
+
+	// Number of counters per row
+	private final int width;
+
+	// The counters, row after row
+	private final double[] counters;
+
+	/**
+	 * @param width number of counters per row
+	 * @param depth number of rows
+	 */
+	public CountMinSketch(int width, int depth) {
+		this.width = Math.max(16, width);
+		this.depth = Math.max(1, depth);
+		this.counters = new double[this.width * this.depth];
+	}
+
+	/**
+	 * @param hash
+	 * @param count
+	 */
+	public void add(long hash, double count) {
+		for (int row = 0; row < depth; row++) {
+			counters[index(hash, row)] += count;
+		}
+	}
+
+	/**
+	 * @param hash
+	 * @return estimated frequency of the hash
+	 */
+	public double estimate(long hash) {
+
+		double estimate = Double.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			estimate = Math.min(estimate, counters[index(hash, row)]);
+		}
+		return estimate;
+	}
+
+	/**
+	 * Moves every counter the given share of the way towards the counter of the
+	 * other sketch - an exponential moving average if called once per period
+	 *
+	 * @param other  sketch of the same dimensions, null for all zero
+	 * @param weight share of the other sketch, between 0 and 1
+	 */
+	public void blend(CountMinSketch other, double weight) {
+		for (int i = 0; i < counters.length; i++) {
+			counters[i] = (1 - weight) * counters[i] + (other == null ? 0 : weight * other.counters[i]);
+		}
+	}
+
+	/**
+	 * Sets all counters to zero
+	 */
+	public void clear() {
+		Arrays.fill(counters, 0);
+	}
+
+	/**
+	 * Writes the sketch - only to be read back into a sketch of the same
+	 * dimensions
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeInt(width);
+		out.writeInt(depth);
+		for (double counter : counters) {
+			out.writeFloat((float) counter);
+		}
+	}
+
+	/**
+	 * Reads a sketch written by {@link #writeTo}
+	 *
+	 * @param in
+	 * @return false if the sketch was written with other dimensions; nothing is
+	 *         read beyond the dimensions then
+	 * @throws IOException
+	 */
+	public boolean readFrom(DataInput in) throws IOException {
+
+		if (in.readInt() != width || in.readInt() != depth) {
+			return false;
+		}
+		for (int i = 0; i < counters.length; i++) {
+			counters[i] = in.readFloat();
+		}
+		return true;
+	}
+
+	/**
+	 * @return index of the counter of the hash in the row
+	 */
+	private int index(long hash, int row) {
+		long combined = (hash & 0xffffffffL) + row * (hash >>> 32);
+		return row * width + (int) ((combined & Long.MAX_VALUE) % width);
+	}
+}
@@ -0,0 +1,30 @@
+package org.redquark.logwatcher.core.discovery;
+
+import java.util.List;
+
+import org.redquark.logwatcher.core.event.LogEvent;
+import org.redquark.logwatcher.core.notification.LogNotification;
+
+/**
+ * @author Anirudh Sharma
+ * 
+ *         This interface exposes methods for learning the exceptions and errors
+ *         found in discovery mode and alerting the new ones and sudden jumps in
+ *         their frequency
+ *
+ */
+public interface DiscoveryService {
+
+	/**
+	 * Adds a discovered exception or error to the baseline
+	 * 
+	 * @param event       record whose type was discovered
+	 * @param fingerprint fingerprint of the normalized stack trace
+	 * @param alert       false to only learn, e.g. for the records of rotated
+	 *                    files
+	 * @param now
+	 * @return alerts if the signature is new or its class jumped, otherwise
+	 *         empty
+	 */
+	public List<LogNotification> observe(LogEvent event, String fingerprint, boolean alert, long now);
+}
@@ -0,0 +1,301 @@
+package org.redquark.logwatcher.core.discovery;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.redquark.logwatcher.core.notification.LogNotification;
+import org.redquark.logwatcher.core.notification.LogNotification.Kind;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         The exceptions and errors seen so far, in constant memory however
+ *         many there are. A signature is an exception class plus the first
+ *         frame of its trace.
+ *         <ul>
+ *         <li>A {@link BloomFilter} holds the known classes and signatures - a
+ *         signature not in it is new.</li>
+ *         <li>A {@link CountMinSketch} counts the classes in the current
+ *         window, a second one holds their moving average per window - a class
+ *         counted far above its average jumped.</li>
+ *         </ul>
+ *         During the first windows the baseline only learns, so that a fresh
+ *         installation does not report everything it sees as new.
+ *
+ */
+public final class SignatureBaseline {
+
+	// Rule of the alerts of new classes
+	public static final String NEW_TYPE_RULE = "New exception type";
+
+	// Rule of the alerts of known classes thrown from a new frame
+	public static final String NEW_FRAME_RULE = "New frame";
+
+	// Rule of the alerts of classes occurring far more often than usual
+	public static final String JUMP_RULE = "Frequency jump";
+
+	// Version of the persisted format
+	private static final int FORMAT = 1;
+
+	// Prefixes keeping the hashes of classes and signatures apart
+	private static final String TYPE_KEY = "type:";
+	private static final String SIGNATURE_KEY = "signature:";
+
+	// Beginning of a frame line
+	private static final String FRAME_PREFIX = "at ";
+
+	// FNV-1a 64 bit parameters
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	// Known classes and signatures
+	private final BloomFilter known;
+
+	// Occurrences per class in the current window
+	private final CountMinSketch current;
+
+	// Moving average of the occurrences per class and window
+	private final CountMinSketch average;
+
+	// Length of a window
+	private final long windowMillis;
+
+	// Weight of a finished window in the moving average
+	private final double weight;
+
+	// Factor above the average from which on a class jumped
+	private final double jumpFactor;
+
+	// Occurrences in a window below which a class never jumped
+	private final long minJumpCount;
+
+	// Number of windows which are only learned
+	private final long learningWindows;
+
+	// Start of the current window, 0 before the first observation
+	private long windowStart;
+
+	// Number of finished windows
+	private long windows;
+
+	// Flag to determine if the baseline changed since it was last saved
+	private boolean dirty;
+
+	/**
+	 * @param expectedSignatures number of classes and signatures expected over
+	 *                           time
+	 * @param falsePositiveRate  probability of taking a new signature for a known
+	 *                           one, at the expected number
+	 * @param sketchWidth        counters per row of the sketches
+	 * @param sketchDepth        rows of the sketches
+	 * @param windowMinutes      length of a window
+	 * @param averageWindows     number of windows the moving average roughly
+	 *                           spans
+	 * @param jumpFactor         factor above the average from which on a class
+	 *                           jumped
+	 * @param minJumpCount       occurrences in a window below which a class never
+	 *                           jumped
+	 * @param learningWindows    number of windows which are only learned
+	 */
+	public SignatureBaseline(long expectedSignatures, double falsePositiveRate, int sketchWidth, int sketchDepth,
+			int windowMinutes, int averageWindows, double jumpFactor, long minJumpCount, int learningWindows) {
+
+		this.known = new BloomFilter(expectedSignatures, falsePositiveRate);
+		this.current = new CountMinSketch(sketchWidth, sketchDepth);
+		this.average = new CountMinSketch(sketchWidth, sketchDepth);
+		this.windowMillis = TimeUnit.MINUTES.toMillis(Math.max(1, windowMinutes));
+		this.weight = 2.0 / (Math.max(1, averageWindows) + 1);
+		this.jumpFactor = Math.max(1, jumpFactor);
+		this.minJumpCount = Math.max(1, minJumpCount);
+		this.learningWindows = Math.max(0, learningWindows);
+	}
+
+	/**
+	 * Counts an exception or error and tells whether it is new or jumped
+	 *
+	 * @param className   class of the exception or error
+	 * @param trace       record it was found in
+	 * @param fingerprint fingerprint of the record
+	 * @param count       number of occurrences
+	 * @param alert       false to only learn, e.g. for old records
+	 * @param now
+	 * @return alerts of the new signature and the jump, if any
+	 */
+	public synchronized List<LogNotification> observe(String className, String trace, String fingerprint, long count,
+			boolean alert, long now) {
+
+		roll(now);
+
+		String frame = topFrame(trace);
+		long typeHash = hash(TYPE_KEY + className);
+		long signatureHash = hash(SIGNATURE_KEY + className + ' ' + frame);
+
+		boolean newType = known.put(typeHash);
+		boolean newSignature = known.put(signatureHash);
+
+		double before = current.estimate(typeHash);
+		current.add(typeHash, count);
+		double after = current.estimate(typeHash);
+
+		dirty = true;
+
+		if (!alert || windows < learningWindows) {
+			return Collections.emptyList();
+		}
+
+		List<LogNotification> alerts = new ArrayList<>(1);
+		String where = frame.isEmpty() ? className : className + " " + frame;
+
+		if (newSignature) {
+			alerts.add(new LogNotification(Kind.ALERT, newType ? NEW_TYPE_RULE : NEW_FRAME_RULE, fingerprint,
+					where + " not seen before (fingerprint " + fingerprint + ")", count, now, now));
+		}
+
+		// Firing once per window, when the count crosses the threshold
+		double expected = average.estimate(typeHash);
+		double threshold = Math.max(minJumpCount, jumpFactor * expected);
+		if (!newType && before < threshold && after >= threshold) {
+			alerts.add(new LogNotification(Kind.ALERT, JUMP_RULE, fingerprint,
+					String.format("%.0f occurrence(s) of %s in the last %d minute(s), %.1f per window on average",
+							after, className, TimeUnit.MILLISECONDS.toMinutes(now - windowStart), expected),
+					(long) after, windowStart, now));
+		}
+		return alerts;
+	}
+
+	/**
+	 * @return true if the baseline changed since the last call
+	 */
+	public synchronized boolean takeChanged() {
+		boolean changed = dirty;
+		dirty = false;
+		return changed;
+	}
+
+	/**
+	 * @return true while the baseline only learns
+	 */
+	public synchronized boolean isLearning() {
+		return windows < learningWindows;
+	}
+
+	/**
+	 * @return number of known classes and signatures, as far as the filter can
+	 *         tell
+	 */
+	public synchronized long size() {
+		return known.size();
+	}
+
+	/**
+	 * Writes the baseline
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public synchronized void writeTo(DataOutput out) throws IOException {
+		out.writeInt(FORMAT);
+		out.writeLong(windowStart);
+		out.writeLong(windows);
+		known.writeTo(out);
+		current.writeTo(out);
+		average.writeTo(out);
+	}
+
+	/**
+	 * Reads a baseline written by {@link #writeTo}
+	 *
+	 * @param in
+	 * @return false if it was written in another format or with other
+	 *         dimensions; the baseline must not be used then
+	 * @throws IOException
+	 */
+	public synchronized boolean readFrom(DataInput in) throws IOException {
+
+		if (in.readInt() != FORMAT) {
+			return false;
+		}
+		windowStart = in.readLong();
+		windows = in.readLong();
+		return known.readFrom(in) && current.readFrom(in) && average.readFrom(in);
+	}
+
+	/**
+	 * Finishes the windows which ended before now. Windows in which nothing
+	 * happened count as zero.
+	 */
+	private void roll(long now) {
+
+		if (windowStart <= 0 || now < windowStart) {
+			windowStart = now;
+			return;
+		}
+
+		long ended = (now - windowStart) / windowMillis;
+		if (ended <= 0) {
+			return;
+		}
+
+		average.blend(current, weight);
+		current.clear();
+		if (ended > 1) {
+			average.blend(null, 1 - Math.pow(1 - weight, Math.min(ended - 1, 1000)));
+		}
+
+		windows += ended;
+		windowStart += ended * windowMillis;
+	}
+
+	/**
+	 * @param trace
+	 * @return the first frame of the trace without its source position, e.g.
+	 *         "at com.foo.Bar.baz", or an empty string
+	 */
+	static String topFrame(String trace) {
+
+		if (trace == null) {
+			return "";
+		}
+
+		for (int start = 0; start < trace.length();) {
+
+			int end = trace.indexOf('\n', start);
+			if (end < 0) {
+				end = trace.length();
+			}
+
+			String line = trace.substring(start, end).trim();
+			if (line.startsWith(FRAME_PREFIX)) {
+				int position = line.indexOf('(');
+				return position > 0 ? line.substring(0, position) : line;
+			}
+			start = end + 1;
+		}
+		return "";
+	}
+
+	/**
+	 * @return well mixed 64 bit hash of the key
+	 */
+	private static long hash(String key) {
+
+		long hash = FNV_OFFSET_BASIS;
+		for (int i = 0; i < key.length(); i++) {
+			hash ^= key.charAt(i);
+			hash *= FNV_PRIME;
+		}
+
+		// Spreading the bits over both halves, they are used as two hashes
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
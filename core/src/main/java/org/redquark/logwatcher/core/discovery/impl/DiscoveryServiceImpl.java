@@ -0,0 +1,177 @@
+package org.redquark.logwatcher.core.discovery.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.metatype.annotations.Designate;
+import org.redquark.logwatcher.core.configs.LogWatcherDiscoveryConfiguration;
+import org.redquark.logwatcher.core.discovery.DiscoveryService;
+import org.redquark.logwatcher.core.discovery.SignatureBaseline;
+import org.redquark.logwatcher.core.event.LogEvent;
+import org.redquark.logwatcher.core.matcher.LogMatchers;
+import org.redquark.logwatcher.core.notification.LogNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Keeps one {@link SignatureBaseline} for all watched files in the data
+ *         area of the bundle, so that what was learned survives restarts. The
+ *         baseline is saved at most once per minute while it changes and on
+ *         deactivation; a baseline saved with other dimensions is discarded
+ *         and learned anew.
+ *
+ */
+@Component(service = DiscoveryService.class, immediate = true)
+@Designate(ocd = LogWatcherDiscoveryConfiguration.class)
+public class DiscoveryServiceImpl implements DiscoveryService {
+
+	// Minimum time between two saves
+	private static final long SAVE_INTERVAL_MILLIS = 60000;
+
+	// Name of the baseline file
+	private static final String BASELINE_FILE = "baseline.bin";
+
+	// Size of the file buffers
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	// Logger
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	// The baseline
+	private volatile SignatureBaseline baseline;
+
+	// Directory of the baseline
+	private Path directory;
+
+	// Time of the last save
+	private volatile long saved;
+
+	/**
+	 * Loads the baseline
+	 * 
+	 * @param bundleContext
+	 * @param configuration
+	 */
+	@Activate
+	protected void activate(BundleContext bundleContext, LogWatcherDiscoveryConfiguration configuration) {
+
+		// The baseline is kept in the data area of the bundle
+		File discoveryDirectory = bundleContext.getDataFile("discovery");
+		if (discoveryDirectory == null) {
+			discoveryDirectory = new File(System.getProperty("java.io.tmpdir"), "logwatcher/discovery");
+		}
+		directory = discoveryDirectory.toPath();
+
+		SignatureBaseline loaded = newBaseline(configuration);
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(directory.resolve(BASELINE_FILE)),
+				BUFFER_SIZE)) {
+			if (loaded.readFrom(new DataInputStream(in))) {
+				log.info("Discovery baseline loaded with {} known signature(s)", loaded.size());
+			} else {
+				log.info("Discovery baseline was saved with other dimensions, learning anew");
+				loaded = newBaseline(configuration);
+			}
+		} catch (NoSuchFileException e) {
+			log.info("No discovery baseline yet, learning");
+		} catch (IOException | RuntimeException e) {
+			log.error("Could not load the discovery baseline, learning anew", e);
+			loaded = newBaseline(configuration);
+		}
+
+		baseline = loaded;
+		saved = System.currentTimeMillis();
+	}
+
+	/**
+	 * Saves the baseline
+	 */
+	@Deactivate
+	protected void deactivate() {
+
+		SignatureBaseline current = baseline;
+		if (current != null && current.takeChanged()) {
+			save(current);
+		}
+	}
+
+	@Override
+	public List<LogNotification> observe(LogEvent event, String fingerprint, boolean alert, long now) {
+
+		SignatureBaseline current = baseline;
+		if (current == null || !LogMatchers.isDiscovered(event.getType())) {
+			return Collections.emptyList();
+		}
+
+		String className = event.getType().substring(LogMatchers.DISCOVERED_PREFIX.length());
+		List<LogNotification> alerts = current.observe(className, event.getText(), fingerprint,
+				event.getOccurrences(), alert, now);
+
+		// Saving now and then, on the scanning thread - the file is small
+		if (now - saved >= SAVE_INTERVAL_MILLIS) {
+			synchronized (this) {
+				if (now - saved >= SAVE_INTERVAL_MILLIS && current.takeChanged()) {
+					save(current);
+				}
+				saved = now;
+			}
+		}
+		return alerts;
+	}
+
+	/**
+	 * Writes the baseline to a temporary file and moves it over the old one, so
+	 * that a crash never leaves half a baseline
+	 */
+	private void save(SignatureBaseline current) {
+
+		try {
+
+			Files.createDirectories(directory);
+
+			Path tmp = Files.createTempFile(directory, ".baseline", ".tmp");
+			try {
+				try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp), BUFFER_SIZE)) {
+					DataOutputStream data = new DataOutputStream(out);
+					current.writeTo(data);
+					data.flush();
+				}
+				Files.move(tmp, directory.resolve(BASELINE_FILE), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+
+		} catch (IOException e) {
+			log.error("Could not save the discovery baseline in {}", directory, e);
+		}
+	}
+
+	/**
+	 * @param configuration
+	 * @return an empty baseline as configured
+	 */
+	private static SignatureBaseline newBaseline(LogWatcherDiscoveryConfiguration configuration) {
+		return new SignatureBaseline(configuration.expectedSignatures(), configuration.falsePositiveRate(),
+				configuration.sketchWidth(), configuration.sketchDepth(), configuration.windowMinutes(),
+				configuration.averageWindows(), configuration.jumpFactor(), configuration.minJumpCount(),
+				configuration.learningWindows());
+	}
+}
@@ -1,5 +1,9 @@
 package org.redquark.logwatcher.core.email;
 
+import java.util.List;
+
+import org.redquark.logwatcher.core.notification.LogNotification;
+
 /**
  * @author Anirudh Sharma
  * 
@@ -13,4 +17,11 @@ public interface EmailService {
 	 * @param content
 	 */
 	public void sendEmail(String content);
+
+	/**
+	 * Sends the given notifications to the designated user as one email
+	 * 
+	 * @param notifications
+	 */
+	public void sendNotifications(List<LogNotification> notifications);
 }
@@ -0,0 +1,366 @@
+package org.redquark.logwatcher.core.email.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.redquark.logwatcher.core.notification.LogNotification;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Renders a digest of notifications as HTML. Notifications of the same
+ *         fingerprint - the new trace and the summaries of its repetitions - are
+ *         shown as one group, the most frequent groups first, after the alerts.
+ *
+ *         The body never exceeds the configured size, measured in UTF-8 bytes
+ *         as it is sent: groups which do not fit anymore are only counted, and
+ *         a single trace is cut to a share of the limit. The limit is taken as
+ *         configured; below the size of the page itself no group fits.
+ *
+ */
+final class DigestRenderer {
+
+	// Share of the body limit a single trace may take
+	private static final int TRACE_SHARE = 8;
+
+	// Page around the groups
+	private static final DigestTemplate PAGE = DigestTemplate.compile("<html><head><meta charset=\"UTF-8\"></head>"
+			+ "<body style=\"font-family:sans-serif;font-size:13px\">\n" + "<h2>${subject}</h2>\n<p>${summary}</p>\n"
+			+ "${alerts}${groups}${footer}</body></html>\n");
+
+	// An alerting rule which fired
+	private static final DigestTemplate ALERT = DigestTemplate
+			.compile("<p style=\"color:#b00000\"><b>Alert ${rule}</b>: ${reason}</p>\n");
+
+	// The occurrences of one fingerprint
+	private static final DigestTemplate GROUP = DigestTemplate.compile("<h3>${type} <small>[${fingerprint}]</small></h3>\n"
+			+ "<p>${count} occurrence(s), first seen ${firstSeen}, last seen ${lastSeen}</p>\n${trace}");
+
+	// Notes below the groups
+	private static final DigestTemplate FOOTER = DigestTemplate
+			.compile("<p style=\"color:#666666\"><i>${notes}</i></p>\n");
+
+	// Maximum number of bytes of the body
+	private final int maxBodyBytes;
+
+	// Room kept for the footer - its size with the longest possible notes
+	private final int footerReserve;
+
+	/**
+	 * @param maxBodyBytes maximum number of bytes of the body
+	 */
+	DigestRenderer(int maxBodyBytes) {
+		this.maxBodyBytes = maxBodyBytes;
+
+		Map<String, String> values = new HashMap<>();
+		values.put("notes", notes(Integer.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE));
+		StringBuilder footer = new StringBuilder();
+		FOOTER.render(footer, values);
+		this.footerReserve = utf8Length(footer);
+	}
+
+	/**
+	 * @param subject
+	 * @param notifications
+	 * @param dropped       number of notifications dropped due to backpressure
+	 * @return the HTML body
+	 */
+	String render(String subject, List<LogNotification> notifications, long dropped) {
+
+		// Format of the first/last seen times
+		SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss.SSS");
+
+		// Grouping by fingerprint, the alerts are kept apart
+		List<LogNotification> alerts = new ArrayList<>();
+		Map<String, Group> groups = new LinkedHashMap<>();
+		long occurrences = 0;
+
+		for (LogNotification notification : notifications) {
+
+			if (notification.getKind() == LogNotification.Kind.ALERT) {
+				alerts.add(notification);
+				continue;
+			}
+
+			Group group = groups.get(notification.getFingerprint());
+			if (group == null) {
+				group = new Group(notification);
+				groups.put(notification.getFingerprint(), group);
+			} else {
+				group.add(notification);
+			}
+			occurrences += notification.getCount();
+		}
+
+		// The most frequent first
+		List<Group> ordered = new ArrayList<>(groups.values());
+		ordered.sort((a, b) -> Long.compare(b.count, a.count));
+
+		// The page without alerts and groups, the rest of the limit is left for them
+		String escapedSubject = escape(subject);
+		String summary = alerts.size() + " alert(s), " + groups.size() + " distinct trace(s), " + occurrences
+				+ " occurrence(s)";
+		Map<String, String> values = new HashMap<>();
+		values.put("subject", escapedSubject);
+		values.put("summary", summary);
+		values.put("alerts", "");
+		values.put("groups", "");
+		values.put("footer", "");
+		StringBuilder row = new StringBuilder();
+		PAGE.render(row, values);
+		long budget = (long) maxBodyBytes - utf8Length(row) - footerReserve;
+
+		// Alerts
+		StringBuilder alertRows = new StringBuilder();
+		long alertBytes = 0;
+		int omittedAlerts = 0;
+		for (LogNotification alert : alerts) {
+
+			values.clear();
+			values.put("rule", escape(alert.getType()));
+			values.put("reason", escape(alert.getTrace()));
+
+			row.setLength(0);
+			ALERT.render(row, values);
+
+			int rowBytes = utf8Length(row);
+			if (alertBytes + rowBytes > budget) {
+				omittedAlerts++;
+				continue;
+			}
+			alertRows.append(row);
+			alertBytes += rowBytes;
+		}
+		budget -= alertBytes;
+
+		// Groups, as long as they fit
+		StringBuilder groupRows = new StringBuilder();
+		long groupBytes = 0;
+		int omittedGroups = 0;
+		long omittedOccurrences = 0;
+		for (Group group : ordered) {
+
+			values.clear();
+			values.put("type", escape(group.type));
+			values.put("fingerprint", escape(group.fingerprint));
+			values.put("count", Long.toString(group.count));
+			values.put("firstSeen", dateFormat.format(new Date(group.firstSeen)));
+			values.put("lastSeen", dateFormat.format(new Date(group.lastSeen)));
+			values.put("trace", group.trace == null ? ""
+					: "<pre style=\"font-size:12px\">" + escape(cut(group.trace, maxBodyBytes / TRACE_SHARE))
+							+ "</pre>\n");
+
+			row.setLength(0);
+			GROUP.render(row, values);
+
+			int rowBytes = utf8Length(row);
+			if (groupBytes + rowBytes > budget) {
+				omittedGroups++;
+				omittedOccurrences += group.count;
+				continue;
+			}
+			groupRows.append(row);
+			groupBytes += rowBytes;
+		}
+
+		// Notes on what is not shown
+		String notes = notes(omittedAlerts, omittedGroups, omittedOccurrences, dropped);
+
+		String footer = "";
+		if (!notes.isEmpty()) {
+			values.clear();
+			values.put("notes", notes);
+			StringBuilder footerRow = new StringBuilder();
+			FOOTER.render(footerRow, values);
+			footer = footerRow.toString();
+		}
+
+		values.clear();
+		values.put("subject", escapedSubject);
+		values.put("summary", summary);
+		values.put("alerts", alertRows.toString());
+		values.put("groups", groupRows.toString());
+		values.put("footer", footer);
+
+		StringBuilder body = new StringBuilder(Math.min(maxBodyBytes, 64 * 1024));
+		PAGE.render(body, values);
+
+		return body.toString();
+	}
+
+	/**
+	 * @return the notes on what is not shown, empty if everything is
+	 */
+	private String notes(int omittedAlerts, int omittedGroups, long omittedOccurrences, long dropped) {
+
+		StringBuilder notes = new StringBuilder();
+		if (omittedAlerts > 0) {
+			notes.append(omittedAlerts).append(" more alert(s) not shown. ");
+		}
+		if (omittedGroups > 0) {
+			notes.append(omittedGroups).append(" more trace(s) with ").append(omittedOccurrences)
+					.append(" occurrence(s) not shown, the email is limited to ").append(maxBodyBytes / 1024)
+					.append(" KB. ");
+		}
+		if (dropped > 0) {
+			notes.append(dropped)
+					.append(" notification(s) were dropped because they arrived faster than they could be sent.");
+		}
+		return notes.toString().trim();
+	}
+
+	/**
+	 * @return the text cut to the given number of UTF-8 bytes, with a note
+	 */
+	private static String cut(String text, int maxBytes) {
+
+		int bytes = 0;
+		for (int i = 0; i < text.length(); i++) {
+
+			char c = text.charAt(i);
+			int width = utf8Width(c);
+
+			// A surrogate pair is cut as a whole
+			if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+				width = 4;
+			}
+
+			if (bytes + width > maxBytes) {
+				int total = text.getBytes(StandardCharsets.UTF_8).length;
+				return text.substring(0, i) + "\n... " + (total - bytes) + " byte(s) truncated";
+			}
+
+			bytes += width;
+			if (width == 4) {
+				i++;
+			}
+		}
+		return text;
+	}
+
+	/**
+	 * @return number of bytes of the text in UTF-8
+	 */
+	static int utf8Length(CharSequence text) {
+
+		int bytes = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+				bytes += 4;
+				i++;
+			} else {
+				bytes += utf8Width(c);
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return number of bytes of the character in UTF-8, a lone surrogate is
+	 *         replaced by a three byte character
+	 */
+	private static int utf8Width(char c) {
+		if (c < 0x80) {
+			return 1;
+		}
+		return c < 0x800 ? 2 : 3;
+	}
+
+	/**
+	 * @return the text with the HTML special characters escaped
+	 */
+	static String escape(String text) {
+
+		if (text == null) {
+			return "";
+		}
+
+		StringBuilder sb = null;
+
+		for (int i = 0; i < text.length(); i++) {
+
+			char c = text.charAt(i);
+			String replacement;
+			switch (c) {
+			case '&':
+				replacement = "&amp;";
+				break;
+			case '<':
+				replacement = "&lt;";
+				break;
+			case '>':
+				replacement = "&gt;";
+				break;
+			case '"':
+				replacement = "&quot;";
+				break;
+			default:
+				replacement = null;
+				break;
+			}
+
+			// Copying only once the first special character is found
+			if (replacement != null && sb == null) {
+				sb = new StringBuilder(text.length() + 16).append(text, 0, i);
+			}
+			if (sb != null) {
+				if (replacement != null) {
+					sb.append(replacement);
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+
+		return sb == null ? text : sb.toString();
+	}
+
+	/**
+	 * The notifications of one fingerprint
+	 */
+	private static final class Group {
+
+		// Error/exception type
+		private final String type;
+
+		// Fingerprint of the trace
+		private final String fingerprint;
+
+		// Trace, if the digest contains the first occurrence
+		private String trace;
+
+		// Number of occurrences
+		private long count;
+
+		// Time of the first occurrence
+		private long firstSeen;
+
+		// Time of the last occurrence
+		private long lastSeen;
+
+		Group(LogNotification notification) {
+			this.type = notification.getType();
+			this.fingerprint = notification.getFingerprint();
+			this.trace = notification.getTrace();
+			this.count = notification.getCount();
+			this.firstSeen = notification.getFirstSeen();
+			this.lastSeen = notification.getLastSeen();
+		}
+
+		void add(LogNotification notification) {
+			if (trace == null) {
+				trace = notification.getTrace();
+			}
+			count += notification.getCount();
+			firstSeen = Math.min(firstSeen, notification.getFirstSeen());
+			lastSeen = Math.max(lastSeen, notification.getLastSeen());
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package org.redquark.logwatcher.core.email.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         A text template with ${name} placeholders. The template is parsed
+ *         once into its literal parts and placeholder names, rendering only
+ *         appends them - no parsing or pattern matching per email.
+ *
+ */
+final class DigestTemplate {
+
+	// Literal parts, one more than there are placeholders
+	private final String[] literals;
+
+	// Placeholder names between the literal parts
+	private final String[] names;
+
+	private DigestTemplate(String[] literals, String[] names) {
+		this.literals = literals;
+		this.names = names;
+	}
+
+	/**
+	 * @param template
+	 * @return the parsed template
+	 * @throws IllegalArgumentException if a placeholder is not closed
+	 */
+	static DigestTemplate compile(String template) {
+
+		List<String> literals = new ArrayList<>();
+		List<String> names = new ArrayList<>();
+
+		int position = 0;
+		for (int open = template.indexOf("${"); open >= 0; open = template.indexOf("${", position)) {
+
+			int close = template.indexOf('}', open);
+			if (close < 0) {
+				throw new IllegalArgumentException("Placeholder at " + open + " is not closed");
+			}
+
+			literals.add(template.substring(position, open));
+			names.add(template.substring(open + 2, close));
+			position = close + 1;
+		}
+		literals.add(template.substring(position));
+
+		return new DigestTemplate(literals.toArray(new String[0]), names.toArray(new String[0]));
+	}
+
+	/**
+	 * Appends the template with the placeholders replaced. Values are inserted
+	 * as they are, missing ones as empty strings.
+	 *
+	 * @param out
+	 * @param values
+	 */
+	void render(StringBuilder out, Map<String, String> values) {
+
+		for (int i = 0; i < names.length; i++) {
+			out.append(literals[i]);
+			String value = values.get(names[i]);
+			if (value != null) {
+				out.append(value);
+			}
+		}
+		out.append(literals[names.length]);
+	}
+}
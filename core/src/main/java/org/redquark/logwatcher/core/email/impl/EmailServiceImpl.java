@@ -1,13 +1,26 @@
 package org.redquark.logwatcher.core.email.impl;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
 import org.apache.commons.mail.Email;
+import org.apache.commons.mail.EmailException;
+import org.apache.commons.mail.HtmlEmail;
 import org.apache.commons.mail.SimpleEmail;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.metatype.annotations.Designate;
 import org.redquark.logwatcher.core.configs.LogWatcherEmailConfiguration;
 import org.redquark.logwatcher.core.email.EmailService;
+import org.redquark.logwatcher.core.metrics.LogWatcherMetrics;
+import org.redquark.logwatcher.core.notification.BackpressurePolicy;
+import org.redquark.logwatcher.core.notification.BackpressureQueue;
+import org.redquark.logwatcher.core.notification.LogNotification;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,11 +30,25 @@ import com.day.cq.mailer.MessageGatewayService;
 /**
  * @author Anirudh Sharma
  *
+ *         Notifications are queued and sent by a dedicated sender thread which
+ *         combines them into HTML digests (see {@link DigestRenderer}), so a
+ *         slow mail gateway never stalls the log scanning. The size of a digest
+ *         and the number of emails per recipient and hour are limited.
+ *
  */
 @Component(service = EmailService.class, immediate = true)
 @Designate(ocd = LogWatcherEmailConfiguration.class)
 public class EmailServiceImpl implements EmailService {
 
+	// Upper bound of the delay between two retries
+	private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+	// Time to wait for the sender thread on deactivation
+	private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+	// Name of this sink in the metrics
+	private static final String SINK = "email";
+
 	// Logger
 	private final Logger log = LoggerFactory.getLogger(this.getClass());
 
@@ -32,25 +59,190 @@ public class EmailServiceImpl implements EmailService {
 	@Reference
 	private MessageGatewayService messageGatewayService;
 
+	// Reference of the LogWatcherMetrics
+	@Reference
+	private LogWatcherMetrics metrics;
+
+	// Number of waiting notifications - published as a gauge
+	private LongSupplier queueDepth;
+
+	// Notifications waiting to be sent
+	private BackpressureQueue<LogNotification> queue;
+
+	// Thread sending the digests
+	private Thread sender;
+
+	// Notifications collected by the sender thread and not sent yet
+	private final List<LogNotification> digest = new ArrayList<>();
+
+	// Renders the digests
+	private DigestRenderer renderer;
+
+	// Limits the emails per recipient
+	private RecipientRateLimiter rateLimiter;
+
+	// Flag to keep the sender thread running
+	private volatile boolean running;
+
+	// Maximum number of notifications per email
+	private int digestSize;
+
+	// Time to collect further notifications after the first one
+	private long digestWindowMillis;
+
+	// Number of retries when the gateway fails
+	private int maxRetries;
+
+	// Delay before the first retry
+	private long retryBackoffMillis;
+
 	// Method for initialization of objects
 	@Activate
 	protected void activate(LogWatcherEmailConfiguration logWatcherEmailConfiguration) {
 
 		// Getting the instance of LogWatcherEmailConfiguration
 		this.logWatcherEmailConfiguration = logWatcherEmailConfiguration;
+
+		// Reading the delivery settings
+		digestSize = Math.max(1, logWatcherEmailConfiguration.digestSize());
+		digestWindowMillis = TimeUnit.SECONDS.toMillis(Math.max(0, logWatcherEmailConfiguration.digestWindowSeconds()));
+		maxRetries = Math.max(0, logWatcherEmailConfiguration.maxRetries());
+		retryBackoffMillis = Math.max(1, logWatcherEmailConfiguration.retryBackoffMillis());
+		renderer = new DigestRenderer(Math.max(1, logWatcherEmailConfiguration.maxBodyKb()) * 1024);
+		rateLimiter = new RecipientRateLimiter(logWatcherEmailConfiguration.emailsPerHour());
+		digest.clear();
+
+		// Queue between the detection and the sender thread. The sender waits for
+		// the rate limiter and the retries, a full queue gives up notifications
+		// instead of holding up the scanning and every other sink.
+		queue = new BackpressureQueue<>(logWatcherEmailConfiguration.queueCapacity(),
+				BackpressurePolicy.from(logWatcherEmailConfiguration.backpressure()));
+
+		// Publishing the number of waiting notifications
+		final BackpressureQueue<LogNotification> notifications = queue;
+		queueDepth = notifications::size;
+		metrics.addQueueDepthSource(queueDepth);
+
+		// Starting the sender thread
+		running = true;
+		sender = new Thread(this::sendDigests, "logwatcher-email-sender");
+		sender.setDaemon(true);
+		sender.start();
+	}
+
+	// Method to stop the sender thread
+	@Deactivate
+	protected void deactivate() {
+
+		running = false;
+
+		List<LogNotification> remaining = new ArrayList<>();
+
+		if (sender != null) {
+			sender.interrupt();
+			try {
+				sender.join(SHUTDOWN_TIMEOUT_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			// The digest the sender was waiting to send
+			if (!sender.isAlive()) {
+				remaining.addAll(digest);
+			}
+		}
+
+		// Flushing what is left with a single attempt, regardless of the rate limit
+		if (queue != null) {
+			queue.drainAll(remaining);
+		}
+		if (!remaining.isEmpty()) {
+			try {
+				deliverDigest(renderer.render(logWatcherEmailConfiguration.subject(), remaining, takeDropped()));
+			} catch (Exception e) {
+				log.error(e.getMessage(), e);
+			}
+		}
+
+		if (queueDepth != null) {
+			metrics.removeQueueDepthSource(queueDepth);
+			queueDepth = null;
+		}
 	}
 
 	/**
-	 * This method will send the content to users via email
+	 * This method will send the content to users via email - synchronously and
+	 * without retries
 	 */
 	@Override
 	public void sendEmail(String content) {
 
+		try {
+
+			// Plain text email
+			Email email = new SimpleEmail();
+			if (content != null) {
+				email.setMsg(content);
+			}
+
+			deliver(email);
+
+		} catch (Exception e) {
+			log.error(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * This method queues the notifications. They are sent as digests by the
+	 * sender thread, so the caller never waits for the mail gateway - a full queue
+	 * gives up notifications as the backpressure policy says.
+	 */
+	@Override
+	public void sendNotifications(List<LogNotification> notifications) {
+
+		if (notifications == null) {
+			return;
+		}
+
+		try {
+			for (LogNotification notification : notifications) {
+				queue.put(notification);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Builds the HTML email of a digest and hands it to the gateway
+	 * 
+	 * @param html
+	 * @return false if the email cannot be sent due to the configuration
+	 * @throws EmailException if the gateway failed
+	 */
+	private boolean deliverDigest(String html) throws EmailException {
+
+		HtmlEmail email = new HtmlEmail();
+		email.setCharset(StandardCharsets.UTF_8.name());
+		email.setHtmlMsg(html);
+
+		return deliver(email);
+	}
+
+	/**
+	 * Addresses the email and hands it to the gateway
+	 * 
+	 * @param email
+	 * @return false if the email cannot be sent due to the configuration
+	 * @throws EmailException if the gateway failed
+	 */
+	private boolean deliver(Email email) throws EmailException {
+
 		// Email IDs to put in 'To'
-		String to = logWatcherEmailConfiguration.to();
+		List<String> to = addresses(logWatcherEmailConfiguration.to());
 
 		// Email IDs to put in 'Cc'
-		String cc = logWatcherEmailConfiguration.cc();
+		List<String> cc = addresses(logWatcherEmailConfiguration.cc());
 
 		// Email id of the sender
 		String from = logWatcherEmailConfiguration.from();
@@ -58,56 +250,167 @@ public class EmailServiceImpl implements EmailService {
 		// Subject of the email
 		String subject = logWatcherEmailConfiguration.subject();
 
-		try {
-
-			// Object capable of sending a message to a recipient
-			MessageGateway<Email> messageGateway;
+		// Object capable of sending a message to a recipient
+		MessageGateway<Email> messageGateway;
 
-			// This class sets thesender's email & name, receiver's email & name, subject,
-			// and the sent date.
-			Email email = new SimpleEmail();
+		// Configuring the To field - Mandatory
+		if (!to.isEmpty()) {
+			for (String address : to) {
+				email.addTo(address);
+			}
+		} else {
+			log.error(
+					"Please check the email list. 'To' field should not be empty and should contain valid email ids");
+			return false;
+		}
 
-			// Configuring the To field - Mandatory
-			if (to != null && to != "") {
-				email.addTo(to);
-			} else {
-				log.error(
-						"Please check the email list. 'To' field should not be empty and should contain valid email ids");
-				return;
+		// Configuring 'Cc' field - Optional
+		if (!cc.isEmpty()) {
+			for (String address : cc) {
+				email.addCc(address);
 			}
+		} else {
+			log.error("Please check the email list. 'Cc' field should contain valid email ids");
+		}
+
+		// Setting subject of the email
+		email.setSubject(subject);
+
+		// Configuring 'From' field - Mandatory
+		if (from != null && from != "") {
+			email.setFrom(from);
+		} else {
+			log.error("Please check the 'From' field. It should not be empty");
+			return false;
+		}
+
+		// Getting the reference of gateway
+		messageGateway = messageGatewayService.getGateway(Email.class);
 
-			// Configuring 'Cc' field - Optional
-			if (cc != null && cc != "") {
-				email.addCc(cc);
-			} else {
-				log.error("Please check the email list. 'Cc' field should contain valid email ids");
+		if (messageGateway == null) {
+			throw new EmailException("No gateway available for sending emails, check the Day CQ Mail Service");
+		}
+
+		// Sending email
+		messageGateway.send(email);
+
+		return true;
+	}
+
+	/**
+	 * Loop of the sender thread - collects the queued notifications into digests
+	 * and sends them
+	 */
+	private void sendDigests() {
+
+		// Time to wait for the first notification before checking the running flag
+		final long pollMillis = 1000;
+
+		while (running) {
+
+			try {
+
+				if (queue.drainBatch(digest, digestSize, digestWindowMillis, pollMillis) > 0) {
+					awaitRateLimit();
+					deliverWithRetry(
+							renderer.render(logWatcherEmailConfiguration.subject(), digest, takeDropped()));
+					digest.clear();
+				}
+
+			} catch (InterruptedException e) {
+				// Deactivation - the remaining notifications are flushed there
+				break;
 			}
+		}
+	}
 
-			// Setting subject of the email
-			email.setSubject(subject);
+	/**
+	 * Waits until every recipient may receive another email and takes it from
+	 * their budget. Meanwhile the queue fills up and its backpressure policy
+	 * applies.
+	 * 
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private void awaitRateLimit() throws InterruptedException {
 
-			// Configuring 'From' field - Mandatory
-			if (from != null && from != "") {
-				email.setFrom(from);
-			} else {
-				log.error("Please check the 'From' field. It should not be empty");
+		List<String> recipients = addresses(logWatcherEmailConfiguration.to());
+		recipients.addAll(addresses(logWatcherEmailConfiguration.cc()));
+
+		long delay = rateLimiter.delayMillis(recipients, System.currentTimeMillis());
+		if (delay > 0) {
+			log.info("Email limit of {} per hour reached, sending the next digest in {} s",
+					logWatcherEmailConfiguration.emailsPerHour(), TimeUnit.MILLISECONDS.toSeconds(delay));
+		}
+
+		while (delay > 0) {
+			Thread.sleep(delay);
+			delay = rateLimiter.delayMillis(recipients, System.currentTimeMillis());
+		}
+
+		rateLimiter.acquire(recipients, System.currentTimeMillis());
+	}
+
+	/**
+	 * Sends the digest, retrying with exponential backoff if the gateway fails
+	 * 
+	 * @param html
+	 * @throws InterruptedException if interrupted while waiting for a retry
+	 */
+	private void deliverWithRetry(String html) throws InterruptedException {
+
+		long backoff = retryBackoffMillis;
+
+		for (int attempt = 0;; attempt++) {
+
+			long started = System.nanoTime();
+
+			try {
+				boolean delivered = deliverDigest(html);
+				metrics.sent(SINK, System.nanoTime() - started, delivered);
 				return;
+			} catch (Exception e) {
+				metrics.sent(SINK, System.nanoTime() - started, false);
+				if (attempt >= maxRetries) {
+					log.error("Giving up sending email after {} attempts", attempt + 1, e);
+					return;
+				}
+				log.warn("Sending email failed, retrying in {} ms: {}", backoff, e.getMessage());
 			}
-			
-			// Setting the content in the email
-			if(content != null) {
-				email.setMsg(content);
-			}
-			
-			// Getting the reference of gateway
-			messageGateway = messageGatewayService.getGateway(Email.class);
-			
-			// Sending email
-			messageGateway.send(email);
 
-		} catch (Exception e) {
-			log.error(e.getMessage(), e);
+			Thread.sleep(backoff);
+			backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+		}
+	}
+
+	/**
+	 * @return number of notifications dropped since the last call, which is
+	 *         also recorded in the metrics
+	 */
+	private long takeDropped() {
+
+		long dropped = queue.takeDropped();
+
+		if (dropped > 0) {
+			metrics.dropped(dropped);
 		}
+		return dropped;
 	}
 
+	/**
+	 * @param list comma or semicolon separated email addresses
+	 * @return the addresses, never null
+	 */
+	private static List<String> addresses(String list) {
+
+		List<String> addresses = new ArrayList<>();
+
+		if (list != null) {
+			for (String address : list.split("[,;]")) {
+				if (!address.trim().isEmpty()) {
+					addresses.add(address.trim());
+				}
+			}
+		}
+		return addresses;
+	}
 }
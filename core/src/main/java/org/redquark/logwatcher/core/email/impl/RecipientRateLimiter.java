@@ -0,0 +1,106 @@
+package org.redquark.logwatcher.core.email.impl;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Limits the number of emails per recipient and hour with a token
+ *         bucket per address. A recipient may receive a burst of up to the
+ *         hourly limit, after that one email per hour/limit.
+ *
+ */
+final class RecipientRateLimiter {
+
+	// Length of the period of the limit
+	private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+	// Maximum number of emails per recipient and hour, unlimited if less than 1
+	private final int emailsPerHour;
+
+	// Bucket of every recipient, by lower case address
+	private final Map<String, Bucket> buckets = new HashMap<>();
+
+	RecipientRateLimiter(int emailsPerHour) {
+		this.emailsPerHour = emailsPerHour;
+	}
+
+	/**
+	 * @param recipients
+	 * @param now
+	 * @return milliseconds until every recipient may receive another email, 0 if
+	 *         they all may right now
+	 */
+	synchronized long delayMillis(Collection<String> recipients, long now) {
+
+		if (emailsPerHour < 1) {
+			return 0;
+		}
+
+		long delay = 0;
+		for (String recipient : recipients) {
+			delay = Math.max(delay, bucket(recipient, now).delayMillis());
+		}
+		return delay;
+	}
+
+	/**
+	 * Takes one email from the budget of every recipient
+	 *
+	 * @param recipients
+	 * @param now
+	 */
+	synchronized void acquire(Collection<String> recipients, long now) {
+
+		if (emailsPerHour < 1) {
+			return;
+		}
+
+		for (String recipient : recipients) {
+			bucket(recipient, now).tokens -= 1;
+		}
+	}
+
+	/**
+	 * @return the refilled bucket of the recipient
+	 */
+	private Bucket bucket(String recipient, long now) {
+
+		Bucket bucket = buckets.computeIfAbsent(recipient.toLowerCase(Locale.ROOT), key -> new Bucket(now));
+
+		// Refilling for the time passed since the last use
+		bucket.tokens = Math.min(emailsPerHour,
+				bucket.tokens + (double) (now - bucket.refilled) * emailsPerHour / HOUR_MILLIS);
+		bucket.refilled = now;
+
+		return bucket;
+	}
+
+	/**
+	 * Budget of one recipient
+	 */
+	private final class Bucket {
+
+		// Emails which may be sent right now
+		private double tokens;
+
+		// Time of the last refill
+		private long refilled;
+
+		Bucket(long now) {
+			this.tokens = emailsPerHour;
+			this.refilled = now;
+		}
+
+		/**
+		 * @return milliseconds until a whole token is available
+		 */
+		long delayMillis() {
+			return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) * HOUR_MILLIS / emailsPerHour);
+		}
+	}
+}
@@ -0,0 +1,355 @@
+package org.redquark.logwatcher.core.event;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.redquark.logwatcher.core.dedup.TraceFingerprinter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Collects the events of one scan within a memory budget. The budget is
+ *         shared by all buffers of the scan - one per chunk if the file is read
+ *         in parallel. Once a buffer cannot reserve room for an event, it and
+ *         every later event of the buffer overflow as configured (see
+ *         {@link CaptureOverflow}): they are spilled to a file or folded into
+ *         one sample per fingerprint. The events are handed out in batches, so
+ *         the heap used by a scan stays flat however many records match.
+ *
+ */
+public final class CaptureBuffer implements LogEventListener, Closeable {
+
+	// Estimated heap of an event besides its text
+	private static final int EVENT_OVERHEAD = 160;
+
+	// Size of the spill file buffers
+	private static final int SPILL_BUFFER_SIZE = 64 * 1024;
+
+	// Logger
+	private static final Logger LOG = LoggerFactory.getLogger(CaptureBuffer.class);
+
+	// Log file of the events
+	private final String file;
+
+	// Remaining budget of the scan in bytes
+	private final AtomicLong budget;
+
+	// What happens once the budget is used up
+	private final CaptureOverflow overflow;
+
+	// Directory of the spill files
+	private final Path spillDirectory;
+
+	// Events kept in memory, in file order
+	private final List<LogEvent> events = new ArrayList<>();
+
+	// Bytes reserved from the budget
+	private long reserved;
+
+	// Flag to determine if the buffer overflows - once it does, all later events
+	// do, so that the order is kept
+	private boolean overflowing;
+
+	// Spilled events
+	private Path spillFile;
+	private DataOutputStream spill;
+	private long spilled;
+
+	// Samples by fingerprint, or by type once there are too many fingerprints
+	private final Map<String, Sample> samples = new LinkedHashMap<>();
+	private long sampled;
+
+	/**
+	 * @param file           log file of the events
+	 * @param budget         remaining budget of the scan in bytes, shared by its
+	 *                       buffers
+	 * @param overflow       what happens once the budget is used up
+	 * @param spillDirectory directory of the spill files
+	 */
+	public CaptureBuffer(String file, AtomicLong budget, CaptureOverflow overflow, Path spillDirectory) {
+		this.file = file;
+		this.budget = budget;
+		this.overflow = overflow;
+		this.spillDirectory = spillDirectory;
+	}
+
+	@Override
+	public void onEvent(LogEvent event) {
+
+		long cost = cost(event);
+
+		if (!overflowing && reserve(cost)) {
+			events.add(event);
+			return;
+		}
+
+		if (!overflowing) {
+			overflowing = true;
+			LOG.warn("Capture budget of {} used up, {} the further matches", file,
+					overflow == CaptureOverflow.SPILL ? "spilling" : "sampling");
+		}
+
+		if (overflow == CaptureOverflow.SPILL && spill(event)) {
+			return;
+		}
+		sample(event);
+	}
+
+	/**
+	 * Hands out all events in file order, samples last
+	 *
+	 * @param consumer  receives the batches
+	 * @param batchSize maximum number of events per batch
+	 * @throws IOException if the spilled events cannot be read
+	 */
+	public void drain(Consumer<List<LogEvent>> consumer, int batchSize) throws IOException {
+
+		// Events in memory first
+		for (int from = 0; from < events.size(); from += batchSize) {
+			consumer.accept(new ArrayList<>(events.subList(from, Math.min(events.size(), from + batchSize))));
+		}
+		events.clear();
+		budget.addAndGet(reserved);
+		reserved = 0;
+
+		// Reading the spilled events back
+		if (spillFile != null) {
+			if (spill != null) {
+				spill.close();
+				spill = null;
+			}
+			try (DataInputStream in = new DataInputStream(
+					new BufferedInputStream(Files.newInputStream(spillFile), SPILL_BUFFER_SIZE))) {
+				List<LogEvent> batch = new ArrayList<>(batchSize);
+				try {
+					for (long i = 0; i < spilled; i++) {
+						batch.add(read(in));
+						if (batch.size() >= batchSize) {
+							consumer.accept(batch);
+							batch = new ArrayList<>(batchSize);
+						}
+					}
+				} catch (EOFException e) {
+					// The file was cut short by a failed write
+					LOG.error("Could not read all spilled matches of {}", file, e);
+				}
+				if (!batch.isEmpty()) {
+					consumer.accept(batch);
+				}
+			}
+		}
+
+		// Samples stand for all events they fold
+		if (!samples.isEmpty()) {
+			List<LogEvent> batch = new ArrayList<>(samples.size());
+			for (Sample sample : samples.values()) {
+				LogEvent event = sample.event;
+				batch.add(new LogEvent(event.getFile(), event.getOffset(), event.getLength(), sample.lastTimestamp,
+						event.getType(), event.getLogger(), event.getText(), event.getOmittedLines(), sample.count));
+			}
+			samples.clear();
+			consumer.accept(batch);
+		}
+	}
+
+	/**
+	 * @return number of events spilled to disk
+	 */
+	public long getSpilled() {
+		return spilled;
+	}
+
+	/**
+	 * @return number of events folded into samples
+	 */
+	public long getSampled() {
+		return sampled;
+	}
+
+	/**
+	 * Deletes the spill file and gives the reserved budget back
+	 */
+	@Override
+	public void close() {
+
+		budget.addAndGet(reserved);
+		reserved = 0;
+		events.clear();
+		samples.clear();
+
+		try {
+			if (spill != null) {
+				spill.close();
+				spill = null;
+			}
+			if (spillFile != null) {
+				Files.deleteIfExists(spillFile);
+				spillFile = null;
+			}
+		} catch (IOException e) {
+			LOG.error(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @return true if the budget had room for the bytes
+	 */
+	private boolean reserve(long bytes) {
+
+		long remaining = budget.get();
+		while (remaining >= bytes) {
+			if (budget.compareAndSet(remaining, remaining - bytes)) {
+				reserved += bytes;
+				return true;
+			}
+			remaining = budget.get();
+		}
+		return false;
+	}
+
+	/**
+	 * Writes the event to the spill file, created on the first call
+	 *
+	 * @return false if the event could not be written and has to be sampled
+	 */
+	private boolean spill(LogEvent event) {
+
+		try {
+
+			if (spillFile == null) {
+				Files.createDirectories(spillDirectory);
+				spillFile = Files.createTempFile(spillDirectory, "capture", ".spill");
+				spill = new DataOutputStream(
+						new BufferedOutputStream(Files.newOutputStream(spillFile), SPILL_BUFFER_SIZE));
+			}
+
+			if (spill == null) {
+				return false;
+			}
+
+			spill.writeLong(event.getOffset());
+			spill.writeInt(event.getLength());
+			spill.writeLong(event.getTimestamp());
+			spill.writeUTF(event.getType());
+			spill.writeBoolean(event.getLogger() != null);
+			if (event.getLogger() != null) {
+				spill.writeUTF(event.getLogger());
+			}
+			byte[] text = event.getText().getBytes(StandardCharsets.UTF_8);
+			spill.writeInt(text.length);
+			spill.write(text);
+			spill.writeInt(event.getOmittedLines());
+			spilled++;
+			return true;
+
+		} catch (IOException e) {
+			// Sampling the rest instead - the events spilled so far are still read back
+			LOG.error("Could not spill the matches of {}, sampling them instead", file, e);
+			try {
+				if (spill != null) {
+					spill.close();
+				}
+			} catch (IOException closeFailure) {
+				LOG.debug("Could not close the spill file", closeFailure);
+			}
+			spill = null;
+			return false;
+		}
+	}
+
+	/**
+	 * Reads an event written by {@link #spill}
+	 */
+	private LogEvent read(DataInputStream in) throws IOException {
+
+		long offset = in.readLong();
+		int length = in.readInt();
+		long timestamp = in.readLong();
+		String type = in.readUTF();
+		String logger = in.readBoolean() ? in.readUTF() : null;
+		int textLength = in.readInt();
+		if (textLength < 0) {
+			throw new EOFException("Corrupt spill file " + spillFile);
+		}
+		byte[] text = new byte[textLength];
+		in.readFully(text);
+		int omittedLines = in.readInt();
+
+		return new LogEvent(file, offset, length, timestamp, type, logger, new String(text, StandardCharsets.UTF_8),
+				omittedLines);
+	}
+
+	/**
+	 * Folds the event into the sample of its fingerprint. The number of samples
+	 * is bounded by the budget reserved for them; beyond that, events are folded
+	 * by type.
+	 */
+	private void sample(LogEvent event) {
+
+		sampled++;
+
+		String key = TraceFingerprinter.fingerprint(event.getText());
+		Sample sample = samples.get(key);
+
+		if (sample == null) {
+
+			// Folding by type once even the samples do not fit anymore. The trace is
+			// kept whole, its fingerprint has to stay the same.
+			if (!reserve(cost(event))) {
+				key = "type:" + event.getType();
+				sample = samples.get(key);
+			}
+
+			if (sample == null) {
+				samples.put(key, new Sample(event));
+				return;
+			}
+		}
+
+		sample.count++;
+		sample.lastTimestamp = Math.max(sample.lastTimestamp, event.getTimestamp());
+	}
+
+	/**
+	 * @return estimated heap of the event
+	 */
+	private static long cost(LogEvent event) {
+		return EVENT_OVERHEAD + 2L * (event.getText() == null ? 0 : event.getText().length());
+	}
+
+	/**
+	 * One kept event and the number of events it stands for
+	 */
+	private static final class Sample {
+
+		// The first event
+		private final LogEvent event;
+
+		// Number of events folded into this one, including itself
+		private long count = 1;
+
+		// Timestamp of the last event folded into this one
+		private long lastTimestamp;
+
+		Sample(LogEvent event) {
+			this.event = event;
+			this.lastTimestamp = event.getTimestamp();
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package org.redquark.logwatcher.core.event;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Defines what happens to the matching records of a scan once the
+ *         {@link CaptureBuffer} has used up its memory budget
+ *
+ */
+public enum CaptureOverflow {
+
+	/**
+	 * Further records are written to a file and read back in batches - every
+	 * record is processed as usual, only later
+	 */
+	SPILL,
+
+	/**
+	 * Further records are folded by fingerprint - one sample trace and a count
+	 * per fingerprint. Counts stay exact, the individual records are not kept.
+	 */
+	SAMPLE;
+
+	/**
+	 * @param value
+	 * @return the overflow with the given name, {@link #SPILL} if it is unknown
+	 */
+	public static CaptureOverflow from(String value) {
+
+		for (CaptureOverflow overflow : values()) {
+			if (overflow.name().equalsIgnoreCase(value)) {
+				return overflow;
+			}
+		}
+		return SPILL;
+	}
+}
@@ -0,0 +1,99 @@
+package org.redquark.logwatcher.core.event;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         One log record - the line carrying the timestamp and level together
+ *         with its continuation lines - which matched one of the configured
+ *         errors/exceptions
+ *
+ */
+public final class LogEvent {
+
+	// Log file the record was read from
+	private final String file;
+
+	// Position of the first byte of the record in the file
+	private final long offset;
+
+	// Length of the record in bytes
+	private final int length;
+
+	// Timestamp of the record or -1 if it has none
+	private final long timestamp;
+
+	// Error/exception type which matched
+	private final String type;
+
+	// Logger which wrote the record or null if it has none
+	private final String logger;
+
+	// Text of the record, possibly truncated
+	private final String text;
+
+	// Number of continuation lines which were not kept
+	private final int omittedLines;
+
+	// Number of records this event stands for - more than one if records of the
+	// same trace were folded into it
+	private final long occurrences;
+
+	public LogEvent(String file, long offset, int length, long timestamp, String type, String logger, String text,
+			int omittedLines) {
+		this(file, offset, length, timestamp, type, logger, text, omittedLines, 1);
+	}
+
+	public LogEvent(String file, long offset, int length, long timestamp, String type, String logger, String text,
+			int omittedLines, long occurrences) {
+		this.file = file;
+		this.offset = offset;
+		this.length = length;
+		this.timestamp = timestamp;
+		this.type = type;
+		this.logger = logger;
+		this.text = text;
+		this.omittedLines = omittedLines;
+		this.occurrences = occurrences;
+	}
+
+	public String getFile() {
+		return file;
+	}
+
+	public long getOffset() {
+		return offset;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public String getLogger() {
+		return logger;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public int getOmittedLines() {
+		return omittedLines;
+	}
+
+	public long getOccurrences() {
+		return occurrences;
+	}
+
+	@Override
+	public String toString() {
+		return "LogEvent [file=" + file + ", offset=" + offset + ", type=" + type + "]";
+	}
+}
@@ -0,0 +1,307 @@
+package org.redquark.logwatcher.core.event;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.redquark.logwatcher.core.matcher.LogMatcher;
+import org.redquark.logwatcher.core.tail.ByteLines;
+import org.redquark.logwatcher.core.tail.LineHandler;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         This class groups the lines read from a log file into records - a
+ *         line starting with the log prefix (see {@link LogLinePrefix}) plus
+ *         all following continuation lines - and emits one {@link LogEvent} for
+ *         every record in which any line matched.
+ *
+ *         The bytes of the current record are copied into a reusable array;
+ *         only the records which matched are ever decoded. Memory per record is
+ *         bounded: at most the configured number of lines and
+ *         {@link #MAX_RECORD_BYTES} bytes are kept, further lines are still
+ *         matched but only counted.
+ *
+ *         The first line of every record, matched or not, can additionally be
+ *         handed to a second handler, e.g. to keep the recent records.
+ *
+ *         A {@link RecordPrefilter} rejects whole records by their level and
+ *         logger before any of their lines is matched or copied.
+ *
+ *         A record may still be open at the end of a pass - its continuation
+ *         lines have not been written yet. Instead of being finished, it can be
+ *         handed to the assemblers of the next pass over the same file, see
+ *         {@link #continueAfter}; the one reading the directly following line
+ *         takes it over, so that the record is emitted once, as a whole.
+ *
+ */
+public final class LogEventAssembler implements LineHandler {
+
+	// Upper bound of the bytes kept per record
+	public static final int MAX_RECORD_BYTES = 64 * 1024;
+
+	// Initial size of the record array
+	private static final int INITIAL_RECORD_BYTES = 4 * 1024;
+
+	// Log file the lines come from
+	private final String file;
+
+	// Compiled errors/exceptions
+	private final LogMatcher matcher;
+
+	// Maximum number of lines to keep per record
+	private final int maxLines;
+
+	// Listener to emit the events to
+	private final LogEventListener listener;
+
+	// Handler of the first line of every record, may be null
+	private final LineHandler recordStarts;
+
+	// Rejects records by level and logger, may be null
+	private final RecordPrefilter prefilter;
+
+	// Bytes of the current record
+	private byte[] record = new byte[INITIAL_RECORD_BYTES];
+
+	// Number of bytes of the current record kept in the array
+	private int length;
+
+	// Flag to determine if a record is open
+	private boolean open;
+
+	// Position of the first byte of the current record in the file
+	private long recordOffset;
+
+	// Position after the last byte of the current record in the file
+	private long recordEnd;
+
+	// Flag to determine if the current record starts with the log prefix
+	private boolean prefixed;
+
+	// Flag to determine if the current record was rejected by the prefilter
+	private boolean skipped;
+
+	// Type which matched in the current record
+	private String type;
+
+	// Number of lines kept of the current record
+	private int keptLines;
+
+	// Number of lines of the current record which were not kept
+	private int omittedLines;
+
+	// Number of lines seen in total
+	private long lines;
+
+	// Assembler of the previous pass whose open record the first line may
+	// continue, null if none
+	private LogEventAssembler predecessor;
+
+	public LogEventAssembler(String file, LogMatcher matcher, int maxLines, LogEventListener listener) {
+		this(file, matcher, maxLines, listener, null);
+	}
+
+	public LogEventAssembler(String file, LogMatcher matcher, int maxLines, LogEventListener listener,
+			LineHandler recordStarts) {
+		this(file, matcher, maxLines, listener, recordStarts, null);
+	}
+
+	public LogEventAssembler(String file, LogMatcher matcher, int maxLines, LogEventListener listener,
+			LineHandler recordStarts, RecordPrefilter prefilter) {
+		this.file = file;
+		this.matcher = matcher;
+		this.maxLines = Math.max(1, maxLines);
+		this.listener = listener;
+		this.recordStarts = recordStarts;
+		this.prefilter = prefilter;
+	}
+
+	@Override
+	public void onLine(ByteBuffer buffer, int start, int end, long offset) {
+
+		lines++;
+
+		boolean recordStart = LogLinePrefix.isRecordStart(buffer, start, end);
+
+		// The first line may continue the record the previous pass left open
+		if (predecessor != null) {
+			LogEventAssembler previous = predecessor;
+			predecessor = null;
+			if (!recordStart && previous.continuesAt(offset)) {
+				takeOver(previous);
+			}
+		}
+
+		// A new record starts - or continuation lines arrive without their first
+		// line, which was consumed in an earlier pass
+		if (recordStart || !open) {
+			finish();
+			open = true;
+			recordOffset = offset;
+			prefixed = recordStart;
+			if (recordStart && recordStarts != null) {
+				recordStarts.onLine(buffer, start, end, offset);
+			}
+			skipped = recordStart && prefilter != null && !prefilter.accepts(buffer, start, end);
+		}
+
+		recordEnd = offset + (end - start);
+
+		// Nothing of a rejected record is kept or matched
+		if (skipped) {
+			return;
+		}
+
+		// Keeping the line if the record has still room for it - the first line is
+		// cut if it is too long on its own
+		int keep = Math.min(end - start, MAX_RECORD_BYTES - 1 - length);
+		if (keptLines < maxLines && (keep == end - start || keptLines == 0)) {
+			ensureCapacity(length + keep + 1);
+			ByteLines.copy(buffer, start, start + keep, record, length);
+			length += keep;
+			record[length++] = '\n';
+			keptLines++;
+		} else {
+			omittedLines++;
+		}
+
+		// The first match of the record decides its type
+		if (type == null) {
+			type = matcher.match(buffer, start, end);
+		}
+	}
+
+	/**
+	 * Emits the open record if it matched. Must be called after the last line of
+	 * a pass, unless the open record is handed to the next pass.
+	 */
+	public void finish() {
+
+		if (open && type != null) {
+
+			// Timestamp and logger are only parsed for the records which matched - the
+			// first line is always kept, at least its beginning
+			long timestamp = -1;
+			String logger = null;
+			if (prefixed) {
+				ByteBuffer firstLine = ByteBuffer.wrap(record, 0, length);
+				int firstLineEnd = indexOf(record, (byte) '\n', length);
+				timestamp = LogLinePrefix.parseTimestamp(firstLine, 0);
+				logger = LogLinePrefix.parseLogger(firstLine, 0, firstLineEnd);
+			}
+
+			// Decoding the record without its last line terminator
+			StringBuilder text = new StringBuilder(length + 32)
+					.append(new String(record, 0, Math.max(0, length - 1), StandardCharsets.UTF_8));
+
+			if (omittedLines > 0) {
+				text.append("\n\t... ").append(omittedLines).append(" line(s) omitted");
+			}
+
+			int recordLength = (int) Math.min(Integer.MAX_VALUE, recordEnd - recordOffset);
+
+			listener.onEvent(new LogEvent(file, recordOffset, recordLength, timestamp, type, logger, text.toString(),
+					omittedLines));
+		}
+
+		reset();
+	}
+
+	/**
+	 * @param offset position of a line in the file
+	 * @return true if a record is open and the line directly follows its last
+	 *         line - after a line terminator, or none if the line was cut
+	 */
+	private boolean continuesAt(long offset) {
+		return open && offset >= recordEnd && offset <= recordEnd + 2;
+	}
+
+	/**
+	 * Resets for the next record
+	 */
+	private void reset() {
+		open = false;
+		skipped = false;
+		type = null;
+		length = 0;
+		keptLines = 0;
+		omittedLines = 0;
+	}
+
+	/**
+	 * Lets the first line handed to this assembler continue the record the
+	 * assembler of the previous pass over the same file left open - if the line
+	 * directly follows that record and does not start a new one.
+	 *
+	 * @param previous assembler of the previous pass, which was not finished
+	 */
+	public void continueAfter(LogEventAssembler previous) {
+		this.predecessor = previous;
+	}
+
+	/**
+	 * Takes over the open record of the other assembler, which is left without
+	 * one. Lines handed to this assembler continue the record.
+	 *
+	 * @param other assembler of an earlier pass, which was not finished
+	 */
+	public void takeOver(LogEventAssembler other) {
+
+		finish();
+
+		// Swapping the arrays, the other one is reused by the other assembler
+		byte[] otherRecord = other.record;
+		other.record = record;
+		record = otherRecord;
+
+		length = other.length;
+		open = other.open;
+		recordOffset = other.recordOffset;
+		recordEnd = other.recordEnd;
+		prefixed = other.prefixed;
+		skipped = other.skipped;
+		type = other.type;
+		keptLines = other.keptLines;
+		omittedLines = other.omittedLines;
+
+		other.reset();
+	}
+
+	/**
+	 * @return true if a record is open - it is emitted by {@link #finish()} or
+	 *         taken over by the next pass
+	 */
+	public boolean hasOpenRecord() {
+		return open;
+	}
+
+	/**
+	 * @return number of lines handed to this assembler
+	 */
+	public long getLines() {
+		return lines;
+	}
+
+	/**
+	 * @return index of the first occurrence of the byte in the first length
+	 *         bytes of the array, or length
+	 */
+	private static int indexOf(byte[] bytes, byte b, int length) {
+		for (int i = 0; i < length; i++) {
+			if (bytes[i] == b) {
+				return i;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Grows the record array, never beyond {@link #MAX_RECORD_BYTES}
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity > record.length) {
+			record = Arrays.copyOf(record, Math.min(MAX_RECORD_BYTES, Math.max(capacity, record.length * 2)));
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package org.redquark.logwatcher.core.event;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Callback receiving the events emitted by the {@link LogEventAssembler}
+ *
+ */
+public interface LogEventListener {
+
+	/**
+	 * Called once for every record which matched
+	 *
+	 * @param event
+	 */
+	public void onEvent(LogEvent event);
+}
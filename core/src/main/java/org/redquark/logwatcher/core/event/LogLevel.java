@@ -0,0 +1,87 @@
+package org.redquark.logwatcher.core.event;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Levels of the logback records, least severe first. The ordinal is the
+ *         id kept in the columns of the record buffer.
+ *
+ */
+public enum LogLevel {
+
+	TRACE, DEBUG, INFO, WARN, ERROR;
+
+	// All levels by ordinal - values() copies the array on every call
+	private static final LogLevel[] LEVELS = values();
+
+	/**
+	 * @param id ordinal of a level
+	 * @return the level with the ordinal
+	 */
+	public static LogLevel of(int id) {
+		return LEVELS[id];
+	}
+
+	/**
+	 * @param name
+	 * @return the level with the name, ignoring the case, or null if there is
+	 *         none
+	 */
+	public static LogLevel from(String name) {
+
+		for (LogLevel level : LEVELS) {
+			if (level.name().equalsIgnoreCase(name)) {
+				return level;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param buffer
+	 * @param start  first byte of the level name
+	 * @param end    byte after the level name
+	 * @return the level spelled in the region [start, end) or null if it is none
+	 */
+	public static LogLevel parse(ByteBuffer buffer, int start, int end) {
+
+		// The names differ in their first letter
+		if (end - start < 4 || end - start > 5) {
+			return null;
+		}
+
+		LogLevel level;
+		switch (buffer.get(start)) {
+		case 'T':
+			level = TRACE;
+			break;
+		case 'D':
+			level = DEBUG;
+			break;
+		case 'I':
+			level = INFO;
+			break;
+		case 'W':
+			level = WARN;
+			break;
+		case 'E':
+			level = ERROR;
+			break;
+		default:
+			return null;
+		}
+
+		String name = level.name();
+		if (name.length() != end - start) {
+			return null;
+		}
+		for (int i = 1; i < name.length(); i++) {
+			if (buffer.get(start + i) != name.charAt(i)) {
+				return null;
+			}
+		}
+		return level;
+	}
+}
@@ -0,0 +1,194 @@
+package org.redquark.logwatcher.core.event;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import org.redquark.logwatcher.core.tail.ByteLines;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Recognizes the prefix with which the AEM/Sling logback pattern starts
+ *         every record, e.g.
+ *
+ *         <pre>
+ * 18.10.2026 10:15:30.123 *ERROR* [qtp1234-56] com.foo.Bar message
+ *         </pre>
+ *
+ *         Lines without this prefix - "\tat ...", "Caused by: ...", "\t... 12
+ *         more" - continue the previous record. The check looks at fixed
+ *         positions only, no regular expression is involved.
+ *
+ *         The fields after the timestamp are located by {@link #levelEnd},
+ *         {@link #threadEnd} and {@link #loggerEnd}, one after the other - the
+ *         single place which knows their delimiters.
+ *
+ */
+public final class LogLinePrefix {
+
+	// Length of the timestamp "dd.MM.yyyy HH:mm:ss.SSS"
+	public static final int TIMESTAMP_LENGTH = 23;
+
+	// Offset of the level - "*ERROR* " right after the timestamp and a blank
+	public static final int LEVEL_OFFSET = TIMESTAMP_LENGTH + 2;
+
+	// Separators of the timestamp by position, digits are expected elsewhere
+	private static final String TIMESTAMP_SHAPE = "00.00.0000 00:00:00.000";
+
+	private LogLinePrefix() {
+	}
+
+	/**
+	 * @param buffer
+	 * @param start
+	 * @param end
+	 * @return true if the line in the region [start, end) starts a new record
+	 */
+	public static boolean isRecordStart(ByteBuffer buffer, int start, int end) {
+
+		// Timestamp, a blank and the opening star of the level
+		if (end - start < TIMESTAMP_LENGTH + 2) {
+			return false;
+		}
+
+		for (int i = 0; i < TIMESTAMP_LENGTH; i++) {
+			byte b = buffer.get(start + i);
+			char expected = TIMESTAMP_SHAPE.charAt(i);
+			if (expected == '0' ? (b < '0' || b > '9') : b != expected) {
+				return false;
+			}
+		}
+
+		return buffer.get(start + TIMESTAMP_LENGTH) == ' ' && buffer.get(start + TIMESTAMP_LENGTH + 1) == '*';
+	}
+
+	/**
+	 * Parses the timestamp of a line for which {@link #isRecordStart} returned
+	 * true
+	 *
+	 * @param buffer
+	 * @param start
+	 * @return epoch milliseconds in the default time zone
+	 */
+	public static long parseTimestamp(ByteBuffer buffer, int start) {
+
+		int day = number(buffer, start, 2);
+		int month = number(buffer, start + 3, 2);
+		int year = number(buffer, start + 6, 4);
+		int hour = number(buffer, start + 11, 2);
+		int minute = number(buffer, start + 14, 2);
+		int second = number(buffer, start + 17, 2);
+		int millis = number(buffer, start + 20, 3);
+
+		try {
+			return LocalDateTime.of(year, month, day, hour, minute, second, millis * 1_000_000)
+					.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+		} catch (RuntimeException e) {
+			// Digits in the right places, but not a valid date
+			return -1;
+		}
+	}
+
+	/**
+	 * Extracts the logger name of a line for which {@link #isRecordStart}
+	 * returned true - the first word after the level and the thread name.
+	 *
+	 * @param buffer
+	 * @param start
+	 * @param end
+	 * @return name of the logger or null if the line does not have the expected
+	 *         shape
+	 */
+	public static String parseLogger(ByteBuffer buffer, int start, int end) {
+
+		int threadEnd = threadEnd(buffer, levelEnd(buffer, start, end), end);
+		if (threadEnd < 0) {
+			return null;
+		}
+
+		int loggerStart = threadEnd + 2;
+		int loggerEnd = loggerEnd(buffer, loggerStart, end);
+
+		return loggerEnd > loggerStart ? ByteLines.decode(buffer, loggerStart, loggerEnd) : null;
+	}
+
+	/**
+	 * Locates the level of a line for which {@link #isRecordStart} returned
+	 * true. The level starts at {@link #LEVEL_OFFSET}.
+	 *
+	 * @param buffer
+	 * @param start
+	 * @param end
+	 * @return position of the star closing the level, end if there is none
+	 */
+	public static int levelEnd(ByteBuffer buffer, int start, int end) {
+
+		int position = start + LEVEL_OFFSET;
+		while (position < end && buffer.get(position) != '*') {
+			position++;
+		}
+		return position;
+	}
+
+	/**
+	 * Locates the thread name following the level. The thread name may contain
+	 * nested brackets, e.g. [127.0.0.1 [1539590520456] GET /content HTTP/1.1];
+	 * it starts right after the opening bracket.
+	 *
+	 * @param buffer
+	 * @param levelEnd position returned by {@link #levelEnd}
+	 * @param end
+	 * @return position of the bracket closing the thread name, end if it is not
+	 *         closed, or -1 if there is no thread name
+	 */
+	public static int threadEnd(ByteBuffer buffer, int levelEnd, int end) {
+
+		int position = levelEnd + 2;
+		if (position >= end || buffer.get(position) != '[') {
+			return -1;
+		}
+
+		int depth = 0;
+		for (; position < end; position++) {
+			byte b = buffer.get(position);
+			if (b == '[') {
+				depth++;
+			} else if (b == ']' && --depth == 0) {
+				break;
+			}
+		}
+		return position;
+	}
+
+	/**
+	 * Locates the logger, which starts two bytes after the end of the thread
+	 * name and ends at the next blank. The message is the rest of the line.
+	 *
+	 * @param buffer
+	 * @param loggerStart
+	 * @param end
+	 * @return position after the logger, at most end; not greater than the start
+	 *         if there is no logger
+	 */
+	public static int loggerEnd(ByteBuffer buffer, int loggerStart, int end) {
+
+		int position = loggerStart;
+		while (position < end && buffer.get(position) != ' ') {
+			position++;
+		}
+		return position;
+	}
+
+	/**
+	 * @return the decimal number made of the digits at the given position
+	 */
+	private static int number(ByteBuffer buffer, int position, int digits) {
+
+		int value = 0;
+		for (int i = 0; i < digits; i++) {
+			value = value * 10 + (buffer.get(position + i) - '0');
+		}
+		return value;
+	}
+}
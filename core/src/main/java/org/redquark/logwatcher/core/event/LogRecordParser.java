@@ -0,0 +1,161 @@
+package org.redquark.logwatcher.core.event;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Splits the first line of a record into its fields - timestamp,
+ *         level, thread, logger and message - see {@link LogLinePrefix} for the
+ *         format. Every field is found by a single forward pass over fixed
+ *         positions and delimiters, located by {@link LogLinePrefix} just as
+ *         for the {@link RecordPrefilter}; no regular expression is involved and
+ *         nothing is allocated: the text fields are kept as regions of the
+ *         buffer which was parsed.
+ *
+ *         A parser is reused for every line, so it must not be shared between
+ *         threads. It remembers the epoch of the last hour it has seen; the
+ *         records of the same hour only add minutes, seconds and milliseconds
+ *         to it.
+ *
+ */
+public final class LogRecordParser {
+
+	// Length of "dd.MM.yyyy HH"
+	private static final int HOUR_LENGTH = 13;
+
+	// Date and hour of the cached epoch
+	private final byte[] hour = new byte[HOUR_LENGTH];
+
+	// Epoch milliseconds of the start of that hour, -1 if none is cached
+	private long hourEpoch = -1;
+
+	// Fields of the last parsed line
+	private long timestamp;
+	private LogLevel level;
+	private int threadStart;
+	private int threadEnd;
+	private int loggerStart;
+	private int loggerEnd;
+	private int messageStart;
+	private int end;
+
+	/**
+	 * Parses the line in the region [start, end) of the buffer
+	 *
+	 * @param buffer
+	 * @param start
+	 * @param end
+	 * @return true if the line starts a record and all fields were found
+	 */
+	public boolean parse(ByteBuffer buffer, int start, int end) {
+
+		if (!LogLinePrefix.isRecordStart(buffer, start, end)) {
+			return false;
+		}
+
+		int levelEnd = LogLinePrefix.levelEnd(buffer, start, end);
+		level = LogLevel.parse(buffer, start + LogLinePrefix.LEVEL_OFFSET, levelEnd);
+		if (level == null) {
+			return false;
+		}
+
+		threadEnd = LogLinePrefix.threadEnd(buffer, levelEnd, end);
+		if (threadEnd < 0) {
+			return false;
+		}
+		threadStart = levelEnd + 3;
+		loggerStart = threadEnd + 2;
+		if (loggerStart > end) {
+			return false;
+		}
+
+		// The message is the rest of the line
+		loggerEnd = LogLinePrefix.loggerEnd(buffer, loggerStart, end);
+		messageStart = Math.min(end, loggerEnd + 1);
+		this.end = end;
+
+		timestamp = parseTimestamp(buffer, start);
+
+		return loggerEnd > loggerStart;
+	}
+
+	/**
+	 * @return timestamp of the last parsed line in epoch milliseconds, -1 if it
+	 *         is not a valid date
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return level of the last parsed line
+	 */
+	public LogLevel getLevel() {
+		return level;
+	}
+
+	public int getThreadStart() {
+		return threadStart;
+	}
+
+	public int getThreadEnd() {
+		return threadEnd;
+	}
+
+	public int getLoggerStart() {
+		return loggerStart;
+	}
+
+	public int getLoggerEnd() {
+		return loggerEnd;
+	}
+
+	public int getMessageStart() {
+		return messageStart;
+	}
+
+	public int getMessageEnd() {
+		return end;
+	}
+
+	/**
+	 * Parses the timestamp, reusing the epoch of the hour if it has not changed
+	 */
+	private long parseTimestamp(ByteBuffer buffer, int start) {
+
+		boolean sameHour = hourEpoch >= 0;
+		for (int i = 0; i < HOUR_LENGTH && sameHour; i++) {
+			sameHour = hour[i] == buffer.get(start + i);
+		}
+
+		if (!sameHour) {
+			long epoch = LogLinePrefix.parseTimestamp(buffer, start);
+			if (epoch < 0) {
+				hourEpoch = -1;
+				return -1;
+			}
+			hourEpoch = epoch - (number(buffer, start + 14, 2) * 60_000L + number(buffer, start + 17, 2) * 1000L
+					+ number(buffer, start + 20, 3));
+			for (int i = 0; i < HOUR_LENGTH; i++) {
+				hour[i] = buffer.get(start + i);
+			}
+			return epoch;
+		}
+
+		return hourEpoch + number(buffer, start + 14, 2) * 60_000L + number(buffer, start + 17, 2) * 1000L
+				+ number(buffer, start + 20, 3);
+	}
+
+	/**
+	 * @return the decimal number made of the digits at the given position
+	 */
+	private static int number(ByteBuffer buffer, int position, int digits) {
+
+		int value = 0;
+		for (int i = 0; i < digits; i++) {
+			value = value * 10 + (buffer.get(position + i) - '0');
+		}
+		return value;
+	}
+}
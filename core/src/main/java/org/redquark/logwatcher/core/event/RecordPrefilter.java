@@ -0,0 +1,116 @@
+package org.redquark.logwatcher.core.event;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Decides from the first line of a record alone whether the record can
+ *         be a candidate at all - its level must be severe enough and its
+ *         logger must start with one of the configured prefixes. Only the
+ *         fixed-position level field and the bytes of the logger are looked
+ *         at; a rejected record, continuation lines included, is never matched,
+ *         copied or decoded.
+ *
+ *         Records without the log prefix cannot be judged and are always
+ *         candidates.
+ *
+ */
+public final class RecordPrefilter {
+
+	// Least severe level which is a candidate
+	private final LogLevel minLevel;
+
+	// Logger prefixes as bytes, empty for every logger
+	private final byte[][] loggerPrefixes;
+
+	public RecordPrefilter(LogLevel minLevel, byte[][] loggerPrefixes) {
+		this.minLevel = minLevel;
+		this.loggerPrefixes = loggerPrefixes;
+	}
+
+	/**
+	 * @param minLevel       name of the least severe level, empty for every
+	 *                       level
+	 * @param loggerPrefixes prefixes of the loggers, empty for every logger
+	 * @return the prefilter or null if it would accept every record
+	 */
+	public static RecordPrefilter compile(String minLevel, String[] loggerPrefixes) {
+
+		LogLevel level = minLevel == null ? null : LogLevel.from(minLevel.trim());
+		if (level == LogLevel.TRACE) {
+			level = null;
+		}
+
+		List<byte[]> prefixes = new ArrayList<>();
+		if (loggerPrefixes != null) {
+			for (String prefix : loggerPrefixes) {
+				if (prefix != null && !prefix.trim().isEmpty()) {
+					prefixes.add(prefix.trim().getBytes(StandardCharsets.UTF_8));
+				}
+			}
+		}
+
+		if (level == null && prefixes.isEmpty()) {
+			return null;
+		}
+
+		return new RecordPrefilter(level, prefixes.toArray(new byte[0][]));
+	}
+
+	/**
+	 * @param buffer
+	 * @param start
+	 * @param end
+	 * @return true if the record starting with the line in the region [start,
+	 *         end) of the buffer must be matched
+	 */
+	public boolean accepts(ByteBuffer buffer, int start, int end) {
+
+		if (!LogLinePrefix.isRecordStart(buffer, start, end)) {
+			return true;
+		}
+
+		int levelEnd = LogLinePrefix.levelEnd(buffer, start, end);
+
+		if (minLevel != null) {
+			LogLevel level = LogLevel.parse(buffer, start + LogLinePrefix.LEVEL_OFFSET, levelEnd);
+			if (level != null && level.compareTo(minLevel) < 0) {
+				return false;
+			}
+		}
+
+		if (loggerPrefixes.length == 0) {
+			return true;
+		}
+
+		int threadEnd = LogLinePrefix.threadEnd(buffer, levelEnd, end);
+		if (threadEnd < 0) {
+			return true;
+		}
+		int position = threadEnd + 2;
+
+		for (byte[] prefix : loggerPrefixes) {
+			if (startsWith(buffer, position, end, prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean startsWith(ByteBuffer buffer, int position, int end, byte[] prefix) {
+
+		if (end - position < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (buffer.get(position + i) != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
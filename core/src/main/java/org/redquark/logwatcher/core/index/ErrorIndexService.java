@@ -0,0 +1,58 @@
+package org.redquark.logwatcher.core.index;
+
+import java.util.List;
+
+import org.redquark.logwatcher.core.event.LogEvent;
+
+/**
+ * @author Anirudh Sharma
+ * 
+ *         This interface exposes methods for recording the detected errors and
+ *         querying them later by time range and type
+ *
+ */
+public interface ErrorIndexService {
+
+	/**
+	 * Appends a detected error to the index
+	 * 
+	 * @param event
+	 * @param fingerprint fingerprint of the normalized stack trace
+	 */
+	public void add(LogEvent event, String fingerprint);
+
+	/**
+	 * Finds the errors logged in the time range, in the order they were indexed -
+	 * errors found by a backfill of older log files come after those indexed
+	 * before, although logged earlier
+	 * 
+	 * @param from        start of the range in epoch milliseconds, inclusive
+	 * @param to          end of the range in epoch milliseconds, inclusive
+	 * @param type        type to filter by or null for all types
+	 * @param fingerprint fingerprint to filter by or null for all
+	 * @param limit       maximum number of errors to return
+	 * @return the errors
+	 */
+	public List<IndexedError> query(long from, long to, String type, String fingerprint, int limit);
+
+	/**
+	 * Counts the errors logged in the time range
+	 * 
+	 * @param from        start of the range in epoch milliseconds, inclusive
+	 * @param to          end of the range in epoch milliseconds, inclusive
+	 * @param type        type to filter by or null for all types
+	 * @param fingerprint fingerprint to filter by or null for all
+	 * @return number of errors
+	 */
+	public long count(long from, long to, String type, String fingerprint);
+
+	/**
+	 * Reads the original record of an error from its log file
+	 * 
+	 * @param error
+	 * @return text of the record, at most 64 KB, or null if the log file does not
+	 *         contain it anymore - e.g. it was rotated or truncated and another
+	 *         record is at that position now
+	 */
+	public String fetchTrace(IndexedError error);
+}
@@ -0,0 +1,82 @@
+package org.redquark.logwatcher.core.index;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         One detected error as stored in the index - where and when it was
+ *         logged, but not its text, which is read from the log file on demand
+ *
+ */
+public final class IndexedError {
+
+	// Time the error was logged
+	private final long timestamp;
+
+	// Fingerprint of the normalized stack trace
+	private final String fingerprint;
+
+	// Error/exception type which matched
+	private final String type;
+
+	// Log file the error was read from
+	private final String file;
+
+	// Identity of the log file at the time, e.g. its inode, or null if unknown
+	private final String fileKey;
+
+	// Position of the record in the log file - in the uncompressed content of
+	// compressed files
+	private final long offset;
+
+	// Length of the record in bytes
+	private final int length;
+
+	public IndexedError(long timestamp, String fingerprint, String type, String file, long offset, int length) {
+		this(timestamp, fingerprint, type, file, null, offset, length);
+	}
+
+	public IndexedError(long timestamp, String fingerprint, String type, String file, String fileKey, long offset,
+			int length) {
+		this.timestamp = timestamp;
+		this.fingerprint = fingerprint;
+		this.type = type;
+		this.file = file;
+		this.fileKey = fileKey;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public String getFile() {
+		return file;
+	}
+
+	public String getFileKey() {
+		return fileKey;
+	}
+
+	public long getOffset() {
+		return offset;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	@Override
+	public String toString() {
+		return "IndexedError [timestamp=" + timestamp + ", fingerprint=" + fingerprint + ", type=" + type + ", file="
+				+ file + ", offset=" + offset + "]";
+	}
+}
@@ -0,0 +1,450 @@
+package org.redquark.logwatcher.core.index.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.GZIPInputStream;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.metatype.annotations.Designate;
+import org.redquark.logwatcher.core.configs.LogWatcherIndexConfiguration;
+import org.redquark.logwatcher.core.dedup.TraceFingerprinter;
+import org.redquark.logwatcher.core.event.LogEvent;
+import org.redquark.logwatcher.core.event.LogEventAssembler;
+import org.redquark.logwatcher.core.event.LogLinePrefix;
+import org.redquark.logwatcher.core.index.ErrorIndexService;
+import org.redquark.logwatcher.core.index.IndexedError;
+import org.redquark.logwatcher.core.tail.ArchiveReader;
+import org.redquark.logwatcher.core.tail.TailState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Keeps the index in the data area of the bundle as a series of
+ *         {@link IndexSegment}s plus a {@link StringTable} of the types and
+ *         files. New errors are appended to the last segment; when it is full
+ *         a new one is started and the oldest ones beyond the configured number
+ *         are deleted. Only the time spans of the blocks are held in memory;
+ *         they also answer the counts of the blocks entirely in the range of a
+ *         query without a filter.
+ *
+ *         Files are stored with their identity at the time, e.g. the inode, and
+ *         a trace is only read back from the same file - after a rotation the
+ *         offsets of the old entries mean nothing in the new file.
+ *
+ */
+@Component(service = ErrorIndexService.class, immediate = true)
+@Designate(ocd = LogWatcherIndexConfiguration.class)
+public class ErrorIndexServiceImpl implements ErrorIndexService {
+
+	// Separates the path and the identity of a file in the string table
+	private static final char FILE_KEY_SEPARATOR = '\t';
+
+	// Logger
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	// Guards the segments - appends exclude each other and the snapshots taken
+	// by the queries, the queries then read without the lock
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	// Segments by id, the last one is appended to
+	private final TreeMap<Long, IndexSegment> segments = new TreeMap<>();
+
+	// Directory of the index
+	private Path directory;
+
+	// Types and files
+	private volatile StringTable strings;
+
+	// Flag to determine whether errors are indexed
+	private boolean enabled;
+
+	// Number of records per segment
+	private int segmentRecords;
+
+	// Maximum number of segments
+	private int maxSegments;
+
+	/**
+	 * Opens the index
+	 * 
+	 * @param bundleContext
+	 * @param logWatcherIndexConfiguration
+	 */
+	@Activate
+	protected void activate(BundleContext bundleContext, LogWatcherIndexConfiguration logWatcherIndexConfiguration) {
+
+		enabled = logWatcherIndexConfiguration.enabled();
+		segmentRecords = Math.max(IndexSegment.BLOCK_RECORDS, logWatcherIndexConfiguration.segmentRecords());
+		maxSegments = Math.max(1, logWatcherIndexConfiguration.maxSegments());
+
+		// The index is kept in the data area of the bundle
+		File indexDirectory = bundleContext.getDataFile("index");
+		if (indexDirectory == null) {
+			indexDirectory = new File(System.getProperty("java.io.tmpdir"), "logwatcher/index");
+		}
+
+		try {
+
+			Path path = indexDirectory.toPath();
+			Files.createDirectories(path);
+			directory = path;
+
+			strings = new StringTable(path.resolve("strings.txt"));
+
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(path, "segment-*.dat")) {
+				for (Path file : files) {
+					String name = file.getFileName().toString();
+					long id = Long.parseLong(name.substring("segment-".length(), name.length() - ".dat".length()));
+					segments.put(id, new IndexSegment(path, id));
+				}
+			}
+
+			if (segments.isEmpty()) {
+				segments.put(0L, new IndexSegment(path, 0));
+			}
+
+			log.info("Error index opened in {} with {} segment(s)", path, segments.size());
+
+		} catch (IOException | RuntimeException e) {
+			log.error("Could not open the error index in {}, errors are not indexed", indexDirectory, e);
+			closeSegments();
+			enabled = false;
+		}
+	}
+
+	/**
+	 * Closes the index
+	 */
+	@Deactivate
+	protected void deactivate() {
+		closeSegments();
+	}
+
+	@Override
+	public void add(LogEvent event, String fingerprint) {
+
+		if (!enabled) {
+			return;
+		}
+
+		// Records without timestamp are indexed at the time they were detected
+		long timestamp = event.getTimestamp() > 0 ? event.getTimestamp() : System.currentTimeMillis();
+
+		// Remembering which file the offset refers to
+		String fileKey = fileKey(Paths.get(event.getFile()));
+		String file = fileKey != null ? event.getFile() + FILE_KEY_SEPARATOR + fileKey : event.getFile();
+
+		lock.writeLock().lock();
+		try {
+
+			// Closed in the meantime
+			if (segments.isEmpty()) {
+				return;
+			}
+
+			IndexSegment segment = segments.lastEntry().getValue();
+
+			// Starting a new segment when the last one is full
+			if (segment.getRecords() >= segmentRecords) {
+				segment = roll(segment);
+			}
+
+			segment.append(timestamp, parseFingerprint(fingerprint), strings.id(event.getType()),
+					strings.id(file), event.getOffset(), event.getLength());
+
+		} catch (IOException e) {
+			log.error(e.getMessage(), e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public List<IndexedError> query(long from, long to, String type, String fingerprint, int limit) {
+
+		List<IndexedError> errors = new ArrayList<>();
+
+		StringTable table = strings;
+		if (limit <= 0 || table == null) {
+			return errors;
+		}
+
+		scan(table, from, to, type, fingerprint, (timestamp, fp, typeId, fileId, offset, length) -> {
+			String file = table.get(fileId);
+			int separator = file != null ? file.lastIndexOf(FILE_KEY_SEPARATOR) : -1;
+			errors.add(separator < 0
+					? new IndexedError(timestamp, formatFingerprint(fp), table.get(typeId), file, offset, length)
+					: new IndexedError(timestamp, formatFingerprint(fp), table.get(typeId),
+							file.substring(0, separator), file.substring(separator + 1), offset, length));
+			return errors.size() < limit;
+		});
+
+		return errors;
+	}
+
+	@Override
+	public long count(long from, long to, String type, String fingerprint) {
+
+		StringTable table = strings;
+		if (table == null) {
+			return 0;
+		}
+
+		long[] count = new long[1];
+
+		// Without a filter the blocks entirely in the range are not read
+		if (type == null && fingerprint == null) {
+			for (IndexSegment.Snapshot snapshot : snapshots(from, to)) {
+				try {
+					count[0] += snapshot.count(from, to);
+				} catch (ClosedChannelException e) {
+					// Deleted in the meantime, its records are gone
+				} catch (IOException e) {
+					log.error(e.getMessage(), e);
+				}
+			}
+			return count[0];
+		}
+
+		scan(table, from, to, type, fingerprint, (timestamp, fp, typeId, fileId, offset, length) -> {
+			count[0]++;
+			return true;
+		});
+
+		return count[0];
+	}
+
+	@Override
+	public String fetchTrace(IndexedError error) {
+
+		Path file = Paths.get(error.getFile());
+
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+
+		// The file has been rotated since - another file by the same name
+		if (error.getFileKey() != null && !error.getFileKey().equals(fileKey(file))) {
+			return null;
+		}
+
+		int length = Math.min(error.getLength(), LogEventAssembler.MAX_RECORD_BYTES);
+		byte[] bytes = new byte[length];
+
+		try {
+
+			int read = 0;
+
+			if (ArchiveReader.isCompressed(file)) {
+
+				// Offsets of compressed files refer to the uncompressed content
+				try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+					long skipped = 0;
+					while (skipped < error.getOffset()) {
+						long n = in.skip(error.getOffset() - skipped);
+						if (n <= 0) {
+							return null;
+						}
+						skipped += n;
+					}
+					int n;
+					while (read < length && (n = in.read(bytes, read, length - read)) > 0) {
+						read += n;
+					}
+				}
+
+			} else {
+
+				try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+					ByteBuffer buffer = ByteBuffer.wrap(bytes);
+					while (buffer.hasRemaining()
+							&& channel.read(buffer, error.getOffset() + buffer.position()) > 0) {
+						// Reading until the buffer is full
+					}
+					read = buffer.position();
+				}
+			}
+
+			// The file has been truncated or replaced since
+			if (read < length) {
+				return null;
+			}
+
+			// Or truncated and written again, e.g. by copytruncate - the record must
+			// still be the one logged at that time: same timestamp or, without one,
+			// same fingerprint
+			ByteBuffer record = ByteBuffer.wrap(bytes, 0, read);
+			int firstLineEnd = 0;
+			while (firstLineEnd < read && bytes[firstLineEnd] != '\n') {
+				firstLineEnd++;
+			}
+			String trace = new String(bytes, 0, read, StandardCharsets.UTF_8);
+			boolean same = LogLinePrefix.isRecordStart(record, 0, firstLineEnd)
+					? LogLinePrefix.parseTimestamp(record, 0) == error.getTimestamp()
+					: TraceFingerprinter.fingerprint(trace).equals(error.getFingerprint());
+
+			return same ? trace : null;
+
+		} catch (IOException e) {
+			log.error("Could not read the trace from {}", file, e);
+			return null;
+		}
+	}
+
+	/**
+	 * @param file
+	 * @return identity of the file, e.g. its inode, or null if it cannot be read
+	 */
+	private static String fileKey(Path file) {
+		try {
+			return TailState.fileKey(Files.readAttributes(file, BasicFileAttributes.class));
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Visits the matching records of all segments, oldest segment first
+	 */
+	private void scan(StringTable table, long from, long to, String type, String fingerprint,
+			IndexSegment.RecordVisitor visitor) {
+
+		// Resolving the filters - an unknown type matches nothing
+		final int typeId = type != null ? table.find(type) : -1;
+		if (type != null && typeId == -1) {
+			return;
+		}
+		final boolean filterFingerprint = fingerprint != null;
+		final long fp = filterFingerprint ? parseFingerprint(fingerprint) : 0;
+
+		IndexSegment.RecordVisitor filter = (timestamp, recordFingerprint, recordType, fileId, offset, length) -> {
+			if ((type != null && recordType != typeId) || (filterFingerprint && recordFingerprint != fp)) {
+				return true;
+			}
+			return visitor.visit(timestamp, recordFingerprint, recordType, fileId, offset, length);
+		};
+
+		for (IndexSegment.Snapshot snapshot : snapshots(from, to)) {
+			try {
+				if (!snapshot.scan(from, to, filter)) {
+					return;
+				}
+			} catch (ClosedChannelException e) {
+				// Deleted in the meantime, its records are gone
+			} catch (IOException e) {
+				log.error(e.getMessage(), e);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return snapshots of the segments overlapping the range, oldest first
+	 */
+	private List<IndexSegment.Snapshot> snapshots(long from, long to) {
+
+		List<IndexSegment.Snapshot> snapshots = new ArrayList<>();
+
+		lock.readLock().lock();
+		try {
+			for (IndexSegment segment : segments.values()) {
+				IndexSegment.Snapshot snapshot = segment.snapshot();
+				if (snapshot.overlaps(from, to)) {
+					snapshots.add(snapshot);
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		return snapshots;
+	}
+
+	/**
+	 * Starts a new segment and deletes the oldest ones beyond the maximum
+	 */
+	private IndexSegment roll(IndexSegment last) throws IOException {
+
+		long id = last.getId() + last.getRecords();
+
+		IndexSegment segment = new IndexSegment(directory, id);
+		segments.put(id, segment);
+
+		while (segments.size() > maxSegments) {
+			segments.pollFirstEntry().getValue().delete();
+		}
+		return segment;
+	}
+
+	/**
+	 * Closes all segments and the string table
+	 */
+	private void closeSegments() {
+
+		lock.writeLock().lock();
+		try {
+
+			for (IndexSegment segment : segments.values()) {
+				try {
+					segment.close();
+				} catch (IOException e) {
+					log.error(e.getMessage(), e);
+				}
+			}
+			segments.clear();
+
+			if (strings != null) {
+				try {
+					strings.close();
+				} catch (IOException e) {
+					log.error(e.getMessage(), e);
+				}
+				strings = null;
+			}
+
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @param fingerprint 16 hex digits
+	 * @return the fingerprint as number, 0 if it cannot be parsed
+	 */
+	private static long parseFingerprint(String fingerprint) {
+		try {
+			return Long.parseUnsignedLong(fingerprint, 16);
+		} catch (RuntimeException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * @param fingerprint
+	 * @return the fingerprint as 16 hex digits
+	 */
+	private static String formatFingerprint(long fingerprint) {
+		return String.format("%016x", fingerprint);
+	}
+}
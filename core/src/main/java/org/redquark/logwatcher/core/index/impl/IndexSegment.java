@@ -0,0 +1,391 @@
+package org.redquark.logwatcher.core.index.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         One segment of the index - an append-only data file of fixed size
+ *         records and a sparse time index next to it. Every block of
+ *         {@link #BLOCK_RECORDS} records has one entry in the time index with
+ *         the smallest and largest timestamp of the block. Records are not
+ *         necessarily in time order (backfills add old errors), so a query
+ *         reads the blocks whose time span overlaps the requested range and
+ *         skips all others. Queries read a {@link Snapshot}, concurrently with
+ *         the appends.
+ *
+ *         <pre>
+ * record (36 bytes): timestamp long, fingerprint long, type id int, file id int,
+ *                    offset long, length int
+ * block entry (16 bytes): smallest timestamp long, largest timestamp long
+ *         </pre>
+ *
+ */
+final class IndexSegment implements Closeable {
+
+	// Size of a record
+	static final int RECORD_SIZE = 36;
+
+	// Number of records per entry of the time index
+	static final int BLOCK_RECORDS = 1024;
+
+	// Size of an entry of the time index
+	private static final int BLOCK_ENTRY_SIZE = 16;
+
+	// Number of the first record in the segment - also its name
+	private final long id;
+
+	// Data file
+	private final Path dataFile;
+
+	// Time index file
+	private final Path indexFile;
+
+	// Channel of the data file
+	private final FileChannel data;
+
+	// Channel of the time index file
+	private final FileChannel index;
+
+	// Smallest timestamp per block
+	private long[] blockMin = new long[16];
+
+	// Largest timestamp per block
+	private long[] blockMax = new long[16];
+
+	// Number of records
+	private int records;
+
+	// Buffer of one record to append
+	private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+
+	/**
+	 * Opens or creates a segment
+	 *
+	 * @param directory
+	 * @param id
+	 * @throws IOException
+	 */
+	IndexSegment(Path directory, long id) throws IOException {
+
+		this.id = id;
+		this.dataFile = directory.resolve(String.format("segment-%019d.dat", id));
+		this.indexFile = directory.resolve(String.format("segment-%019d.idx", id));
+
+		data = FileChannel.open(dataFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		index = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+
+		// A record cut off by a crash is dropped
+		records = (int) (data.size() / RECORD_SIZE);
+		data.truncate((long) records * RECORD_SIZE);
+
+		// Time index entries of the complete blocks - recomputed if missing
+		int completeBlocks = records / BLOCK_RECORDS;
+		int indexedBlocks = (int) Math.min(completeBlocks, index.size() / BLOCK_ENTRY_SIZE);
+		index.truncate((long) indexedBlocks * BLOCK_ENTRY_SIZE);
+
+		ByteBuffer entries = ByteBuffer.allocate(indexedBlocks * BLOCK_ENTRY_SIZE);
+		readFully(index, entries, 0);
+		entries.flip();
+		for (int block = 0; block < indexedBlocks; block++) {
+			setBlock(block, entries.getLong(), entries.getLong());
+		}
+
+		// Blocks without entry, including the last incomplete one, are read from
+		// the data file
+		for (int block = indexedBlocks; block * BLOCK_RECORDS < records; block++) {
+			scanBlock(block);
+			if (block < completeBlocks) {
+				writeBlockEntry(block);
+			}
+		}
+	}
+
+	/**
+	 * Appends a record
+	 *
+	 * @throws IOException
+	 */
+	void append(long timestamp, long fingerprint, int typeId, int fileId, long offset, int length)
+			throws IOException {
+
+		record.clear();
+		record.putLong(timestamp).putLong(fingerprint).putInt(typeId).putInt(fileId).putLong(offset).putInt(length);
+		record.flip();
+
+		while (record.hasRemaining()) {
+			data.write(record, (long) records * RECORD_SIZE + record.position());
+		}
+
+		int block = records / BLOCK_RECORDS;
+		if (records % BLOCK_RECORDS == 0) {
+			setBlock(block, timestamp, timestamp);
+		} else {
+			setBlock(block, Math.min(blockMin[block], timestamp), Math.max(blockMax[block], timestamp));
+		}
+
+		records++;
+
+		// Completing the block
+		if (records % BLOCK_RECORDS == 0) {
+			writeBlockEntry(block);
+		}
+	}
+
+	/**
+	 * @return the records appended so far, to be read while further records are
+	 *         appended
+	 */
+	Snapshot snapshot() {
+
+		int blocks = (records + BLOCK_RECORDS - 1) / BLOCK_RECORDS;
+
+		return new Snapshot(records, Arrays.copyOf(blockMin, blocks), Arrays.copyOf(blockMax, blocks));
+	}
+
+	long getId() {
+		return id;
+	}
+
+	int getRecords() {
+		return records;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			data.close();
+		} finally {
+			index.close();
+		}
+	}
+
+	/**
+	 * Closes and removes the files of the segment
+	 *
+	 * @throws IOException
+	 */
+	void delete() throws IOException {
+		close();
+		Files.deleteIfExists(dataFile);
+		Files.deleteIfExists(indexFile);
+	}
+
+	/**
+	 * Computes the time span of a block from the data file
+	 */
+	private void scanBlock(int block) throws IOException {
+
+		int first = block * BLOCK_RECORDS;
+		int count = Math.min(BLOCK_RECORDS, records - first);
+
+		ByteBuffer buffer = ByteBuffer.allocate(count * RECORD_SIZE);
+		readFully(data, buffer, (long) first * RECORD_SIZE);
+		buffer.flip();
+
+		long min = Long.MAX_VALUE;
+		long max = Long.MIN_VALUE;
+		for (int i = 0; i < count; i++) {
+			long timestamp = buffer.getLong(i * RECORD_SIZE);
+			min = Math.min(min, timestamp);
+			max = Math.max(max, timestamp);
+		}
+		setBlock(block, min, max);
+	}
+
+	/**
+	 * Appends the time index entry of a complete block
+	 */
+	private void writeBlockEntry(int block) throws IOException {
+
+		ByteBuffer entry = ByteBuffer.allocate(BLOCK_ENTRY_SIZE);
+		entry.putLong(blockMin[block]).putLong(blockMax[block]).flip();
+
+		long position = (long) block * BLOCK_ENTRY_SIZE;
+		while (entry.hasRemaining()) {
+			index.write(entry, position + entry.position());
+		}
+	}
+
+	/**
+	 * Sets the time span of a block, growing the arrays if needed
+	 */
+	private void setBlock(int block, long min, long max) {
+
+		if (block >= blockMin.length) {
+			blockMin = Arrays.copyOf(blockMin, Math.max(block + 1, blockMin.length * 2));
+			blockMax = Arrays.copyOf(blockMax, blockMin.length);
+		}
+		blockMin[block] = min;
+		blockMax[block] = max;
+	}
+
+	/**
+	 * Fills the buffer from the given position of the channel
+	 */
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+
+		long start = position - buffer.position();
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, start + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of index file");
+			}
+		}
+	}
+
+	/**
+	 * The records of the segment at one point in time. The records and the
+	 * time spans of their blocks do not change once appended, so a snapshot
+	 * is read without holding off the appends. A block holds
+	 * {@link #BLOCK_RECORDS} records, only the last one may hold less.
+	 */
+	final class Snapshot {
+
+		// Number of records
+		private final int records;
+
+		// Smallest timestamp per block
+		private final long[] blockMin;
+
+		// Largest timestamp per block
+		private final long[] blockMax;
+
+		private Snapshot(int records, long[] blockMin, long[] blockMax) {
+			this.records = records;
+			this.blockMin = blockMin;
+			this.blockMax = blockMax;
+		}
+
+		/**
+		 * Visits the records with a timestamp in the range, in the order they
+		 * were appended
+		 *
+		 * @param from
+		 * @param to
+		 * @param visitor
+		 * @return false if the visitor stopped the scan
+		 * @throws IOException
+		 */
+		boolean scan(long from, long to, RecordVisitor visitor) throws IOException {
+
+			ByteBuffer buffer = null;
+
+			for (int block = 0; block < blockMin.length; block++) {
+
+				// Skipping the blocks outside the range
+				if (blockMax[block] < from || blockMin[block] > to) {
+					continue;
+				}
+
+				if (buffer == null) {
+					buffer = ByteBuffer.allocate(BLOCK_RECORDS * RECORD_SIZE);
+				}
+				int count = readBlock(block, buffer);
+
+				for (int i = 0; i < count; i++) {
+					long timestamp = buffer.getLong();
+					long fingerprint = buffer.getLong();
+					int typeId = buffer.getInt();
+					int fileId = buffer.getInt();
+					long offset = buffer.getLong();
+					int length = buffer.getInt();
+
+					if (timestamp >= from && timestamp <= to
+							&& !visitor.visit(timestamp, fingerprint, typeId, fileId, offset, length)) {
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Counts the records with a timestamp in the range - only the blocks
+		 * partly in the range are read, the others are counted from memory
+		 *
+		 * @param from
+		 * @param to
+		 * @return number of records
+		 * @throws IOException
+		 */
+		long count(long from, long to) throws IOException {
+
+			long matching = 0;
+			ByteBuffer buffer = null;
+
+			for (int block = 0; block < blockMin.length; block++) {
+
+				if (blockMax[block] < from || blockMin[block] > to) {
+					continue;
+				}
+
+				// The whole block is in the range
+				if (blockMin[block] >= from && blockMax[block] <= to) {
+					matching += Math.min(BLOCK_RECORDS, records - block * BLOCK_RECORDS);
+					continue;
+				}
+
+				if (buffer == null) {
+					buffer = ByteBuffer.allocate(BLOCK_RECORDS * RECORD_SIZE);
+				}
+				int count = readBlock(block, buffer);
+
+				for (int i = 0; i < count; i++) {
+					long timestamp = buffer.getLong(i * RECORD_SIZE);
+					if (timestamp >= from && timestamp <= to) {
+						matching++;
+					}
+				}
+			}
+			return matching;
+		}
+
+		/**
+		 * @return true if the time span of the snapshot overlaps the range
+		 */
+		boolean overlaps(long from, long to) {
+
+			for (int block = 0; block < blockMin.length; block++) {
+				if (blockMax[block] >= from && blockMin[block] <= to) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Reads the records of a block into the buffer, ready to be read
+		 *
+		 * @return number of records read
+		 */
+		private int readBlock(int block, ByteBuffer buffer) throws IOException {
+
+			int first = block * BLOCK_RECORDS;
+			int count = Math.min(BLOCK_RECORDS, records - first);
+
+			buffer.clear().limit(count * RECORD_SIZE);
+			readFully(data, buffer, (long) first * RECORD_SIZE);
+			buffer.flip();
+			return count;
+		}
+	}
+
+	/**
+	 * Receives the records of a scan
+	 */
+	interface RecordVisitor {
+
+		/**
+		 * @return false to stop the scan
+		 */
+		boolean visit(long timestamp, long fingerprint, int typeId, int fileId, long offset, int length);
+	}
+}
@@ -0,0 +1,98 @@
+package org.redquark.logwatcher.core.index.impl;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Append-only dictionary of the types and file paths referenced by the
+ *         index records. Every string is one line of the file, its id is the
+ *         line number. There are only as many strings as configured types and
+ *         generations of the watched files, so all of them are kept in memory.
+ *         Safe for use by concurrent queries and appends.
+ *
+ */
+final class StringTable implements Closeable {
+
+	// Strings by id
+	private final List<String> strings = new ArrayList<>();
+
+	// Ids by string
+	private final Map<String, Integer> ids = new HashMap<>();
+
+	// Writer appending new strings
+	private final Writer writer;
+
+	StringTable(Path file) throws IOException {
+
+		if (Files.isRegularFile(file)) {
+			try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					ids.putIfAbsent(line, strings.size());
+					strings.add(line);
+				}
+			}
+		}
+
+		writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+				StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * @param value
+	 * @return id of the string, which is added if it is new
+	 * @throws IOException
+	 */
+	synchronized int id(String value) throws IOException {
+
+		// Line terminators would break the file
+		String line = value.replace('\n', ' ').replace('\r', ' ');
+
+		Integer id = ids.get(line);
+		if (id != null) {
+			return id;
+		}
+
+		writer.write(line);
+		writer.write('\n');
+		writer.flush();
+
+		ids.put(line, strings.size());
+		strings.add(line);
+		return strings.size() - 1;
+	}
+
+	/**
+	 * @param value
+	 * @return id of the string or -1 if it is not in the table
+	 */
+	synchronized int find(String value) {
+		Integer id = ids.get(value);
+		return id != null ? id : -1;
+	}
+
+	/**
+	 * @param id
+	 * @return the string with the id or null
+	 */
+	synchronized String get(int id) {
+		return id >= 0 && id < strings.size() ? strings.get(id) : null;
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+}
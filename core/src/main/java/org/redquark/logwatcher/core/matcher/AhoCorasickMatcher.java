@@ -0,0 +1,255 @@
+package org.redquark.logwatcher.core.matcher;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Aho-Corasick automaton over the UTF-8 bytes of literal patterns. All
+ *         patterns are matched in one pass over the line, so the cost per line
+ *         does not depend on the number of configured types.
+ *
+ *         The automaton is compiled into a dense transition table. To keep it
+ *         small, only the bytes which occur in some pattern get their own
+ *         column - every other byte shares column 0, which always leads back
+ *         to the root. While nothing is partly matched, the bytes which do not
+ *         start any pattern are skipped without a transition.
+ *
+ *         Anchored patterns only match whole class names: the match must not
+ *         be preceded or followed by an identifier character, so
+ *         "NullPointerException" matches "java.lang.NullPointerException:" but
+ *         not "MyNullPointerExceptionHandler".
+ *
+ */
+final class AhoCorasickMatcher implements LogMatcher {
+
+	// Type reported for every pattern
+	private final String[] types;
+
+	// Length in bytes of every pattern
+	private final int[] lengths;
+
+	// Flag per pattern to determine if it must match a whole class name
+	private final boolean[] anchored;
+
+	// Flag per pattern to determine if it is a qualified class name
+	private final boolean[] qualified;
+
+	// Column of every byte value in the transition table
+	private final int[] byteClass = new int[256];
+
+	// Number of columns in the transition table
+	private final int alphabet;
+
+	// Transition table - next state = delta[state * alphabet + column]
+	private final int[] delta;
+
+	// Pattern ending exactly at the state or -1
+	private final int[] output;
+
+	// Nearest state on the failure chain having an output or -1
+	private final int[] outputLink;
+
+	// Flag per state to determine if any pattern ends there
+	private final boolean[] reportable;
+
+	// Flag per byte value to determine if some pattern starts with it
+	private final boolean[] first = new boolean[256];
+
+	/**
+	 * @param types    type reported for every pattern
+	 * @param patterns literal patterns
+	 * @param anchored flag per pattern to determine if it must match a whole
+	 *                 class name
+	 */
+	AhoCorasickMatcher(List<String> types, List<String> patterns, List<Boolean> anchored) {
+
+		int count = patterns.size();
+
+		this.types = types.toArray(new String[count]);
+		this.lengths = new int[count];
+		this.anchored = new boolean[count];
+		this.qualified = new boolean[count];
+
+		// Encoding the patterns and assigning the columns
+		byte[][] encoded = new byte[count][];
+		int columns = 1;
+
+		for (int p = 0; p < count; p++) {
+
+			encoded[p] = patterns.get(p).getBytes(StandardCharsets.UTF_8);
+			lengths[p] = encoded[p].length;
+			this.anchored[p] = anchored.get(p);
+			qualified[p] = patterns.get(p).indexOf('.') >= 0;
+
+			for (byte b : encoded[p]) {
+				if (byteClass[b & 0xFF] == 0) {
+					byteClass[b & 0xFF] = columns++;
+				}
+			}
+			if (encoded[p].length > 0) {
+				first[encoded[p][0] & 0xFF] = true;
+			}
+		}
+		alphabet = columns;
+
+		// Building the trie - goto entries of -1 are missing edges
+		List<int[]> trie = new ArrayList<>();
+		List<Integer> terminal = new ArrayList<>();
+		trie.add(newRow());
+		terminal.add(-1);
+
+		for (int p = 0; p < count; p++) {
+
+			int state = 0;
+
+			for (byte b : encoded[p]) {
+				int column = byteClass[b & 0xFF];
+				if (trie.get(state)[column] == -1) {
+					trie.get(state)[column] = trie.size();
+					trie.add(newRow());
+					terminal.add(-1);
+				}
+				state = trie.get(state)[column];
+			}
+
+			// The same pattern configured twice is reported with its first type
+			if (terminal.get(state) == -1) {
+				terminal.set(state, p);
+			}
+		}
+
+		int states = trie.size();
+		delta = new int[states * alphabet];
+		output = new int[states];
+		outputLink = new int[states];
+		reportable = new boolean[states];
+		int[] failure = new int[states];
+
+		for (int s = 0; s < states; s++) {
+			output[s] = terminal.get(s);
+		}
+		Arrays.fill(outputLink, -1);
+
+		// Breadth first computation of the failure links, completing the goto
+		// function into a full transition table on the way
+		Deque<Integer> queue = new ArrayDeque<>();
+
+		for (int column = 0; column < alphabet; column++) {
+			int child = trie.get(0)[column];
+			if (child == -1) {
+				delta[column] = 0;
+			} else {
+				delta[column] = child;
+				failure[child] = 0;
+				queue.add(child);
+			}
+		}
+
+		while (!queue.isEmpty()) {
+
+			int state = queue.poll();
+			int fail = failure[state];
+
+			outputLink[state] = output[fail] != -1 ? fail : outputLink[fail];
+			reportable[state] = output[state] != -1 || outputLink[state] != -1;
+
+			for (int column = 0; column < alphabet; column++) {
+				int child = trie.get(state)[column];
+				if (child == -1) {
+					delta[state * alphabet + column] = delta[fail * alphabet + column];
+				} else {
+					delta[state * alphabet + column] = child;
+					failure[child] = delta[fail * alphabet + column];
+					queue.add(child);
+				}
+			}
+		}
+	}
+
+	@Override
+	public String match(ByteBuffer buffer, int start, int end) {
+
+		int state = 0;
+
+		for (int i = start; i < end; i++) {
+
+			// Nothing matched so far - skipping to the next byte starting a pattern
+			if (state == 0) {
+				while (i < end && !first[buffer.get(i) & 0xFF]) {
+					i++;
+				}
+				if (i == end) {
+					break;
+				}
+			}
+
+			state = delta[state * alphabet + byteClass[buffer.get(i) & 0xFF]];
+
+			if (reportable[state]) {
+
+				// Walking all patterns ending at this position
+				for (int s = output[state] != -1 ? state : outputLink[state]; s != -1; s = outputLink[s]) {
+					int pattern = output[s];
+					if (accept(pattern, buffer, i + 1 - lengths[pattern], i + 1, start, end)) {
+						return types[pattern];
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public String match(CharSequence line) {
+
+		byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+
+		return match(ByteBuffer.wrap(bytes), 0, bytes.length);
+	}
+
+	/**
+	 * Checks the class name boundaries of anchored patterns
+	 */
+	private boolean accept(int pattern, ByteBuffer buffer, int matchStart, int matchEnd, int start, int end) {
+
+		if (!anchored[pattern]) {
+			return true;
+		}
+
+		if (matchStart > start) {
+			byte before = buffer.get(matchStart - 1);
+			// A simple name may follow its package, a qualified name may not
+			if (isIdentifierPart(before) || (qualified[pattern] && before == '.')) {
+				return false;
+			}
+		}
+
+		return matchEnd >= end || !isIdentifierPart(buffer.get(matchEnd));
+	}
+
+	/**
+	 * @param b
+	 * @return true if the byte can be part of a Java identifier. Every non ASCII
+	 *         byte is treated as such.
+	 */
+	private static boolean isIdentifierPart(byte b) {
+		return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '_' || b == '$'
+				|| (b & 0x80) != 0;
+	}
+
+	/**
+	 * @return a trie row without edges
+	 */
+	private int[] newRow() {
+		int[] row = new int[alphabet];
+		Arrays.fill(row, -1);
+		return row;
+	}
+}
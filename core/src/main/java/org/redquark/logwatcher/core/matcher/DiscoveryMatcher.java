@@ -0,0 +1,140 @@
+package org.redquark.logwatcher.core.matcher;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Matches any class name ending in "Exception" or "Error", so that
+ *         failures nobody configured are found as well. The reported type is
+ *         {@link LogMatchers#DISCOVERED_PREFIX} followed by the class name as
+ *         written in the line, e.g.
+ *         <code>discovered:java.lang.IllegalStateException</code>.
+ *
+ *         To keep the noise of ordinary words down, a bare "Exception" or
+ *         "Error" only counts as part of a qualified name, the simple name must
+ *         start with an upper case letter, and a name followed by a member - a
+ *         method or inner class of e.g. an error handler - does not count.
+ *
+ */
+final class DiscoveryMatcher implements LogMatcher {
+
+	// Suffixes of the class names
+	private static final byte[] EXCEPTION = "Exception".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] ERROR = "Error".getBytes(StandardCharsets.US_ASCII);
+
+	@Override
+	public String match(ByteBuffer buffer, int start, int end) {
+
+		for (int i = start; i < end; i++) {
+
+			// Both suffixes start with the same byte
+			if (buffer.get(i) != 'E') {
+				continue;
+			}
+
+			int suffixEnd = -1;
+			if (regionMatches(buffer, i, end, EXCEPTION)) {
+				suffixEnd = i + EXCEPTION.length;
+			} else if (regionMatches(buffer, i, end, ERROR)) {
+				suffixEnd = i + ERROR.length;
+			}
+			if (suffixEnd < 0) {
+				continue;
+			}
+
+			// The name must end with the suffix - a dot ends a sentence, but not if a
+			// member follows
+			if (suffixEnd < end) {
+				byte after = buffer.get(suffixEnd);
+				if (isIdentifierPart(after)
+						|| (after == '.' && suffixEnd + 1 < end && isIdentifierPart(buffer.get(suffixEnd + 1)))) {
+					continue;
+				}
+			}
+
+			String name = className(buffer, start, i, suffixEnd);
+			if (name != null) {
+				return LogMatchers.DISCOVERED_PREFIX + name;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public String match(CharSequence line) {
+
+		byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+
+		return match(ByteBuffer.wrap(bytes), 0, bytes.length);
+	}
+
+	/**
+	 * @return the class name ending at suffixEnd or null if it does not look like
+	 *         one
+	 */
+	private static String className(ByteBuffer buffer, int start, int suffixStart, int suffixEnd) {
+
+		// Walking back to the beginning of the qualified name
+		int nameStart = suffixStart;
+		while (nameStart > start
+				&& (isIdentifierPart(buffer.get(nameStart - 1)) || buffer.get(nameStart - 1) == '.')) {
+			nameStart--;
+		}
+
+		// Dots in front are punctuation, not a package
+		while (nameStart < suffixStart && buffer.get(nameStart) == '.') {
+			nameStart++;
+		}
+
+		// Beginning of the simple name
+		int simpleStart = suffixStart;
+		while (simpleStart > nameStart && isIdentifierPart(buffer.get(simpleStart - 1))) {
+			simpleStart--;
+		}
+
+		byte first = buffer.get(simpleStart);
+		if (first < 'A' || first > 'Z') {
+			return null;
+		}
+
+		// A bare suffix is only a class name with its package
+		if (simpleStart == suffixStart && simpleStart == nameStart) {
+			return null;
+		}
+
+		byte[] name = new byte[suffixEnd - nameStart];
+		for (int i = 0; i < name.length; i++) {
+			name[i] = buffer.get(nameStart + i);
+		}
+		return new String(name, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return true if the bytes at the position equal the given ones
+	 */
+	private static boolean regionMatches(ByteBuffer buffer, int position, int end, byte[] bytes) {
+
+		if (end - position < bytes.length) {
+			return false;
+		}
+
+		for (int i = 0; i < bytes.length; i++) {
+			if (buffer.get(position + i) != bytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param b
+	 * @return true if the byte can be part of a Java identifier. Every non ASCII
+	 *         byte is treated as such.
+	 */
+	private static boolean isIdentifierPart(byte b) {
+		return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '_' || b == '$'
+				|| (b & 0x80) != 0;
+	}
+}
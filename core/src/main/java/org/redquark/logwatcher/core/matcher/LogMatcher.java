@@ -0,0 +1,33 @@
+package org.redquark.logwatcher.core.matcher;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         A compiled set of error/exception patterns which matches a log line
+ *         against all of them in a single pass. Instances are immutable and
+ *         thread safe.
+ *
+ */
+public interface LogMatcher {
+
+	/**
+	 * Matches the UTF-8 encoded line in the region [start, end) of the buffer.
+	 * The position and limit of the buffer are not used nor changed.
+	 *
+	 * @param buffer
+	 * @param start
+	 * @param end
+	 * @return the configured type which matched or null if none did
+	 */
+	public String match(ByteBuffer buffer, int start, int end);
+
+	/**
+	 * Matches the given line
+	 *
+	 * @param line
+	 * @return the configured type which matched or null if none did
+	 */
+	public String match(CharSequence line);
+}
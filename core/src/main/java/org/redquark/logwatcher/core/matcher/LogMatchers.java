@@ -0,0 +1,180 @@
+package org.redquark.logwatcher.core.matcher;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Factory compiling the configured error/exception types into a
+ *         {@link LogMatcher}. Every type is one of
+ *         <ul>
+ *         <li>a literal, e.g. <code>NullPointerException</code>, matched
+ *         anywhere in the line</li>
+ *         <li><code>class:</code> followed by a class name, matched only as a
+ *         whole (simple or qualified) class name</li>
+ *         <li><code>regex:</code> followed by a regular expression</li>
+ *         </ul>
+ *         Literal and class name types share one Aho-Corasick automaton, the
+ *         regular expressions are only tried when it did not match. In
+ *         discovery mode any other exception or error is matched last (see
+ *         {@link DiscoveryMatcher}).
+ *
+ */
+public final class LogMatchers {
+
+	// Prefix of the anchored class name patterns
+	public static final String CLASS_PREFIX = "class:";
+
+	// Prefix of the regular expression patterns
+	public static final String REGEX_PREFIX = "regex:";
+
+	// Prefix of the types found in discovery mode
+	public static final String DISCOVERED_PREFIX = "discovered:";
+
+	// Logger
+	private static final Logger LOG = LoggerFactory.getLogger(LogMatchers.class);
+
+	// Matcher which never matches
+	private static final LogMatcher NONE = new LogMatcher() {
+
+		@Override
+		public String match(ByteBuffer buffer, int start, int end) {
+			return null;
+		}
+
+		@Override
+		public String match(CharSequence line) {
+			return null;
+		}
+	};
+
+	private LogMatchers() {
+	}
+
+	/**
+	 * Compiles the configured types. Invalid regular expressions are logged and
+	 * skipped.
+	 *
+	 * @param types
+	 * @return {@link LogMatcher}
+	 */
+	public static LogMatcher compile(String[] types) {
+		return compile(types, false);
+	}
+
+	/**
+	 * Compiles the configured types, optionally followed by the discovery of any
+	 * other exception or error. Invalid regular expressions are logged and
+	 * skipped.
+	 *
+	 * @param types
+	 * @param discover true to match unconfigured exceptions and errors too
+	 * @return {@link LogMatcher}
+	 */
+	public static LogMatcher compile(String[] types, boolean discover) {
+
+		// Literal and class name patterns
+		List<String> literalTypes = new ArrayList<>();
+		List<String> literals = new ArrayList<>();
+		List<Boolean> anchored = new ArrayList<>();
+
+		// Regular expression patterns
+		List<String> regexTypes = new ArrayList<>();
+		List<Pattern> regexes = new ArrayList<>();
+
+		if (types != null) {
+
+			for (String type : types) {
+
+				if (type == null || type.trim().isEmpty()) {
+					continue;
+				}
+				type = type.trim();
+
+				if (type.startsWith(REGEX_PREFIX)) {
+					String regex = type.substring(REGEX_PREFIX.length());
+					try {
+						regexes.add(Pattern.compile(regex));
+						regexTypes.add(regex);
+					} catch (PatternSyntaxException e) {
+						LOG.error("Ignoring invalid regular expression {}", regex, e);
+					}
+				} else if (type.startsWith(CLASS_PREFIX)) {
+					String className = type.substring(CLASS_PREFIX.length()).trim();
+					if (!className.isEmpty()) {
+						literalTypes.add(className);
+						literals.add(className);
+						anchored.add(true);
+					}
+				} else {
+					literalTypes.add(type);
+					literals.add(type);
+					anchored.add(false);
+				}
+			}
+		}
+
+		LogMatcher literalMatcher = literals.isEmpty() ? null
+				: new AhoCorasickMatcher(literalTypes, literals, anchored);
+		LogMatcher regexMatcher = regexes.isEmpty() ? null : new RegexMatcher(regexTypes, regexes);
+
+		LogMatcher configured;
+		if (literalMatcher == null && regexMatcher == null) {
+			configured = NONE;
+		} else if (regexMatcher == null) {
+			configured = literalMatcher;
+		} else if (literalMatcher == null) {
+			configured = regexMatcher;
+		} else {
+			configured = new CompositeMatcher(literalMatcher, regexMatcher);
+		}
+
+		if (!discover) {
+			return configured;
+		}
+		return configured == NONE ? new DiscoveryMatcher() : new CompositeMatcher(configured, new DiscoveryMatcher());
+	}
+
+	/**
+	 * @param type type reported by a matcher
+	 * @return true if the type was found in discovery mode rather than configured
+	 */
+	public static boolean isDiscovered(String type) {
+		return type != null && type.startsWith(DISCOVERED_PREFIX);
+	}
+
+	/**
+	 * Tries the first matcher - e.g. the literals - and the second one only if it
+	 * did not match
+	 */
+	private static final class CompositeMatcher implements LogMatcher {
+
+		private final LogMatcher first;
+
+		private final LogMatcher second;
+
+		CompositeMatcher(LogMatcher first, LogMatcher second) {
+			this.first = first;
+			this.second = second;
+		}
+
+		@Override
+		public String match(ByteBuffer buffer, int start, int end) {
+			String type = first.match(buffer, start, end);
+			return type != null ? type : second.match(buffer, start, end);
+		}
+
+		@Override
+		public String match(CharSequence line) {
+			String type = first.match(line);
+			return type != null ? type : second.match(line);
+		}
+	}
+}
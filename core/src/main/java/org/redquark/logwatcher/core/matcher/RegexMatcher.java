@@ -0,0 +1,45 @@
+package org.redquark.logwatcher.core.matcher;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.redquark.logwatcher.core.tail.ByteLines;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Matches lines against regular expressions. Regular expressions work
+ *         on characters, so byte lines are decoded first - configure literal
+ *         patterns wherever possible.
+ *
+ */
+final class RegexMatcher implements LogMatcher {
+
+	// Type reported for every pattern
+	private final String[] types;
+
+	// Compiled patterns
+	private final Pattern[] patterns;
+
+	RegexMatcher(List<String> types, List<Pattern> patterns) {
+		this.types = types.toArray(new String[types.size()]);
+		this.patterns = patterns.toArray(new Pattern[patterns.size()]);
+	}
+
+	@Override
+	public String match(ByteBuffer buffer, int start, int end) {
+		return match(ByteLines.decode(buffer, start, end));
+	}
+
+	@Override
+	public String match(CharSequence line) {
+
+		for (int i = 0; i < patterns.length; i++) {
+			if (patterns[i].matcher(line).find()) {
+				return types[i];
+			}
+		}
+		return null;
+	}
+}
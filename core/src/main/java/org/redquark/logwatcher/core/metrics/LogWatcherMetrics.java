@@ -0,0 +1,76 @@
+package org.redquark.logwatcher.core.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         This interface exposes methods for recording how much work the
+ *         watcher does and how far behind it is. The values are published for
+ *         the existing monitoring, see the implementation for the metric names.
+ *
+ */
+public interface LogWatcherMetrics {
+
+	/**
+	 * Records one scan of a log file
+	 * 
+	 * @param bytes        number of bytes read
+	 * @param lines        number of lines read
+	 * @param scanNanos    time spent reading and matching
+	 * @param latencyNanos time from the change of the file to the end of the
+	 *                     scan, including the time the scan was queued
+	 */
+	public void scanned(long bytes, long lines, long scanNanos, long latencyNanos);
+
+	/**
+	 * Records records which matched the given type
+	 * 
+	 * @param type
+	 * @param count number of records
+	 */
+	public void matched(String type, long count);
+
+	/**
+	 * Records an attempt to deliver notifications through a sink - an email
+	 * handed to the gateway, lines appended to a file, a webhook call
+	 * 
+	 * @param sink      name of the sink, e.g. "email"
+	 * @param nanos     time the attempt took
+	 * @param delivered false if it failed
+	 */
+	public void sent(String sink, long nanos, boolean delivered);
+
+	/**
+	 * Records notifications which were dropped due to backpressure
+	 * 
+	 * @param count
+	 */
+	public void dropped(long count);
+
+	/**
+	 * Adds a source of the number of bytes not read yet. The published tail lag
+	 * is the sum of all sources.
+	 * 
+	 * @param source
+	 */
+	public void addTailLagSource(LongSupplier source);
+
+	/**
+	 * @param source added by {@link #addTailLagSource(LongSupplier)}
+	 */
+	public void removeTailLagSource(LongSupplier source);
+
+	/**
+	 * Adds a source of the number of notifications waiting to be sent. The
+	 * published queue depth is the sum of all sources.
+	 * 
+	 * @param source
+	 */
+	public void addQueueDepthSource(LongSupplier source);
+
+	/**
+	 * @param source added by {@link #addQueueDepthSource(LongSupplier)}
+	 */
+	public void removeQueueDepthSource(LongSupplier source);
+}
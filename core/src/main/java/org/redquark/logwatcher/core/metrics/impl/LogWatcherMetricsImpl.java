@@ -0,0 +1,236 @@
+package org.redquark.logwatcher.core.metrics.impl;
+
+import java.util.Collection;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.apache.sling.commons.metrics.Counter;
+import org.apache.sling.commons.metrics.Gauge;
+import org.apache.sling.commons.metrics.Meter;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.apache.sling.commons.metrics.Timer;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+import org.redquark.logwatcher.core.metrics.LogWatcherMetrics;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Publishes the metrics through the Sling Commons Metrics registry,
+ *         which AEM in turn exposes as MBeans in the "org.apache.sling" JMX
+ *         domain. The metrics of all watcher configurations are added up.
+ *
+ *         <pre>
+ * logwatcher.scan.bytes                 meter    bytes read (count and rate per second)
+ * logwatcher.scan.lines                 meter    lines read (count and rate per second)
+ * logwatcher.scan.time                  timer    time spent per scan
+ * logwatcher.scan.latency               timer    time from a file change to the end of its scan
+ * logwatcher.matches.[type]             counter  matching records per configured type
+ * logwatcher.tail.lag                   gauge    bytes appended to the log files but not read yet
+ * logwatcher.notification.queue         gauge    notifications waiting to be sent
+ * logwatcher.notification.send          timer    time per attempt to deliver notifications, all sinks
+ * logwatcher.notification.send.[sink]   timer    the same per sink - email, jsonl, webhook
+ * logwatcher.notification.failed        counter  failed attempts to deliver notifications, all sinks
+ * logwatcher.notification.failed.[sink] counter  the same per sink
+ * logwatcher.notification.dropped       counter  notifications dropped due to backpressure
+ *         </pre>
+ *
+ *         Without a metrics registry the values are discarded, but the gauges
+ *         are still available as services.
+ *
+ */
+@Component(service = LogWatcherMetrics.class, immediate = true)
+public class LogWatcherMetricsImpl implements LogWatcherMetrics {
+
+	// Prefix of all metric names
+	private static final String PREFIX = "logwatcher.";
+
+	// Registry of the metrics - optional, in which case nothing is recorded
+	@Reference(cardinality = ReferenceCardinality.OPTIONAL, policyOption = ReferencePolicyOption.GREEDY)
+	private MetricsService metricsService;
+
+	// Sources of the tail lag
+	private final Collection<LongSupplier> tailLagSources = new CopyOnWriteArrayList<>();
+
+	// Sources of the queue depth
+	private final Collection<LongSupplier> queueDepthSources = new CopyOnWriteArrayList<>();
+
+	// Match counters by type
+	private final Map<String, Counter> matchCounters = new ConcurrentHashMap<>();
+
+	// Delivery timers by sink
+	private final Map<String, Timer> sinkSendTimes = new ConcurrentHashMap<>();
+
+	// Failed deliveries by sink
+	private final Map<String, Counter> sinkSendFailures = new ConcurrentHashMap<>();
+
+	// Bytes read
+	private Meter bytes;
+
+	// Lines read
+	private Meter lines;
+
+	// Time spent per scan
+	private Timer scanTime;
+
+	// Time from a file change to the end of its scan
+	private Timer scanLatency;
+
+	// Time per attempt to deliver notifications, all sinks
+	private Timer sendTime;
+
+	// Failed attempts to deliver notifications, all sinks
+	private Counter sendFailures;
+
+	// Notifications dropped due to backpressure
+	private Counter dropped;
+
+	// Registration of the tail lag gauge
+	private ServiceRegistration<?> tailLagGauge;
+
+	// Registration of the queue depth gauge
+	private ServiceRegistration<?> queueDepthGauge;
+
+	/**
+	 * Creates the metrics and registers the gauges
+	 * 
+	 * @param bundleContext
+	 */
+	@Activate
+	protected void activate(BundleContext bundleContext) {
+
+		MetricsService registry = metricsService != null ? metricsService : MetricsService.NOOP;
+
+		bytes = registry.meter(PREFIX + "scan.bytes");
+		lines = registry.meter(PREFIX + "scan.lines");
+		scanTime = registry.timer(PREFIX + "scan.time");
+		scanLatency = registry.timer(PREFIX + "scan.latency");
+		sendTime = registry.timer(PREFIX + "notification.send");
+		sendFailures = registry.counter(PREFIX + "notification.failed");
+		dropped = registry.counter(PREFIX + "notification.dropped");
+
+		// Gauges are picked up by the registry as services
+		tailLagGauge = registerGauge(bundleContext, PREFIX + "tail.lag", tailLagSources);
+		queueDepthGauge = registerGauge(bundleContext, PREFIX + "notification.queue", queueDepthSources);
+	}
+
+	/**
+	 * Unregisters the gauges
+	 */
+	@Deactivate
+	protected void deactivate() {
+
+		if (tailLagGauge != null) {
+			tailLagGauge.unregister();
+			tailLagGauge = null;
+		}
+
+		if (queueDepthGauge != null) {
+			queueDepthGauge.unregister();
+			queueDepthGauge = null;
+		}
+
+		matchCounters.clear();
+		sinkSendTimes.clear();
+		sinkSendFailures.clear();
+	}
+
+	@Override
+	public void scanned(long bytes, long lines, long scanNanos, long latencyNanos) {
+		this.bytes.mark(bytes);
+		this.lines.mark(lines);
+		scanTime.update(scanNanos, TimeUnit.NANOSECONDS);
+		scanLatency.update(latencyNanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void matched(String type, long count) {
+
+		MetricsService registry = metricsService != null ? metricsService : MetricsService.NOOP;
+
+		matchCounters.computeIfAbsent(type, t -> registry.counter(PREFIX + "matches." + metricName(t)))
+				.increment(count);
+	}
+
+	@Override
+	public void sent(String sink, long nanos, boolean delivered) {
+
+		MetricsService registry = metricsService != null ? metricsService : MetricsService.NOOP;
+		String name = metricName(sink);
+
+		sendTime.update(nanos, TimeUnit.NANOSECONDS);
+		sinkSendTimes.computeIfAbsent(name, s -> registry.timer(PREFIX + "notification.send." + s)).update(nanos,
+				TimeUnit.NANOSECONDS);
+
+		if (!delivered) {
+			sendFailures.increment();
+			sinkSendFailures.computeIfAbsent(name, s -> registry.counter(PREFIX + "notification.failed." + s))
+					.increment();
+		}
+	}
+
+	@Override
+	public void dropped(long count) {
+		dropped.increment(count);
+	}
+
+	@Override
+	public void addTailLagSource(LongSupplier source) {
+		tailLagSources.add(source);
+	}
+
+	@Override
+	public void removeTailLagSource(LongSupplier source) {
+		tailLagSources.remove(source);
+	}
+
+	@Override
+	public void addQueueDepthSource(LongSupplier source) {
+		queueDepthSources.add(source);
+	}
+
+	@Override
+	public void removeQueueDepthSource(LongSupplier source) {
+		queueDepthSources.remove(source);
+	}
+
+	/**
+	 * Registers a gauge publishing the sum of the sources
+	 */
+	private static ServiceRegistration<?> registerGauge(BundleContext bundleContext, String name,
+			Collection<LongSupplier> sources) {
+
+		Gauge<Long> gauge = () -> {
+			long sum = 0;
+			for (LongSupplier source : sources) {
+				sum += source.getAsLong();
+			}
+			return sum;
+		};
+
+		Dictionary<String, Object> properties = new Hashtable<>();
+		properties.put(Gauge.NAME, name);
+
+		return bundleContext.registerService(Gauge.class.getName(), gauge, properties);
+	}
+
+	/**
+	 * @param type configured type, possibly with a class: or regex: prefix
+	 * @return the type with every character which is not safe in a metric name
+	 *         replaced by '_'
+	 */
+	private static String metricName(String type) {
+		return type.replaceAll("[^A-Za-z0-9_.-]", "_");
+	}
+}
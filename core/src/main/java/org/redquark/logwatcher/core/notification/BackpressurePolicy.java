@@ -0,0 +1,38 @@
+package org.redquark.logwatcher.core.notification;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Defines what happens when notifications arrive faster than they can
+ *         be sent and the {@link BackpressureQueue} is full. The detection
+ *         never waits for a sink, so every policy gives up notifications.
+ *
+ */
+public enum BackpressurePolicy {
+
+	/**
+	 * The oldest queued notification is dropped to make room
+	 */
+	DROP_OLDEST,
+
+	/**
+	 * The queue keeps a uniform random sample of all notifications which arrived
+	 * while it was full
+	 */
+	SAMPLE;
+
+	/**
+	 * @param value
+	 * @return the policy with the given name, {@link #DROP_OLDEST} if it is
+	 *         unknown
+	 */
+	public static BackpressurePolicy from(String value) {
+
+		for (BackpressurePolicy policy : values()) {
+			if (policy.name().equalsIgnoreCase(value)) {
+				return policy;
+			}
+		}
+		return DROP_OLDEST;
+	}
+}
@@ -0,0 +1,215 @@
+package org.redquark.logwatcher.core.notification;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Bounded queue between the detection and a slow consumer. What happens
+ *         when the queue is full is decided by its {@link BackpressurePolicy};
+ *         notifications which had to be given up are counted so that the
+ *         consumer can report them.
+ *
+ * @param <T> type of the queued items
+ */
+public final class BackpressureQueue<T> {
+
+	// Ring buffer holding the items
+	private final Object[] items;
+
+	// Policy applied when the queue is full
+	private final BackpressurePolicy policy;
+
+	// Lock guarding all state
+	private final ReentrantLock lock = new ReentrantLock();
+
+	// Signalled when an item is added
+	private final Condition notEmpty = lock.newCondition();
+
+	// Random source for the sampling policy
+	private final Random random = new Random();
+
+	// Index of the oldest item
+	private int head;
+
+	// Number of items in the queue
+	private int count;
+
+	// Number of items which arrived while the queue was full, since the last
+	// drain
+	private long overflowed;
+
+	// Number of items given up since the last call of takeDropped()
+	private long dropped;
+
+	public BackpressureQueue(int capacity, BackpressurePolicy policy) {
+		this.items = new Object[Math.max(1, capacity)];
+		this.policy = policy;
+	}
+
+	/**
+	 * Adds the item, applying the backpressure policy if the queue is full
+	 *
+	 * @param item
+	 * @throws InterruptedException if interrupted while waiting for the lock
+	 */
+	public void put(T item) throws InterruptedException {
+
+		lock.lockInterruptibly();
+
+		try {
+
+			if (count < items.length) {
+				enqueue(item);
+				return;
+			}
+
+			switch (policy) {
+
+			case SAMPLE:
+				// Reservoir sampling - every item of the overflow ends up in the queue with
+				// the same probability
+				overflowed++;
+				long slot = (long) (random.nextDouble() * (items.length + overflowed));
+				if (slot < items.length) {
+					items[(head + (int) slot) % items.length] = item;
+				}
+				dropped++;
+				break;
+
+			case DROP_OLDEST:
+			default:
+				dequeue();
+				enqueue(item);
+				dropped++;
+				break;
+			}
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits for the first item and then collects further items until either
+	 * maxItems have been collected or the window since the first item is over
+	 *
+	 * @param batch         list to add the items to
+	 * @param maxItems      maximum number of items to collect
+	 * @param windowMillis  time to wait for further items after the first one
+	 * @param timeoutMillis time to wait for the first item
+	 * @return number of items collected
+	 * @throws InterruptedException
+	 */
+	public int drainBatch(List<T> batch, int maxItems, long windowMillis, long timeoutMillis)
+			throws InterruptedException {
+
+		lock.lockInterruptibly();
+
+		try {
+
+			// Waiting for the first item
+			long nanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+			while (count == 0) {
+				if (nanos <= 0) {
+					return 0;
+				}
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+
+			// Collecting until the batch is full or the window is over
+			int collected = 0;
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMillis);
+
+			while (collected < maxItems) {
+				if (count > 0) {
+					batch.add(dequeue());
+					collected++;
+					continue;
+				}
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					break;
+				}
+				notEmpty.awaitNanos(remaining);
+			}
+
+			overflowed = 0;
+			return collected;
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes all queued items without waiting
+	 *
+	 * @param batch list to add the items to
+	 * @return number of items removed
+	 */
+	public int drainAll(List<T> batch) {
+
+		lock.lock();
+
+		try {
+			int drained = count;
+			while (count > 0) {
+				batch.add(dequeue());
+			}
+			return drained;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return number of items given up since the last call, resetting the
+	 *         counter
+	 */
+	public long takeDropped() {
+
+		lock.lock();
+
+		try {
+			long result = dropped;
+			dropped = 0;
+			return result;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return number of queued items
+	 */
+	public int size() {
+
+		lock.lock();
+
+		try {
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void enqueue(T item) {
+		items[(head + count) % items.length] = item;
+		count++;
+		notEmpty.signal();
+	}
+
+	@SuppressWarnings("unchecked")
+	private T dequeue() {
+		T item = (T) items[head];
+		items[head] = null;
+		head = (head + 1) % items.length;
+		count--;
+		return item;
+	}
+}
@@ -0,0 +1,100 @@
+package org.redquark.logwatcher.core.notification;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         One piece of information to be sent to the users - either a stack
+ *         trace seen for the first time or a summary of the repetitions of an
+ *         already reported one
+ *
+ */
+public final class LogNotification {
+
+	/**
+	 * Kinds of notifications
+	 */
+	public enum Kind {
+
+		/**
+		 * A stack trace whose fingerprint has not been reported yet
+		 */
+		NEW,
+
+		/**
+		 * Summary of the repetitions of an already reported stack trace
+		 */
+		REPEAT,
+
+		/**
+		 * An alerting rule whose condition became true - the type is the rule and
+		 * the trace the reason
+		 */
+		ALERT
+	}
+
+	// Kind of the notification
+	private final Kind kind;
+
+	// Error/exception type which matched
+	private final String type;
+
+	// Fingerprint of the normalized stack trace
+	private final String fingerprint;
+
+	// Stack trace as captured
+	private final String trace;
+
+	// Number of occurrences this notification stands for
+	private final long count;
+
+	// Time of the first occurrence
+	private final long firstSeen;
+
+	// Time of the last occurrence
+	private final long lastSeen;
+
+	public LogNotification(Kind kind, String type, String fingerprint, String trace, long count, long firstSeen,
+			long lastSeen) {
+		this.kind = kind;
+		this.type = type;
+		this.fingerprint = fingerprint;
+		this.trace = trace;
+		this.count = count;
+		this.firstSeen = firstSeen;
+		this.lastSeen = lastSeen;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	public String getTrace() {
+		return trace;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getFirstSeen() {
+		return firstSeen;
+	}
+
+	public long getLastSeen() {
+		return lastSeen;
+	}
+
+	@Override
+	public String toString() {
+		return "LogNotification [kind=" + kind + ", type=" + type + ", fingerprint=" + fingerprint + ", count=" + count
+				+ "]";
+	}
+}
@@ -0,0 +1,85 @@
+package org.redquark.logwatcher.core.notifier;
+
+import java.io.StringWriter;
+import java.io.Writer;
+
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+
+import org.redquark.logwatcher.core.notification.LogNotification;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Writes notifications as JSON objects, the format shared by the
+ *         non-email sinks
+ *
+ */
+public final class NotificationJson {
+
+	// Creates the generators of all JSON written by the log watcher
+	private static final JsonGeneratorFactory GENERATORS = Json.createGeneratorFactory(null);
+
+	private NotificationJson() {
+	}
+
+	/**
+	 * @param writer
+	 * @return generator writing compact JSON to the writer
+	 */
+	public static JsonGenerator generator(Writer writer) {
+		return GENERATORS.createGenerator(writer);
+	}
+
+	/**
+	 * Writes the notification as one object, e.g. an element of an array
+	 *
+	 * @param generator
+	 * @param notification
+	 */
+	public static void write(JsonGenerator generator, LogNotification notification) {
+
+		generator.writeStartObject();
+		generator.write("kind", notification.getKind().name());
+		write(generator, "type", notification.getType());
+		if (notification.getFingerprint() != null) {
+			generator.write("fingerprint", notification.getFingerprint());
+		}
+		if (notification.getTrace() != null) {
+			generator.write("trace", notification.getTrace());
+		}
+		generator.write("count", notification.getCount());
+		generator.write("firstSeen", notification.getFirstSeen());
+		generator.write("lastSeen", notification.getLastSeen());
+		generator.writeEnd();
+	}
+
+	/**
+	 * Writes a string which may be null
+	 *
+	 * @param generator
+	 * @param name
+	 * @param value
+	 */
+	public static void write(JsonGenerator generator, String name, String value) {
+		if (value == null) {
+			generator.writeNull(name);
+		} else {
+			generator.write(name, value);
+		}
+	}
+
+	/**
+	 * @param notification
+	 * @return the notification as a single line of JSON
+	 */
+	public static String toJson(LogNotification notification) {
+
+		StringWriter out = new StringWriter();
+		try (JsonGenerator generator = generator(out)) {
+			write(generator, notification);
+		}
+		return out.toString();
+	}
+}
@@ -0,0 +1,30 @@
+package org.redquark.logwatcher.core.notifier;
+
+import java.util.List;
+
+import org.redquark.logwatcher.core.notification.LogNotification;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         A sink the notifications are fanned out to. Every {@link Notifier}
+ *         service is called with the notifications of every scan; an
+ *         implementation must hand them over to its own queue and return
+ *         immediately (see {@link QueuedNotifier}), so that a slow sink neither
+ *         delays the others nor the scanning.
+ *
+ */
+public interface Notifier {
+
+	/**
+	 * @return name of the sink, used in log messages
+	 */
+	public String getName();
+
+	/**
+	 * Queues the notifications for delivery
+	 *
+	 * @param notifications
+	 */
+	public void notify(List<LogNotification> notifications);
+}
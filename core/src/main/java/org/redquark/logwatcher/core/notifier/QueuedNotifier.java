@@ -0,0 +1,164 @@
+package org.redquark.logwatcher.core.notifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.redquark.logwatcher.core.notification.BackpressurePolicy;
+import org.redquark.logwatcher.core.notification.BackpressureQueue;
+import org.redquark.logwatcher.core.notification.LogNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Base of the sinks which deliver from a queue of their own. Every sink
+ *         has a bounded {@link BackpressureQueue} and one worker thread handing
+ *         batches of notifications to {@link #deliver(List)}. A full queue
+ *         drops notifications rather than blocking the scanner; the dropped
+ *         ones are counted and passed with the next batch.
+ *
+ */
+public abstract class QueuedNotifier implements Notifier {
+
+	// Time to wait for the first notification before checking the running flag
+	private static final long POLL_MILLIS = 1000;
+
+	// Time to wait for the worker thread on stop
+	private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+	// Logger
+	protected final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	// Notifications waiting to be delivered
+	private volatile BackpressureQueue<LogNotification> queue;
+
+	// Thread delivering the batches
+	private Thread worker;
+
+	// Flag to keep the worker thread running
+	private volatile boolean running;
+
+	// Maximum number of notifications per batch
+	private int batchSize;
+
+	// Time to collect further notifications after the first one
+	private long batchWindowMillis;
+
+	/**
+	 * Creates the queue and starts the worker thread
+	 *
+	 * @param capacity          maximum number of waiting notifications
+	 * @param policy            what happens when the queue is full
+	 * @param batchSize         maximum number of notifications per batch
+	 * @param batchWindowMillis time to collect further notifications after the
+	 *                          first one
+	 */
+	protected void start(int capacity, BackpressurePolicy policy, int batchSize, long batchWindowMillis) {
+
+		this.queue = new BackpressureQueue<>(capacity, policy);
+		this.batchSize = Math.max(1, batchSize);
+		this.batchWindowMillis = Math.max(0, batchWindowMillis);
+
+		running = true;
+		worker = new Thread(this::deliverBatches, "logwatcher-notifier-" + getName());
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Stops the worker thread and delivers what is left once
+	 */
+	protected void stop() {
+
+		running = false;
+
+		if (worker != null) {
+			worker.interrupt();
+			try {
+				worker.join(SHUTDOWN_TIMEOUT_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			worker = null;
+		}
+
+		List<LogNotification> remaining = new ArrayList<>();
+		if (queue != null && queue.drainAll(remaining) > 0) {
+			deliverSafely(remaining, queue.takeDropped());
+		}
+	}
+
+	@Override
+	public void notify(List<LogNotification> notifications) {
+
+		BackpressureQueue<LogNotification> notificationQueue = queue;
+		if (notificationQueue == null || notifications == null) {
+			return;
+		}
+
+		try {
+			for (LogNotification notification : notifications) {
+				notificationQueue.put(notification);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return number of waiting notifications
+	 */
+	public long size() {
+		BackpressureQueue<LogNotification> notificationQueue = queue;
+		return notificationQueue == null ? 0 : notificationQueue.size();
+	}
+
+	/**
+	 * Delivers a batch. Called by the worker thread only.
+	 *
+	 * @param notifications
+	 * @param dropped       number of notifications dropped since the last batch
+	 * @throws Exception if the delivery failed - the batch is not retried
+	 */
+	protected abstract void deliver(List<LogNotification> notifications, long dropped) throws Exception;
+
+	/**
+	 * Loop of the worker thread
+	 */
+	private void deliverBatches() {
+
+		List<LogNotification> batch = new ArrayList<>();
+
+		while (running) {
+
+			try {
+
+				if (queue.drainBatch(batch, batchSize, batchWindowMillis, POLL_MILLIS) > 0) {
+					deliverSafely(batch, queue.takeDropped());
+					batch.clear();
+				}
+
+			} catch (InterruptedException e) {
+				// Stopping - the remaining notifications are delivered there
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Delivers a batch, logging failures
+	 */
+	private void deliverSafely(List<LogNotification> notifications, long dropped) {
+
+		long started = System.nanoTime();
+
+		try {
+			deliver(notifications, dropped);
+		} catch (Exception e) {
+			log.error("Sink {} could not deliver {} notification(s) within {} ms", getName(), notifications.size(),
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), e);
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package org.redquark.logwatcher.core.notifier.impl;
+
+import java.util.List;
+
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+import org.redquark.logwatcher.core.cluster.ClusterMode;
+import org.redquark.logwatcher.core.email.EmailService;
+import org.redquark.logwatcher.core.notification.LogNotification;
+import org.redquark.logwatcher.core.notifier.Notifier;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         The email sink. The {@link EmailService} queues the notifications
+ *         itself and sends them as digests from its own thread; its queue
+ *         never blocks, a full one drops or samples like those of the other
+ *         sinks.
+ *
+ *         While the instance takes part in a cluster aggregation (see
+ *         {@link ClusterMode}) nothing is sent from here - the aggregator sends
+ *         one digest for the whole cluster.
+ *
+ */
+@Component(service = Notifier.class, immediate = true)
+public class EmailNotifier implements Notifier {
+
+	// Reference of the EmailService
+	@Reference
+	private EmailService emailService;
+
+	// Reference of the ClusterMode, present while aggregating in a cluster
+	@Reference(cardinality = ReferenceCardinality.OPTIONAL, policy = ReferencePolicy.DYNAMIC)
+	private volatile ClusterMode clusterMode;
+
+	@Override
+	public String getName() {
+		return "email";
+	}
+
+	@Override
+	public void notify(List<LogNotification> notifications) {
+		if (clusterMode != null) {
+			return;
+		}
+		emailService.sendNotifications(notifications);
+	}
+}
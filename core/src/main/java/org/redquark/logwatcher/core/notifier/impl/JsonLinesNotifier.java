@@ -0,0 +1,120 @@
+package org.redquark.logwatcher.core.notifier.impl;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.Designate;
+import org.redquark.logwatcher.core.configs.JsonLinesNotifierConfiguration;
+import org.redquark.logwatcher.core.metrics.LogWatcherMetrics;
+import org.redquark.logwatcher.core.notification.BackpressurePolicy;
+import org.redquark.logwatcher.core.notification.LogNotification;
+import org.redquark.logwatcher.core.notifier.NotificationJson;
+import org.redquark.logwatcher.core.notifier.Notifier;
+import org.redquark.logwatcher.core.notifier.QueuedNotifier;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Appends every notification as one line of JSON to a local file, e.g.
+ *         for a log shipper or a local process tailing it. Notifications are
+ *         written as soon as they arrive; the file is opened per batch so that
+ *         it can be rotated or deleted at any time.
+ *
+ */
+@Component(service = Notifier.class, configurationPolicy = ConfigurationPolicy.REQUIRE)
+@Designate(ocd = JsonLinesNotifierConfiguration.class, factory = true)
+public class JsonLinesNotifier extends QueuedNotifier {
+
+	// Reference of the LogWatcherMetrics
+	@Reference
+	private LogWatcherMetrics metrics;
+
+	// Number of waiting notifications - published as a gauge
+	private LongSupplier queueDepth;
+
+	// File to append to
+	private Path file;
+
+	// Name of the sink
+	private String name;
+
+	@Activate
+	protected void activate(JsonLinesNotifierConfiguration configuration) {
+
+		file = Paths.get(configuration.file()).toAbsolutePath();
+
+		// Named after the file unless configured - there may be several
+		String configuredName = configuration.name();
+		name = "jsonl:" + (configuredName != null && !configuredName.trim().isEmpty() ? configuredName.trim()
+				: file.getFileName());
+
+		// Writing immediately, one line per notification
+		start(configuration.queueCapacity(), BackpressurePolicy.from(configuration.backpressure()), 1000, 0);
+
+		queueDepth = this::size;
+		metrics.addQueueDepthSource(queueDepth);
+
+		log.info("Appending notifications to {}", file);
+	}
+
+	@Deactivate
+	protected void deactivate() {
+
+		stop();
+
+		if (queueDepth != null) {
+			metrics.removeQueueDepthSource(queueDepth);
+			queueDepth = null;
+		}
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	protected void deliver(List<LogNotification> notifications, long dropped) throws Exception {
+
+		if (dropped > 0) {
+			metrics.dropped(dropped);
+		}
+
+		if (file.getParent() != null) {
+			Files.createDirectories(file.getParent());
+		}
+
+		long started = System.nanoTime();
+
+		try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+				StandardOpenOption.APPEND)) {
+
+			for (LogNotification notification : notifications) {
+				writer.write(NotificationJson.toJson(notification));
+				writer.write('\n');
+			}
+
+			if (dropped > 0) {
+				writer.write("{\"kind\":\"DROPPED\",\"count\":" + dropped + "}\n");
+			}
+
+			metrics.sent(getName(), System.nanoTime() - started, true);
+
+		} catch (IOException e) {
+			metrics.sent(getName(), System.nanoTime() - started, false);
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package org.redquark.logwatcher.core.notifier.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+import javax.json.stream.JsonGenerator;
+
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.Designate;
+import org.redquark.logwatcher.core.configs.WebhookNotifierConfiguration;
+import org.redquark.logwatcher.core.metrics.LogWatcherMetrics;
+import org.redquark.logwatcher.core.notification.BackpressurePolicy;
+import org.redquark.logwatcher.core.notification.LogNotification;
+import org.redquark.logwatcher.core.notifier.NotificationJson;
+import org.redquark.logwatcher.core.notifier.Notifier;
+import org.redquark.logwatcher.core.notifier.QueuedNotifier;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Posts batches of notifications to a webhook as
+ *
+ *         <pre>
+ * {"dropped": 0, "notifications": [{"kind": "NEW", "type": ..., "trace": ...}, ...]}
+ *         </pre>
+ *
+ *         Any response other than 2xx counts as a failure. Failed batches are
+ *         logged and not retried - the queue keeps moving.
+ *
+ */
+@Component(service = Notifier.class, configurationPolicy = ConfigurationPolicy.REQUIRE)
+@Designate(ocd = WebhookNotifierConfiguration.class, factory = true)
+public class WebhookNotifier extends QueuedNotifier {
+
+	// Reference of the LogWatcherMetrics
+	@Reference
+	private LogWatcherMetrics metrics;
+
+	// Number of waiting notifications - published as a gauge
+	private LongSupplier queueDepth;
+
+	// URL of the webhook
+	private URL url;
+
+	// Connect and read timeout
+	private int timeoutMillis;
+
+	// Name of the sink
+	private String name;
+
+	@Activate
+	protected void activate(WebhookNotifierConfiguration configuration) throws IOException {
+
+		url = new URL(configuration.url());
+		timeoutMillis = Math.max(1, configuration.timeoutMillis());
+
+		// Named after the webhook unless configured - there may be several
+		String configuredName = configuration.name();
+		name = "webhook:" + (configuredName != null && !configuredName.trim().isEmpty() ? configuredName.trim()
+				: url.getPort() < 0 ? url.getHost() : url.getHost() + ":" + url.getPort());
+
+		start(configuration.queueCapacity(), BackpressurePolicy.from(configuration.backpressure()),
+				configuration.batchSize(), configuration.batchWindowMillis());
+
+		queueDepth = this::size;
+		metrics.addQueueDepthSource(queueDepth);
+
+		log.info("Posting notifications to {}", url);
+	}
+
+	@Deactivate
+	protected void deactivate() {
+
+		stop();
+
+		if (queueDepth != null) {
+			metrics.removeQueueDepthSource(queueDepth);
+			queueDepth = null;
+		}
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	protected void deliver(List<LogNotification> notifications, long dropped) throws Exception {
+
+		if (dropped > 0) {
+			metrics.dropped(dropped);
+		}
+
+		long started = System.nanoTime();
+		boolean delivered = false;
+
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+
+		try {
+
+			connection.setRequestMethod("POST");
+			connection.setConnectTimeout(timeoutMillis);
+			connection.setReadTimeout(timeoutMillis);
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+
+			try (OutputStream out = connection.getOutputStream();
+					Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+
+				JsonGenerator json = NotificationJson.generator(writer);
+				json.writeStartObject();
+				json.write("dropped", dropped);
+				json.writeStartArray("notifications");
+				for (LogNotification notification : notifications) {
+					NotificationJson.write(json, notification);
+				}
+				json.writeEnd();
+				json.writeEnd();
+				json.flush();
+			}
+
+			int status = connection.getResponseCode();
+
+			// Reading the response fully so that the connection can be reused
+			try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+				if (in != null) {
+					byte[] buffer = new byte[1024];
+					while (in.read(buffer) >= 0) {
+						// Discarding
+					}
+				}
+			}
+
+			if (status / 100 != 2) {
+				throw new IOException("Webhook " + url + " responded with status " + status);
+			}
+
+			delivered = true;
+
+		} finally {
+			metrics.sent(getName(), System.nanoTime() - started, delivered);
+		}
+	}
+}
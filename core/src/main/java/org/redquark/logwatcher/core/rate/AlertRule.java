@@ -0,0 +1,154 @@
+package org.redquark.logwatcher.core.rate;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         One alerting rule on the rate of matching records. Rules are written
+ *         as
+ *
+ *         <pre>
+ * InvalidItemStateException &gt; 50 in 1m       more than 50 within a minute
+ * logger:com.foo.Importer &gt; 10 in 30s        per logger instead of per type
+ * * &gt; 500 in 15m                             all configured types together
+ * InvalidItemStateException &gt; 5x baseline    the last minute more than 5 times
+ *                                             the average minute of the last hour
+ *         </pre>
+ *
+ *         The type is written as configured, without the class:/regex: prefix.
+ *         Windows are given in s, m or h and may not exceed one hour.
+ *
+ */
+public final class AlertRule {
+
+	// Prefix of rules on a logger
+	public static final String LOGGER_PREFIX = "logger:";
+
+	// Name which stands for all types
+	public static final String ALL = "*";
+
+	// Syntax of a rule
+	private static final Pattern SYNTAX = Pattern.compile(
+			"^\\s*(\\S+)\\s*>\\s*(?:(\\d+)\\s+in\\s+(\\d+)\\s*([smh])|(\\d+(?:\\.\\d+)?)\\s*x\\s+baseline)\\s*$",
+			Pattern.CASE_INSENSITIVE);
+
+	// The rule as written
+	private final String text;
+
+	// Type or logger name the rule applies to
+	private final String name;
+
+	// Flag to determine if the name is a logger
+	private final boolean logger;
+
+	// Maximum count within the window, or -1 for baseline rules
+	private final long threshold;
+
+	// Window of threshold rules
+	private final long windowMillis;
+
+	// Factor over the baseline, or -1 for threshold rules
+	private final double factor;
+
+	private AlertRule(String text, String name, boolean logger, long threshold, long windowMillis, double factor) {
+		this.text = text;
+		this.name = name;
+		this.logger = logger;
+		this.threshold = threshold;
+		this.windowMillis = windowMillis;
+		this.factor = factor;
+	}
+
+	/**
+	 * Parses a rule
+	 *
+	 * @param rule
+	 * @return {@link AlertRule}
+	 * @throws IllegalArgumentException if the rule cannot be parsed
+	 */
+	public static AlertRule parse(String rule) {
+
+		Matcher matcher = SYNTAX.matcher(rule == null ? "" : rule);
+
+		if (!matcher.matches()) {
+			throw new IllegalArgumentException("Invalid alert rule '" + rule
+					+ "', expected '<type> > <count> in <n>s|m|h' or '<type> > <factor>x baseline'");
+		}
+
+		String name = matcher.group(1);
+		boolean logger = name.startsWith(LOGGER_PREFIX);
+		if (logger) {
+			name = name.substring(LOGGER_PREFIX.length());
+		}
+
+		// Baseline rule
+		if (matcher.group(5) != null) {
+			return new AlertRule(rule.trim(), name, logger, -1, RateCounter.MINUTE,
+					Double.parseDouble(matcher.group(5)));
+		}
+
+		long amount = Long.parseLong(matcher.group(3));
+		TimeUnit unit;
+		switch (matcher.group(4).toLowerCase(Locale.ROOT)) {
+		case "s":
+			unit = TimeUnit.SECONDS;
+			break;
+		case "m":
+			unit = TimeUnit.MINUTES;
+			break;
+		default:
+			unit = TimeUnit.HOURS;
+		}
+
+		long windowMillis = unit.toMillis(amount);
+		if (windowMillis <= 0 || windowMillis > RateCounter.MAX_WINDOW_MILLIS) {
+			throw new IllegalArgumentException("Invalid alert rule '" + rule + "', the window must be 1s to 1h");
+		}
+
+		return new AlertRule(rule.trim(), name, logger, Long.parseLong(matcher.group(2)), windowMillis, -1);
+	}
+
+	/**
+	 * @return key of the counter the rule is evaluated on
+	 */
+	String key() {
+		return logger ? LOGGER_PREFIX + name : name;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean isLogger() {
+		return logger;
+	}
+
+	public boolean isBaseline() {
+		return factor > 0;
+	}
+
+	public long getThreshold() {
+		return threshold;
+	}
+
+	public long getWindowMillis() {
+		return windowMillis;
+	}
+
+	public double getFactor() {
+		return factor;
+	}
+
+	@Override
+	public String toString() {
+		return text;
+	}
+}
@@ -0,0 +1,90 @@
+package org.redquark.logwatcher.core.rate;
+
+import java.util.Arrays;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Counts occurrences in fixed width time buckets kept in a ring, so
+ *         that only the most recent buckets are remembered. Every slot knows
+ *         the bucket it holds; a slot still holding an older bucket counts as
+ *         empty and is reused. Memory is fixed at construction.
+ *
+ */
+final class BucketRing {
+
+	// Width of a bucket
+	private final long widthMillis;
+
+	// Counts of the buckets
+	private final long[] counts;
+
+	// Bucket number (time / width) held by every slot
+	private final long[] buckets;
+
+	BucketRing(int size, long widthMillis) {
+		this.widthMillis = widthMillis;
+		this.counts = new long[size];
+		this.buckets = new long[size];
+		Arrays.fill(buckets, Long.MIN_VALUE);
+	}
+
+	/**
+	 * Adds occurrences at the given time. Occurrences older than the buckets in
+	 * the ring are ignored.
+	 *
+	 * @param time
+	 * @param count
+	 */
+	void add(long time, long count) {
+
+		long bucket = Math.floorDiv(time, widthMillis);
+		int slot = (int) Math.floorMod(bucket, (long) counts.length);
+
+		if (buckets[slot] != bucket) {
+			if (buckets[slot] > bucket) {
+				return;
+			}
+			buckets[slot] = bucket;
+			counts[slot] = 0;
+		}
+		counts[slot] += count;
+	}
+
+	/**
+	 * @param now
+	 * @param first number of buckets before the bucket of now where the range
+	 *              starts
+	 * @param last  number of buckets before the bucket of now where the range
+	 *              ends, inclusive
+	 * @return sum of the buckets in the range
+	 */
+	long sum(long now, int first, int last) {
+
+		long current = Math.floorDiv(now, widthMillis);
+		long from = current - first;
+		long to = current - last;
+
+		long sum = 0;
+		for (int slot = 0; slot < counts.length; slot++) {
+			if (buckets[slot] >= from && buckets[slot] <= to) {
+				sum += counts[slot];
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * @return number of buckets in the ring
+	 */
+	int size() {
+		return counts.length;
+	}
+
+	/**
+	 * @return width of a bucket
+	 */
+	long getWidthMillis() {
+		return widthMillis;
+	}
+}
@@ -0,0 +1,156 @@
+package org.redquark.logwatcher.core.rate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.redquark.logwatcher.core.notification.LogNotification;
+import org.redquark.logwatcher.core.notification.LogNotification.Kind;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Counts the matching records per type and per logger in time buckets
+ *         and evaluates the configured {@link AlertRule}s on them. A rule
+ *         fires one alert when its condition becomes true and stays silent
+ *         until the condition has cleared again.
+ *
+ *         Only the types and loggers named in rules are counted, each with a
+ *         fixed number of buckets, so memory does not grow with the log volume.
+ *
+ */
+public final class RateAggregator {
+
+	// Completed minutes needed before baseline rules are evaluated
+	private static final int MIN_BASELINE_MINUTES = 10;
+
+	// Logger
+	private static final Logger LOG = LoggerFactory.getLogger(RateAggregator.class);
+
+	// Rules to evaluate
+	private final List<AlertRule> rules = new ArrayList<>();
+
+	// Flag per rule to determine if its condition currently holds
+	private final List<Boolean> firing = new ArrayList<>();
+
+	// Counters by key - only the keys of the rules
+	private final Map<String, RateCounter> counters = new HashMap<>();
+
+	/**
+	 * @param rules rules as configured. Invalid rules are logged and skipped.
+	 * @param now   time since when occurrences are counted
+	 */
+	public RateAggregator(String[] rules, long now) {
+
+		if (rules == null) {
+			return;
+		}
+
+		for (String rule : rules) {
+
+			if (rule == null || rule.trim().isEmpty()) {
+				continue;
+			}
+
+			try {
+				AlertRule alertRule = AlertRule.parse(rule);
+				this.rules.add(alertRule);
+				firing.add(false);
+				counters.computeIfAbsent(alertRule.key(), key -> new RateCounter(now));
+			} catch (IllegalArgumentException e) {
+				LOG.error(e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * @return true if there is no valid rule
+	 */
+	public boolean isEmpty() {
+		return rules.isEmpty();
+	}
+
+	/**
+	 * Counts a matching record
+	 *
+	 * @param type   type which matched
+	 * @param logger logger of the record, may be null
+	 * @param time   time of the record
+	 */
+	public void record(String type, String logger, long time) {
+		record(type, logger, time, 1);
+	}
+
+	/**
+	 * Counts several matching records logged at the same time
+	 *
+	 * @param type   type which matched
+	 * @param logger logger of the records, may be null
+	 * @param time   time of the records
+	 * @param count  number of records
+	 */
+	public synchronized void record(String type, String logger, long time, long count) {
+
+		add(type, time, count);
+		add(AlertRule.ALL, time, count);
+
+		if (logger != null) {
+			add(AlertRule.LOGGER_PREFIX + logger, time, count);
+		}
+	}
+
+	/**
+	 * Evaluates the rules
+	 *
+	 * @param now
+	 * @return alerts of the rules whose condition has become true
+	 */
+	public synchronized List<LogNotification> evaluate(long now) {
+
+		List<LogNotification> alerts = new ArrayList<>();
+
+		for (int i = 0; i < rules.size(); i++) {
+
+			AlertRule rule = rules.get(i);
+			RateCounter counter = counters.get(rule.key());
+
+			long count = counter.count(now, rule.getWindowMillis());
+			String reason = null;
+
+			if (rule.isBaseline()) {
+				double baseline = counter.baselinePerMinute(now, MIN_BASELINE_MINUTES);
+				// A type which has not occurred at all has a baseline of one per minute
+				if (baseline >= 0 && count > rule.getFactor() * Math.max(1, baseline)) {
+					reason = String.format("%d occurrence(s) in the last minute, %.1f per minute in the last hour",
+							count, baseline);
+				}
+			} else if (count > rule.getThreshold()) {
+				reason = String.format("%d occurrence(s) in the last %d second(s)", count,
+						rule.getWindowMillis() / RateCounter.SECOND);
+			}
+
+			// Firing once per transition into the condition
+			if (reason != null && !firing.get(i)) {
+				alerts.add(new LogNotification(Kind.ALERT, rule.getText(), null, reason, count,
+						now - rule.getWindowMillis(), now));
+			}
+			firing.set(i, reason != null);
+		}
+		return alerts;
+	}
+
+	/**
+	 * Adds an occurrence to the counter of the key, if there is one
+	 */
+	private void add(String key, long time, long count) {
+
+		RateCounter counter = counters.get(key);
+
+		if (counter != null) {
+			counter.add(time, count);
+		}
+	}
+}
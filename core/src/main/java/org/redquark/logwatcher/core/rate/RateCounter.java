@@ -0,0 +1,82 @@
+package org.redquark.logwatcher.core.rate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Occurrences of one key (an error/exception type or a logger) over the
+ *         last hour: per second for the last minute and per minute for the
+ *         last hour, plus the current minute
+ *
+ */
+final class RateCounter {
+
+	// Width of the fine buckets
+	static final long SECOND = TimeUnit.SECONDS.toMillis(1);
+
+	// Width of the coarse buckets
+	static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+	// Longest window which can be counted
+	static final long MAX_WINDOW_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+	// Last minute per second
+	private final BucketRing seconds = new BucketRing(60, SECOND);
+
+	// Current minute and the last hour per minute
+	private final BucketRing minutes = new BucketRing(61, MINUTE);
+
+	// Time since when occurrences are counted
+	private final long since;
+
+	/**
+	 * @param since time since when occurrences are counted
+	 */
+	RateCounter(long since) {
+		this.since = since;
+	}
+
+	/**
+	 * @param time
+	 * @param count number of occurrences at that time
+	 */
+	void add(long time, long count) {
+		seconds.add(time, count);
+		minutes.add(time, count);
+	}
+
+	/**
+	 * @param now
+	 * @param windowMillis at most an hour
+	 * @return occurrences within the window ending now. Windows of up to a minute
+	 *         are counted per second, longer ones per minute.
+	 */
+	long count(long now, long windowMillis) {
+
+		BucketRing ring = windowMillis <= MINUTE ? seconds : minutes;
+
+		int buckets = (int) Math.min(ring.size(), (windowMillis + ring.getWidthMillis() - 1) / ring.getWidthMillis());
+
+		return ring.sum(now, buckets - 1, 0);
+	}
+
+	/**
+	 * @param now
+	 * @param minMinutes
+	 * @return average occurrences per minute over the completed minutes of the
+	 *         last hour, or -1 if less than the given number of minutes have been
+	 *         counted
+	 */
+	double baselinePerMinute(long now, int minMinutes) {
+
+		// Completed minutes since the first occurrence, at most an hour
+		long known = Math.min(60, Math.floorDiv(now, MINUTE) - Math.floorDiv(since, MINUTE));
+
+		if (known < minMinutes) {
+			return -1;
+		}
+
+		return (double) minutes.sum(now, (int) known, 1) / known;
+	}
+}
@@ -0,0 +1,62 @@
+package org.redquark.logwatcher.core.records;
+
+import org.redquark.logwatcher.core.event.LogLevel;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         The first line of a log record split into its fields, as returned by
+ *         the queries of the {@link RecordBufferService}. Thread and message
+ *         are cut to the width of the buffer.
+ *
+ */
+public final class LogRecord {
+
+	// Timestamp of the record in epoch milliseconds
+	private final long timestamp;
+
+	// Level of the record
+	private final LogLevel level;
+
+	// Thread which wrote the record
+	private final String thread;
+
+	// Logger which wrote the record, empty if it was not kept
+	private final String logger;
+
+	// Message of the first line
+	private final String message;
+
+	public LogRecord(long timestamp, LogLevel level, String thread, String logger, String message) {
+		this.timestamp = timestamp;
+		this.level = level;
+		this.thread = thread;
+		this.logger = logger;
+		this.message = message;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public LogLevel getLevel() {
+		return level;
+	}
+
+	public String getThread() {
+		return thread;
+	}
+
+	public String getLogger() {
+		return logger;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	@Override
+	public String toString() {
+		return "LogRecord [timestamp=" + timestamp + ", level=" + level + ", logger=" + logger + "]";
+	}
+}
@@ -0,0 +1,156 @@
+package org.redquark.logwatcher.core.records;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.redquark.logwatcher.core.tail.ByteLines;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Interns logger names into dense int ids. The lookup hashes and
+ *         compares the raw bytes of the line, so a name which is already known
+ *         costs no allocation; only a new name is copied once. An application
+ *         has a few thousand loggers at most - beyond the capacity every new
+ *         name gets {@link #OTHER}.
+ *
+ *         Not thread safe, the {@link RecordRing} guards it.
+ *
+ */
+public final class LoggerNames {
+
+	// Id of the names beyond the capacity
+	public static final int OTHER = 0;
+
+	// Maximum number of distinct names
+	private final int capacity;
+
+	// Names by id, as bytes and as strings
+	private byte[][] bytes;
+	private String[] names;
+
+	// Open addressing table of id + 1 by hash, 0 is empty
+	private int[] slots;
+
+	// Number of ids handed out, including OTHER
+	private int size = 1;
+
+	/**
+	 * @param capacity maximum number of distinct names
+	 */
+	public LoggerNames(int capacity) {
+		this.capacity = Math.max(2, capacity);
+		this.bytes = new byte[64][];
+		this.names = new String[64];
+		this.names[OTHER] = "";
+		this.slots = new int[128];
+	}
+
+	/**
+	 * @param buffer
+	 * @param start
+	 * @param end
+	 * @return id of the name in the region [start, end) of the buffer
+	 */
+	public int intern(ByteBuffer buffer, int start, int end) {
+
+		int hash = hash(buffer, start, end);
+		int mask = slots.length - 1;
+
+		for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+
+			int id = slots[slot] - 1;
+			if (id < 0) {
+				break;
+			}
+			if (equals(bytes[id], buffer, start, end)) {
+				return id;
+			}
+		}
+
+		if (size >= capacity) {
+			return OTHER;
+		}
+
+		byte[] name = new byte[end - start];
+		ByteLines.copy(buffer, start, end, name, 0);
+		return add(name, hash);
+	}
+
+	/**
+	 * @param id
+	 * @return the name with the id
+	 */
+	public String name(int id) {
+		return names[id];
+	}
+
+	/**
+	 * @return number of ids handed out, including {@link #OTHER}
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Adds a new name, growing the arrays if needed
+	 */
+	private int add(byte[] name, int hash) {
+
+		int id = size++;
+
+		if (id == bytes.length) {
+			bytes = Arrays.copyOf(bytes, id * 2);
+			names = Arrays.copyOf(names, id * 2);
+		}
+		bytes[id] = name;
+		names[id] = new String(name, StandardCharsets.UTF_8);
+
+		// Keeping the table at most half full
+		if (size * 2 > slots.length) {
+			slots = new int[slots.length * 2];
+			for (int i = 1; i < size; i++) {
+				insert(i, hash(bytes[i]));
+			}
+		} else {
+			insert(id, hash);
+		}
+
+		return id;
+	}
+
+	private void insert(int id, int hash) {
+		int mask = slots.length - 1;
+		int slot = hash & mask;
+		while (slots[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		slots[slot] = id + 1;
+	}
+
+	private static int hash(ByteBuffer buffer, int start, int end) {
+		int hash = 1;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + buffer.get(i);
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	private static int hash(byte[] name) {
+		return hash(ByteBuffer.wrap(name), 0, name.length);
+	}
+
+	private static boolean equals(byte[] name, ByteBuffer buffer, int start, int end) {
+
+		if (name.length != end - start) {
+			return false;
+		}
+		for (int i = 0; i < name.length; i++) {
+			if (name[i] != buffer.get(start + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,67 @@
+package org.redquark.logwatcher.core.records;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * @author Anirudh Sharma
+ * 
+ *         This interface exposes methods for keeping the most recent log
+ *         records in memory and filtering them by level, logger and time
+ *
+ */
+public interface RecordBufferService {
+
+	/**
+	 * Parses the first line of a record and keeps it. Lines which do not start a
+	 * record are ignored.
+	 * 
+	 * @param buffer
+	 * @param start
+	 * @param end
+	 */
+	public void append(ByteBuffer buffer, int start, int end);
+
+	/**
+	 * @return an empty collector of the record starts of one catch-up chunk,
+	 *         holding as many as the buffer keeps
+	 */
+	public RecordStarts recordStarts();
+
+	/**
+	 * Reads the first lines of the records the chunks of a catch-up found and
+	 * keeps them, in file order. Only the most recent records are read - the
+	 * older ones would be overwritten anyway.
+	 * 
+	 * @param file   file the chunks were read from
+	 * @param chunks record starts of the chunks, in file order
+	 */
+	public void append(Path file, List<RecordStarts> chunks);
+
+	/**
+	 * Finds the kept records matching the filter, newest first
+	 * 
+	 * @param filter
+	 * @param from   start of the range in epoch milliseconds, inclusive
+	 * @param to     end of the range in epoch milliseconds, inclusive
+	 * @param limit  maximum number of records to return
+	 * @return the records
+	 */
+	public List<LogRecord> query(RecordFilter filter, long from, long to, int limit);
+
+	/**
+	 * Counts the kept records matching the filter
+	 * 
+	 * @param filter
+	 * @param from   start of the range in epoch milliseconds, inclusive
+	 * @param to     end of the range in epoch milliseconds, inclusive
+	 * @return number of records
+	 */
+	public long count(RecordFilter filter, long from, long to);
+
+	/**
+	 * @return true if records are kept at all
+	 */
+	public boolean isEnabled();
+}
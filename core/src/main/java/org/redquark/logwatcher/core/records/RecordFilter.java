@@ -0,0 +1,109 @@
+package org.redquark.logwatcher.core.records;
+
+import org.redquark.logwatcher.core.event.LogLevel;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         A query over the {@link RecordRing} - a minimum level and a logger
+ *         pattern, written like
+ *
+ *         <pre>
+ * ERROR from com.foo.*
+ * WARN
+ * from org.apache.sling.engine.impl.SlingRequestProcessorImpl
+ *         </pre>
+ *
+ *         A pattern ending with "*" matches every logger starting with the
+ *         rest, any other pattern only the logger of that name. The pattern is
+ *         matched once per logger id, not once per record.
+ *
+ */
+public final class RecordFilter {
+
+	// Keyword before the logger pattern
+	private static final String FROM = "from";
+
+	// Least severe level which matches
+	private final LogLevel minLevel;
+
+	// Logger name or prefix, null for every logger
+	private final String logger;
+
+	// Flag to determine if the logger is a prefix
+	private final boolean prefix;
+
+	public RecordFilter(LogLevel minLevel, String logger, boolean prefix) {
+		this.minLevel = minLevel == null ? LogLevel.TRACE : minLevel;
+		this.logger = logger;
+		this.prefix = prefix;
+	}
+
+	/**
+	 * @param query e.g. "ERROR from com.foo.*", empty for every record
+	 * @return the filter
+	 * @throws IllegalArgumentException if the query has another shape
+	 */
+	public static RecordFilter parse(String query) {
+
+		String[] words = query == null ? new String[0] : query.trim().split("\\s+");
+		int position = 0;
+
+		LogLevel level = null;
+		if (position < words.length && !words[position].isEmpty() && !FROM.equalsIgnoreCase(words[position])) {
+			level = LogLevel.from(words[position]);
+			if (level == null) {
+				throw new IllegalArgumentException("Unknown level " + words[position]);
+			}
+			position++;
+		}
+
+		String logger = null;
+		boolean prefix = false;
+		if (position < words.length && FROM.equalsIgnoreCase(words[position])) {
+			if (position + 1 >= words.length) {
+				throw new IllegalArgumentException("Logger missing after " + FROM);
+			}
+			logger = words[position + 1];
+			if (logger.endsWith("*")) {
+				logger = logger.substring(0, logger.length() - 1);
+				prefix = true;
+			}
+			position += 2;
+		}
+
+		if (position < words.length && !words[position].isEmpty()) {
+			throw new IllegalArgumentException("Unexpected " + words[position]);
+		}
+
+		return new RecordFilter(level, logger, prefix);
+	}
+
+	/**
+	 * @param levelId ordinal of the level of a record
+	 * @return true if the level is severe enough
+	 */
+	public boolean matchesLevel(int levelId) {
+		return levelId >= minLevel.ordinal();
+	}
+
+	/**
+	 * @return true if every logger matches
+	 */
+	public boolean matchesAnyLogger() {
+		return logger == null;
+	}
+
+	/**
+	 * @param name
+	 * @return true if the logger matches the pattern
+	 */
+	public boolean matchesLogger(String name) {
+		return logger == null || (prefix ? name.startsWith(logger) : name.equals(logger));
+	}
+
+	@Override
+	public String toString() {
+		return minLevel + (logger == null ? "" : " from " + logger + (prefix ? "*" : ""));
+	}
+}
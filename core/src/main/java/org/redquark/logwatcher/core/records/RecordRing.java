@@ -0,0 +1,177 @@
+package org.redquark.logwatcher.core.records;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.redquark.logwatcher.core.event.LogLevel;
+import org.redquark.logwatcher.core.event.LogRecordParser;
+import org.redquark.logwatcher.core.tail.ByteLines;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         The most recent records in a fixed number of slots, column by column:
+ *         timestamps, level ids and interned logger ids in primitive arrays,
+ *         thread and message of each record in a fixed width slice of one byte
+ *         array. Appending overwrites the oldest slot and allocates nothing
+ *         once the logger is known; a query scans the primitive columns and only
+ *         decodes the records which matched.
+ *
+ */
+public final class RecordRing {
+
+	// Number of slots
+	private final int capacity;
+
+	// Bytes of thread and message kept per record
+	private final int width;
+
+	// Columns by slot
+	private final long[] timestamps;
+	private final byte[] levels;
+	private final int[] loggers;
+	private final short[] threadLengths;
+	private final short[] textLengths;
+	private final byte[] texts;
+
+	// Interned logger names
+	private final LoggerNames loggerNames;
+
+	// Number of records appended in total, the next slot is written % capacity
+	private long written;
+
+	/**
+	 * @param capacity   number of records kept
+	 * @param width      bytes of thread and message kept per record
+	 * @param maxLoggers maximum number of distinct logger names
+	 */
+	public RecordRing(int capacity, int width, int maxLoggers) {
+		this.capacity = Math.max(1, capacity);
+		this.width = Math.max(16, Math.min(Short.MAX_VALUE, width));
+		this.timestamps = new long[this.capacity];
+		this.levels = new byte[this.capacity];
+		this.loggers = new int[this.capacity];
+		this.threadLengths = new short[this.capacity];
+		this.textLengths = new short[this.capacity];
+		this.texts = new byte[this.capacity * this.width];
+		this.loggerNames = new LoggerNames(maxLoggers);
+	}
+
+	/**
+	 * Appends the record the parser has just parsed
+	 *
+	 * @param parsed parser which returned true for the line
+	 * @param buffer buffer the line was parsed from
+	 */
+	public synchronized void append(LogRecordParser parsed, ByteBuffer buffer) {
+
+		int slot = (int) (written++ % capacity);
+
+		timestamps[slot] = parsed.getTimestamp();
+		levels[slot] = (byte) parsed.getLevel().ordinal();
+		loggers[slot] = loggerNames.intern(buffer, parsed.getLoggerStart(), parsed.getLoggerEnd());
+
+		// Thread first, then as much of the message as fits
+		int base = slot * width;
+		int thread = Math.min(width, parsed.getThreadEnd() - parsed.getThreadStart());
+		ByteLines.copy(buffer, parsed.getThreadStart(), parsed.getThreadStart() + thread, texts, base);
+		int message = Math.min(width - thread, parsed.getMessageEnd() - parsed.getMessageStart());
+		ByteLines.copy(buffer, parsed.getMessageStart(), parsed.getMessageStart() + message, texts, base + thread);
+
+		threadLengths[slot] = (short) thread;
+		textLengths[slot] = (short) (thread + message);
+	}
+
+	/**
+	 * Finds the matching records in the time range, newest first
+	 *
+	 * @param filter
+	 * @param from   start of the range in epoch milliseconds, inclusive
+	 * @param to     end of the range in epoch milliseconds, inclusive
+	 * @param limit  maximum number of records to return
+	 * @return the records
+	 */
+	public synchronized List<LogRecord> query(RecordFilter filter, long from, long to, int limit) {
+
+		List<LogRecord> records = new ArrayList<>(Math.min(limit, 256));
+		byte[] verdicts = filter.matchesAnyLogger() ? null : new byte[loggerNames.size()];
+
+		long oldest = Math.max(0, written - capacity);
+		for (long i = written - 1; i >= oldest && records.size() < limit; i--) {
+
+			int slot = (int) (i % capacity);
+			if (matches(slot, filter, from, to, verdicts)) {
+				records.add(decode(slot));
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * Counts the matching records in the time range
+	 *
+	 * @param filter
+	 * @param from   start of the range in epoch milliseconds, inclusive
+	 * @param to     end of the range in epoch milliseconds, inclusive
+	 * @return number of records
+	 */
+	public synchronized long count(RecordFilter filter, long from, long to) {
+
+		byte[] verdicts = filter.matchesAnyLogger() ? null : new byte[loggerNames.size()];
+
+		long count = 0;
+		int size = (int) Math.min(written, capacity);
+		for (int slot = 0; slot < size; slot++) {
+			if (matches(slot, filter, from, to, verdicts)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return maximum number of records kept
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return number of records kept
+	 */
+	public synchronized int size() {
+		return (int) Math.min(written, capacity);
+	}
+
+	/**
+	 * @param verdicts logger ids already matched: 0 unknown, 1 match, 2 no match
+	 */
+	private boolean matches(int slot, RecordFilter filter, long from, long to, byte[] verdicts) {
+
+		if (!filter.matchesLevel(levels[slot]) || timestamps[slot] < from || timestamps[slot] > to) {
+			return false;
+		}
+		if (verdicts == null) {
+			return true;
+		}
+
+		int logger = loggers[slot];
+		if (verdicts[logger] == 0) {
+			verdicts[logger] = (byte) (logger != LoggerNames.OTHER
+					&& filter.matchesLogger(loggerNames.name(logger)) ? 1 : 2);
+		}
+		return verdicts[logger] == 1;
+	}
+
+	private LogRecord decode(int slot) {
+
+		int base = slot * width;
+		int thread = threadLengths[slot];
+
+		return new LogRecord(timestamps[slot], LogLevel.of(levels[slot]),
+				new String(texts, base, thread, StandardCharsets.UTF_8), loggerNames.name(loggers[slot]),
+				new String(texts, base + thread, textLengths[slot] - thread, StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,67 @@
+package org.redquark.logwatcher.core.records;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.redquark.logwatcher.core.tail.LineHandler;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         The file offsets of the first lines of the records one catch-up
+ *         chunk read. The chunks of a catch-up are read in parallel, so instead
+ *         of appending to the {@link RecordRing} out of file order they only
+ *         collect where their records start; the most recent ones are read
+ *         again and appended once the chunks are merged. Only the last offsets
+ *         which still fit into the ring are kept.
+ *
+ *         Not thread safe, a chunk is read by one thread.
+ *
+ */
+public final class RecordStarts implements LineHandler {
+
+	// Number of offsets allocated at first
+	private static final int INITIAL_CAPACITY = 1024;
+
+	// Maximum number of offsets kept
+	private final int capacity;
+
+	// Offsets by slot, grown up to the capacity
+	private long[] offsets = new long[0];
+
+	// Number of offsets collected in total, the next slot is written % capacity
+	private long written;
+
+	/**
+	 * @param capacity maximum number of offsets kept
+	 */
+	public RecordStarts(int capacity) {
+		this.capacity = Math.max(1, capacity);
+	}
+
+	@Override
+	public void onLine(ByteBuffer buffer, int start, int end, long offset) {
+
+		// Growing until the capacity is reached, overwriting the oldest afterwards
+		if (written < capacity && written == offsets.length) {
+			offsets = Arrays.copyOf(offsets, (int) Math.min(capacity, Math.max(INITIAL_CAPACITY, written * 2)));
+		}
+
+		offsets[(int) (written++ % capacity)] = offset;
+	}
+
+	/**
+	 * @return number of offsets kept
+	 */
+	public int size() {
+		return (int) Math.min(written, capacity);
+	}
+
+	/**
+	 * @param index 0 for the oldest offset kept
+	 * @return the offset
+	 */
+	public long get(int index) {
+		return offsets[(int) ((written - size() + index) % capacity)];
+	}
+}
@@ -0,0 +1,174 @@
+package org.redquark.logwatcher.core.records.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.metatype.annotations.Designate;
+import org.redquark.logwatcher.core.configs.LogWatcherRecordBufferConfiguration;
+import org.redquark.logwatcher.core.event.LogRecordParser;
+import org.redquark.logwatcher.core.records.LogRecord;
+import org.redquark.logwatcher.core.records.RecordBufferService;
+import org.redquark.logwatcher.core.records.RecordFilter;
+import org.redquark.logwatcher.core.records.RecordRing;
+import org.redquark.logwatcher.core.records.RecordStarts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Keeps the records of the watched files in one {@link RecordRing}.
+ *         Every scanning thread parses with a parser of its own; only the
+ *         append into the ring is serialized. The chunks of a catch-up do not
+ *         append at all - the records they found are read again and appended
+ *         in file order by the scan once they are merged.
+ *
+ */
+@Component(service = RecordBufferService.class, immediate = true)
+@Designate(ocd = LogWatcherRecordBufferConfiguration.class)
+public class RecordBufferServiceImpl implements RecordBufferService {
+
+	// Bytes read at a time when reading the records of a catch-up again - a
+	// longer line is cut, the ring keeps less of it anyway
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+	// Logger
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	// Parser of every scanning thread
+	private final ThreadLocal<LogRecordParser> parsers = ThreadLocal.withInitial(LogRecordParser::new);
+
+	// The records, null if the buffer is disabled
+	private volatile RecordRing ring;
+
+	@Activate
+	protected void activate(LogWatcherRecordBufferConfiguration configuration) {
+
+		if (configuration.capacity() <= 0) {
+			ring = null;
+			log.info("Record buffer is disabled");
+			return;
+		}
+
+		ring = new RecordRing(configuration.capacity(), configuration.recordWidth(), configuration.maxLoggers());
+		log.info("Keeping the last {} records in memory", configuration.capacity());
+	}
+
+	@Override
+	public void append(ByteBuffer buffer, int start, int end) {
+
+		RecordRing current = ring;
+		if (current == null) {
+			return;
+		}
+
+		LogRecordParser parser = parsers.get();
+		if (parser.parse(buffer, start, end)) {
+			current.append(parser, buffer);
+		}
+	}
+
+	@Override
+	public RecordStarts recordStarts() {
+		RecordRing current = ring;
+		return new RecordStarts(current == null ? 1 : current.getCapacity());
+	}
+
+	@Override
+	public void append(Path file, List<RecordStarts> chunks) {
+
+		RecordRing current = ring;
+		if (current == null) {
+			return;
+		}
+
+		// Records which the more recent ones would overwrite are not read at all
+		long skipped = -current.getCapacity();
+		for (RecordStarts chunk : chunks) {
+			skipped += chunk.size();
+		}
+
+		LogRecordParser parser = parsers.get();
+		ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		buffer.limit(0);
+
+		// File offset of the first byte in the buffer
+		long bufferStart = 0;
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+			for (RecordStarts chunk : chunks) {
+				for (int i = 0; i < chunk.size(); i++) {
+
+					if (skipped-- > 0) {
+						continue;
+					}
+
+					// The offsets ascend - refilling from the line once it is not in the
+					// buffer up to its end
+					long offset = chunk.get(i);
+					int start = (int) Math.min(Integer.MAX_VALUE, offset - bufferStart);
+					int end = offset >= bufferStart ? lineEnd(buffer, start) : -1;
+					if (end < 0) {
+						bufferStart = offset;
+						buffer.clear();
+						while (buffer.hasRemaining() && channel.read(buffer, bufferStart + buffer.position()) > 0) {
+							// Filling
+						}
+						buffer.flip();
+						start = 0;
+						end = lineEnd(buffer, 0);
+						if (end < 0) {
+							end = buffer.limit();
+						}
+					}
+
+					if (parser.parse(buffer, start, end)) {
+						current.append(parser, buffer);
+					}
+				}
+			}
+
+		} catch (IOException e) {
+			log.error(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public List<LogRecord> query(RecordFilter filter, long from, long to, int limit) {
+		RecordRing current = ring;
+		return current == null ? Collections.emptyList() : current.query(filter, from, to, limit);
+	}
+
+	@Override
+	public long count(RecordFilter filter, long from, long to) {
+		RecordRing current = ring;
+		return current == null ? 0 : current.count(filter, from, to);
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return ring != null;
+	}
+
+	/**
+	 * @return end of the line starting at the index, without the line
+	 *         terminator, or -1 if the buffer does not hold its end
+	 */
+	private static int lineEnd(ByteBuffer buffer, int start) {
+
+		for (int i = start; i < buffer.limit(); i++) {
+			if (buffer.get(i) == '\n') {
+				return i > start && buffer.get(i - 1) == '\r' ? i - 1 : i;
+			}
+		}
+		return -1;
+	}
+}
@@ -1,53 +1,110 @@
 package org.redquark.logwatcher.core.schedulers;
 
-import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
-import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
-import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
-
-import java.io.BufferedReader;
-import java.io.DataInputStream;
-import java.io.FileInputStream;
-import java.io.InputStreamReader;
-import java.nio.file.FileSystems;
+import java.io.File;
+import java.io.IOException;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.WatchEvent;
-import java.nio.file.WatchKey;
-import java.nio.file.WatchService;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 import org.apache.sling.commons.scheduler.ScheduleOptions;
 import org.apache.sling.commons.scheduler.Scheduler;
+import org.osgi.framework.BundleContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
 import org.osgi.service.metatype.annotations.Designate;
+import org.redquark.logwatcher.core.backfill.ArchiveBackfill;
 import org.redquark.logwatcher.core.configs.LogWatcherConfiguration;
-import org.redquark.logwatcher.core.email.EmailService;
+import org.redquark.logwatcher.core.dedup.OccurrenceTable;
+import org.redquark.logwatcher.core.dedup.TraceFingerprinter;
+import org.redquark.logwatcher.core.discovery.DiscoveryService;
+import org.redquark.logwatcher.core.event.CaptureBuffer;
+import org.redquark.logwatcher.core.event.LogEvent;
+import org.redquark.logwatcher.core.event.LogEventAssembler;
+import org.redquark.logwatcher.core.event.LogLinePrefix;
+import org.redquark.logwatcher.core.event.RecordPrefilter;
+import org.redquark.logwatcher.core.index.ErrorIndexService;
+import org.redquark.logwatcher.core.matcher.LogMatcher;
+import org.redquark.logwatcher.core.matcher.LogMatchers;
+import org.redquark.logwatcher.core.metrics.LogWatcherMetrics;
+import org.redquark.logwatcher.core.notification.LogNotification;
+import org.redquark.logwatcher.core.notifier.Notifier;
+import org.redquark.logwatcher.core.rate.RateAggregator;
+import org.redquark.logwatcher.core.records.RecordBufferService;
+import org.redquark.logwatcher.core.records.RecordStarts;
+import org.redquark.logwatcher.core.tail.CatchUpReader;
+import org.redquark.logwatcher.core.tail.LineHandler;
+import org.redquark.logwatcher.core.tail.LogTailer;
+import org.redquark.logwatcher.core.tail.ScanMode;
+import org.redquark.logwatcher.core.tail.TailStateStore;
+import org.redquark.logwatcher.core.watcher.FileWatcher;
+import org.redquark.logwatcher.core.watcher.LogFileWatcher;
+import org.redquark.logwatcher.core.watcher.PollingFileWatcher;
+import org.redquark.logwatcher.core.watcher.ScanDebouncer;
+import org.redquark.logwatcher.core.watcher.ScanDispatcher;
+import org.redquark.logwatcher.core.watcher.WatchStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * @author Anirudh Sharma
  *
+ *         This class watches the configured log files and notifies about the
+ *         configured errors/exceptions. The watching is done by a dedicated
+ *         {@link FileWatcher} thread - file system events or polling, see
+ *         {@link WatchStrategy} - and the detection work by a
+ *         {@link ScanDispatcher}, both tied to the component lifecycle. Bursts
+ *         of changes of a file are merged into one scan by a
+ *         {@link ScanDebouncer}. A record still open at the end of a scan is
+ *         continued by the next scan of its file, or emitted once no further
+ *         line arrived for a second. The cron job only requests an additional scan
+ *         as a safety net in case a file system event was missed, and has the
+ *         watcher pick up directories which did not exist before.
+ *
+ *         A configuration change is applied to the running pipeline: the
+ *         matcher, files and trace settings are swapped in as a new
+ *         {@link WatchSettings} snapshot, the watcher re-registers its
+ *         directories and the thread pools are resized. Nothing is restarted
+ *         and the tail offsets stay as they are.
+ *
  */
 @Component(service = Runnable.class, immediate = true)
 @Designate(ocd = LogWatcherConfiguration.class, factory = true)
 public class LogWatcherScheduler implements Runnable {
 
+	// Time to wait for running scans on shutdown
+	private static final long SHUTDOWN_TIMEOUT_MILLIS = 10000;
+
+	// Maximum number of waiting scans
+	private static final int SCAN_QUEUE_CAPACITY = 1024;
+
+	// Maximum number of matching records processed at once
+	private static final int PROCESS_BATCH_SIZE = 1000;
+
+	// Type the records found in discovery mode are counted under
+	private static final String DISCOVERED_METRIC = "discovered";
+
+	// Time without further lines after which a record still open at the end of a
+	// scan is complete
+	private static final long OPEN_RECORD_QUIET_MILLIS = 1000;
+
 	// Logger
 	private final Logger log = LoggerFactory.getLogger(this.getClass());
 
-	// LogWatcherConfiguration instance
-	private LogWatcherConfiguration logWatcherConfiguration;
-
-	// List of errors/exceptions
-	private List<String> types;
+	// Snapshot of the current configuration - replaced as a whole on changes
+	private volatile WatchSettings settings;
 
 	// Reference for Scheduler API injection
 	@Reference
@@ -56,67 +113,263 @@ public class LogWatcherScheduler implements Runnable {
 	// Scheduler Id to add/remove scheduler on modifications
 	private String schedulerId;
 
-	// Reference of the EmailService
+	// Sinks the notifications are fanned out to - email and whatever else is
+	// configured
+	@Reference(service = Notifier.class, cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC)
+	private volatile List<Notifier> notifiers;
+
+	// Reference of the LogWatcherMetrics
+	@Reference
+	private LogWatcherMetrics metrics;
+
+	// Reference of the ErrorIndexService
+	@Reference
+	private ErrorIndexService errorIndexService;
+
+	// Reference of the RecordBufferService
+	@Reference
+	private RecordBufferService recordBufferService;
+
+	// Reference of the DiscoveryService
 	@Reference
-	private EmailService emailService;
+	private DiscoveryService discoveryService;
+
+	// Bytes of the watched files not read yet - published as a gauge
+	private LongSupplier tailLag;
+
+	// Persists the offsets of the log files
+	private volatile TailStateStore tailStateStore;
+
+	// Reads only the newly appended bytes of the log file
+	private volatile LogTailer tailer;
+
+	// Reads large unread regions of the log files in parallel
+	private CatchUpReader catchUpReader;
+
+	// Scans the rotated log files in the background
+	private ArchiveBackfill archiveBackfill;
+
+	// Watches the log files
+	private volatile FileWatcher fileWatcher;
+
+	// Runs the scans off the watcher thread
+	private volatile ScanDispatcher scanDispatcher;
+
+	// Merges bursts of changes of a file into one scan, null if disabled
+	private volatile ScanDebouncer scanDebouncer;
+
+	// Records still open at the end of the last scan of their file - continued
+	// by the next scan
+	private final Map<Path, OpenRecord> openRecords = new ConcurrentHashMap<>();
+
+	// Requests a scan once an open record has been quiet long enough
+	private volatile ScanDebouncer openRecordTimer;
+
+	// Flag to determine if the scans emit the open records instead of keeping them
+	// - while stopping
+	private volatile boolean flushOpenRecords;
+
+	// Fingerprints of the stack traces seen so far
+	private OccurrenceTable occurrenceTable;
+
+	// Directory the matching records beyond the capture budget are spilled to
+	private Path captureDirectory;
 
 	/**
 	 * This method does the initialization tasks
 	 * 
+	 * @param bundleContext
 	 * @param logWatcherConfiguration
 	 */
 	@Activate
-	protected void activate(LogWatcherConfiguration logWatcherConfiguration) {
+	protected void activate(BundleContext bundleContext, LogWatcherConfiguration logWatcherConfiguration) {
 
 		log.info("Initializing...");
 
-		// Initializing the configuration instance
-		this.logWatcherConfiguration = logWatcherConfiguration;
+		// Taking the first snapshot of the configuration
+		settings = new WatchSettings(logWatcherConfiguration, null, System.currentTimeMillis());
+
+		// Offsets are kept in the data area of the bundle so that they survive
+		// restarts
+		File stateDirectory = bundleContext.getDataFile("tail");
+		if (stateDirectory == null) {
+			stateDirectory = new File(System.getProperty("java.io.tmpdir"), "logwatcher/tail");
+		}
+
+		// Spill files are temporary, but large - keeping them next to the state
+		File spillDirectory = bundleContext.getDataFile("capture");
+		if (spillDirectory == null) {
+			spillDirectory = new File(System.getProperty("java.io.tmpdir"), "logwatcher/capture");
+		}
+		captureDirectory = spillDirectory.toPath();
+
+		// Initializing the tailer
+		tailStateStore = new TailStateStore(stateDirectory);
+		tailer = newTailer(logWatcherConfiguration);
 
-		// Initializing list
-		types = new LinkedList<>();
+		// Remembering where the existing files end - files appearing later are read
+		// completely
+		tailer.baseline(settings.getLogFileSet().listFiles());
+
+		// Initializing the fingerprint table
+		occurrenceTable = new OccurrenceTable(logWatcherConfiguration.fingerprintTableSize());
 
 		// Creating the scheduler id - this will be needed for scheduling and
 		// unscheduling whenever the configuration is modified
 		schedulerId = UUID.randomUUID().toString();
+
+		// Starting the watcher and the safety net job
+		startWatching();
+		addScheduler();
+
+		// Scanning the existing files once, which also takes their current size as
+		// starting point unless they are read from the beginning
+		run();
 	}
 
 	/**
-	 * This will be called when the configuration modifies
+	 * This will be called when the configuration modifies. The changes are
+	 * applied to the running watcher and workers.
 	 * 
-	 * @param autoFileUploaderConfiguration
+	 * @param logWatcherConfiguration
 	 */
 	@Modified
-	protected void modified(LogWatcherConfiguration logWatcherConfiguration) {
+	protected synchronized void modified(LogWatcherConfiguration logWatcherConfiguration) {
+
+		WatchSettings previous = settings;
+		LogWatcherConfiguration old = previous.getConfiguration();
+
+		WatchSettings next = new WatchSettings(logWatcherConfiguration, previous, System.currentTimeMillis());
+
+		// Files matching only now are not new, they are taken from their current end
+		// unless configured otherwise
+		List<Path> files = next.getLogFileSet().listFiles();
+
+		// A new tailer only if the way of reading changed - the offsets are read
+		// from the store again, so only once no scan is advancing them on the old
+		// one anymore
+		if (old.startFromBeginning() != logWatcherConfiguration.startFromBeginning()
+				|| !old.scanMode().equals(logWatcherConfiguration.scanMode())) {
+			Runnable replaceTailer = () -> {
+				LogTailer replacement = newTailer(logWatcherConfiguration);
+				replacement.setCatchUpReader(catchUpReader);
+				replacement.baseline(files);
+				tailer = replacement;
+			};
+			ScanDispatcher dispatcher = scanDispatcher;
+			if (dispatcher != null) {
+				dispatcher.exclusive(replaceTailer);
+			} else {
+				replaceTailer.run();
+			}
+		} else {
+			tailer.baseline(files);
+		}
 
-		// Removing the scheduler
-		removeScheduler();
+		// Swapping in the new snapshot - scans starting from now on use it
+		settings = next;
+
+		// Applying a changed fingerprint table size
+		occurrenceTable.setCapacity(logWatcherConfiguration.fingerprintTableSize());
+
+		// Replacing the watcher if the way of watching changed, otherwise only
+		// re-registering the directories if the files changed
+		boolean filesChanged = previous.getLogFileSet() != next.getLogFileSet();
+		if (!old.watchStrategy().equals(logWatcherConfiguration.watchStrategy())
+				|| old.pollMinMillis() != logWatcherConfiguration.pollMinMillis()
+				|| old.pollMaxMillis() != logWatcherConfiguration.pollMaxMillis()) {
+			stopFileWatcher();
+			startFileWatcher(next);
+		} else if (filesChanged && fileWatcher != null) {
+			fileWatcher.update(next.getLogFileSet());
+		}
 
-		// Modify the schedulerId - Update
-		schedulerId = UUID.randomUUID().toString();
+		// Replacing the debounce - the windows still open are scanned right away
+		if (old.debounceMillis() != logWatcherConfiguration.debounceMillis()
+				|| old.maxDelayMillis() != logWatcherConfiguration.maxDelayMillis()) {
+			ScanDebouncer retired = scanDebouncer;
+			scanDebouncer = newScanDebouncer(logWatcherConfiguration);
+			if (retired != null) {
+				retired.shutdown();
+			}
+		}
 
-		// Adding the scheduler again with updated id
-		addScheduler();
+		// Resizing the scan workers
+		if (old.scanThreads() != logWatcherConfiguration.scanThreads() && scanDispatcher != null) {
+			scanDispatcher.resize(Math.max(1, logWatcherConfiguration.scanThreads()));
+		}
+
+		// Replacing the catch-up reader - a catch-up in progress completes with the
+		// old one
+		if (old.catchUpThresholdMb() != logWatcherConfiguration.catchUpThresholdMb()
+				|| old.catchUpThreads() != logWatcherConfiguration.catchUpThreads()) {
+			CatchUpReader retired = catchUpReader;
+			catchUpReader = newCatchUpReader(logWatcherConfiguration);
+			tailer.setCatchUpReader(catchUpReader);
+			if (retired != null) {
+				retired.retire();
+			}
+		}
+
+		// Starting or stopping the backfill - archives already scanned are skipped
+		if (old.backfillOnStart() != logWatcherConfiguration.backfillOnStart() || filesChanged
+				|| old.backfillThreads() != logWatcherConfiguration.backfillThreads()) {
+			stopBackfill();
+			startBackfill(next);
+		}
+
+		// Rescheduling the safety net job only if its schedule changed
+		if (!old.cronExpression().equals(logWatcherConfiguration.cronExpression())) {
+			removeScheduler();
+			schedulerId = UUID.randomUUID().toString();
+			addScheduler();
+		}
+
+		// The new files may have been written to already
+		if (filesChanged) {
+			run();
+		}
+
+		log.info("Configuration applied, watching {} in {}", Arrays.toString(logWatcherConfiguration.logFile()),
+				next.getLogFileSet().getDirectories());
 	}
 
 	/**
 	 * This will be called when the configuration is removed
 	 * 
-	 * @param autoFileUploaderConfiguration
+	 * @param logWatcherConfiguration
 	 */
 	@Deactivate
-	protected void deactivate(LogWatcherConfiguration logWatcherConfiguration) {
+	protected synchronized void deactivate(LogWatcherConfiguration logWatcherConfiguration) {
 
-		// Removing the scheduler
+		// Removing the scheduler and the watcher
 		removeScheduler();
+		stopWatching();
 	}
 
-	// Overridden method for Runnable
+	// Overridden method for Runnable - called by the cron job
 	@Override
 	public void run() {
 
-		// Call the method to watch logs
-		watchLog();
+		// Directories created since the activation are watched from now on
+		FileWatcher watcher = fileWatcher;
+		if (watcher != null) {
+			watcher.refresh();
+		}
+
+		// Positions saved since the last write of their file
+		TailStateStore store = tailStateStore;
+		if (store != null) {
+			store.flush();
+		}
+
+		// Only queues scans, never blocks the scheduler thread
+		WatchSettings current = settings;
+		if (current != null) {
+			for (Path file : current.getLogFileSet().listFiles()) {
+				requestScan(file);
+			}
+		}
 	}
 
 	/**
@@ -127,10 +380,13 @@ public class LogWatcherScheduler implements Runnable {
 		try {
 
 			// Provides options to create a scheduler
-			ScheduleOptions scheduleOptions = scheduler.EXPR(logWatcherConfiguration.cronExpression());
+			ScheduleOptions scheduleOptions = scheduler.EXPR(settings.getConfiguration().cronExpression());
+
+			// Naming the job so that it can be unscheduled again
+			scheduleOptions.name(schedulerId);
 
-			// Set concurrent run flag
-			scheduleOptions.canRunConcurrently(true);
+			// The job only queues a scan, running it concurrently makes no sense
+			scheduleOptions.canRunConcurrently(false);
 
 			// Schedule here
 			scheduler.schedule(this, scheduleOptions);
@@ -152,170 +408,459 @@ public class LogWatcherScheduler implements Runnable {
 	}
 
 	/**
-	 * This method does the job of watching the logs
+	 * This method starts the watcher thread and the scan workers
+	 */
+	private void startWatching() {
+
+		WatchSettings current = settings;
+		LogWatcherConfiguration configuration = current.getConfiguration();
+
+		// A fixed number of workers, whatever the number of files. Scans are queued
+		// at most once per file.
+		scanDispatcher = new ScanDispatcher("logwatcher-scan", Math.max(1, configuration.scanThreads()),
+				SCAN_QUEUE_CAPACITY);
+
+		// Bursts of changes of a file lead to one scan
+		scanDebouncer = newScanDebouncer(configuration);
+
+		// A record which is not continued in time is emitted by another scan
+		flushOpenRecords = false;
+		openRecordTimer = new ScanDebouncer(OPEN_RECORD_QUIET_MILLIS, OPEN_RECORD_QUIET_MILLIS,
+				(file, first) -> requestScan(file));
+
+		// Large unread regions are read in parallel chunks starting at record
+		// boundaries
+		catchUpReader = newCatchUpReader(configuration);
+		tailer.setCatchUpReader(catchUpReader);
+
+		// Publishing how far behind the scans are - always for the current files
+		tailLag = () -> {
+			LogTailer currentTailer = tailer;
+			long lag = 0;
+			for (Path file : settings.getLogFileSet().listFiles()) {
+				lag += currentTailer.lag(file);
+			}
+			return lag;
+		};
+		metrics.addTailLagSource(tailLag);
+
+		// Watching all files with one thread
+		startFileWatcher(current);
+
+		// Scanning the rotated files once, through the same pipeline as the live ones
+		startBackfill(current);
+	}
+
+	/**
+	 * This method stops the watcher thread and waits for running scans
 	 */
-	private final void watchLog() {
+	private void stopWatching() {
+
+		stopBackfill();
+
+		stopFileWatcher();
+
+		// Before the workers, so that the windows still open are scanned
+		if (scanDebouncer != null) {
+			scanDebouncer.shutdown();
+			scanDebouncer = null;
+		}
+
+		// The last scans emit the records still open
+		flushOpenRecords = true;
+		if (openRecordTimer != null) {
+			openRecordTimer.shutdown();
+			openRecordTimer = null;
+		}
+
+		if (scanDispatcher != null) {
+			scanDispatcher.shutdown(SHUTDOWN_TIMEOUT_MILLIS);
+			scanDispatcher = null;
+		}
+		openRecords.clear();
+
+		// After the scans, which might still be using it
+		if (catchUpReader != null) {
+			tailer.setCatchUpReader(null);
+			catchUpReader.close();
+			catchUpReader = null;
+		}
+
+		if (tailLag != null) {
+			metrics.removeTailLagSource(tailLag);
+			tailLag = null;
+		}
+
+		// Writing the positions saved by the last scans
+		if (tailStateStore != null) {
+			tailStateStore.flush();
+		}
+	}
+
+	/**
+	 * Starts watching the files as configured
+	 * 
+	 * @param current
+	 */
+	private void startFileWatcher(WatchSettings current) {
+
+		LogWatcherConfiguration configuration = current.getConfiguration();
+
+		if (WatchStrategy.from(configuration.watchStrategy()) == WatchStrategy.POLL) {
+			fileWatcher = new PollingFileWatcher(current.getLogFileSet(), this::onChange,
+					configuration.pollMinMillis(), configuration.pollMaxMillis());
+		} else {
+			fileWatcher = new LogFileWatcher(current.getLogFileSet(), this::onChange);
+		}
 
 		try {
+			fileWatcher.start();
+		} catch (IOException e) {
+			log.error("Could not watch {}", current.getLogFileSet().getDirectories(), e);
+		}
+	}
 
-			// Getting the error/exception types from the configuration
-			types = Arrays.asList(logWatcherConfiguration.type());
+	/**
+	 * Stops watching the files
+	 */
+	private void stopFileWatcher() {
 
-			// Getting the path of the log file to monitor
-			String filePath = logWatcherConfiguration.filePath();
+		if (fileWatcher != null) {
+			fileWatcher.close();
+			fileWatcher = null;
+		}
+	}
 
-			// Getting an instance of the WatchService to watch the path
-			WatchService watchService = FileSystems.getDefault().newWatchService();
+	/**
+	 * Starts scanning the rotated files if configured
+	 * 
+	 * @param current
+	 */
+	private void startBackfill(WatchSettings current) {
 
-			// Path of the directory
-			Path directory = Paths.get(filePath);
+		LogWatcherConfiguration configuration = current.getConfiguration();
 
-			// Register the directory to watch service for different events
-			directory.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+		if (configuration.backfillOnStart()) {
+			archiveBackfill = new ArchiveBackfill(configuration.backfillThreads(), tailStateStore);
+			archiveBackfill.start(current.getLogFileSet().listArchives(), current.getMatcher(),
+					current.getPrefilter(), current.getTraceLines(), events -> process(events, false));
+		}
+	}
 
-			log.info("WatchService is registered for the directory: {}", directory.getFileName());
+	/**
+	 * Stops scanning the rotated files
+	 */
+	private void stopBackfill() {
 
-			// Infinite loop to poll the files in directory
-			while (true) {
+		if (archiveBackfill != null) {
+			archiveBackfill.close();
+			archiveBackfill = null;
+		}
+	}
 
-				// A token representing the registration of a watchable object with a
-				// WatchService.
-				WatchKey watchKey;
+	/**
+	 * @param configuration
+	 * @return a tailer reading as configured
+	 */
+	private LogTailer newTailer(LogWatcherConfiguration configuration) {
+		return new LogTailer(tailStateStore, configuration.startFromBeginning(),
+				ScanMode.from(configuration.scanMode()));
+	}
 
-				try {
-					// Retrieves and removes next watch key, waiting if none are yet present
-					watchKey = watchService.take();
-				} catch (InterruptedException ie) {
-					log.error(ie.getMessage(), ie);
-					return;
-				}
+	/**
+	 * @param configuration
+	 * @return a catch-up reader as configured, null if disabled
+	 */
+	private static CatchUpReader newCatchUpReader(LogWatcherConfiguration configuration) {
 
-				// Retrieves and removes all pending events for this watch key, returning a List
-				// of the events that were retrieved. Note that this method does not wait if
-				// there are no events pending.
-				for (WatchEvent<?> event : watchKey.pollEvents()) {
-
-					// Getting the kind of the event
-					WatchEvent.Kind<?> kind = event.kind();
-
-					// An event or a repeated event for an object that is registered with a
-					// WatchService. An event is classified by its kind and has a count to indicate
-					// the number of times that the event has been observed. This allows for
-					// efficient representation of repeated events. The context method returns any
-					// context associated with the event. In the case of a repeated event then the
-					// context is the same for all events.
-					@SuppressWarnings("unchecked")
-					WatchEvent<Path> watchEvent = (WatchEvent<Path>) event;
-
-					// Returns the context for the event. In the case of ENTRY_CREATE, ENTRY_DELETE,
-					// and ENTRY_MODIFY events the context is a Path that is the relative path
-					// between the directory registered with the watch service, and the entry that
-					// is created, deleted, or modified.
-					//
-					// Here we will be watching the file that is modified/deleted/added
-					Path fileName = watchEvent.context();
-
-					// Name of the file to watch for
-					String logFile = logWatcherConfiguration.logFile();
-
-					// Check if we are looking for the modified file only and its name should be
-					// equal to the name of the file we wish to watch
-					if (kind == ENTRY_MODIFY && fileName.toString().equals(logFile)) {
-						checkForErrors(types, filePath, logFile);
-					}
-				}
-			}
+		if (configuration.catchUpThresholdMb() <= 0) {
+			return null;
+		}
+		return new CatchUpReader(configuration.catchUpThreads(), configuration.catchUpThresholdMb() * 1024L * 1024L,
+				LogLinePrefix::isRecordStart);
+	}
 
-		} catch (Exception e) {
-			log.error(e.getMessage(), e);
+	/**
+	 * @param configuration
+	 * @return a debouncer of the changes as configured, null if disabled
+	 */
+	private ScanDebouncer newScanDebouncer(LogWatcherConfiguration configuration) {
+
+		if (configuration.debounceMillis() <= 0) {
+			return null;
 		}
+		return new ScanDebouncer(configuration.debounceMillis(), configuration.maxDelayMillis(), this::requestScan);
 	}
 
 	/**
-	 * @param errorTypes
-	 * @param filePath
+	 * Called by the watcher for every change of a log file - merged with the
+	 * following changes of the same file, if debouncing is enabled
+	 * 
+	 * @param file
 	 */
-	private final void checkForErrors(List<String> errorTypes, String filePath, String logFile) {
+	private void onChange(Path file) {
 
-		try {
+		// Taking a local copy - it is replaced on configuration changes
+		ScanDebouncer debouncer = scanDebouncer;
 
-			// Getting the actual file path for Java - by escaping special characters
-			String finalPath = filePath + "\\" + logFile;
+		if (debouncer != null) {
+			debouncer.onChange(file);
+		} else {
+			requestScan(file);
+		}
+	}
 
-			// Getting the input bytes from the file represented by finalPath
-			FileInputStream fis = new FileInputStream(finalPath);
+	/**
+	 * Queues a scan of the log file unless one is already waiting
+	 * 
+	 * @param file
+	 */
+	private void requestScan(Path file) {
+		requestScan(file, System.nanoTime());
+	}
 
-			// A data input stream lets an application read primitive Java data types from
-			// an
-			// underlying input stream in a machine-independent way.
-			DataInputStream dis = new DataInputStream(fis);
+	/**
+	 * Queues a scan of the log file unless one is already waiting
+	 * 
+	 * @param file
+	 * @param requested time of the change, in nanoseconds - a request coalesced
+	 *                  into a waiting scan is covered by the time of the first
+	 *                  one
+	 */
+	private void requestScan(Path file, long requested) {
 
-			// Reads text from a character-input stream, buffering characters so as
-			// to provide for the efficient reading of characters, arrays, and lines.
-			BufferedReader br = new BufferedReader(new InputStreamReader(dis));
+		// Taking a local copy - the scan runs on another thread
+		ScanDispatcher dispatcher = scanDispatcher;
 
-			// Getting the instance of StringBuilder for efficient appending
-			StringBuilder sb = new StringBuilder();
+		if (dispatcher != null) {
+			dispatcher.dispatch(file, () -> checkForErrors(file, requested));
+		}
+	}
 
-			// Reads each line via BufferedReader from the file
-			String stringLine;
+	/**
+	 * Reads the lines appended to the log file since the last check and sends the
+	 * stack traces which have not been seen before along with summaries of the
+	 * repeated ones
+	 * 
+	 * @param file
+	 * @param requested time the scan was requested, in nanoseconds
+	 */
+	private final void checkForErrors(Path file, long requested) {
+
+		try {
 
-			// Flag to determine if we have read desired number of lines
-			boolean broken = false;
+			long started = System.nanoTime();
 
-			// Counts lines
-			int line = 0;
+			// One snapshot for the whole scan
+			WatchSettings current = settings;
+			LogMatcher errorMatcher = current.getMatcher();
+			RecordPrefilter prefilter = current.getPrefilter();
+			int traceLines = current.getTraceLines();
 
-			// Loop to go through each type of error/exception passed
-			for (String type : types) {
+			// The record the last scan of this file left open, if any
+			OpenRecord carried = openRecords.remove(file);
 
-				// Loop breaks if we reach to the end of the file
-				while ((stringLine = br.readLine()) != null) {
+			// A file which is not watched anymore
+			if (!current.getLogFileSet().contains(file)) {
+				return;
+			}
 
-					// Check if the current line contains the passed error type
-					if (stringLine.contains(type)) {
-						// Set the flag - we are now going to capture stack trace
-						broken = true;
+			// Every record goes to the buffer of the recent records, if it is enabled
+			LineHandler recordStarts = recordBufferService.isEnabled()
+					? (buffer, start, end, offset) -> recordBufferService.append(buffer, start, end)
+					: null;
+
+			// Groups the lines into records and collects those which matched - one
+			// assembler per chunk if the file is read in parallel. All chunks share one
+			// memory budget, the records beyond it overflow to disk or into samples.
+			AtomicLong budget = new AtomicLong(current.getCaptureBudgetBytes());
+			List<CaptureBuffer> captures = new ArrayList<>();
+			List<LogEventAssembler> assemblers = new ArrayList<>();
+
+			// Record starts of the catch-up chunks, appended to the buffer in file order
+			// after the merge
+			List<RecordStarts> chunkStarts = new ArrayList<>();
+
+			try {
+
+				// Reading only the bytes appended since the last check. Whichever assembler
+				// reads the line following the carried record continues it.
+				long bytes = tailer.tail(file, () -> {
+					CaptureBuffer capture = new CaptureBuffer(file.toString(), budget, current.getCaptureOverflow(),
+							captureDirectory);
+					captures.add(capture);
+					// Only the first handler appends directly, the others read catch-up chunks
+					LineHandler starts = recordStarts;
+					if (starts != null && !assemblers.isEmpty()) {
+						RecordStarts chunk = recordBufferService.recordStarts();
+						chunkStarts.add(chunk);
+						starts = chunk;
+					}
+					LogEventAssembler assembler = new LogEventAssembler(file.toString(), errorMatcher, traceLines,
+							capture, starts, prefilter);
+					if (carried != null) {
+						assembler.continueAfter(carried.assembler);
 					}
+					return assembler;
+				}, assemblers);
+
+				if (!chunkStarts.isEmpty()) {
+					recordBufferService.append(file, chunkStarts);
+				}
 
-					if (broken) {
+				// The record still open at the end is kept for the next scan - it grew just
+				// now, or it has not been quiet for long enough yet
+				long now = System.nanoTime();
+				OpenRecord open = null;
+				LogEventAssembler last = assemblers.isEmpty() ? null : assemblers.get(assemblers.size() - 1);
+				if (!flushOpenRecords) {
+					if (last != null && last.getLines() > 0 && last.hasOpenRecord()) {
+						open = new OpenRecord(last, now);
+					} else if (carried != null && carried.assembler.hasOpenRecord()
+							&& now - carried.since < TimeUnit.MILLISECONDS.toNanos(OPEN_RECORD_QUIET_MILLIS)) {
+						open = carried;
+					}
+				}
 
-						// Add current line to the StringBuilder object
-						sb.append(stringLine + "\n");
+				// A carried record which was not continued is complete, it comes first
+				if (carried != null && carried != open && carried.assembler.hasOpenRecord()) {
+					CaptureBuffer capture = new CaptureBuffer(file.toString(), budget, current.getCaptureOverflow(),
+							captureDirectory);
+					captures.add(0, capture);
+					LogEventAssembler assembler = new LogEventAssembler(file.toString(), errorMatcher, traceLines,
+							capture, recordStarts, prefilter);
+					assembler.takeOver(carried.assembler);
+					assemblers.add(0, assembler);
+				}
 
-						// Increment the line count
-						line++;
+				long lines = 0;
+				for (LogEventAssembler assembler : assemblers) {
+					if (open == null || assembler != open.assembler) {
+						assembler.finish();
 					}
+					lines += assembler.getLines();
+				}
+
+				if (open != null) {
+					openRecords.put(file, open);
+					ScanDebouncer timer = openRecordTimer;
+					if (timer != null) {
+						timer.onChange(file);
+					}
+				}
+
+				long finished = System.nanoTime();
+				metrics.scanned(bytes, lines, finished - started, finished - requested);
+
+				// Processing the chunks in file order, a batch at a time
+				for (CaptureBuffer capture : captures) {
+					capture.drain(events -> process(events, true), PROCESS_BATCH_SIZE);
+				}
+
+				// Once more without records, even if nothing matched - the alerting rules
+				// are evaluated and the due repeat summaries sent on every scan
+				process(Collections.<LogEvent>emptyList(), true);
+
+			} finally {
+				for (CaptureBuffer capture : captures) {
+					capture.close();
+				}
+			}
+
+		} catch (Exception e) {
+			log.error(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Turns the matching records into notifications - alerts of the rate rules,
+	 * the stack traces which have not been seen before and summaries of the
+	 * repeated ones - and sends them. Records found in discovery mode are only
+	 * alerted if they are new or jumped in frequency.
+	 * 
+	 * @param events
+	 * @param live   false for old records, e.g. of rotated files - discoveries
+	 *               among them are only learned
+	 */
+	private void process(List<LogEvent> events, boolean live) {
 
-					// Checks if captured desired number of lines
-					if (line == logWatcherConfiguration.traceLines()) {
+		try {
 
-						// Reset the flag
-						broken = false;
+			long now = System.currentTimeMillis();
+			WatchSettings current = settings;
 
-						// Set the line number to 0 for next instance of error/exception stack trace
-						line = 0;
+			// Counting the records for the alerting rules - by the time they were
+			// logged, which is never later than now
+			RateAggregator rates = current.getRateAggregator();
+			if (!rates.isEmpty()) {
+				for (LogEvent event : events) {
+					if (LogMatchers.isDiscovered(event.getType())) {
+						continue;
 					}
+					long logged = event.getTimestamp() > 0 ? Math.min(event.getTimestamp(), now) : now;
+					rates.record(event.getType(), event.getLogger(), logged, event.getOccurrences());
 				}
+			}
 
-				// Appending new lines
-				sb.append("\n\n");
+			// Alerts go first
+			List<LogNotification> notifications = new ArrayList<>(rates.evaluate(now));
 
-				// Sending the email
-				emailService.sendEmail(sb.toString());
+			// Only traces with a new fingerprint are sent in full. Every one is indexed.
+			for (LogEvent event : events) {
 
-				// Close BufferedReader
-				br.close();
+				String fingerprint = TraceFingerprinter.fingerprint(event.getText());
+				errorIndexService.add(event, fingerprint);
 
-				// Close DataInputStream
-				dis.close();
+				// Discoveries are baselined instead of sent one by one
+				if (LogMatchers.isDiscovered(event.getType())) {
+					metrics.matched(DISCOVERED_METRIC, event.getOccurrences());
+					notifications.addAll(discoveryService.observe(event, fingerprint, live, now));
+					continue;
+				}
 
-				// Close FileInputStream
-				fis.close();
+				metrics.matched(event.getType(), event.getOccurrences());
+				LogNotification notification = occurrenceTable.record(event.getType(), fingerprint, event.getText(),
+						event.getOccurrences(), now);
+				if (notification != null) {
+					notifications.add(notification);
+				}
+			}
+
+			// Repetitions are summarized
+			notifications.addAll(occurrenceTable.drainRepeats(now, current.getRepeatSummaryMillis()));
+
+			// Notifying only if there is something to tell. Every sink queues them on
+			// its own, a slow one does not hold up the others.
+			List<Notifier> sinks = notifiers;
+			if (!notifications.isEmpty() && sinks != null) {
+				for (Notifier notifier : sinks) {
+					try {
+						notifier.notify(notifications);
+					} catch (RuntimeException e) {
+						log.error("Sink {} failed", notifier.getName(), e);
+					}
+				}
 			}
 
 		} catch (Exception e) {
 			log.error(e.getMessage(), e);
 		}
 	}
+
+	/**
+	 * A record still open at the end of a scan
+	 */
+	private static final class OpenRecord {
+
+		// Assembler holding the record, it is not finished
+		private final LogEventAssembler assembler;
+
+		// Time the record last grew, in nanoseconds
+		private final long since;
+
+		OpenRecord(LogEventAssembler assembler, long since) {
+			this.assembler = assembler;
+			this.since = since;
+		}
+	}
 }
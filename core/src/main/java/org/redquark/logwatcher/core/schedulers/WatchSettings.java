@@ -0,0 +1,158 @@
+package org.redquark.logwatcher.core.schedulers;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.redquark.logwatcher.core.configs.LogWatcherConfiguration;
+import org.redquark.logwatcher.core.event.CaptureOverflow;
+import org.redquark.logwatcher.core.event.RecordPrefilter;
+import org.redquark.logwatcher.core.matcher.LogMatcher;
+import org.redquark.logwatcher.core.matcher.LogMatchers;
+import org.redquark.logwatcher.core.rate.RateAggregator;
+import org.redquark.logwatcher.core.watcher.LogFileSet;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Immutable snapshot of what the running pipeline needs from the
+ *         configuration - the compiled matcher and prefilter, the watched
+ *         files and the trace and summary settings. A configuration change
+ *         builds a new snapshot and swaps it in with a single write; every scan
+ *         reads the snapshot once and uses it throughout, so it never sees half
+ *         of an old and half of a new configuration.
+ *
+ *         Parts which did not change are taken over from the previous snapshot,
+ *         e.g. the counts of the alerting rules survive an unrelated change.
+ *
+ */
+final class WatchSettings {
+
+	// The configuration this snapshot was built from
+	private final LogWatcherConfiguration configuration;
+
+	// Compiled errors/exceptions to look for
+	private final LogMatcher matcher;
+
+	// Rejects records by level and logger before matching, null for none
+	private final RecordPrefilter prefilter;
+
+	// The watched log files
+	private final LogFileSet logFileSet;
+
+	// Rates of the matching records and the alerting rules on them
+	private final RateAggregator rateAggregator;
+
+	// Maximum number of lines kept per record
+	private final int traceLines;
+
+	// Minimum time between two summaries of the same trace
+	private final long repeatSummaryMillis;
+
+	// Heap the matching records of one scan may take
+	private final long captureBudgetBytes;
+
+	// What happens to the matching records beyond the budget
+	private final CaptureOverflow captureOverflow;
+
+	/**
+	 * @param configuration
+	 * @param previous      snapshot to take unchanged parts from, may be null
+	 * @param now
+	 */
+	WatchSettings(LogWatcherConfiguration configuration, WatchSettings previous, long now) {
+
+		this.configuration = configuration;
+
+		boolean sameTypes = previous != null && Arrays.equals(previous.configuration.type(), configuration.type())
+				&& previous.configuration.discoveryMode() == configuration.discoveryMode();
+		this.matcher = sameTypes ? previous.matcher
+				: LogMatchers.compile(configuration.type(), configuration.discoveryMode());
+
+		this.prefilter = RecordPrefilter.compile(configuration.prefilterLevel(), configuration.prefilterLoggers());
+
+		this.logFileSet = previous != null && previous.sameFiles(configuration) ? previous.logFileSet
+				: new LogFileSet(configuration.filePath(), configuration.logFile());
+
+		this.rateAggregator = previous != null
+				&& Arrays.equals(previous.configuration.alertRules(), configuration.alertRules())
+						? previous.rateAggregator
+						: new RateAggregator(configuration.alertRules(), now);
+
+		this.traceLines = configuration.traceLines();
+		this.repeatSummaryMillis = TimeUnit.MINUTES.toMillis(configuration.repeatSummaryMinutes());
+		this.captureBudgetBytes = Math.max(0, configuration.captureBudgetMb()) * 1024L * 1024L;
+		this.captureOverflow = CaptureOverflow.from(configuration.captureOverflow());
+	}
+
+	/**
+	 * @return the configuration this snapshot was built from
+	 */
+	LogWatcherConfiguration getConfiguration() {
+		return configuration;
+	}
+
+	/**
+	 * @return compiled errors/exceptions to look for
+	 */
+	LogMatcher getMatcher() {
+		return matcher;
+	}
+
+	/**
+	 * @return prefilter of the records or null if every record is matched
+	 */
+	RecordPrefilter getPrefilter() {
+		return prefilter;
+	}
+
+	/**
+	 * @return the watched log files
+	 */
+	LogFileSet getLogFileSet() {
+		return logFileSet;
+	}
+
+	/**
+	 * @return rates of the matching records and the alerting rules on them
+	 */
+	RateAggregator getRateAggregator() {
+		return rateAggregator;
+	}
+
+	/**
+	 * @return maximum number of lines kept per record
+	 */
+	int getTraceLines() {
+		return traceLines;
+	}
+
+	/**
+	 * @return minimum time between two summaries of the same trace
+	 */
+	long getRepeatSummaryMillis() {
+		return repeatSummaryMillis;
+	}
+
+	/**
+	 * @return heap the matching records of one scan may take, in bytes
+	 */
+	long getCaptureBudgetBytes() {
+		return captureBudgetBytes;
+	}
+
+	/**
+	 * @return what happens to the matching records beyond the budget
+	 */
+	CaptureOverflow getCaptureOverflow() {
+		return captureOverflow;
+	}
+
+	/**
+	 * @param other
+	 * @return true if the configuration watches the same files as this snapshot
+	 */
+	boolean sameFiles(LogWatcherConfiguration other) {
+		return Arrays.equals(configuration.filePath(), other.filePath())
+				&& Arrays.equals(configuration.logFile(), other.logFile());
+	}
+}
@@ -0,0 +1,165 @@
+package org.redquark.logwatcher.core.servlets;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.stream.JsonGenerator;
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.Designate;
+import org.redquark.logwatcher.core.configs.LogWatcherServletConfiguration;
+import org.redquark.logwatcher.core.index.ErrorIndexService;
+import org.redquark.logwatcher.core.index.IndexedError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Queries the error index and returns the result as JSON, e.g.
+ *
+ *         <pre>
+ * GET /bin/logwatcher/errors?type=NullPointerException&amp;from=1760745600000&amp;to=1760832000000&amp;trace=true
+ *         </pre>
+ *
+ *         Parameters: from and to in epoch milliseconds (default: everything
+ *         up to now), type and fingerprint to filter by, limit of the returned
+ *         errors (default 100, at most 10000) and trace=true to include the
+ *         original records read from the log files. The count covers all
+ *         errors in the range, not only the returned ones.
+ *         Only the admin user and the members of the configured group are
+ *         served, everyone else gets 403.
+ *
+ */
+@Component(service = Servlet.class, property = { "sling.servlet.paths=/bin/logwatcher/errors",
+		"sling.servlet.methods=GET" })
+@Designate(ocd = LogWatcherServletConfiguration.class)
+public class ErrorIndexServlet extends SlingSafeMethodsServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	// Number of errors returned by default
+	private static final int DEFAULT_LIMIT = 100;
+
+	// Maximum number of errors returned
+	private static final int MAX_LIMIT = 10000;
+
+	// Logger
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	// Reference of the ErrorIndexService
+	@Reference
+	private transient ErrorIndexService errorIndexService;
+
+	// Group whose members may use the servlet
+	private String allowedGroup;
+
+	@Activate
+	protected void activate(LogWatcherServletConfiguration configuration) {
+		allowedGroup = configuration.allowedGroup();
+	}
+
+	@Override
+	protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
+
+		// The logs may carry data of any part of the instance
+		if (!ServletAccess.isAllowed(request, allowedGroup)) {
+			response.sendError(HttpServletResponse.SC_FORBIDDEN);
+			return;
+		}
+
+		long from;
+		long to;
+		int limit;
+
+		try {
+			from = longParameter(request, "from", 0);
+			to = longParameter(request, "to", System.currentTimeMillis());
+			limit = (int) Math.min(MAX_LIMIT, longParameter(request, "limit", DEFAULT_LIMIT));
+		} catch (NumberFormatException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "from, to and limit must be numbers");
+			return;
+		}
+
+		String type = emptyToNull(request.getParameter("type"));
+		String fingerprint = emptyToNull(request.getParameter("fingerprint"));
+		boolean withTrace = Boolean.parseBoolean(request.getParameter("trace"));
+
+		List<IndexedError> errors = errorIndexService.query(from, to, type, fingerprint, limit);
+		long count = errorIndexService.count(from, to, type, fingerprint);
+
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+
+		try {
+
+			JsonGenerator writer = Json.createGenerator(response.getWriter());
+
+			writer.writeStartObject();
+			writer.write("from", from);
+			writer.write("to", to);
+			writer.write("count", count);
+
+			writer.writeStartArray("errors");
+			for (IndexedError error : errors) {
+				writer.writeStartObject();
+				writer.write("timestamp", error.getTimestamp());
+				write(writer, "type", error.getType());
+				write(writer, "fingerprint", error.getFingerprint());
+				write(writer, "file", error.getFile());
+				writer.write("offset", error.getOffset());
+				writer.write("length", error.getLength());
+				if (withTrace) {
+					write(writer, "trace", errorIndexService.fetchTrace(error));
+				}
+				writer.writeEnd();
+			}
+			writer.writeEnd();
+
+			writer.writeEnd();
+			writer.flush();
+
+		} catch (JsonException e) {
+			log.error(e.getMessage(), e);
+			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+		}
+	}
+
+	/**
+	 * @return the parameter as number or the default if it is missing
+	 * @throws NumberFormatException if it is not a number
+	 */
+	private static long longParameter(SlingHttpServletRequest request, String name, long defaultValue) {
+
+		String value = emptyToNull(request.getParameter(name));
+
+		return value == null ? defaultValue : Long.parseLong(value);
+	}
+
+	/**
+	 * @return the trimmed value or null if it is empty
+	 */
+	private static String emptyToNull(String value) {
+		return value == null || value.trim().isEmpty() ? null : value.trim();
+	}
+
+	/**
+	 * Writes a string which may be null
+	 */
+	private static void write(JsonGenerator writer, String name, String value) {
+		if (value == null) {
+			writer.writeNull(name);
+		} else {
+			writer.write(name, value);
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package org.redquark.logwatcher.core.servlets;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.stream.JsonGenerator;
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.Designate;
+import org.redquark.logwatcher.core.configs.LogWatcherServletConfiguration;
+import org.redquark.logwatcher.core.records.LogRecord;
+import org.redquark.logwatcher.core.records.RecordBufferService;
+import org.redquark.logwatcher.core.records.RecordFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Filters the most recent log records kept in memory and returns them
+ *         as JSON, e.g.
+ *
+ *         <pre>
+ * GET /bin/logwatcher/records?filter=ERROR+from+com.foo.*&amp;limit=50
+ *         </pre>
+ *
+ *         Parameters: filter as described in {@link RecordFilter} (default:
+ *         every record), from and to in epoch milliseconds and limit of the
+ *         returned records (default 100, at most 10000). Records are returned
+ *         newest first; the count covers all matching records in the buffer.
+ *         Only the admin user and the members of the configured group are
+ *         served, everyone else gets 403.
+ *
+ */
+@Component(service = Servlet.class, property = { "sling.servlet.paths=/bin/logwatcher/records",
+		"sling.servlet.methods=GET" })
+@Designate(ocd = LogWatcherServletConfiguration.class)
+public class RecordBufferServlet extends SlingSafeMethodsServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	// Number of records returned by default
+	private static final int DEFAULT_LIMIT = 100;
+
+	// Maximum number of records returned
+	private static final int MAX_LIMIT = 10000;
+
+	// Logger
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	// Reference of the RecordBufferService
+	@Reference
+	private transient RecordBufferService recordBufferService;
+
+	// Group whose members may use the servlet
+	private String allowedGroup;
+
+	@Activate
+	protected void activate(LogWatcherServletConfiguration configuration) {
+		allowedGroup = configuration.allowedGroup();
+	}
+
+	@Override
+	protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
+
+		// The logs may carry data of any part of the instance
+		if (!ServletAccess.isAllowed(request, allowedGroup)) {
+			response.sendError(HttpServletResponse.SC_FORBIDDEN);
+			return;
+		}
+
+		long from;
+		long to;
+		int limit;
+		RecordFilter filter;
+
+		try {
+			from = longParameter(request, "from", 0);
+			to = longParameter(request, "to", Long.MAX_VALUE);
+			limit = (int) Math.max(0, Math.min(MAX_LIMIT, longParameter(request, "limit", DEFAULT_LIMIT)));
+		} catch (NumberFormatException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "from, to and limit must be numbers");
+			return;
+		}
+
+		try {
+			filter = RecordFilter.parse(request.getParameter("filter"));
+		} catch (IllegalArgumentException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+			return;
+		}
+
+		if (!recordBufferService.isEnabled()) {
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "The record buffer is disabled");
+			return;
+		}
+
+		List<LogRecord> records = recordBufferService.query(filter, from, to, limit);
+		long count = recordBufferService.count(filter, from, to);
+
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+
+		try {
+
+			JsonGenerator writer = Json.createGenerator(response.getWriter());
+
+			writer.writeStartObject();
+			writer.write("filter", filter.toString());
+			writer.write("count", count);
+
+			writer.writeStartArray("records");
+			for (LogRecord record : records) {
+				writer.writeStartObject();
+				writer.write("timestamp", record.getTimestamp());
+				writer.write("level", record.getLevel().name());
+				write(writer, "thread", record.getThread());
+				write(writer, "logger", record.getLogger());
+				write(writer, "message", record.getMessage());
+				writer.writeEnd();
+			}
+			writer.writeEnd();
+
+			writer.writeEnd();
+			writer.flush();
+
+		} catch (JsonException e) {
+			log.error(e.getMessage(), e);
+			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+		}
+	}
+
+	/**
+	 * @return the parameter as number or the default if it is missing
+	 * @throws NumberFormatException if it is not a number
+	 */
+	private static long longParameter(SlingHttpServletRequest request, String name, long defaultValue) {
+
+		String value = request.getParameter(name);
+
+		return value == null || value.trim().isEmpty() ? defaultValue : Long.parseLong(value.trim());
+	}
+
+	/**
+	 * Writes a string which may be null
+	 */
+	private static void write(JsonGenerator writer, String name, String value) {
+		if (value == null) {
+			writer.writeNull(name);
+		} else {
+			writer.write(name, value);
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package org.redquark.logwatcher.core.servlets;
+
+import java.util.Iterator;
+
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.api.security.user.Authorizable;
+import org.apache.jackrabbit.api.security.user.Group;
+import org.apache.jackrabbit.api.security.user.User;
+import org.apache.jackrabbit.api.security.user.UserManager;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Decides whether the user of a request may read the log data served
+ *         by the servlets - the admin user and the members of the configured
+ *         group may, everyone else may not
+ *
+ */
+final class ServletAccess {
+
+	// Logger
+	private static final Logger log = LoggerFactory.getLogger(ServletAccess.class);
+
+	private ServletAccess() {
+	}
+
+	/**
+	 * This method will take the request and the allowed group and tell if the
+	 * user of the request may use the servlet
+	 * 
+	 * @param request
+	 * @param allowedGroup
+	 * @return {@link Boolean}
+	 */
+	static boolean isAllowed(SlingHttpServletRequest request, String allowedGroup) {
+
+		ResourceResolver resolver = request.getResourceResolver();
+		UserManager userManager = resolver.adaptTo(UserManager.class);
+		if (userManager == null || resolver.getUserID() == null) {
+			return false;
+		}
+
+		try {
+
+			Authorizable authorizable = userManager.getAuthorizable(resolver.getUserID());
+			if (authorizable == null || authorizable.isGroup()) {
+				return false;
+			}
+			if (((User) authorizable).isAdmin()) {
+				return true;
+			}
+
+			// Inherited memberships count as well
+			Iterator<Group> groups = authorizable.memberOf();
+			while (groups.hasNext()) {
+				if (groups.next().getID().equals(allowedGroup)) {
+					return true;
+				}
+			}
+
+		} catch (RepositoryException e) {
+			log.error(e.getMessage(), e);
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,96 @@
+package org.redquark.logwatcher.core.tail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Reads rotated log files from the first to the last line. Gzip
+ *         compressed files (*.gz) are decompressed while they are read, nothing
+ *         is extracted to disk. Lines are handed out like the {@link LogTailer}
+ *         does, with offsets into the uncompressed content.
+ *
+ */
+public final class ArchiveReader {
+
+	// Extension of compressed archives
+	public static final String GZIP_EXTENSION = ".gz";
+
+	// Size of the read buffer
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private ArchiveReader() {
+	}
+
+	/**
+	 * @param file
+	 * @return true if the file is gzip compressed, judged by its name
+	 */
+	public static boolean isCompressed(Path file) {
+		return file.getFileName().toString().endsWith(GZIP_EXTENSION);
+	}
+
+	/**
+	 * Reads all lines of the archive, including a last line without line
+	 * terminator
+	 *
+	 * @param archive
+	 * @param handler
+	 * @return number of uncompressed bytes read
+	 * @throws IOException
+	 * @throws InterruptedIOException if the thread was interrupted
+	 */
+	public static long read(Path archive, LineHandler handler) throws IOException {
+
+		try (InputStream in = isCompressed(archive)
+				? new GZIPInputStream(Files.newInputStream(archive), BUFFER_SIZE)
+				: Files.newInputStream(archive)) {
+
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			byte[] bytes = buffer.array();
+
+			// Offset of the first byte in the buffer
+			long bufferStart = 0;
+
+			// Number of valid bytes in the buffer
+			int filled = 0;
+
+			// Index from where to look for the next line terminator
+			int scanFrom = 0;
+
+			int read;
+			while ((read = in.read(bytes, filled, bytes.length - filled)) >= 0) {
+
+				if (Thread.currentThread().isInterrupted()) {
+					throw new InterruptedIOException("Reading " + archive + " was interrupted");
+				}
+
+				filled += read;
+
+				// Handing out the complete lines
+				int consumed = LogTailer.emitLines(buffer, scanFrom, filled, filled == bytes.length, bufferStart,
+						handler);
+
+				// Moving the incomplete line to the start of the buffer
+				System.arraycopy(bytes, consumed, bytes, 0, filled - consumed);
+				bufferStart += consumed;
+				filled -= consumed;
+				scanFrom = filled;
+			}
+
+			// The archive is complete, so is its last line
+			if (filled > 0) {
+				int end = bytes[filled - 1] == '\r' ? filled - 1 : filled;
+				handler.onLine(buffer, 0, end, bufferStart);
+			}
+
+			return bufferStart + filled;
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package org.redquark.logwatcher.core.tail;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Helpers to work with lines kept as UTF-8 bytes in a {@link ByteBuffer}
+ *         using absolute indices only
+ *
+ */
+public final class ByteLines {
+
+	private ByteLines() {
+	}
+
+	/**
+	 * Materializes the line in the region [start, end) of the buffer
+	 *
+	 * @param buffer
+	 * @param start
+	 * @param end
+	 * @return decoded line
+	 */
+	public static String decode(ByteBuffer buffer, int start, int end) {
+
+		if (buffer.hasArray()) {
+			return new String(buffer.array(), buffer.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+		}
+
+		byte[] bytes = new byte[end - start];
+		copy(buffer, start, end, bytes, 0);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Copies the region [start, end) of the buffer into the array
+	 *
+	 * @param buffer
+	 * @param start
+	 * @param end
+	 * @param destination
+	 * @param position    index in the array to copy to
+	 */
+	public static void copy(ByteBuffer buffer, int start, int end, byte[] destination, int position) {
+
+		if (buffer.hasArray()) {
+			System.arraycopy(buffer.array(), buffer.arrayOffset() + start, destination, position, end - start);
+			return;
+		}
+
+		// Bulk get through a duplicate so that position and limit of the buffer stay
+		// untouched
+		ByteBuffer duplicate = buffer.duplicate();
+		duplicate.limit(end).position(start);
+		duplicate.get(destination, position, end - start);
+	}
+}
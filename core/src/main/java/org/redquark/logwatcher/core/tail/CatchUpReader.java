@@ -0,0 +1,326 @@
+package org.redquark.logwatcher.core.tail;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Reads a large unread region of a log file - e.g. a multi-GB file seen
+ *         for the first time, or a file the scans fell far behind on - in
+ *         parallel. The region is split into chunks which start at a record
+ *         boundary (see {@link RecordBoundary}), so a stack trace is never cut
+ *         in two. Every chunk gets its own handler and is read by a thread of a
+ *         fork-join pool; the handlers are returned in file order, so that
+ *         their results can be merged in the order they were logged.
+ *
+ *         A boundary is looked for between one tentative split position and
+ *         the next. A region without any record start in between, e.g. one
+ *         huge stack trace, is not split there.
+ *
+ */
+public final class CatchUpReader implements Closeable {
+
+	// Smallest chunk worth a thread of its own
+	private static final long MIN_CHUNK_SIZE = 4L * 1024 * 1024;
+
+	// Chunks per thread - smaller chunks even out slower and faster ones
+	private static final int CHUNKS_PER_THREAD = 2;
+
+	// Size of the buffer looking for record boundaries
+	private static final int SEARCH_BUFFER_SIZE = 64 * 1024;
+
+	// Time to wait for the running chunks on close
+	private static final long SHUTDOWN_TIMEOUT_MILLIS = 10000;
+
+	// Logger
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	// Threads reading the chunks
+	private final ForkJoinPool pool;
+
+	// Minimum number of unread bytes to read in chunks
+	private final long threshold;
+
+	// Recognizes the first line of a record
+	private final RecordBoundary boundary;
+
+	/**
+	 * @param threads   number of threads, all cores if less than 1
+	 * @param threshold minimum number of unread bytes to read in chunks
+	 * @param boundary
+	 */
+	public CatchUpReader(int threads, long threshold, RecordBoundary boundary) {
+		this.pool = new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors(),
+				CatchUpReader::newThread, null, false);
+		this.threshold = Math.max(MIN_CHUNK_SIZE, threshold);
+		this.boundary = boundary;
+	}
+
+	/**
+	 * @param bytes number of unread bytes
+	 * @return true if that many bytes are to be read in chunks
+	 */
+	public boolean covers(long bytes) {
+		return bytes >= threshold;
+	}
+
+	/**
+	 * Reads the region [offset, end) of the file in chunks. The handlers are
+	 * created on the calling thread; every one of them is called by one thread
+	 * only.
+	 *
+	 * @param file
+	 * @param offset
+	 * @param end
+	 * @param handlers creates the handler of a chunk
+	 * @param chunks   receives the handlers of the chunks, in file order
+	 * @param reader   reads the complete lines of one chunk
+	 * @return offset of the first byte which was not consumed
+	 * @throws IOException if any chunk could not be read or the reader was closed
+	 */
+	<H extends LineHandler> long read(Path file, long offset, long end, Supplier<H> handlers, List<H> chunks,
+			RegionReader reader) throws IOException {
+
+		List<Long> boundaries;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			boundaries = split(channel, offset, end);
+		}
+
+		log.info("Catching up on {} bytes of {} in {} chunks", end - offset, file, boundaries.size() - 1);
+
+		List<ForkJoinTask<Long>> tasks = new ArrayList<>();
+
+		try {
+
+			for (int i = 0; i < boundaries.size() - 1; i++) {
+
+				long from = boundaries.get(i);
+				long to = boundaries.get(i + 1);
+				H handler = handlers.get();
+				chunks.add(handler);
+
+				tasks.add(pool.submit(() -> reader.read(file, from, to, handler)));
+			}
+
+			// Every chunk but the last ends with a complete line, so the last one
+			// decides how far the region has been consumed
+			long consumed = offset;
+			for (ForkJoinTask<Long> task : tasks) {
+				consumed = task.get();
+			}
+			return consumed;
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			cancel(tasks);
+			throw new InterruptedIOException("Catch-up of " + file + " was interrupted");
+		} catch (RejectedExecutionException | CancellationException e) {
+			cancel(tasks);
+			throw new InterruptedIOException("Catch-up of " + file + " was stopped");
+		} catch (ExecutionException e) {
+			cancel(tasks);
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Splits the region into chunks starting at record boundaries
+	 *
+	 * @param channel
+	 * @param offset
+	 * @param end
+	 * @return offsets of the chunks, followed by the end of the region
+	 * @throws IOException
+	 */
+	List<Long> split(FileChannel channel, long offset, long end) throws IOException {
+
+		long count = Math.max(1, Math.min((long) pool.getParallelism() * CHUNKS_PER_THREAD,
+				(end - offset) / MIN_CHUNK_SIZE));
+		long chunkSize = (end - offset) / count;
+
+		List<Long> boundaries = new ArrayList<>();
+		boundaries.add(offset);
+
+		for (long i = 1; i < count; i++) {
+
+			long from = offset + i * chunkSize;
+			long limit = i == count - 1 ? end : from + chunkSize;
+
+			// The previous boundary may have been found beyond this position
+			from = Math.max(from, boundaries.get(boundaries.size() - 1) + 1);
+
+			long recordStart = from < limit ? findRecordStart(channel, from, limit) : -1;
+			if (recordStart > 0) {
+				boundaries.add(recordStart);
+			}
+		}
+
+		boundaries.add(end);
+
+		return boundaries;
+	}
+
+	/**
+	 * Looks for the first line in [from, limit) which starts a record
+	 *
+	 * @param channel
+	 * @param from    greater than 0
+	 * @param limit
+	 * @return offset of the line or -1 if there is none
+	 * @throws IOException
+	 */
+	private long findRecordStart(FileChannel channel, long from, long limit) throws IOException {
+
+		ByteBuffer buffer = ByteBuffer.allocate(SEARCH_BUFFER_SIZE);
+
+		// Starting one byte early - from is a line start if that byte ends a line
+		long bufferStart = from - 1;
+
+		// Flag to determine if the buffer starts in the middle of a line
+		boolean inLine = true;
+
+		while (bufferStart < limit) {
+
+			buffer.clear();
+			int filled = channel.read(buffer, bufferStart);
+			if (filled <= 0) {
+				return -1;
+			}
+
+			int i = 0;
+
+			// Skipping the rest of the current line
+			if (inLine) {
+				while (i < filled && buffer.get(i) != '\n') {
+					i++;
+				}
+				if (i == filled) {
+					bufferStart += filled;
+					continue;
+				}
+				i++;
+				inLine = false;
+			}
+
+			// Checking the lines starting in the buffer
+			while (true) {
+
+				long lineStart = bufferStart + i;
+				if (lineStart >= limit) {
+					return -1;
+				}
+
+				int lineEnd = i;
+				while (lineEnd < filled && buffer.get(lineEnd) != '\n') {
+					lineEnd++;
+				}
+
+				// A line cut by the end of the buffer is read again from its start
+				if (lineEnd == filled && filled == buffer.capacity() && i > 0) {
+					bufferStart = lineStart;
+					break;
+				}
+
+				if (boundary.isRecordStart(buffer, i, lineEnd)) {
+					return lineStart;
+				}
+
+				// A line longer than the buffer, or the end of the file
+				if (lineEnd == filled) {
+					bufferStart += filled;
+					inLine = true;
+					break;
+				}
+
+				i = lineEnd + 1;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Stops accepting new catch-ups without waiting. The chunks already
+	 * submitted are still read, so a catch-up in progress completes.
+	 */
+	public void retire() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Stops the running chunks. A catch-up in progress fails and is started
+	 * over by the next scan.
+	 */
+	@Override
+	public void close() {
+
+		pool.shutdownNow();
+
+		try {
+			if (!pool.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+				log.warn("Catch-up did not stop within {} ms", SHUTDOWN_TIMEOUT_MILLIS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Cancels the chunks which have not finished
+	 */
+	private static void cancel(List<ForkJoinTask<Long>> tasks) {
+		for (ForkJoinTask<Long> task : tasks) {
+			task.cancel(true);
+		}
+	}
+
+	/**
+	 * @return a named daemon worker thread
+	 */
+	private static ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+
+		ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+		thread.setName("logwatcher-catchup-" + thread.getPoolIndex());
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	/**
+	 * Reads the complete lines of a region of a file, see
+	 * {@link LogTailer#tail(Path, Supplier, List)}
+	 */
+	interface RegionReader {
+
+		/**
+		 * @param file
+		 * @param offset
+		 * @param end
+		 * @param handler
+		 * @return offset of the first byte which was not consumed
+		 * @throws IOException
+		 */
+		long read(Path file, long offset, long end, LineHandler handler) throws IOException;
+	}
+}
@@ -0,0 +1,27 @@
+package org.redquark.logwatcher.core.tail;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Callback receiving the complete lines read by the {@link LogTailer}.
+ *         Lines are handed out as raw UTF-8 bytes so that only the lines which
+ *         are actually needed get decoded, see {@link ByteLines#decode}.
+ *
+ */
+public interface LineHandler {
+
+	/**
+	 * Called once for every complete line. The line occupies the region [start,
+	 * end) of the buffer, without the line terminator. The buffer is reused
+	 * after the call returns, so the bytes must be copied or decoded if they are
+	 * needed later.
+	 *
+	 * @param buffer
+	 * @param start
+	 * @param end
+	 * @param offset position of the first byte of the line in the file
+	 */
+	public void onLine(ByteBuffer buffer, int start, int end, long offset);
+}
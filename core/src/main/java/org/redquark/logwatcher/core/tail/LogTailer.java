@@ -0,0 +1,441 @@
+package org.redquark.logwatcher.core.tail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         This class reads only the bytes which were appended to a log file
+ *         since the last time it was read. The consumed offset and the identity
+ *         of the file are remembered (and persisted via {@link TailStateStore})
+ *         so that every line is handed out exactly once - even across restarts,
+ *         truncations and logrotate renames.
+ *
+ *         Lines are handed out as raw bytes, either from a reusable direct
+ *         buffer or from a memory mapped region of the file, see
+ *         {@link ScanMode}. No String is created unless the handler asks for it.
+ *
+ *         A large unread region is read in parallel chunks if a
+ *         {@link CatchUpReader} has been set.
+ *
+ */
+public final class LogTailer {
+
+	// Size of the read buffer
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	// Maximum size of a mapped region
+	private static final long MAPPED_WINDOW_SIZE = 64L * 1024 * 1024;
+
+	// Logger
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	// Store to persist the offsets
+	private final TailStateStore store;
+
+	// Flag to determine whether a file seen for the first time is read from the
+	// beginning or from its current end
+	private final boolean startFromBeginning;
+
+	// How the new bytes are read
+	private final ScanMode scanMode;
+
+	// In memory copy of the states
+	private final Map<Path, TailState> states = new ConcurrentHashMap<>();
+
+	// Flag to determine if the files existing at the start have been remembered -
+	// a file seen for the first time after that is new and read from the
+	// beginning
+	private volatile boolean baselined;
+
+	// Reads large unread regions in parallel chunks, if set
+	private volatile CatchUpReader catchUpReader;
+
+	// Direct read buffer of every scanning thread - reused for every read
+	private final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>() {
+
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocateDirect(BUFFER_SIZE);
+		}
+	};
+
+	public LogTailer(TailStateStore store, boolean startFromBeginning, ScanMode scanMode) {
+		this.store = store;
+		this.startFromBeginning = startFromBeginning;
+		this.scanMode = scanMode;
+	}
+
+	/**
+	 * @param catchUpReader reader of large unread regions, null to always read
+	 *                      sequentially
+	 */
+	public void setCatchUpReader(CatchUpReader catchUpReader) {
+		this.catchUpReader = catchUpReader;
+	}
+
+	/**
+	 * Remembers the current end of the files which have never been read, unless
+	 * they are read from the beginning anyway. A file seen for the first time
+	 * after this call has been created since and is read from its beginning -
+	 * nothing written to it before its first scan is skipped.
+	 *
+	 * @param files the files existing now
+	 */
+	public void baseline(List<Path> files) {
+
+		if (!startFromBeginning) {
+			for (Path file : files) {
+				try {
+					if (state(file) == null) {
+						BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+						TailState state = new TailState(attributes.size(), TailState.fileKey(attributes));
+						states.put(file, state);
+						store.save(file, state);
+					}
+				} catch (IOException e) {
+					// Gone already - it is new if it appears again
+					log.debug("Could not read the size of {}: {}", file, e.getMessage());
+				}
+			}
+		}
+
+		baselined = true;
+	}
+
+	/**
+	 * Reads all complete lines appended to the file since the last call and hands
+	 * them to the handler. A trailing line without line terminator is left for
+	 * the next call.
+	 *
+	 * @param file
+	 * @param handler
+	 * @return number of bytes consumed
+	 * @throws IOException
+	 */
+	public long tail(Path file, LineHandler handler) throws IOException {
+		return tail(file, () -> handler, new ArrayList<>(1), false);
+	}
+
+	/**
+	 * Reads all complete lines appended to the file since the last call. If the
+	 * unread region is large enough for the {@link CatchUpReader}, it is read in
+	 * parallel chunks with a handler per chunk; otherwise a single handler reads
+	 * everything. The first handler always reads the rest of a rotated file and
+	 * a region too small for chunks, so only the handlers created after it read
+	 * chunks. A trailing line without line terminator is left for the next
+	 * call.
+	 *
+	 * @param file
+	 * @param handlers creates the handlers, always on the calling thread
+	 * @param chunks   receives the handlers which were used, in file order
+	 * @return number of bytes consumed
+	 * @throws IOException
+	 */
+	public <H extends LineHandler> long tail(Path file, Supplier<H> handlers, List<H> chunks) throws IOException {
+		return tail(file, handlers, chunks, true);
+	}
+
+	/**
+	 * Reads the unread region, in chunks only if allowed
+	 */
+	private <H extends LineHandler> long tail(Path file, Supplier<H> handlers, List<H> chunks, boolean chunked)
+			throws IOException {
+
+		// Nothing to do if the file is not there (yet)
+		if (!Files.isRegularFile(file)) {
+			return 0;
+		}
+
+		// Handler of the rotated file and of a sequential read
+		H handler = handlers.get();
+		chunks.add(handler);
+
+		// Getting the identity and size of the file as of now
+		BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		String fileKey = TailState.fileKey(attributes);
+		long size = attributes.size();
+
+		// Last known state of this file
+		TailState state = state(file);
+
+		// Offset to start reading from
+		long offset;
+
+		// Bytes read from the rotated file
+		long drained = 0;
+
+		if (state == null) {
+			offset = startFromBeginning || baselined ? 0 : size;
+		} else if (!Objects.equals(state.getFileKey(), fileKey)) {
+			log.info("{} has been rotated, reading the new file from the beginning", file);
+			drained = drainRotated(file, state, handler);
+			offset = 0;
+		} else if (state.getOffset() > size) {
+			log.info("{} has been truncated, reading it from the beginning", file);
+			offset = 0;
+		} else {
+			offset = state.getOffset();
+		}
+
+		// Reading the new bytes, if any - in parallel if there are enough of them
+		CatchUpReader catchUp = chunked ? catchUpReader : null;
+		long consumed;
+		if (offset >= size) {
+			consumed = offset;
+		} else if (catchUp != null && catchUp.covers(size - offset)) {
+			consumed = catchUp.read(file, offset, size, handlers, chunks, this::read);
+		} else {
+			consumed = read(file, offset, size, handler);
+		}
+
+		// Remembering the new position
+		if (state == null || state.getOffset() != consumed || !Objects.equals(state.getFileKey(), fileKey)) {
+			TailState newState = new TailState(consumed, fileKey);
+			states.put(file, newState);
+			store.save(file, newState);
+		}
+
+		return drained + consumed - offset;
+	}
+
+	/**
+	 * Reads what was appended to a rotated file between the last read and the
+	 * rotation. The rotated file is the sibling which still has the identity
+	 * remembered in the state - a rename keeps it, a compressed copy does not.
+	 *
+	 * @param file
+	 * @param state state of the file before the rotation
+	 * @param handler
+	 * @return number of bytes read from the rotated file
+	 */
+	private long drainRotated(Path file, TailState state, LineHandler handler) {
+
+		Path directory = file.toAbsolutePath().getParent();
+
+		try (DirectoryStream<Path> siblings = Files.newDirectoryStream(directory)) {
+
+			for (Path sibling : siblings) {
+
+				if (sibling.getFileName().equals(file.getFileName()) || !Files.isRegularFile(sibling)) {
+					continue;
+				}
+
+				BasicFileAttributes attributes = Files.readAttributes(sibling, BasicFileAttributes.class);
+
+				if (Objects.equals(state.getFileKey(), TailState.fileKey(attributes))) {
+
+					long drained = 0;
+					if (state.getOffset() < attributes.size()) {
+						log.info("Reading the rest of {} from the rotated file {}", file, sibling);
+						drained = read(sibling, state.getOffset(), attributes.size(), handler) - state.getOffset();
+					}
+
+					// The rotated file has now been read completely - a backfill must not read
+					// it again
+					store.save(sibling, new TailState(attributes.size(), state.getFileKey()));
+
+					return drained;
+				}
+			}
+
+		} catch (IOException e) {
+			log.error("Could not read the rotated file of {}", file, e);
+		}
+		return 0;
+	}
+
+	/**
+	 * Number of bytes of the file which have not been read yet. A file which
+	 * has never been read, or has been rotated or truncated since, is behind by
+	 * its whole size if it would be read from the beginning.
+	 *
+	 * @param file
+	 * @return bytes between the consumed offset and the end of the file
+	 */
+	public long lag(Path file) {
+
+		try {
+
+			BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			long size = attributes.size();
+			TailState state = state(file);
+
+			if (state == null) {
+				return startFromBeginning || baselined ? size : 0;
+			}
+			if (!Objects.equals(state.getFileKey(), TailState.fileKey(attributes)) || state.getOffset() > size) {
+				return size;
+			}
+			return size - state.getOffset();
+
+		} catch (IOException e) {
+			// Not there (anymore) - nothing to read
+			return 0;
+		}
+	}
+
+	/**
+	 * Reads the complete lines in the region [offset, end) of the file
+	 *
+	 * @param file
+	 * @param offset
+	 * @param end
+	 * @param handler
+	 * @return offset of the first byte which was not consumed
+	 * @throws IOException
+	 */
+	private long read(Path file, long offset, long end, LineHandler handler) throws IOException {
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return scanMode == ScanMode.MAPPED ? readMapped(channel, offset, end, handler)
+					: readBuffered(channel, offset, end, handler);
+		}
+	}
+
+	/**
+	 * Reads the region through the reusable direct buffer of the current thread
+	 */
+	private long readBuffered(FileChannel channel, long offset, long end, LineHandler handler) throws IOException {
+
+		ByteBuffer buffer = buffers.get();
+		buffer.clear();
+
+		// File offset of the first byte in the buffer
+		long bufferStart = offset;
+
+		// Number of valid bytes in the buffer
+		int filled = 0;
+
+		// Index from where to look for the next line terminator
+		int scanFrom = 0;
+
+		while (bufferStart + filled < end) {
+
+			// Never reading beyond the size we started with
+			buffer.limit((int) Math.min(buffer.capacity(), end - bufferStart));
+			buffer.position(filled);
+
+			int read = channel.read(buffer, bufferStart + filled);
+			if (read <= 0) {
+				break;
+			}
+			filled += read;
+
+			// Handing out the complete lines
+			int consumed = emitLines(buffer, scanFrom, filled, filled == buffer.capacity(), bufferStart, handler);
+
+			// Moving the incomplete line to the start of the buffer
+			buffer.limit(filled).position(consumed);
+			buffer.compact();
+			bufferStart += consumed;
+			filled -= consumed;
+			scanFrom = filled;
+		}
+
+		return bufferStart;
+	}
+
+	/**
+	 * Reads the region by mapping it window by window
+	 */
+	private long readMapped(FileChannel channel, long offset, long end, LineHandler handler) throws IOException {
+
+		// File offset of the first byte of the current window
+		long windowStart = offset;
+
+		while (windowStart < end) {
+
+			int size = (int) Math.min(MAPPED_WINDOW_SIZE, end - windowStart);
+			MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, size);
+
+			int consumed = emitLines(window, 0, size, size == MAPPED_WINDOW_SIZE, windowStart, handler);
+
+			// Only an incomplete line at the end of the file is left
+			if (consumed == 0) {
+				break;
+			}
+			windowStart += consumed;
+		}
+
+		return windowStart;
+	}
+
+	/**
+	 * Hands out the complete lines in the region [0, limit) of the buffer. A
+	 * full buffer without any line terminator is handed out as one line so that
+	 * overly long lines cannot stall the tailer.
+	 *
+	 * @param buffer
+	 * @param scanFrom    index from where to look for the next line terminator
+	 * @param limit
+	 * @param full        true if the region cannot grow any further
+	 * @param bufferStart file offset of the first byte in the buffer
+	 * @param handler
+	 * @return number of bytes consumed
+	 */
+	static int emitLines(ByteBuffer buffer, int scanFrom, int limit, boolean full, long bufferStart,
+			LineHandler handler) {
+
+		// Start of the current line in the buffer
+		int lineStart = 0;
+
+		for (int i = scanFrom; i < limit; i++) {
+			if (buffer.get(i) == '\n') {
+				handler.onLine(buffer, lineStart, stripCarriageReturn(buffer, lineStart, i), bufferStart + lineStart);
+				lineStart = i + 1;
+			}
+		}
+
+		if (lineStart == 0 && full) {
+			handler.onLine(buffer, 0, limit, bufferStart);
+			lineStart = limit;
+		}
+
+		return lineStart;
+	}
+
+	/**
+	 * @param file
+	 * @return last known state of the file
+	 */
+	private TailState state(Path file) {
+
+		TailState state = states.get(file);
+
+		if (state == null) {
+			state = store.load(file);
+			if (state != null) {
+				states.put(file, state);
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * @param buffer
+	 * @param start
+	 * @param end
+	 * @return end of the line without a trailing carriage return
+	 */
+	private static int stripCarriageReturn(ByteBuffer buffer, int start, int end) {
+		return end > start && buffer.get(end - 1) == '\r' ? end - 1 : end;
+	}
+}
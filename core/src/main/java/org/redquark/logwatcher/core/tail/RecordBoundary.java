@@ -0,0 +1,22 @@
+package org.redquark.logwatcher.core.tail;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Tells the {@link CatchUpReader} which lines start a new log record, so
+ *         that a file is never split inside a record
+ *
+ */
+public interface RecordBoundary {
+
+	/**
+	 * @param buffer
+	 * @param start
+	 * @param end
+	 * @return true if the line in the region [start, end) of the buffer starts a
+	 *         new record. The region may be only the beginning of a long line.
+	 */
+	public boolean isRecordStart(ByteBuffer buffer, int start, int end);
+}
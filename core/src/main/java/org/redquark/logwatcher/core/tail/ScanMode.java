@@ -0,0 +1,36 @@
+package org.redquark.logwatcher.core.tail;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Defines how the {@link LogTailer} gets the new bytes of a log file
+ *
+ */
+public enum ScanMode {
+
+	/**
+	 * Reads the new region into a reusable direct buffer
+	 */
+	BUFFERED,
+
+	/**
+	 * Maps the new region of the file into memory. Avoids copying the bytes, but
+	 * mapped regions are only released by the garbage collector - on Windows this
+	 * can prevent the log file from being rotated in the meantime.
+	 */
+	MAPPED;
+
+	/**
+	 * @param value
+	 * @return the mode with the given name, {@link #BUFFERED} if it is unknown
+	 */
+	public static ScanMode from(String value) {
+
+		for (ScanMode mode : values()) {
+			if (mode.name().equalsIgnoreCase(value)) {
+				return mode;
+			}
+		}
+		return BUFFERED;
+	}
+}
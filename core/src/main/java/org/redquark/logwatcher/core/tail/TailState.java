@@ -0,0 +1,55 @@
+package org.redquark.logwatcher.core.tail;
+
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         This class holds the position up to which a log file has been
+ *         consumed along with the identity of the file at that time
+ *
+ */
+public final class TailState {
+
+	// Byte offset of the first byte which has not been consumed yet
+	private final long offset;
+
+	// Identity of the file (inode on Unix like systems)
+	private final String fileKey;
+
+	public TailState(long offset, String fileKey) {
+		this.offset = offset;
+		this.fileKey = fileKey;
+	}
+
+	/**
+	 * @param attributes
+	 * @return identity of a file - inode where available, creation time
+	 *         otherwise. A renamed file keeps its identity.
+	 */
+	public static String fileKey(BasicFileAttributes attributes) {
+
+		Object fileKey = attributes.fileKey();
+
+		return fileKey != null ? fileKey.toString() : Long.toString(attributes.creationTime().toMillis());
+	}
+
+	/**
+	 * @return byte offset of the first unconsumed byte
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return identity of the file the offset belongs to
+	 */
+	public String getFileKey() {
+		return fileKey;
+	}
+
+	@Override
+	public String toString() {
+		return "TailState [offset=" + offset + ", fileKey=" + fileKey + "]";
+	}
+}
@@ -0,0 +1,245 @@
+package org.redquark.logwatcher.core.tail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         This class persists the {@link TailState} of every watched file so
+ *         that tailing resumes from the same position after a bundle restart.
+ *         Every log file gets its own small properties file in the store
+ *         directory, named after the hash of its absolute path.
+ *
+ *         A state file is written at most once per
+ *         {@value #SAVE_INTERVAL_MILLIS} ms - a state saved sooner is kept in
+ *         memory, returned by {@link #load(Path)}, and written by the next
+ *         save of the file after the interval or by {@link #flush()}.
+ *
+ */
+public final class TailStateStore {
+
+	// Minimum interval between two writes of the same state file
+	private static final long SAVE_INTERVAL_MILLIS = 1000;
+
+	// Property holding the offset
+	private static final String OFFSET = "offset";
+
+	// Property holding the file key
+	private static final String FILE_KEY = "fileKey";
+
+	// Property holding the log file path - only for readability of the state file
+	private static final String PATH = "path";
+
+	// Logger
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	// Directory where state files are kept
+	private final File directory;
+
+	// Latest state per state file, written or not - also serializes the writes
+	// of a file
+	private final Map<File, Entry> entries = new ConcurrentHashMap<>();
+
+	public TailStateStore(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Reads the persisted state of the given log file
+	 *
+	 * @param logFile
+	 * @return {@link TailState} or null if nothing was persisted yet
+	 */
+	public TailState load(Path logFile) {
+
+		// State file of this log file
+		File stateFile = stateFile(logFile);
+
+		// Saved in this run, perhaps not written yet
+		Entry entry = entries.get(stateFile);
+		if (entry != null) {
+			synchronized (entry) {
+				if (entry.state != null) {
+					return entry.state;
+				}
+			}
+		}
+
+		if (!stateFile.isFile()) {
+			return null;
+		}
+
+		try (InputStream in = Files.newInputStream(stateFile.toPath())) {
+
+			Properties properties = new Properties();
+			properties.load(in);
+
+			return new TailState(Long.parseLong(properties.getProperty(OFFSET, "0")),
+					properties.getProperty(FILE_KEY));
+
+		} catch (IOException | NumberFormatException e) {
+			log.error("Could not read tail state of {}", logFile, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Persists the state of the given log file. The state is written to a
+	 * temporary file first and then moved so that a crash never leaves a
+	 * half written state behind. An unchanged state is not written again.
+	 *
+	 * @param logFile
+	 * @param state
+	 */
+	public void save(Path logFile, TailState state) {
+
+		// State file of this log file
+		File stateFile = stateFile(logFile);
+
+		Entry entry = entries.computeIfAbsent(stateFile, file -> new Entry());
+
+		synchronized (entry) {
+
+			if (entry.state != null && entry.state.getOffset() == state.getOffset()
+					&& Objects.equals(entry.state.getFileKey(), state.getFileKey())) {
+				return;
+			}
+
+			entry.logFile = logFile;
+			entry.state = state;
+			entry.dirty = true;
+
+			// Written recently - the next save or flush writes it
+			if (System.nanoTime() - entry.written < TimeUnit.MILLISECONDS.toNanos(SAVE_INTERVAL_MILLIS)) {
+				return;
+			}
+
+			write(stateFile, entry);
+		}
+	}
+
+	/**
+	 * Writes the states which have been saved but not written yet
+	 */
+	public void flush() {
+
+		for (Map.Entry<File, Entry> file : entries.entrySet()) {
+			Entry entry = file.getValue();
+			synchronized (entry) {
+				if (entry.dirty) {
+					write(file.getKey(), entry);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the state of the entry, the caller holds the lock of the entry
+	 */
+	private void write(File stateFile, Entry entry) {
+
+		Path temporaryFile = null;
+
+		try {
+
+			Files.createDirectories(directory.toPath());
+
+			Properties properties = new Properties();
+			properties.setProperty(PATH, entry.logFile.toAbsolutePath().toString());
+			properties.setProperty(OFFSET, Long.toString(entry.state.getOffset()));
+			if (entry.state.getFileKey() != null) {
+				properties.setProperty(FILE_KEY, entry.state.getFileKey());
+			}
+
+			// Temporary file to write to - of its own, the store is shared by several
+			// instances of the tailer
+			temporaryFile = Files.createTempFile(directory.toPath(), stateFile.getName(), ".tmp");
+
+			try (OutputStream out = Files.newOutputStream(temporaryFile)) {
+				properties.store(out, null);
+			}
+
+			Files.move(temporaryFile, stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+
+			entry.dirty = false;
+
+		} catch (IOException e) {
+			log.error("Could not persist tail state of {}", entry.logFile, e);
+		} finally {
+			entry.written = System.nanoTime();
+			if (temporaryFile != null) {
+				try {
+					Files.deleteIfExists(temporaryFile);
+				} catch (IOException e) {
+					log.debug("Could not delete {}: {}", temporaryFile, e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param logFile
+	 * @return the file holding the state of the given log file
+	 */
+	private File stateFile(Path logFile) {
+		return new File(directory, hash(logFile.toAbsolutePath().normalize().toString()) + ".state");
+	}
+
+	/**
+	 * @param value
+	 * @return hex encoded SHA-1 of the given value
+	 */
+	private static String hash(String value) {
+
+		try {
+
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(value.getBytes(StandardCharsets.UTF_8));
+
+			StringBuilder sb = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return sb.toString();
+
+		} catch (NoSuchAlgorithmException e) {
+			// Every JRE is required to support SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Latest state of a state file
+	 */
+	private static final class Entry {
+
+		// Log file of the state
+		private Path logFile;
+
+		// Latest state, null until saved in this run
+		private TailState state;
+
+		// Flag to determine whether the state still has to be written
+		private boolean dirty;
+
+		// Time of the last write, in nanoseconds
+		private long written = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(SAVE_INTERVAL_MILLIS);
+	}
+}
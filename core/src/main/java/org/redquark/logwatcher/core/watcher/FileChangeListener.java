@@ -0,0 +1,19 @@
+package org.redquark.logwatcher.core.watcher;
+
+import java.nio.file.Path;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Callback notified by the watcher whenever a watched file changes
+ *
+ */
+public interface FileChangeListener {
+
+	/**
+	 * Called from the watcher thread - implementations must not block
+	 *
+	 * @param file
+	 */
+	public void onChange(Path file);
+}
@@ -0,0 +1,41 @@
+package org.redquark.logwatcher.core.watcher;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Watches the files of a {@link LogFileSet} and reports their changes
+ *         to a {@link FileChangeListener}, see {@link WatchStrategy} for the
+ *         available implementations
+ *
+ */
+public interface FileWatcher extends Closeable {
+
+	/**
+	 * Starts watching
+	 *
+	 * @throws IOException
+	 */
+	public void start() throws IOException;
+
+	/**
+	 * Replaces the watched files without stopping
+	 *
+	 * @param files
+	 */
+	public void update(LogFileSet files);
+
+	/**
+	 * Picks up the directories which did not exist when they were last looked
+	 * at, e.g. a log directory created after the activation
+	 */
+	public void refresh();
+
+	/**
+	 * Stops watching and releases the resources
+	 */
+	@Override
+	public void close();
+}
@@ -0,0 +1,190 @@
+package org.redquark.logwatcher.core.watcher;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.redquark.logwatcher.core.tail.ArchiveReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         The set of log files watched by one configuration - every file in
+ *         any of the directories whose name matches any of the glob patterns,
+ *         e.g. "error.log", "*.log" or "replication-*.log"
+ *
+ */
+public final class LogFileSet {
+
+	// Logger
+	private static final Logger LOG = LoggerFactory.getLogger(LogFileSet.class);
+
+	// Directories to look in
+	private final List<Path> directories;
+
+	// Compiled file name patterns
+	private final List<PathMatcher> matchers;
+
+	/**
+	 * @param directories paths of the directories
+	 * @param patterns    glob patterns of the file names
+	 */
+	public LogFileSet(String[] directories, String[] patterns) {
+
+		Set<Path> paths = new LinkedHashSet<>();
+		if (directories != null) {
+			for (String directory : directories) {
+				if (directory != null && !directory.trim().isEmpty()) {
+					paths.add(Paths.get(directory.trim()).toAbsolutePath().normalize());
+				}
+			}
+		}
+		this.directories = Collections.unmodifiableList(new ArrayList<>(paths));
+
+		List<PathMatcher> pathMatchers = new ArrayList<>();
+		if (patterns != null) {
+			for (String pattern : patterns) {
+				if (pattern != null && !pattern.trim().isEmpty()) {
+					pathMatchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern.trim()));
+				}
+			}
+		}
+		this.matchers = Collections.unmodifiableList(pathMatchers);
+	}
+
+	/**
+	 * @return the watched directories
+	 */
+	public List<Path> getDirectories() {
+		return directories;
+	}
+
+	/**
+	 * @param fileName name of a file, without directory
+	 * @return true if the name matches any of the patterns. Compressed files
+	 *         never match, they are not written to anymore.
+	 */
+	public boolean matches(Path fileName) {
+
+		if (fileName.toString().endsWith(ArchiveReader.GZIP_EXTENSION)) {
+			return false;
+		}
+
+		for (PathMatcher matcher : matchers) {
+			if (matcher.matches(fileName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param file absolute path of a file
+	 * @return true if the file is in one of the directories and its name matches
+	 */
+	public boolean contains(Path file) {
+		return file.getParent() != null && directories.contains(file.getParent().toAbsolutePath().normalize())
+				&& matches(file.getFileName());
+	}
+
+	/**
+	 * @return the matching files which currently exist
+	 */
+	public List<Path> listFiles() {
+
+		List<Path> files = new ArrayList<>();
+
+		for (Path directory : directories) {
+
+			if (!Files.isDirectory(directory)) {
+				continue;
+			}
+
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+				for (Path file : stream) {
+					if (matches(file.getFileName()) && Files.isRegularFile(file)) {
+						files.add(file);
+					}
+				}
+			} catch (IOException e) {
+				LOG.error("Could not list {}", directory, e);
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * Lists the rotated copies of the matching files - files named like a
+	 * matching file followed by a suffix, e.g. error.log.2026-10-17,
+	 * error.log.1 or error.log.2026-10-17.gz
+	 *
+	 * @return the rotated files, oldest first
+	 */
+	public List<Path> listArchives() {
+
+		List<Path> archives = new ArrayList<>();
+
+		for (Path directory : directories) {
+
+			if (!Files.isDirectory(directory)) {
+				continue;
+			}
+
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+				for (Path file : stream) {
+					if (isArchive(file.getFileName().toString()) && Files.isRegularFile(file)) {
+						archives.add(file);
+					}
+				}
+			} catch (IOException e) {
+				LOG.error("Could not list {}", directory, e);
+			}
+		}
+
+		archives.sort(Comparator.comparing(LogFileSet::lastModified));
+
+		return archives;
+	}
+
+	/**
+	 * @param name
+	 * @return true if the name is not a matching one itself, but one of its
+	 *         prefixes up to a dot is
+	 */
+	private boolean isArchive(String name) {
+
+		if (matches(Paths.get(name))) {
+			return false;
+		}
+
+		for (int dot = name.lastIndexOf('.'); dot > 0; dot = name.lastIndexOf('.', dot - 1)) {
+			if (matches(Paths.get(name.substring(0, dot)))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return last modification time of the file or 0 if it is not known
+	 */
+	private static long lastModified(Path file) {
+		try {
+			return Files.getLastModifiedTime(file).toMillis();
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,277 @@
+package org.redquark.logwatcher.core.watcher;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         This class owns exactly one {@link WatchService} and one event loop
+ *         thread for all directories of a {@link LogFileSet}, however many
+ *         directories and files it contains. Changes of the watched files are
+ *         handed to a {@link FileChangeListener} which is expected to dispatch
+ *         the actual work elsewhere. Closing the watcher closes the watch
+ *         service, which ends the loop and releases the native handles.
+ *
+ *         The set of files can be replaced while the loop is running, see
+ *         {@link #update(LogFileSet)}. A directory which does not exist yet, or
+ *         not anymore, is registered once it appeared - the event loop looks
+ *         for it every {@value #REFRESH_INTERVAL_MILLIS} ms, and so does every
+ *         {@link #refresh()}.
+ *
+ */
+public final class LogFileWatcher implements FileWatcher, Runnable {
+
+	// Interval of the event loop looking for the directories which did not exist
+	private static final long REFRESH_INTERVAL_MILLIS = 10000;
+
+	// Time to wait for the event loop to end on close
+	private static final long JOIN_TIMEOUT_MILLIS = 5000;
+
+	// Logger
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	// Files to watch
+	private volatile LogFileSet files;
+
+	// Listener to notify
+	private final FileChangeListener listener;
+
+	// Directory of every registered watch key
+	private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+
+	// Directories reported as missing - reported once until they appear
+	private final Set<Path> missing = new HashSet<>();
+
+	// Watch service shared by all directories
+	private WatchService watchService;
+
+	// Event loop thread
+	private Thread thread;
+
+	// Flag to determine if the watcher has been closed
+	private volatile boolean closed;
+
+	public LogFileWatcher(LogFileSet files, FileChangeListener listener) {
+		this.files = files;
+		this.listener = listener;
+	}
+
+	/**
+	 * Registers the directories and starts the event loop thread
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public synchronized void start() throws IOException {
+
+		// Getting an instance of the WatchService to watch the paths
+		watchService = FileSystems.getDefault().newWatchService();
+
+		// Register every directory to the same watch service
+		for (Path directory : files.getDirectories()) {
+			register(directory);
+		}
+
+		thread = new Thread(this, "logwatcher-watch");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Replaces the watched files without stopping the event loop. Directories
+	 * which are no longer needed are unregistered, new ones registered.
+	 *
+	 * @param newFiles
+	 */
+	@Override
+	public synchronized void update(LogFileSet newFiles) {
+
+		files = newFiles;
+
+		if (watchService == null || closed) {
+			return;
+		}
+
+		// Dropping the directories which are not watched anymore
+		for (Map.Entry<WatchKey, Path> entry : directories.entrySet()) {
+			if (!newFiles.getDirectories().contains(entry.getValue())) {
+				entry.getKey().cancel();
+				directories.remove(entry.getKey());
+				log.info("WatchService is unregistered for the directory: {}", entry.getValue());
+			}
+		}
+
+		// Adding the new ones
+		missing.retainAll(newFiles.getDirectories());
+		refresh();
+	}
+
+	/**
+	 * Registers the directories which are not registered yet - new ones and
+	 * those which did not exist so far
+	 */
+	@Override
+	public synchronized void refresh() {
+
+		if (watchService == null || closed) {
+			return;
+		}
+
+		for (Path directory : files.getDirectories()) {
+			if (!directories.containsValue(directory)) {
+				try {
+					register(directory);
+				} catch (IOException e) {
+					log.error("Could not watch {}", directory, e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Registers the directory to the watch service, if it exists
+	 */
+	private void register(Path directory) throws IOException {
+
+		if (!Files.isDirectory(directory)) {
+			if (missing.add(directory)) {
+				log.warn("Directory {} does not exist, it will be watched once it is created", directory);
+			}
+			return;
+		}
+
+		directories.put(directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY), directory);
+		missing.remove(directory);
+		log.info("WatchService is registered for the directory: {}", directory);
+	}
+
+	@Override
+	public void run() {
+
+		try {
+
+			long refreshed = System.nanoTime();
+
+			while (!closed) {
+
+				// Retrieves and removes next watch key, waiting a while if none are yet present
+				WatchKey watchKey = watchService.poll(REFRESH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+				// Directories created in the meantime are watched from now on
+				if (System.nanoTime() - refreshed >= TimeUnit.MILLISECONDS.toNanos(REFRESH_INTERVAL_MILLIS)) {
+					refreshed = System.nanoTime();
+					if (!closed) {
+						refresh();
+					}
+				}
+
+				if (watchKey == null) {
+					continue;
+				}
+
+				// Directory the key belongs to
+				Path directory = directories.get(watchKey);
+				if (directory == null) {
+					watchKey.cancel();
+					continue;
+				}
+
+				// Changed files - every file is reported only once per batch of events
+				Set<Path> changed = new LinkedHashSet<>();
+
+				// The files as of now - they may have been replaced in the meantime
+				LogFileSet watched = files;
+
+				for (WatchEvent<?> event : watchKey.pollEvents()) {
+
+					// Events may have been lost - better scan every file once too often
+					if (event.kind() == OVERFLOW) {
+						for (Path file : watched.listFiles()) {
+							if (file.getParent().equals(directory)) {
+								changed.add(file);
+							}
+						}
+						continue;
+					}
+
+					// Relative path of the file which has been created/modified
+					Path fileName = (Path) event.context();
+
+					if (watched.matches(fileName)) {
+						changed.add(directory.resolve(fileName));
+					}
+				}
+
+				// A listener throwing must neither end the event loop nor keep the key from
+				// being reset
+				for (Path file : changed) {
+					try {
+						listener.onChange(file);
+					} catch (RuntimeException e) {
+						log.error(e.getMessage(), e);
+					}
+				}
+
+				// The key must be reset to receive further events. If it is not valid anymore
+				// the directory is gone
+				if (!watchKey.reset()) {
+					log.warn("Directory {} is no longer accessible, it will be watched again once it is created",
+							directory);
+					directories.remove(watchKey);
+				}
+			}
+
+		} catch (ClosedWatchServiceException e) {
+			log.debug("WatchService closed");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) {
+			log.error(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Stops the event loop and releases the watch service
+	 */
+	@Override
+	public synchronized void close() {
+
+		closed = true;
+
+		try {
+			if (watchService != null) {
+				watchService.close();
+			}
+		} catch (IOException e) {
+			log.error(e.getMessage(), e);
+		}
+
+		if (thread != null) {
+			try {
+				thread.join(JOIN_TIMEOUT_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
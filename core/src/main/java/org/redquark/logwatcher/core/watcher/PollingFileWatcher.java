@@ -0,0 +1,249 @@
+package org.redquark.logwatcher.core.watcher;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Detects changes by comparing size, modification time and identity of
+ *         the watched files - one stat call per file and round, the directories
+ *         are only listed every few seconds to discover new files. For file
+ *         systems on which the {@link java.nio.file.WatchService} delivers
+ *         events late or not at all, e.g. NFS or overlay volumes.
+ *
+ *         The interval adapts to the activity: it drops to the minimum as soon
+ *         as a file changed and doubles with every quiet round up to the
+ *         maximum, so detection is fast while a file is busy and cheap while
+ *         it is idle.
+ *
+ */
+public final class PollingFileWatcher implements FileWatcher, Runnable {
+
+	// Time between two listings of the directories
+	private static final long DISCOVERY_INTERVAL_MILLIS = 10000;
+
+	// Time to wait for the polling thread to end on close
+	private static final long JOIN_TIMEOUT_MILLIS = 5000;
+
+	// Logger
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	// Listener to notify
+	private final FileChangeListener listener;
+
+	// Shortest interval, while files are changing
+	private final long minIntervalMillis;
+
+	// Longest interval, while all files are idle
+	private final long maxIntervalMillis;
+
+	// Last seen state of every known file - only used by the polling thread
+	private final Map<Path, Stamp> stamps = new HashMap<>();
+
+	// Files to watch
+	private volatile LogFileSet files;
+
+	// Flag to force a listing of the directories in the next round
+	private volatile boolean rediscover = true;
+
+	// Polling thread
+	private Thread thread;
+
+	// Flag to determine if the watcher has been closed
+	private volatile boolean closed;
+
+	/**
+	 * @param files
+	 * @param listener
+	 * @param minIntervalMillis shortest interval, while files are changing
+	 * @param maxIntervalMillis longest interval, while all files are idle
+	 */
+	public PollingFileWatcher(LogFileSet files, FileChangeListener listener, long minIntervalMillis,
+			long maxIntervalMillis) {
+		this.files = files;
+		this.listener = listener;
+		this.minIntervalMillis = Math.max(10, minIntervalMillis);
+		this.maxIntervalMillis = Math.max(this.minIntervalMillis, maxIntervalMillis);
+	}
+
+	@Override
+	public synchronized void start() {
+
+		thread = new Thread(this, "logwatcher-poll");
+		thread.setDaemon(true);
+		thread.start();
+
+		log.info("Polling {} every {} to {} ms", files.getDirectories(), minIntervalMillis, maxIntervalMillis);
+	}
+
+	@Override
+	public void update(LogFileSet newFiles) {
+		files = newFiles;
+		rediscover = true;
+	}
+
+	@Override
+	public void refresh() {
+		rediscover = true;
+	}
+
+	@Override
+	public void run() {
+
+		long interval = minIntervalMillis;
+		long discovered = 0;
+
+		try {
+
+			while (!closed) {
+
+				// A failing round - e.g. a listener throwing - must not end the polling
+				try {
+
+					// Listing the directories only now and then, or when the files changed
+					long now = System.nanoTime();
+					if (rediscover || now - discovered >= TimeUnit.MILLISECONDS.toNanos(DISCOVERY_INTERVAL_MILLIS)) {
+						rediscover = false;
+						discovered = now;
+						discover();
+					}
+
+					// Busy files are checked again soon, idle ones less and less often
+					interval = poll() ? minIntervalMillis : Math.min(maxIntervalMillis, interval * 2);
+
+				} catch (RuntimeException e) {
+					log.error(e.getMessage(), e);
+				}
+
+				Thread.sleep(interval);
+			}
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Adds the files which appeared to the known ones and forgets those which
+	 * are no longer watched
+	 */
+	private void discover() {
+
+		LogFileSet watched = files;
+
+		// A file whose stamp is not known yet reports a change - it is new
+		for (Path file : watched.listFiles()) {
+			if (!stamps.containsKey(file)) {
+				stamps.put(file, Stamp.NONE);
+			}
+		}
+
+		stamps.keySet().removeIf(file -> !watched.contains(file));
+	}
+
+	/**
+	 * Checks every known file once
+	 *
+	 * @return true if any file changed
+	 */
+	private boolean poll() {
+
+		boolean changed = false;
+
+		for (Iterator<Map.Entry<Path, Stamp>> it = stamps.entrySet().iterator(); it.hasNext();) {
+
+			Map.Entry<Path, Stamp> entry = it.next();
+			Path file = entry.getKey();
+
+			Stamp stamp;
+			try {
+				stamp = Stamp.of(Files.readAttributes(file, BasicFileAttributes.class));
+			} catch (NoSuchFileException e) {
+				// Rotated away - looking for the new file in the next round
+				it.remove();
+				rediscover = true;
+				continue;
+			} catch (IOException e) {
+				log.debug("Could not check {}: {}", file, e.getMessage());
+				continue;
+			}
+
+			if (!stamp.equals(entry.getValue())) {
+				entry.setValue(stamp);
+				listener.onChange(file);
+				changed = true;
+			}
+		}
+
+		return changed;
+	}
+
+	@Override
+	public synchronized void close() {
+
+		closed = true;
+
+		if (thread != null) {
+			thread.interrupt();
+			try {
+				thread.join(JOIN_TIMEOUT_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Size, modification time and identity of a file
+	 */
+	private static final class Stamp {
+
+		// State of a file which has not been checked yet
+		static final Stamp NONE = new Stamp(-1, -1, null);
+
+		// Size of the file
+		private final long size;
+
+		// Last modification time
+		private final long modified;
+
+		// Identity of the file - changes on rotation
+		private final Object fileKey;
+
+		private Stamp(long size, long modified, Object fileKey) {
+			this.size = size;
+			this.modified = modified;
+			this.fileKey = fileKey;
+		}
+
+		static Stamp of(BasicFileAttributes attributes) {
+			return new Stamp(attributes.size(), attributes.lastModifiedTime().toMillis(), attributes.fileKey());
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Stamp)) {
+				return false;
+			}
+			Stamp stamp = (Stamp) other;
+			return size == stamp.size && modified == stamp.modified && Objects.equals(fileKey, stamp.fileKey);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(size, modified, fileKey);
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package org.redquark.logwatcher.core.watcher;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjLongConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         This class merges the changes of a file which arrive in quick
+ *         succession - a logger flushing many times per second - into one scan
+ *         request. A change opens a window for its file; every further change
+ *         pushes the end of the window out by the debounce time, but never
+ *         beyond the maximum delay after the first change. When the window ends
+ *         the target is called once, with the time of the first change, so the
+ *         number of scans follows the amount of new data rather than the number
+ *         of flushes.
+ *
+ *         One timer thread serves all files; a change only updates the end of
+ *         the window of its file, it never cancels or schedules a task while a
+ *         window is open.
+ *
+ */
+public final class ScanDebouncer implements FileChangeListener {
+
+	// Logger
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	// Quiet time after the last change before the scan is requested
+	private final long debounceNanos;
+
+	// Longest time between the first change and the scan request
+	private final long maxDelayNanos;
+
+	// Receives the file and the time of its first change, in nanoseconds
+	private final ObjLongConsumer<Path> target;
+
+	// Open windows by file
+	private final Map<Path, Window> windows = new ConcurrentHashMap<>();
+
+	// Ends the windows
+	private final ScheduledExecutorService timer;
+
+	/**
+	 * @param debounceMillis quiet time after the last change before the scan is
+	 *                       requested
+	 * @param maxDelayMillis longest time between the first change and the scan
+	 *                       request, at least the debounce time
+	 * @param target         receives the file and the time of its first change,
+	 *                       in nanoseconds
+	 */
+	public ScanDebouncer(long debounceMillis, long maxDelayMillis, ObjLongConsumer<Path> target) {
+
+		this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, debounceMillis));
+		this.maxDelayNanos = Math.max(debounceNanos, TimeUnit.MILLISECONDS.toNanos(maxDelayMillis));
+		this.target = target;
+
+		// A named daemon thread so that it is easy to spot in thread dumps
+		this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "logwatcher-debounce");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@Override
+	public void onChange(Path file) {
+
+		long now = System.nanoTime();
+
+		// Extending the open window, if any
+		Window window = windows.get(file);
+		if (window != null && window.extend(now)) {
+			return;
+		}
+
+		// Opening a new one - a concurrent change for the same file may have been
+		// faster
+		Window opened = new Window(now);
+		window = windows.putIfAbsent(file, opened);
+		if (window != null) {
+			if (!window.extend(now)) {
+				// The window just ended; this change is covered by a scan requested after it
+				fire(file, now);
+			}
+			return;
+		}
+
+		try {
+			timer.schedule(() -> close(file, opened), debounceNanos, TimeUnit.NANOSECONDS);
+		} catch (RejectedExecutionException e) {
+			// Shut down - requesting right away so that the change is not lost
+			windows.remove(file, opened);
+			fire(file, now);
+		}
+	}
+
+	/**
+	 * Ends all open windows at once, requesting their scans, and stops the timer
+	 */
+	public void shutdown() {
+
+		timer.shutdownNow();
+
+		List<Path> files = new ArrayList<>(windows.keySet());
+		for (Path file : files) {
+			Window window = windows.remove(file);
+			if (window != null && window.end()) {
+				fire(file, window.first);
+			}
+		}
+	}
+
+	/**
+	 * Called by the timer - ends the window if it was not extended in the
+	 * meantime, otherwise waits for its new end
+	 */
+	private void close(Path file, Window window) {
+
+		long remaining = window.remaining(System.nanoTime());
+
+		if (remaining > 0) {
+			try {
+				timer.schedule(() -> close(file, window), remaining, TimeUnit.NANOSECONDS);
+				return;
+			} catch (RejectedExecutionException e) {
+				// Shut down, the window is ended below
+			}
+		}
+
+		if (window.end()) {
+			windows.remove(file, window);
+			fire(file, window.first);
+		}
+	}
+
+	/**
+	 * Hands the file to the target
+	 */
+	private void fire(Path file, long first) {
+		try {
+			target.accept(file, first);
+		} catch (RuntimeException e) {
+			log.error(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * The changes of one file which are merged into one scan request
+	 */
+	private final class Window {
+
+		// Time of the first change
+		private final long first;
+
+		// Time the window ends unless it is extended
+		private long due;
+
+		// Flag to determine if the window has ended
+		private boolean ended;
+
+		Window(long first) {
+			this.first = first;
+			this.due = first + debounceNanos;
+		}
+
+		/**
+		 * @return false if the window has already ended
+		 */
+		synchronized boolean extend(long now) {
+			if (ended) {
+				return false;
+			}
+			due = Math.min(now + debounceNanos, first + maxDelayNanos);
+			return true;
+		}
+
+		/**
+		 * @return nanoseconds until the window ends
+		 */
+		synchronized long remaining(long now) {
+			return ended ? 0 : due - now;
+		}
+
+		/**
+		 * @return true if this call ended the window
+		 */
+		synchronized boolean end() {
+			if (ended) {
+				return false;
+			}
+			ended = true;
+			return true;
+		}
+	}
+}
@@ -0,0 +1,214 @@
+package org.redquark.logwatcher.core.watcher;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         This class runs the detection work on a small bounded pool of its own
+ *         threads so that the watch loop never blocks on scanning. Scans are
+ *         keyed (by log file): while a scan for a key is still queued further
+ *         requests for the same key are dropped because the queued scan reads
+ *         up to the end of the file anyway. Scans of the same key never run
+ *         concurrently - a request arriving while one runs is queued once more
+ *         after it finished, so no worker waits for another one. An action
+ *         which must not overlap any scan, e.g. replacing the state the scans
+ *         work on, can be run exclusively.
+ *
+ */
+public final class ScanDispatcher {
+
+	// Logger
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	// Bounded executor doing the actual work
+	private final ThreadPoolExecutor executor;
+
+	// Keys which have a scan queued or running, with the scan still to run
+	private final Map<Object, ScanRequest> requests = new ConcurrentHashMap<>();
+
+	// Shared by the running scans, held exclusively by actions which must not
+	// overlap any of them
+	private final ReadWriteLock scans = new ReentrantReadWriteLock();
+
+	/**
+	 * @param name          prefix of the worker thread names
+	 * @param threads       number of worker threads
+	 * @param queueCapacity maximum number of waiting scans
+	 */
+	public ScanDispatcher(final String name, int threads, int queueCapacity) {
+
+		// Creates named daemon threads so that they are easy to spot in thread dumps
+		ThreadFactory threadFactory = new ThreadFactory() {
+
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+
+		executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	/**
+	 * Requests a scan for the given key
+	 *
+	 * @param key
+	 * @param scan
+	 * @return true if the scan was queued, also to run after the one running
+	 *         now, false if one was already waiting or the dispatcher is
+	 *         saturated/shut down
+	 */
+	public boolean dispatch(final Object key, final Runnable scan) {
+
+		boolean[] queued = new boolean[1];
+		boolean[] idle = new boolean[1];
+
+		requests.compute(key, (k, request) -> {
+			if (request == null) {
+				idle[0] = true;
+				request = new ScanRequest();
+			}
+			// A scan for this key is already waiting - it will see the new data too
+			if (request.scan == null) {
+				request.scan = scan;
+				queued[0] = true;
+			}
+			return request;
+		});
+
+		// Running now - the running scan queues this one when it is finished
+		if (!idle[0]) {
+			return queued[0];
+		}
+
+		return submit(key);
+	}
+
+	/**
+	 * Runs the action on the calling thread once the running scans have
+	 * finished. Scans starting in the meantime wait for it.
+	 *
+	 * @param action
+	 */
+	public void exclusive(Runnable action) {
+
+		scans.writeLock().lock();
+		try {
+			action.run();
+		} finally {
+			scans.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Changes the number of worker threads of the running dispatcher. Surplus
+	 * threads end once they are idle.
+	 *
+	 * @param threads
+	 */
+	public synchronized void resize(int threads) {
+
+		// The maximum must never fall below the core size
+		if (threads >= executor.getMaximumPoolSize()) {
+			executor.setMaximumPoolSize(threads);
+			executor.setCorePoolSize(threads);
+		} else {
+			executor.setCorePoolSize(threads);
+			executor.setMaximumPoolSize(threads);
+		}
+	}
+
+	/**
+	 * Stops accepting new scans and waits for the running ones to finish
+	 *
+	 * @param timeoutMillis
+	 */
+	public void shutdown(long timeoutMillis) {
+
+		executor.shutdown();
+
+		try {
+			if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+				log.warn("Scans did not finish within {} ms, interrupting them", timeoutMillis);
+				executor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Queues the worker running the requested scans of the key
+	 *
+	 * @param key
+	 * @return false if the dispatcher is saturated/shut down
+	 */
+	private boolean submit(final Object key) {
+
+		try {
+
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+
+					// Taking the scan so that changes arriving during it request another one
+					Runnable[] scan = new Runnable[1];
+					requests.computeIfPresent(key, (k, request) -> {
+						scan[0] = request.scan;
+						request.scan = null;
+						return request;
+					});
+
+					scans.readLock().lock();
+					try {
+						scan[0].run();
+					} catch (RuntimeException e) {
+						log.error(e.getMessage(), e);
+					} finally {
+						scans.readLock().unlock();
+					}
+
+					// Requested in the meantime - queued behind the scans of the other keys
+					if (requests.computeIfPresent(key, (k, r) -> r.scan == null ? null : r) != null) {
+						submit(key);
+					}
+				}
+			});
+			return true;
+
+		} catch (RejectedExecutionException e) {
+			requests.remove(key);
+			log.debug("Scan for {} rejected, it will be picked up by the next change", key);
+			return false;
+		}
+	}
+
+	/**
+	 * Scan requested for a key
+	 */
+	private static final class ScanRequest {
+
+		// Scan still to run, null once a worker took it
+		private Runnable scan;
+	}
+}
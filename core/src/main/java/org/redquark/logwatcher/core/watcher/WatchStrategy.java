@@ -0,0 +1,37 @@
+package org.redquark.logwatcher.core.watcher;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Defines how changes of the log files are detected
+ *
+ */
+public enum WatchStrategy {
+
+	/**
+	 * File system events of the operating system (inotify on Linux) through the
+	 * {@link java.nio.file.WatchService}, see {@link LogFileWatcher}
+	 */
+	NATIVE,
+
+	/**
+	 * Checks the size and modification time of the watched files at an adaptive
+	 * interval, see {@link PollingFileWatcher}. For network and overlay file
+	 * systems which deliver events late or not at all.
+	 */
+	POLL;
+
+	/**
+	 * @param value
+	 * @return the strategy with the given name, {@link #NATIVE} if it is unknown
+	 */
+	public static WatchStrategy from(String value) {
+
+		for (WatchStrategy strategy : values()) {
+			if (strategy.name().equalsIgnoreCase(value)) {
+				return strategy;
+			}
+		}
+		return NATIVE;
+	}
+}
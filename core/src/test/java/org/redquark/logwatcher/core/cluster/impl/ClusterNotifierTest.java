@@ -0,0 +1,295 @@
+package org.redquark.logwatcher.core.cluster.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.redquark.logwatcher.core.configs.LogWatcherClusterConfiguration;
+import org.redquark.logwatcher.core.email.EmailService;
+import org.redquark.logwatcher.core.notification.LogNotification;
+import org.redquark.logwatcher.core.notification.LogNotification.Kind;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Runs an aggregator and two members in-process on one shared
+ *         directory
+ *
+ */
+public class ClusterNotifierTest {
+
+	// Fingerprints of the records in the tests
+	private static final String NPE = "1111111111111111";
+	private static final String IOE = "2222222222222222";
+
+	// The shared directory
+	private Path directory;
+
+	// Digests sent by the aggregators, in order
+	private final List<List<LogNotification>> digests = new ArrayList<>();
+
+	// Instances which are still active
+	private final List<ClusterNotifier> active = new ArrayList<>();
+
+	private ClusterNotifier aggregator;
+	private ClusterNotifier first;
+	private ClusterNotifier second;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("logwatcher-cluster");
+		aggregator = start("aggregator", "AGGREGATOR");
+		first = start("first", "MEMBER");
+		second = start("second", "MEMBER");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		for (ClusterNotifier notifier : active) {
+			notifier.deactivate();
+		}
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Test
+	public void sendsOneDigestEntryPerFingerprint() throws Exception {
+
+		aggregator.notify(Arrays.asList(notification(Kind.NEW, NPE, 1)));
+		first.notify(Arrays.asList(notification(Kind.NEW, NPE, 1), notification(Kind.REPEAT, NPE, 4),
+				notification(Kind.NEW, IOE, 1)));
+		second.notify(Arrays.asList(notification(Kind.NEW, NPE, 2)));
+		first.publish();
+		second.publish();
+
+		aggregator.aggregate();
+
+		assertEquals(1, digests.size());
+		Map<String, LogNotification> digest = byFingerprint(digests.get(0));
+		assertEquals(2, digest.size());
+		assertEquals(Kind.NEW, digest.get(NPE).getKind());
+		assertEquals(8, digest.get(NPE).getCount());
+		assertEquals("trace of " + NPE, digest.get(NPE).getTrace());
+		assertEquals(1, digest.get(IOE).getCount());
+	}
+
+	@Test
+	public void neverCountsASummaryTwice() throws Exception {
+
+		first.notify(Arrays.asList(notification(Kind.NEW, NPE, 3)));
+		first.publish();
+		aggregator.aggregate();
+
+		// Nothing new - the same summaries are read again
+		first.publish();
+		aggregator.aggregate();
+		aggregator.aggregate();
+		assertEquals(1, digests.size());
+
+		// Only the growth is sent, as a repetition without the trace
+		first.notify(Arrays.asList(notification(Kind.REPEAT, NPE, 2)));
+		second.notify(Arrays.asList(notification(Kind.REPEAT, NPE, 1)));
+		first.publish();
+		second.publish();
+		aggregator.aggregate();
+
+		assertEquals(2, digests.size());
+		LogNotification repeat = byFingerprint(digests.get(1)).get(NPE);
+		assertEquals(Kind.REPEAT, repeat.getKind());
+		assertEquals(3, repeat.getCount());
+		assertNull(repeat.getTrace());
+	}
+
+	@Test
+	public void countsARestartedMemberAsANewRun() throws Exception {
+
+		first.notify(Arrays.asList(notification(Kind.NEW, NPE, 5)));
+		first.publish();
+		aggregator.aggregate();
+
+		// Counted before the restart but not reported yet - published on deactivation
+		first.notify(Arrays.asList(notification(Kind.REPEAT, NPE, 2)));
+		stop(first);
+		aggregator.aggregate();
+		assertEquals(2, byFingerprint(digests.get(1)).get(NPE).getCount());
+
+		// The new run counts from zero, its counts add to those reported before
+		ClusterNotifier restarted = start("first", "MEMBER");
+		restarted.notify(Arrays.asList(notification(Kind.REPEAT, NPE, 1)));
+		restarted.publish();
+		aggregator.aggregate();
+
+		assertEquals(3, digests.size());
+		LogNotification repeat = byFingerprint(digests.get(2)).get(NPE);
+		assertEquals(Kind.REPEAT, repeat.getKind());
+		assertEquals(1, repeat.getCount());
+
+		// The old run is gone from the summaries and stays forgotten
+		restarted.publish();
+		aggregator.aggregate();
+		assertEquals(3, digests.size());
+	}
+
+	@Test
+	public void doesNotResendAfterTheAggregatorRestarted() throws Exception {
+
+		first.notify(Arrays.asList(notification(Kind.NEW, NPE, 2), notification(Kind.NEW, IOE, 1)));
+		first.publish();
+		aggregator.aggregate();
+
+		stop(aggregator);
+		ClusterNotifier restarted = start("aggregator", "AGGREGATOR");
+		restarted.aggregate();
+		assertEquals(1, digests.size());
+
+		first.notify(Arrays.asList(notification(Kind.REPEAT, IOE, 1)));
+		first.publish();
+		restarted.aggregate();
+
+		assertEquals(2, digests.size());
+		Map<String, LogNotification> digest = byFingerprint(digests.get(1));
+		assertEquals(1, digest.size());
+		assertEquals(1, digest.get(IOE).getCount());
+	}
+
+	@Test
+	public void doesNotResendAMemberWhoseSummaryWasUnreadable() throws Exception {
+
+		first.notify(Arrays.asList(notification(Kind.NEW, NPE, 4)));
+		second.notify(Arrays.asList(notification(Kind.NEW, IOE, 1)));
+		first.publish();
+		second.publish();
+		aggregator.aggregate();
+		assertEquals(1, digests.size());
+
+		// A half written or otherwise broken file is skipped for this round
+		Files.write(directory.resolve("first.summary.json"), "{\"entries\":[".getBytes(StandardCharsets.UTF_8));
+		second.notify(Arrays.asList(notification(Kind.REPEAT, IOE, 1)));
+		second.publish();
+		aggregator.aggregate();
+		assertEquals(2, digests.size());
+		assertEquals(Arrays.asList(IOE), new ArrayList<>(byFingerprint(digests.get(1)).keySet()));
+
+		// Readable again - only its growth is sent
+		first.notify(Arrays.asList(notification(Kind.REPEAT, NPE, 1)));
+		first.publish();
+		aggregator.aggregate();
+
+		assertEquals(3, digests.size());
+		LogNotification repeat = byFingerprint(digests.get(2)).get(NPE);
+		assertEquals(Kind.REPEAT, repeat.getKind());
+		assertEquals(1, repeat.getCount());
+		assertNull(repeat.getTrace());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void failsToActivateWithoutASharedDirectory() throws Exception {
+
+		ClusterNotifier notifier = new ClusterNotifier();
+		inject(notifier, "emailService", emailService());
+		Path configured = directory;
+		directory = Paths.get("");
+		try {
+			notifier.activate(configuration("member", "MEMBER"));
+		} finally {
+			directory = configured;
+		}
+	}
+
+	/**
+	 * @return an activated instance, its run distinct from any earlier one of the
+	 *         same id
+	 */
+	private ClusterNotifier start(String instanceId, String role) throws Exception {
+
+		// The run is identified by its start time
+		Thread.sleep(2);
+
+		ClusterNotifier notifier = new ClusterNotifier();
+		inject(notifier, "emailService", emailService());
+		notifier.activate(configuration(instanceId, role));
+		active.add(notifier);
+		return notifier;
+	}
+
+	private void stop(ClusterNotifier notifier) {
+		notifier.deactivate();
+		active.remove(notifier);
+	}
+
+	private static LogNotification notification(Kind kind, String fingerprint, long count) {
+		return new LogNotification(kind, "Exception", fingerprint, kind == Kind.NEW ? "trace of " + fingerprint : null,
+				count, 1000, 2000);
+	}
+
+	private static Map<String, LogNotification> byFingerprint(List<LogNotification> digest) {
+		Map<String, LogNotification> notifications = new HashMap<>();
+		for (LogNotification notification : digest) {
+			assertTrue("More than one entry for " + notification.getFingerprint(),
+					notifications.put(notification.getFingerprint(), notification) == null);
+		}
+		return notifications;
+	}
+
+	/**
+	 * @return email service recording the digests
+	 */
+	@SuppressWarnings("unchecked")
+	private EmailService emailService() {
+		return (EmailService) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { EmailService.class },
+				(proxy, method, args) -> {
+					if ("sendNotifications".equals(method.getName())) {
+						digests.add(new ArrayList<>((List<LogNotification>) args[0]));
+					}
+					return null;
+				});
+	}
+
+	/**
+	 * @return the configuration of the instance on the shared directory, with
+	 *         intervals long enough to never run during a test
+	 */
+	private LogWatcherClusterConfiguration configuration(String instanceId, String role) {
+		return (LogWatcherClusterConfiguration) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { LogWatcherClusterConfiguration.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "role":
+						return role;
+					case "instanceId":
+						return instanceId;
+					case "sharedDirectory":
+						return directory.toString();
+					case "publishIntervalSeconds":
+					case "digestIntervalSeconds":
+						return 3600;
+					default:
+						return method.getDefaultValue();
+					}
+				});
+	}
+
+	private static void inject(Object target, String name, Object value) throws ReflectiveOperationException {
+		Field field = target.getClass().getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(target, value);
+	}
+}
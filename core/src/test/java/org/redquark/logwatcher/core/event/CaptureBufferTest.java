@@ -0,0 +1,192 @@
+package org.redquark.logwatcher.core.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Overflows the memory budget of the capture buffers. The budget is
+ *         measured in events of the same size: the first event of a test is
+ *         added with a large budget, and what it took is the cost of one.
+ *
+ */
+public class CaptureBufferTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	// Directory of the spill files
+	private Path spillDirectory;
+
+	// Budget shared by the buffers of a test
+	private final AtomicLong budget = new AtomicLong(1024 * 1024);
+
+	// Batches handed out by a drain
+	private final List<List<LogEvent>> batches = new ArrayList<>();
+
+	@Before
+	public void setUp() throws IOException {
+		spillDirectory = folder.newFolder("spill").toPath();
+	}
+
+	@Test
+	public void spillsTheEventsBeyondTheBudgetAndReadsThemBackInOrder() throws IOException {
+
+		try (CaptureBuffer capture = new CaptureBuffer("error.log", budget, CaptureOverflow.SPILL, spillDirectory)) {
+
+			// Room for one more event
+			long cost = add(capture, event(0, "IllegalStateException", "com.acme.Importer"));
+			budget.set(cost);
+
+			for (int i = 1; i < 5; i++) {
+				capture.onEvent(event(i, "IllegalStateException", i % 2 == 0 ? "com.acme.Importer" : null));
+			}
+			assertEquals(3, capture.getSpilled());
+			assertEquals(1, spillFiles());
+
+			capture.drain(batches::add, 2);
+
+			List<LogEvent> events = flatten();
+			assertEquals(5, events.size());
+			for (int i = 0; i < 5; i++) {
+				LogEvent event = events.get(i);
+				assertEquals(i, event.getOffset());
+				assertEquals(100 + i, event.getLength());
+				assertEquals(1000L * i, event.getTimestamp());
+				assertEquals(text(i, "IllegalStateException"), event.getText());
+				assertEquals(i, event.getOmittedLines());
+				assertEquals(1, event.getOccurrences());
+			}
+			assertNull(events.get(3).getLogger());
+			assertEquals("com.acme.Importer", events.get(4).getLogger());
+			assertEquals(3, batches.size());
+
+			// The events in memory gave their budget back
+			assertEquals(2 * cost, budget.get());
+		}
+
+		assertEquals(0, spillFiles());
+	}
+
+	@Test
+	public void foldsTheEventsBeyondTheBudgetIntoSamples() throws IOException {
+
+		try (CaptureBuffer capture = new CaptureBuffer("error.log", budget, CaptureOverflow.SAMPLE, spillDirectory)) {
+
+			// Room for one more event and one sample
+			long cost = add(capture, event(0, "IllegalStateException", null));
+			budget.set(2 * cost);
+			capture.onEvent(event(1, "IllegalStateException", null));
+
+			// Too large for the rest of the budget - sampled, even its sample does not
+			// fit, so it is folded by type
+			StringBuilder large = new StringBuilder();
+			for (int i = 0; i < 100; i++) {
+				large.append(text(2, "IllegalStateException")).append('\n');
+			}
+			capture.onEvent(new LogEvent("error.log", 2, 0, 2000, "IllegalStateException", null, large.toString(), 0));
+
+			// A sample of its own, then the same trace folded into it
+			capture.onEvent(event(3, "IllegalArgumentException", null));
+			capture.onEvent(new LogEvent("error.log", 4, 0, 4000, "IllegalArgumentException", null,
+					text(3, "IllegalArgumentException"), 0));
+
+			// Another trace, with no room for its sample - folded by type
+			capture.onEvent(event(5, "IllegalStateException", null));
+
+			assertEquals(4, capture.getSampled());
+			assertEquals(0, capture.getSpilled());
+			assertEquals(0, spillFiles());
+
+			capture.drain(batches::add, 10);
+
+			assertEquals(2, batches.size());
+			assertEquals(2, batches.get(0).size());
+			assertEquals(1, batches.get(0).get(1).getOffset());
+
+			List<LogEvent> samples = batches.get(1);
+			assertEquals(2, samples.size());
+			assertEquals(2, samples.get(0).getOffset());
+			assertEquals(2, samples.get(0).getOccurrences());
+			assertEquals(5000, samples.get(0).getTimestamp());
+			assertEquals(3, samples.get(1).getOffset());
+			assertEquals(2, samples.get(1).getOccurrences());
+			assertEquals(4000, samples.get(1).getTimestamp());
+		}
+	}
+
+	@Test
+	public void sharesTheBudgetWithTheOtherBuffersOfTheScan() throws IOException {
+
+		try (CaptureBuffer first = new CaptureBuffer("error.log", budget, CaptureOverflow.SPILL, spillDirectory);
+				CaptureBuffer second = new CaptureBuffer("error.log", budget, CaptureOverflow.SPILL,
+						spillDirectory)) {
+
+			long cost = add(first, event(0, "IllegalStateException", null));
+			budget.set(0);
+
+			second.onEvent(event(1, "IllegalStateException", null));
+			assertEquals(1, second.getSpilled());
+
+			// Given back by the first buffer once its events are handed out
+			first.drain(batches::add, 10);
+			assertEquals(cost, budget.get());
+
+			second.onEvent(event(2, "IllegalStateException", null));
+			assertEquals("A buffer keeps overflowing to keep the order", 2, second.getSpilled());
+		}
+	}
+
+	/**
+	 * Adds the event
+	 *
+	 * @return budget the event took
+	 */
+	private long add(CaptureBuffer capture, LogEvent event) {
+		long before = budget.get();
+		capture.onEvent(event);
+		long cost = before - budget.get();
+		assertTrue("The event must fit into the budget", cost > 0);
+		return cost;
+	}
+
+	/**
+	 * @return event number i, all of the same cost
+	 */
+	private static LogEvent event(int i, String type, String logger) {
+		return new LogEvent("error.log", i, 100 + i, 1000L * i, type, logger, text(i, type), i);
+	}
+
+	private static String text(int i, String type) {
+		return String.format("java.lang.%-30s: %d\n\tat com.acme.Importer.run(Importer.java:42)", type, i);
+	}
+
+	private List<LogEvent> flatten() {
+		List<LogEvent> events = new ArrayList<>();
+		for (List<LogEvent> batch : batches) {
+			events.addAll(batch);
+		}
+		return events;
+	}
+
+	private long spillFiles() throws IOException {
+		try (Stream<Path> files = Files.list(spillDirectory)) {
+			return files.count();
+		}
+	}
+}
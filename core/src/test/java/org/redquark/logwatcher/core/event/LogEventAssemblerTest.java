@@ -0,0 +1,154 @@
+package org.redquark.logwatcher.core.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.redquark.logwatcher.core.matcher.LogMatcher;
+import org.redquark.logwatcher.core.matcher.LogMatchers;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Assembles records whose lines are read by two passes over the same
+ *         file
+ *
+ */
+public class LogEventAssemblerTest {
+
+	// First line of the record split across the passes
+	private static final String FIRST = "18.10.2026 10:15:30.123 *ERROR* [main] com.acme.Importer Import failed";
+
+	// Lines of its trace
+	private static final String CAUSE = "java.lang.NullPointerException: null";
+	private static final String FRAME = "\tat com.acme.Importer.run(Importer.java:42)";
+
+	// First line of the record following it
+	private static final String NEXT = "18.10.2026 10:15:31.000 *INFO* [main] com.acme.Importer Import done";
+
+	private final LogMatcher matcher = LogMatchers.compile(new String[] { "NullPointerException" });
+
+	// Events of all assemblers
+	private final List<LogEvent> events = new ArrayList<>();
+
+	// Position in the file of the next line
+	private long offset;
+
+	@Test
+	public void continuesTheRecordLeftOpenByThePreviousPass() {
+
+		LogEventAssembler first = assembler();
+		read(first, FIRST, CAUSE);
+		assertTrue(first.hasOpenRecord());
+
+		LogEventAssembler second = assembler();
+		second.continueAfter(first);
+		read(second, FRAME, NEXT);
+		second.finish();
+
+		assertFalse(first.hasOpenRecord());
+		assertEquals(1, events.size());
+		LogEvent event = events.get(0);
+		assertEquals(FIRST + "\n" + CAUSE + "\n" + FRAME, event.getText());
+		assertEquals("NullPointerException", event.getType());
+		assertEquals("com.acme.Importer", event.getLogger());
+		assertEquals(0, event.getOffset());
+		assertEquals(length(FIRST, CAUSE, FRAME) - 1, event.getLength());
+	}
+
+	@Test
+	public void leavesTheRecordOpenWhenTheNextPassStartsANewOne() {
+
+		LogEventAssembler first = assembler();
+		read(first, FIRST, CAUSE, FRAME);
+
+		LogEventAssembler second = assembler();
+		second.continueAfter(first);
+		read(second, NEXT);
+		second.finish();
+
+		assertTrue(events.isEmpty());
+		assertTrue(first.hasOpenRecord());
+
+		// The record was complete - finished by an assembler of its own
+		LogEventAssembler completing = assembler();
+		completing.takeOver(first);
+		completing.finish();
+
+		assertFalse(first.hasOpenRecord());
+		assertEquals(1, events.size());
+		assertEquals(FIRST + "\n" + CAUSE + "\n" + FRAME, events.get(0).getText());
+	}
+
+	@Test
+	public void continuesOnlyInTheChunkReadingTheDirectlyFollowingLine() {
+
+		LogEventAssembler first = assembler();
+		read(first, FIRST, CAUSE);
+
+		// Two chunks of a catch-up, the second one further down the file
+		LogEventAssembler chunk = assembler();
+		LogEventAssembler laterChunk = assembler();
+		chunk.continueAfter(first);
+		laterChunk.continueAfter(first);
+
+		long following = offset;
+		offset += 4096;
+		read(laterChunk, "\tat com.acme.Main.main(Main.java:7)");
+		offset = following;
+		read(chunk, FRAME);
+
+		chunk.finish();
+		laterChunk.finish();
+
+		assertEquals(1, events.size());
+		assertEquals(FIRST + "\n" + CAUSE + "\n" + FRAME, events.get(0).getText());
+	}
+
+	@Test
+	public void takingOverFinishesTheOwnOpenRecordFirst() {
+
+		LogEventAssembler first = assembler();
+		read(first, FIRST, CAUSE);
+
+		LogEventAssembler second = assembler();
+		read(second, FIRST, CAUSE);
+		second.takeOver(first);
+		second.finish();
+
+		assertEquals(2, events.size());
+		assertEquals(0, events.get(1).getOffset());
+	}
+
+	private LogEventAssembler assembler() {
+		return new LogEventAssembler("error.log", matcher, 100, events::add);
+	}
+
+	/**
+	 * Hands the lines to the assembler as if they were read from the file
+	 */
+	private void read(LogEventAssembler assembler, String... lines) {
+		for (String line : lines) {
+			byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+			assembler.onLine(ByteBuffer.wrap(bytes), 0, bytes.length, offset);
+			offset += bytes.length + 1;
+		}
+	}
+
+	/**
+	 * @return number of bytes of the lines with their line terminators
+	 */
+	private static int length(String... lines) {
+		int length = 0;
+		for (String line : lines) {
+			length += line.getBytes(StandardCharsets.UTF_8).length + 1;
+		}
+		return length;
+	}
+}
@@ -0,0 +1,89 @@
+package org.redquark.logwatcher.core.matcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Matches literal and anchored <code>class:</code> types compiled by
+ *         {@link LogMatchers}
+ *
+ */
+public class AhoCorasickMatcherTest {
+
+	@Test
+	public void matchesASimpleClassNameOnlyAsAWholeName() {
+
+		LogMatcher matcher = LogMatchers.compile(new String[] { "class:NullPointerException" });
+
+		assertEquals("NullPointerException", matcher.match("java.lang.NullPointerException: null"));
+		assertEquals("NullPointerException", matcher.match("NullPointerException"));
+		assertEquals("NullPointerException", matcher.match("Caused by: NullPointerException"));
+		assertEquals("NullPointerException", matcher.match("(NullPointerException)"));
+
+		assertNull(matcher.match("MyNullPointerException: null"));
+		assertNull(matcher.match("NullPointerExceptionHandler failed"));
+		assertNull(matcher.match("a_NullPointerException"));
+		assertNull(matcher.match("$NullPointerException"));
+		assertNull(matcher.match("NullPointerException2"));
+		assertNull(matcher.match("ÄNullPointerException"));
+	}
+
+	@Test
+	public void matchesAQualifiedClassNameOnlyWithItsWholePackage() {
+
+		LogMatcher matcher = LogMatchers.compile(new String[] { "class:java.io.IOException" });
+
+		assertEquals("java.io.IOException", matcher.match("java.io.IOException: Broken pipe"));
+		assertEquals("java.io.IOException", matcher.match("Caused by: java.io.IOException"));
+
+		assertNull(matcher.match("com.acme.java.io.IOException: Broken pipe"));
+		assertNull(matcher.match("java.io.IOExceptionWrapper"));
+		assertNull(matcher.match("IOException: Broken pipe"));
+	}
+
+	@Test
+	public void keepsLookingAfterAMatchWhichIsNotAWholeName() {
+
+		LogMatcher matcher = LogMatchers.compile(new String[] { "class:Exception" });
+
+		assertEquals("Exception", matcher.match("IOException wrapped in Exception"));
+		assertNull(matcher.match("IOException wrapped in RuntimeException"));
+	}
+
+	@Test
+	public void reportsAnotherPatternEndingAtTheSamePosition() {
+
+		LogMatcher matcher = LogMatchers.compile(new String[] { "class:Exception", "IOException" });
+
+		assertEquals("IOException", matcher.match("java.io.IOException"));
+		assertEquals("Exception", matcher.match("java.lang.Exception"));
+	}
+
+	@Test
+	public void matchesLiteralsAnywhere() {
+
+		LogMatcher matcher = LogMatchers.compile(new String[] { "NullPointerException" });
+
+		assertEquals("NullPointerException", matcher.match("MyNullPointerExceptionHandler"));
+	}
+
+	@Test
+	public void checksTheBoundariesOfTheRegionOnly() {
+
+		LogMatcher matcher = LogMatchers.compile(new String[] { "class:NullPointerException" });
+
+		byte[] bytes = "xNullPointerExceptiony".getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+		assertEquals("NullPointerException", matcher.match(buffer, 1, bytes.length - 1));
+		assertNull(matcher.match(buffer, 0, bytes.length - 1));
+		assertNull(matcher.match(buffer, 1, bytes.length));
+	}
+}
@@ -0,0 +1,221 @@
+package org.redquark.logwatcher.core.notifier.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.redquark.logwatcher.core.configs.WebhookNotifierConfiguration;
+import org.redquark.logwatcher.core.metrics.LogWatcherMetrics;
+import org.redquark.logwatcher.core.notification.LogNotification;
+import org.redquark.logwatcher.core.notification.LogNotification.Kind;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Posts to a stub webhook served in-process
+ *
+ */
+public class WebhookNotifierTest {
+
+	// Timeout of the notifier in the tests
+	private static final int TIMEOUT_MILLIS = 300;
+
+	// The stub webhook
+	private HttpServer server;
+
+	// Status the stub responds with
+	private volatile int status = 204;
+
+	// Time the stub takes to respond
+	private volatile long delayMillis;
+
+	// Bodies and content types received by the stub
+	private final BlockingQueue<String> bodies = new LinkedBlockingQueue<>();
+	private final BlockingQueue<String> contentTypes = new LinkedBlockingQueue<>();
+
+	// Outcomes and sinks passed to the metrics
+	private final BlockingQueue<Boolean> sent = new LinkedBlockingQueue<>();
+	private final BlockingQueue<String> sinks = new LinkedBlockingQueue<>();
+
+	private WebhookNotifier notifier;
+
+	@Before
+	public void setUp() throws Exception {
+
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/hook", exchange -> {
+			byte[] body = readFully(exchange.getRequestBody());
+			bodies.add(new String(body, "UTF-8"));
+			contentTypes.add(exchange.getRequestHeaders().getFirst("Content-Type"));
+			try {
+				Thread.sleep(delayMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			exchange.sendResponseHeaders(status, -1);
+			exchange.close();
+		});
+		server.start();
+
+		notifier = new WebhookNotifier();
+		inject(notifier, "metrics", metrics());
+		notifier.activate(configuration("http://127.0.0.1:" + server.getAddress().getPort() + "/hook"));
+	}
+
+	@After
+	public void tearDown() {
+		notifier.deactivate();
+		server.stop(0);
+	}
+
+	@Test
+	public void postsTheBatchAsJson() throws Exception {
+
+		notifier.deliver(Arrays.asList(notification("NullPointerException", "java.lang.NullPointerException: \"x\""),
+				notification("IOException", "java.io.IOException")), 3);
+
+		String body = bodies.poll(5, TimeUnit.SECONDS);
+		assertTrue(body, body.startsWith("{\"dropped\":3,\"notifications\":[{\"kind\":\"NEW\""));
+		assertTrue(body, body.contains("\"type\":\"NullPointerException\""));
+		assertTrue(body, body.contains("\"trace\":\"java.lang.NullPointerException: \\\"x\\\"\""));
+		assertTrue(body, body.contains("\"type\":\"IOException\""));
+		assertTrue(contentTypes.poll().startsWith("application/json"));
+		assertEquals(Boolean.TRUE, sent.poll(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void deliversQueuedNotificationsFromItsOwnThread() throws Exception {
+
+		notifier.notify(Collections.singletonList(notification("NullPointerException", "trace")));
+
+		String body = bodies.poll(10, TimeUnit.SECONDS);
+		assertTrue(String.valueOf(body), body != null && body.contains("\"type\":\"NullPointerException\""));
+	}
+
+	@Test
+	public void failsOnAResponseOtherThan2xx() throws Exception {
+
+		status = 500;
+
+		try {
+			notifier.deliver(Collections.singletonList(notification("NullPointerException", "trace")), 0);
+			fail("A 500 response must fail the delivery");
+		} catch (java.io.IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("500"));
+		}
+		assertEquals(Boolean.FALSE, sent.poll(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void givesUpAfterTheTimeout() throws Exception {
+
+		delayMillis = 5000;
+
+		long started = System.nanoTime();
+		try {
+			notifier.deliver(Collections.singletonList(notification("NullPointerException", "trace")), 0);
+			fail("A webhook slower than the timeout must fail the delivery");
+		} catch (java.net.SocketTimeoutException e) {
+			// Expected
+		}
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+		assertTrue("Took " + elapsed + " ms", elapsed < 3000);
+		assertEquals(Boolean.FALSE, sent.poll(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void isNamedAfterTheWebhook() throws Exception {
+
+		String name = "webhook:127.0.0.1:" + server.getAddress().getPort();
+		assertEquals(name, notifier.getName());
+
+		notifier.deliver(Collections.singletonList(notification("NullPointerException", "trace")), 0);
+		assertEquals(name, sinks.poll(5, TimeUnit.SECONDS));
+
+		// Two webhooks on the same host are told apart by their configured names
+		WebhookNotifier named = new WebhookNotifier();
+		inject(named, "metrics", metrics());
+		named.activate(configuration("http://127.0.0.1:" + server.getAddress().getPort() + "/hook", "alerts"));
+		try {
+			assertEquals("webhook:alerts", named.getName());
+		} finally {
+			named.deactivate();
+		}
+	}
+
+	private static LogNotification notification(String type, String trace) {
+		return new LogNotification(Kind.NEW, type, "0123456789abcdef", trace, 1, 1000, 1000);
+	}
+
+	/**
+	 * @return metrics recording the outcome of every send
+	 */
+	private LogWatcherMetrics metrics() {
+		return (LogWatcherMetrics) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { LogWatcherMetrics.class }, (proxy, method, args) -> {
+					if ("sent".equals(method.getName())) {
+						sinks.add((String) args[0]);
+						sent.add((Boolean) args[2]);
+					}
+					return null;
+				});
+	}
+
+	/**
+	 * @return the configuration with the given URL, defaults otherwise
+	 */
+	private WebhookNotifierConfiguration configuration(String url) {
+		return configuration(url, "");
+	}
+
+	/**
+	 * @return the configuration with the given URL and name, defaults otherwise
+	 */
+	private WebhookNotifierConfiguration configuration(String url, String name) {
+		return (WebhookNotifierConfiguration) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { WebhookNotifierConfiguration.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "url":
+						return url;
+					case "name":
+						return name;
+					case "timeoutMillis":
+						return TIMEOUT_MILLIS;
+					case "batchWindowMillis":
+						return 0;
+					default:
+						return method.getDefaultValue();
+					}
+				});
+	}
+
+	private static void inject(Object target, String name, Object value) throws ReflectiveOperationException {
+		Field field = target.getClass().getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(target, value);
+	}
+
+	private static byte[] readFully(java.io.InputStream in) throws java.io.IOException {
+		java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int n;
+		while ((n = in.read(buffer)) >= 0) {
+			out.write(buffer, 0, n);
+		}
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,150 @@
+package org.redquark.logwatcher.core.tail;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Splits files in a temporary directory into chunks. A line starting
+ *         with 'R' starts a record; the long lines of the traces are full of
+ *         'R' so that a split inside a line would be noticed.
+ *
+ */
+public class CatchUpReaderTest {
+
+	// Size of the files which are split
+	private static final long FILE_SIZE = 20L * 1024 * 1024;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	// Two threads, so at most four chunks
+	private final CatchUpReader reader = new CatchUpReader(2, 0,
+			(buffer, start, end) -> end > start && buffer.get(start) == 'R');
+
+	@After
+	public void tearDown() {
+		reader.close();
+	}
+
+	@Test
+	public void splitsAtRecordStarts() throws IOException {
+
+		Path file = write("records.log", 40);
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+			List<Long> boundaries = reader.split(channel, 0, channel.size());
+
+			assertEquals(5, boundaries.size());
+			assertEquals(Long.valueOf(0), boundaries.get(0));
+			assertEquals(Long.valueOf(channel.size()), boundaries.get(4));
+			for (int i = 1; i < 4; i++) {
+				assertTrue(boundaries.toString(), boundaries.get(i) > boundaries.get(i - 1));
+				assertRecordStart(channel, boundaries.get(i));
+			}
+		}
+	}
+
+	@Test
+	public void splitsOnlyTheRegion() throws IOException {
+
+		Path file = write("records.log", 40);
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+			long offset = 1024 * 1024 + 7;
+			List<Long> boundaries = reader.split(channel, offset, channel.size() - 100);
+
+			assertEquals(Long.valueOf(offset), boundaries.get(0));
+			assertEquals(Long.valueOf(channel.size() - 100), boundaries.get(boundaries.size() - 1));
+			for (int i = 1; i < boundaries.size() - 1; i++) {
+				assertTrue(boundaries.toString(), boundaries.get(i) > boundaries.get(i - 1));
+				assertRecordStart(channel, boundaries.get(i));
+			}
+		}
+	}
+
+	@Test
+	public void doesNotSplitASmallRegion() throws IOException {
+
+		Path file = write("records.log", 40);
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			assertEquals(Arrays.asList(0L, 1000L), reader.split(channel, 0, 1000));
+		}
+	}
+
+	@Test
+	public void doesNotSplitARegionWithoutRecordStarts() throws IOException {
+
+		// One record with a trace as long as the file
+		Path file = write("trace.log", Integer.MAX_VALUE);
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			assertEquals(Arrays.asList(0L, channel.size()), reader.split(channel, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Writes records of a short first line and the given number of trace lines,
+	 * every tenth of which is longer than the search buffer
+	 */
+	private Path write(String name, int traceLines) throws IOException {
+
+		Path file = folder.getRoot().toPath().resolve(name);
+
+		byte[] shortLine = "\tat com.acme.Importer.run(Importer.java:42)\n".getBytes(StandardCharsets.UTF_8);
+		byte[] longLine = new byte[100 * 1024];
+		Arrays.fill(longLine, (byte) 'R');
+		longLine[0] = '\t';
+		longLine[longLine.length - 1] = '\n';
+
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+
+			long written = 0;
+			int record = 0;
+			while (written < FILE_SIZE) {
+				byte[] first = ("Record " + record++ + "\n").getBytes(StandardCharsets.UTF_8);
+				out.write(first);
+				written += first.length;
+				for (int i = 0; i < traceLines && written < FILE_SIZE; i++) {
+					byte[] line = i % 10 == 9 ? longLine : shortLine;
+					out.write(line);
+					written += line.length;
+				}
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * Asserts that a record starts at the offset
+	 */
+	private static void assertRecordStart(FileChannel channel, long offset) throws IOException {
+
+		ByteBuffer bytes = ByteBuffer.allocate(2);
+		channel.read(bytes, offset - 1);
+
+		assertEquals("Line terminator before " + offset, '\n', bytes.get(0));
+		assertEquals("Record start at " + offset, 'R', bytes.get(1));
+	}
+}
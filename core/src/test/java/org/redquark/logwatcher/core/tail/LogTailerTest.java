@@ -0,0 +1,124 @@
+package org.redquark.logwatcher.core.tail;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Tails a file in a temporary directory through renames, copies and
+ *         truncations
+ *
+ */
+public class LogTailerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	// The tailed file
+	private Path file;
+
+	private LogTailer tailer;
+
+	@Before
+	public void setUp() throws IOException {
+		file = folder.getRoot().toPath().resolve("error.log");
+		tailer = new LogTailer(new TailStateStore(folder.newFolder("state")), true, ScanMode.BUFFERED);
+	}
+
+	@Test
+	public void readsOnlyTheCompleteLinesAppendedSinceTheLastCall() throws IOException {
+
+		append(file, "one\ntwo\nthr");
+		assertEquals(Arrays.asList("one", "two"), tail());
+
+		append(file, "ee\r\nfour\n");
+		assertEquals(Arrays.asList("three", "four"), tail());
+		assertEquals(Collections.emptyList(), tail());
+	}
+
+	@Test
+	public void readsTheRestOfARenamedFileBeforeTheNewFileOfTheSameName() throws IOException {
+
+		append(file, "one\n");
+		assertEquals(Arrays.asList("one"), tail());
+
+		// Written before the rotation but not read yet
+		append(file, "two\n");
+		Files.move(file, file.resolveSibling("error.log.1"));
+		append(file, "three\n");
+
+		assertEquals(Arrays.asList("two", "three"), tail());
+
+		append(file, "four\n");
+		assertEquals(Arrays.asList("four"), tail());
+	}
+
+	@Test
+	public void readsATruncatedCopyFromTheBeginningWithoutTheCopiedLines() throws IOException {
+
+		append(file, "one\ntwo\n");
+		assertEquals(Arrays.asList("one", "two"), tail());
+
+		// copytruncate - the copy is a file of its own, the original keeps its identity
+		Files.copy(file, file.resolveSibling("error.log.1"), StandardCopyOption.COPY_ATTRIBUTES);
+		truncate(file, 0);
+		append(file, "x\n");
+
+		assertEquals(Arrays.asList("x"), tail());
+	}
+
+	@Test
+	public void readsATruncatedFileFromTheBeginning() throws IOException {
+
+		append(file, "first line\nsecond line\n");
+		assertEquals(Arrays.asList("first line", "second line"), tail());
+
+		// Whatever is left is read again
+		truncate(file, 11);
+		assertEquals(Arrays.asList("first line"), tail());
+
+		// Still shorter than the offset read before the truncation
+		truncate(file, 0);
+		append(file, "new\n");
+		assertEquals(Arrays.asList("new"), tail());
+		assertEquals(Collections.emptyList(), tail());
+	}
+
+	/**
+	 * @return the lines the tailer handed out
+	 */
+	private List<String> tail() throws IOException {
+
+		List<String> lines = new ArrayList<>();
+		tailer.tail(file, (buffer, start, end, offset) -> lines.add(ByteLines.decode(buffer, start, end)));
+		return lines;
+	}
+
+	private static void append(Path file, String text) throws IOException {
+		Files.write(file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+				StandardOpenOption.APPEND);
+	}
+
+	private static void truncate(Path file, long size) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.truncate(size);
+		}
+	}
+}
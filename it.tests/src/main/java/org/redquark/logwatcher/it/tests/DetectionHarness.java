@@ -0,0 +1,370 @@
+package org.redquark.logwatcher.it.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sling.commons.scheduler.ScheduleOptions;
+import org.apache.sling.commons.scheduler.Scheduler;
+import org.osgi.framework.BundleContext;
+import org.redquark.logwatcher.core.configs.LogWatcherConfiguration;
+import org.redquark.logwatcher.core.discovery.DiscoveryService;
+import org.redquark.logwatcher.core.email.EmailService;
+import org.redquark.logwatcher.core.index.ErrorIndexService;
+import org.redquark.logwatcher.core.metrics.LogWatcherMetrics;
+import org.redquark.logwatcher.core.notification.LogNotification;
+import org.redquark.logwatcher.core.notification.LogNotification.Kind;
+import org.redquark.logwatcher.core.notifier.Notifier;
+import org.redquark.logwatcher.core.records.RecordBufferService;
+import org.redquark.logwatcher.core.schedulers.LogWatcherScheduler;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Runs the real {@link LogWatcherScheduler} against the traffic of a
+ *         {@link SyntheticLogWriter} in a temporary directory. The scheduler
+ *         gets a stub {@link Scheduler}, a recording {@link EmailService}
+ *         behind the email sink and no-op metrics, index and record buffer; its
+ *         watcher, tailer and scan threads are the real ones.
+ *
+ *         Every ERROR record written is a trace of its own, so every one must
+ *         arrive as exactly one new-trace notification. The {@link Result}
+ *         lists the ids which never arrived or arrived more than once and the
+ *         percentiles of the time from the write to the notification.
+ *
+ */
+public final class DetectionHarness {
+
+	// Time to wait for the last notifications after the writer stopped
+	private static final long DRAIN_TIMEOUT_MILLIS = 30000;
+
+	// Configuration values differing from the defaults
+	private final Map<String, Object> overrides = new HashMap<>();
+
+	// Time the notifications arrived, in nanoseconds, by id
+	private final Map<Long, Long> received = new ConcurrentHashMap<>();
+
+	// Ids which arrived more than once
+	private final List<Long> duplicates = Collections.synchronizedList(new ArrayList<>());
+
+	// Number of new-trace notifications without id
+	private final AtomicLong unattributed = new AtomicLong();
+
+	/**
+	 * @param name  name of an attribute of {@link LogWatcherConfiguration}
+	 * @param value value replacing its default
+	 */
+	public void configure(String name, Object value) {
+		overrides.put(name, value);
+	}
+
+	/**
+	 * Runs the scheduler while the writer writes for the given time, then waits
+	 * for the last notifications. The log file exists before the scheduler
+	 * starts, as it does on a running instance.
+	 *
+	 * @param writer         writer of a log file named error.log
+	 * @param directory      directory of the log file
+	 * @param durationMillis time to write for
+	 * @return the result
+	 * @throws Exception
+	 */
+	public Result run(SyntheticLogWriter writer, Path directory, long durationMillis) throws Exception {
+
+		Path state = Files.createTempDirectory("logwatcher-harness-state");
+		Files.write(writer.getFile(), new byte[0], StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+		configure("filePath", new String[] { directory.toString() });
+		configure("logFile", new String[] { "error.log" });
+		configure("type", SyntheticLogWriter.TYPES);
+		if (!overrides.containsKey("fingerprintTableSize")) {
+			configure("fingerprintTableSize", 1000000);
+		}
+
+		// Truncating only what has been read already
+		writer.setBeforeTruncate(() -> awaitAll(writer.getWritten(), DRAIN_TIMEOUT_MILLIS));
+
+		LogWatcherScheduler logWatcher = new LogWatcherScheduler();
+		inject(logWatcher, "scheduler", stub(Scheduler.class));
+		inject(logWatcher, "metrics", stub(LogWatcherMetrics.class));
+		inject(logWatcher, "errorIndexService", stub(ErrorIndexService.class));
+		inject(logWatcher, "recordBufferService", stub(RecordBufferService.class));
+		inject(logWatcher, "discoveryService", stub(DiscoveryService.class));
+		inject(logWatcher, "notifiers", Collections.singletonList(new EmailSink(new RecordingEmailService())));
+
+		LogWatcherConfiguration configuration = configuration();
+		BundleContext bundleContext = (BundleContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { BundleContext.class }, (proxy, method, args) -> "getDataFile".equals(method.getName())
+						? new File(state.toFile(), (String) args[0])
+						: defaultValue(method.getReturnType()));
+
+		invoke(logWatcher, "activate", new Class<?>[] { BundleContext.class, LogWatcherConfiguration.class },
+				bundleContext, configuration);
+
+		try {
+			writer.run(durationMillis);
+			awaitAll(writer.getWritten(), DRAIN_TIMEOUT_MILLIS);
+		} finally {
+			invoke(logWatcher, "deactivate", new Class<?>[] { LogWatcherConfiguration.class }, configuration);
+			delete(state);
+		}
+
+		return new Result(writer, received, duplicates, unattributed.get());
+	}
+
+	/**
+	 * Waits until every id written so far has arrived
+	 */
+	private void awaitAll(Map<Long, Long> written, long timeoutMillis) {
+
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+		while (!received.keySet().containsAll(written.keySet()) && System.nanoTime() < deadline) {
+			try {
+				TimeUnit.MILLISECONDS.sleep(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return the configuration with the defaults of the annotation and the
+	 *         overrides
+	 */
+	private LogWatcherConfiguration configuration() {
+		return (LogWatcherConfiguration) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { LogWatcherConfiguration.class }, (proxy, method, args) -> {
+					if (overrides.containsKey(method.getName())) {
+						return overrides.get(method.getName());
+					}
+					if (method.getDefaultValue() != null) {
+						return method.getDefaultValue();
+					}
+					return "toString".equals(method.getName()) ? "LogWatcherConfiguration" + overrides
+							: defaultValue(method.getReturnType());
+				});
+	}
+
+	/**
+	 * @return a stub of the interface - every method does nothing and returns
+	 *         the default value, or the stub itself if it returns the type it was
+	 *         called on, e.g. the fluent {@link ScheduleOptions}
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T stub(Class<T> type) {
+		return (T) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { type },
+				(proxy, method, args) -> {
+					if (method.getReturnType() == ScheduleOptions.class) {
+						return stub(ScheduleOptions.class);
+					}
+					if (method.getReturnType().isInstance(proxy)) {
+						return proxy;
+					}
+					return "toString".equals(method.getName()) ? type.getSimpleName() + " stub"
+							: defaultValue(method.getReturnType());
+				});
+	}
+
+	private static Object defaultValue(Class<?> type) {
+
+		if (type == boolean.class) {
+			return false;
+		}
+		if (type == int.class) {
+			return 0;
+		}
+		if (type == long.class) {
+			return 0L;
+		}
+		if (type == double.class) {
+			return 0d;
+		}
+		return null;
+	}
+
+	private static void inject(Object target, String name, Object value) throws ReflectiveOperationException {
+		Field field = target.getClass().getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(target, value);
+	}
+
+	private static void invoke(Object target, String name, Class<?>[] types, Object... args)
+			throws ReflectiveOperationException {
+		Method method = target.getClass().getDeclaredMethod(name, types);
+		method.setAccessible(true);
+		method.invoke(target, args);
+	}
+
+	private static void delete(Path directory) throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				if (Files.isDirectory(file)) {
+					delete(file);
+				} else {
+					Files.delete(file);
+				}
+			}
+		}
+		Files.delete(directory);
+	}
+
+	/**
+	 * Records the time every traced notification arrived
+	 */
+	private final class RecordingEmailService implements EmailService {
+
+		@Override
+		public void sendEmail(String content) {
+			// Only the notifications are of interest
+		}
+
+		@Override
+		public void sendNotifications(List<LogNotification> notifications) {
+
+			long now = System.nanoTime();
+
+			for (LogNotification notification : notifications) {
+
+				if (notification.getKind() != Kind.NEW) {
+					continue;
+				}
+
+				long id = SyntheticLogWriter.idOf(notification.getTrace());
+				if (id < 0) {
+					unattributed.incrementAndGet();
+				} else if (received.putIfAbsent(id, now) != null) {
+					duplicates.add(id);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The email sink of the bundle, in front of the recording service
+	 */
+	private static final class EmailSink implements Notifier {
+
+		// The recording service
+		private final EmailService emailService;
+
+		EmailSink(EmailService emailService) {
+			this.emailService = emailService;
+		}
+
+		@Override
+		public String getName() {
+			return "email";
+		}
+
+		@Override
+		public void notify(List<LogNotification> notifications) {
+			emailService.sendNotifications(notifications);
+		}
+	}
+
+	/**
+	 * Outcome of a run
+	 */
+	public static final class Result {
+
+		// Ids written but never notified
+		private final List<Long> missed = new ArrayList<>();
+
+		// Ids notified more than once
+		private final List<Long> duplicates;
+
+		// Number of new-trace notifications without id
+		private final long unattributed;
+
+		// Detection latencies in nanoseconds, sorted
+		private final long[] latencies;
+
+		// Numbers of the writer
+		private final long written;
+		private final long records;
+		private final int rotations;
+		private final int truncations;
+
+		Result(SyntheticLogWriter writer, Map<Long, Long> received, List<Long> duplicates, long unattributed) {
+
+			Map<Long, Long> writes = writer.getWritten();
+			List<Long> values = new ArrayList<>();
+
+			for (Map.Entry<Long, Long> write : writes.entrySet()) {
+				Long arrived = received.get(write.getKey());
+				if (arrived == null) {
+					missed.add(write.getKey());
+				} else {
+					values.add(Math.max(0, arrived - write.getValue()));
+				}
+			}
+			Collections.sort(missed);
+
+			this.latencies = values.stream().mapToLong(Long::longValue).toArray();
+			Arrays.sort(latencies);
+
+			this.duplicates = new ArrayList<>(duplicates);
+			this.unattributed = unattributed;
+			this.written = writes.size();
+			this.records = writer.getRecords();
+			this.rotations = writer.getRotations();
+			this.truncations = writer.getTruncations();
+		}
+
+		public List<Long> getMissed() {
+			return missed;
+		}
+
+		public List<Long> getDuplicates() {
+			return duplicates;
+		}
+
+		public long getUnattributed() {
+			return unattributed;
+		}
+
+		public long getWritten() {
+			return written;
+		}
+
+		/**
+		 * @param percentile e.g. 50, 99 or 99.9
+		 * @return detection latency in milliseconds at the percentile, -1 if
+		 *         nothing arrived
+		 */
+		public double latencyMillis(double percentile) {
+
+			if (latencies.length == 0) {
+				return -1;
+			}
+			int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+			return latencies[Math.max(0, Math.min(latencies.length - 1, index))] / 1_000_000d;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+					"records=%d errors=%d missed=%d duplicates=%d unattributed=%d rotations=%d truncations=%d "
+							+ "latency ms p50=%.1f p90=%.1f p99=%.1f max=%.1f",
+					records, written, missed.size(), duplicates.size(), unattributed, rotations, truncations,
+					latencyMillis(50), latencyMillis(90), latencyMillis(99), latencyMillis(100));
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package org.redquark.logwatcher.it.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Replays synthetic traffic with bursts, rotations, truncations and
+ *         partial line writes through the scheduler, once per watch strategy,
+ *         and checks that every ERROR record is notified exactly once. The
+ *         latency percentiles are logged. The seeds are fixed, so a failure
+ *         can be replayed.
+ *
+ */
+public class DetectionHarnessTest {
+
+	// Logger
+	private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+	@Test
+	public void detectsEveryTraceOnceWithNativeEvents() throws Exception {
+		replay("NATIVE", 20261018L);
+	}
+
+	@Test
+	public void detectsEveryTraceOnceWhenPolling() throws Exception {
+		replay("POLL", 20261019L);
+	}
+
+	private void replay(String watchStrategy, long seed) throws Exception {
+
+		Path directory = Files.createTempDirectory("logwatcher-harness");
+
+		SyntheticLogWriter writer = new SyntheticLogWriter(directory.resolve("error.log"), 500, 0.02, seed);
+		writer.setBursts(5, 1000, 10);
+		writer.setRotateEveryRecords(3000);
+		writer.setTruncateEveryRecords(5000, 500);
+		writer.setPartialShare(0.01);
+
+		DetectionHarness harness = new DetectionHarness();
+		harness.configure("watchStrategy", watchStrategy);
+
+		DetectionHarness.Result result = harness.run(writer, directory, 15000);
+
+		log.info("{}: {}", watchStrategy, result);
+
+		assertTrue("Nothing was written", result.getWritten() > 0);
+		assertEquals("Missed traces", 0, result.getMissed().size());
+		assertEquals("Duplicated traces", 0, result.getDuplicates().size());
+		assertEquals("Traces without id", 0, result.getUnattributed());
+	}
+}
@@ -0,0 +1,336 @@
+package org.redquark.logwatcher.it.tests;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @author Anirudh Sharma
+ *
+ *         Writes AEM error.log traffic at a given rate: INFO/WARN lines, WARN
+ *         records with traces of exceptions which are not watched and a share
+ *         of ERROR records with the trace of one of the {@link #TYPES}. Every
+ *         ERROR record carries a unique id in its message, so every one of them
+ *         is a stack trace of its own and can be followed to its notification.
+ *
+ *         On top of the steady rate the writer can produce bursts, logrotate
+ *         renames, copytruncate truncations and lines written in two parts.
+ *         A truncation drops whatever was not read yet - that is what
+ *         copytruncate does to any reader - so the writer waits for the
+ *         reader to catch up first, see {@link #setBeforeTruncate}.
+ *
+ */
+public final class SyntheticLogWriter {
+
+	// Error/exception types written in the ERROR records
+	public static final String[] TYPES = { "NullPointerException", "RepositoryException", "PathNotFoundException",
+			"IllegalStateException" };
+
+	// Packages of the types
+	private static final String[] TYPE_PACKAGES = { "java.lang", "javax.jcr", "javax.jcr", "java.lang" };
+
+	// Id of an ERROR record in its message
+	private static final Pattern ID = Pattern.compile("harness-id=(\\d+)");
+
+	// Prefix format of AEM's logback configuration
+	private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss.SSS",
+			Locale.ROOT);
+
+	// Frames of the stack traces
+	private static final String[] FRAMES = {
+			"org.apache.sling.engine.impl.SlingRequestProcessorImpl.processComponent(SlingRequestProcessorImpl.java:282)",
+			"org.apache.sling.engine.impl.filter.RequestSlingFilterChain.doFilter(RequestSlingFilterChain.java:49)",
+			"com.day.cq.wcm.core.impl.WCMDebugFilter.doFilter(WCMDebugFilter.java:132)",
+			"org.apache.jackrabbit.oak.jcr.session.SessionImpl.getNode(SessionImpl.java:202)",
+			"org.eclipse.jetty.util.thread.QueuedThreadPool.runJob(QueuedThreadPool.java:671)" };
+
+	// The log file
+	private final Path file;
+
+	// Records per second outside of bursts
+	private final int recordsPerSecond;
+
+	// Share of the records which are ERROR records
+	private final double errorShare;
+
+	// Random source, seeded for replays
+	private final SplittableRandom random;
+
+	// Time the ERROR records became completely visible, in nanoseconds, by id
+	private final Map<Long, Long> written = new ConcurrentHashMap<>();
+
+	// Seconds between two bursts, 0 for none
+	private int burstEverySeconds;
+
+	// Length of a burst in milliseconds
+	private int burstMillis;
+
+	// Factor of the rate during a burst
+	private int burstFactor = 1;
+
+	// Records between two renames, 0 for none
+	private int rotateEveryRecords;
+
+	// Records between two truncations, 0 for none
+	private int truncateEveryRecords;
+
+	// Pause after a truncation, so that the reader sees the file shrink
+	private int truncatePauseMillis = 500;
+
+	// Share of the records whose first line is written in two parts
+	private double partialShare;
+
+	// Called before a truncation, blocks until the reader has caught up
+	private Runnable beforeTruncate = () -> {
+	};
+
+	// Id of the next ERROR record
+	private long nextId;
+
+	// Number of records written
+	private long records;
+
+	// Number of renames and truncations done
+	private int rotations;
+	private int truncations;
+
+	/**
+	 * @param file             the log file
+	 * @param recordsPerSecond records per second outside of bursts
+	 * @param errorShare       share of ERROR records with a watched type
+	 * @param seed             seed of the random source
+	 */
+	public SyntheticLogWriter(Path file, int recordsPerSecond, double errorShare, long seed) {
+		this.file = file;
+		this.recordsPerSecond = Math.max(1, recordsPerSecond);
+		this.errorShare = errorShare;
+		this.random = new SplittableRandom(seed);
+	}
+
+	/**
+	 * @param everySeconds seconds between two bursts, 0 for none
+	 * @param millis       length of a burst
+	 * @param factor       factor of the rate during a burst
+	 */
+	public void setBursts(int everySeconds, int millis, int factor) {
+		this.burstEverySeconds = everySeconds;
+		this.burstMillis = millis;
+		this.burstFactor = Math.max(1, factor);
+	}
+
+	/**
+	 * @param everyRecords records between two logrotate renames, 0 for none
+	 */
+	public void setRotateEveryRecords(int everyRecords) {
+		this.rotateEveryRecords = everyRecords;
+	}
+
+	/**
+	 * @param everyRecords records between two truncations, 0 for none
+	 * @param pauseMillis  pause after a truncation
+	 */
+	public void setTruncateEveryRecords(int everyRecords, int pauseMillis) {
+		this.truncateEveryRecords = everyRecords;
+		this.truncatePauseMillis = pauseMillis;
+	}
+
+	/**
+	 * @param share share of the records whose first line is written in two
+	 *              parts, with a short pause in between
+	 */
+	public void setPartialShare(double share) {
+		this.partialShare = share;
+	}
+
+	/**
+	 * @param beforeTruncate called before every truncation, must block until
+	 *                       everything written so far has been read
+	 */
+	public void setBeforeTruncate(Runnable beforeTruncate) {
+		this.beforeTruncate = beforeTruncate;
+	}
+
+	/**
+	 * Writes for the given time
+	 *
+	 * @param durationMillis
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public void run(long durationMillis) throws IOException, InterruptedException {
+
+		long started = System.nanoTime();
+		long end = started + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+
+		// Clock of the log
+		LocalDateTime time = LocalDateTime.now();
+
+		// Time the next record is due
+		long due = started;
+
+		OutputStream out = open(StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		try {
+
+			while (System.nanoTime() < end) {
+
+				long now = System.nanoTime();
+				if (due > now) {
+					TimeUnit.NANOSECONDS.sleep(due - now);
+				}
+				due += TimeUnit.SECONDS.toNanos(1) / (recordsPerSecond * rate(now - started));
+
+				time = time.plusNanos(random.nextInt(1, 20) * 1_000_000L);
+				writeRecord(out, time);
+				records++;
+
+				if (rotateEveryRecords > 0 && records % rotateEveryRecords == 0) {
+					out.close();
+					rotations++;
+					Files.move(file, file.resolveSibling(file.getFileName() + "." + rotations),
+							StandardCopyOption.REPLACE_EXISTING);
+					out = open(StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+				}
+
+				if (truncateEveryRecords > 0 && records % truncateEveryRecords == 0) {
+					out.close();
+					beforeTruncate.run();
+					truncations++;
+					out = open(StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+							StandardOpenOption.WRITE);
+					TimeUnit.MILLISECONDS.sleep(truncatePauseMillis);
+					due = System.nanoTime();
+				}
+			}
+
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @return the log file
+	 */
+	public Path getFile() {
+		return file;
+	}
+
+	/**
+	 * @return time the ERROR records became completely visible, in nanoseconds,
+	 *         by id
+	 */
+	public Map<Long, Long> getWritten() {
+		return written;
+	}
+
+	/**
+	 * @param trace text of a notification
+	 * @return id of the ERROR record or -1 if it carries none
+	 */
+	public static long idOf(String trace) {
+		Matcher matcher = trace == null ? null : ID.matcher(trace);
+		return matcher != null && matcher.find() ? Long.parseLong(matcher.group(1)) : -1;
+	}
+
+	public long getRecords() {
+		return records;
+	}
+
+	public int getRotations() {
+		return rotations;
+	}
+
+	public int getTruncations() {
+		return truncations;
+	}
+
+	/**
+	 * @return factor of the rate at the given time since the start
+	 */
+	private int rate(long elapsedNanos) {
+
+		if (burstEverySeconds <= 0) {
+			return 1;
+		}
+		long period = TimeUnit.SECONDS.toNanos(burstEverySeconds);
+		return elapsedNanos % period < TimeUnit.MILLISECONDS.toNanos(burstMillis) ? burstFactor : 1;
+	}
+
+	/**
+	 * Writes one record with a single write - or the first line in two parts
+	 */
+	private void writeRecord(OutputStream out, LocalDateTime time) throws IOException, InterruptedException {
+
+		StringBuilder record = new StringBuilder(2048);
+		double dice = random.nextDouble();
+		long id = -1;
+
+		if (dice < errorShare) {
+			id = nextId++;
+			int type = random.nextInt(TYPES.length);
+			prefix(record, time, "ERROR").append("Uncaught exception while processing request harness-id=")
+					.append(id).append('\n');
+			trace(record, TYPE_PACKAGES[type] + "." + TYPES[type]);
+		} else if (dice < errorShare + 0.01) {
+			prefix(record, time, "WARN").append("Connection reset by client\n");
+			trace(record, "org.eclipse.jetty.io.EofException");
+		} else {
+			prefix(record, time, random.nextInt(10) == 0 ? "WARN" : "INFO")
+					.append("Page /content/site/en/page-").append(random.nextInt(100000)).append(".html rendered\n");
+		}
+
+		byte[] bytes = record.toString().getBytes(StandardCharsets.UTF_8);
+
+		// Part of the first line, then the rest
+		if (random.nextDouble() < partialShare) {
+			int split = 1 + random.nextInt(Math.max(1, record.indexOf("\n")));
+			out.write(bytes, 0, split);
+			out.flush();
+			TimeUnit.MILLISECONDS.sleep(random.nextInt(1, 20));
+			if (id >= 0) {
+				written.put(id, System.nanoTime());
+			}
+			out.write(bytes, split, bytes.length - split);
+		} else {
+			if (id >= 0) {
+				written.put(id, System.nanoTime());
+			}
+			out.write(bytes);
+		}
+		out.flush();
+	}
+
+	private StringBuilder prefix(StringBuilder record, LocalDateTime time, String level) {
+
+		TIMESTAMP.formatTo(time, record);
+
+		return record.append(" *").append(level).append("* [qtp").append(random.nextInt(1000, 9999)).append('-')
+				.append(random.nextInt(1, 300)).append("] org.apache.sling.engine.impl.SlingRequestProcessorImpl ");
+	}
+
+	private void trace(StringBuilder record, String exception) {
+
+		record.append(exception).append(": Operation failed\n");
+
+		int frames = random.nextInt(4, 12);
+		for (int i = 0; i < frames; i++) {
+			record.append("\tat ").append(FRAMES[random.nextInt(FRAMES.length)]).append('\n');
+		}
+	}
+
+	private OutputStream open(StandardOpenOption... options) throws IOException {
+		return Files.newOutputStream(file, options);
+	}
+}